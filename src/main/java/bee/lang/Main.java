@@ -3,8 +3,11 @@ package bee.lang;
 import bee.lang.assembly.AsmInstruction;
 import bee.lang.assembly.CodeCreator;
 import bee.lang.assembly.MipsCodeCreator;
+import bee.lang.assembly.MipsPeepholeOptimizer;
+import bee.lang.assembly.TempMap;
 import bee.lang.ast.Program;
 import bee.lang.exceptions.*;
+import bee.lang.ir.CompilationContext;
 import bee.lang.ir.tree.IRStatement;
 import bee.lang.lexer.Lexer;
 import bee.lang.parser.Parser;
@@ -18,10 +21,19 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Main {
 
-    // Example to run compiler: <a jar file of compiler> -s <path to a source file or a directory of source files with the extension .bee> -d <path to an output file>
+    // Procedures which have more instructions than this value are compiled with the linear scan allocator because graph coloring is too slow for them
+    private static final int MAX_COUNT_INSTRUCTIONS_FOR_GRAPH_COLORING = 10000;
+
+    // Example to run compiler: <a jar file of compiler> -s <path to a source file or a directory of source files with the extension .bee> -d <path to an output file> [-O0]
+    // The option -O0 turns on fast compilation (the linear scan allocator is used instead of graph coloring and optimizations in SSA form are skipped).
     public static void main(String[] args) {
         if (args.length == 0) {
             System.out.println("Need a source file or directory with source files and a destination file.");
@@ -37,7 +49,9 @@ public class Main {
 
         String destinationFile = "";
 
-        if (args.length == 4) {
+        boolean isFastCompilation = false;
+
+        if (args.length >= 4) {
             for (int i = 0; i < args.length; i++) {
                 if ((args[i].equals("-s")) && (i + 1 < args.length)) {
                     File inputFile = new File(args[i + 1]);
@@ -58,18 +72,23 @@ public class Main {
                 if ((args[i].equals("-d")) && (i + 1 < args.length)) {
                     destinationFile = args[i + 1];
                 }
+
+                if (args[i].equals("-O0")) {
+                    isFastCompilation = true;
+                }
             }
         }
 
         try {
+            CompilationContext context = new CompilationContext();
             // Lexical analysis
             Lexer lexer = new Lexer();
             // Parsing
-            Parser parser = new Parser(lexer);
+            Parser parser = new Parser(context, lexer);
             // Build AST
             Program program = parser.parse(pathOfSrcFiles);
             // Semantic analysis
-            NewSymbolTableVisitor symbolTableVisitor = new NewSymbolTableVisitor();
+            NewSymbolTableVisitor symbolTableVisitor = new NewSymbolTableVisitor(context);
             symbolTableVisitor.createSymbolTable(program);
             BaseScope scope = symbolTableVisitor.getCurrentScope();
             ValidatingMethodsVisitor validatingMethodsVisitor = new ValidatingMethodsVisitor(scope);
@@ -81,10 +100,12 @@ public class Main {
             NewLayoutsVisitor newLayoutsVisitor = new NewLayoutsVisitor(scope, symbolTableVisitor.getSortedListOfClasses());
             newLayoutsVisitor.visit(program);
             // Translation to IR
-            NewIRTreeVisitor newIRTreeVisitor = new NewIRTreeVisitor(new MipsFrame(), newLayoutsVisitor.getObjectLayouts(), newLayoutsVisitor.getClassLayouts(), newLayoutsVisitor.getVirtualTables());
+            NewIRTreeVisitor newIRTreeVisitor = new NewIRTreeVisitor(new MipsFrame(context), newLayoutsVisitor.getObjectLayouts(), newLayoutsVisitor.getClassLayouts(), newLayoutsVisitor.getVirtualTables());
             newIRTreeVisitor.visit(program);
-
-            TransformIRTree transformIRTree = new TransformIRTree();
+            if (!isFastCompilation) {
+                // Replace calls of small procedures with their bodies
+                new Inliner(context).inline(newIRTreeVisitor.getFragments());
+            }
 
             CodeCreator codeCreator = new MipsCodeCreator();
             codeCreator.addVtables(codeCreator.generateVtables(newLayoutsVisitor.getVirtualTables()));
@@ -99,40 +120,31 @@ public class Main {
                 }
             }
 
-            for (Fragment fragment : newIRTreeVisitor.getFragments()) {
-                if (fragment instanceof ProcedureFragment) {
-                    ProcedureFragment procedureFragment = (ProcedureFragment) fragment;
-                    IRStatement procedureBody = procedureFragment.getBody();
-                    // Translation to IR
-                    IRStatement canonicalTrees = transformIRTree.transformStatement(procedureBody);
-                    LinkedList<IRStatement> linearizedTree = transformIRTree.linearizeTree(canonicalTrees);
-                    // Create basic blocks and trace
-                    Frame frame = procedureFragment.getFrame();
-                    ControlFlowAnalyzing controlFlowAnalyzing = new ControlFlowAnalyzing(frame.getProcedureName());
-                    LinkedList<IRStatement> tracedTrees = controlFlowAnalyzing.trace(linearizedTree);
-                    LinkedList<AsmInstruction> asmInstructions = new LinkedList<>();
-                    for (IRStatement statement : tracedTrees) {
-                        // Instruction selection
-                        asmInstructions.addAll(frame.codegen(statement));
-                    }
-
-                    asmInstructions = frame.procEntryExit2(asmInstructions);
+            // Procedures are independent so they are compiled in parallel. Results are added in the order of fragments to get the same code every time.
+            ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            final boolean finalIsFastCompilation = isFastCompilation;
 
-                    // Liveness analysis and register allocation
-                    RegAlloc regAlloc = new RegAlloc(frame, asmInstructions);
+            try {
+                LinkedList<Future<String>> procedures = new LinkedList<>();
 
-                    frame.procEntryExit3(asmInstructions);
+                for (Fragment fragment : newIRTreeVisitor.getFragments()) {
+                    if (fragment instanceof ProcedureFragment) {
+                        ProcedureFragment procedureFragment = (ProcedureFragment) fragment;
 
-                    StringBuilder procedure = new StringBuilder();
-                    for (AsmInstruction asmInstruction : asmInstructions) {
-                        String instruction = asmInstruction.format(regAlloc);
-                        if (!instruction.isEmpty()) {
-                            procedure.append(instruction).append("\n");
-                        }
+                        procedures.add(executorService.submit(new Callable<String>() {
+                            @Override
+                            public String call() throws Exception {
+                                return compileProcedure(procedureFragment, finalIsFastCompilation);
+                            }
+                        }));
                     }
+                }
 
-                    codeCreator.addProcedure(procedure.toString());
+                for (Future<String> procedure : procedures) {
+                    codeCreator.addProcedure(getResult(procedure));
                 }
+            } finally {
+                executorService.shutdownNow();
             }
 
             String code = codeCreator.create();
@@ -148,9 +160,98 @@ public class Main {
                 SelectColorException |
                 CodegenException e) {
             System.out.println(e);
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             e.printStackTrace();
         }
     }
 
+    // Translate the procedure to assembly code. This method is called from several threads so it must not change shared data.
+    private static String compileProcedure(ProcedureFragment procedureFragment, boolean isFastCompilation) throws SelectColorException, CodegenException {
+        Frame frame = procedureFragment.getFrame();
+
+        TransformIRTree transformIRTree = new TransformIRTree(frame.getContext());
+
+        // Move incoming arguments to temporary variables
+        IRStatement procedureBody = frame.procEntryExit1(procedureFragment.getBody());
+        // Compute constant expressions
+        procedureBody = new ConstantFolding().foldStatement(procedureBody);
+        // Translation to IR
+        IRStatement canonicalTrees = transformIRTree.transformStatement(procedureBody);
+        LinkedList<IRStatement> linearizedTree = transformIRTree.linearizeTree(canonicalTrees);
+        // Create basic blocks and trace
+        ControlFlowAnalyzing controlFlowAnalyzing = new ControlFlowAnalyzing(frame.getContext(), frame.getProcedureName());
+        LinkedList<BasicBlock> basicBlocks = controlFlowAnalyzing.createBasicBlocks(linearizedTree);
+        if (!isFastCompilation) {
+            // Propagate constants and copies in SSA form
+            SSAForm ssaForm = new SSAForm(frame, controlFlowAnalyzing, basicBlocks);
+            ssaForm.construct();
+            new ConditionalConstantPropagation(ssaForm).optimize();
+            new CopyPropagation(ssaForm).optimize();
+            ssaForm.destruct();
+        }
+        // Remove checks of array bounds which always pass
+        new BoundsCheckElimination(basicBlocks).optimize();
+        // Remove unreachable blocks and assignments whose results are never read
+        new DeadCodeElimination(frame).optimize(basicBlocks);
+        if (!isFastCompilation) {
+            // Move computations which do not change in loops to preheaders
+            new LoopInvariantCodeMotion(frame, controlFlowAnalyzing).optimize(basicBlocks);
+            // Replace multiplications by induction variables in loops with additions
+            new StrengthReduction(frame, controlFlowAnalyzing).optimize(basicBlocks);
+        }
+        // Remove repeated computations inside of basic blocks
+        new LocalValueNumbering(frame).optimize(basicBlocks);
+        LinkedList<IRStatement> tracedTrees = controlFlowAnalyzing.traceBasicBlocks(basicBlocks);
+        LinkedList<AsmInstruction> asmInstructions = new LinkedList<>();
+        for (IRStatement statement : tracedTrees) {
+            // Instruction selection
+            asmInstructions.addAll(frame.codegen(statement));
+        }
+
+        asmInstructions = frame.procEntryExit2(asmInstructions);
+
+        // Liveness analysis and register allocation
+        TempMap regAlloc;
+        if ((isFastCompilation) || (asmInstructions.size() > MAX_COUNT_INSTRUCTIONS_FOR_GRAPH_COLORING)) {
+            regAlloc = new LinearScanRegAlloc(frame, asmInstructions);
+        } else {
+            regAlloc = new RegAlloc(frame, asmInstructions);
+        }
+
+        frame.procEntryExit3(asmInstructions, regAlloc);
+        // Remove and combine instructions which use the same registers
+        new MipsPeepholeOptimizer(regAlloc).optimize(asmInstructions);
+
+        StringBuilder procedure = new StringBuilder();
+        for (AsmInstruction asmInstruction : asmInstructions) {
+            String instruction = asmInstruction.format(regAlloc);
+            if (!instruction.isEmpty()) {
+                procedure.append(instruction).append("\n");
+            }
+        }
+
+        return procedure.toString();
+    }
+
+    // Wait for the compiled procedure. Errors of compilation are thrown again as they are.
+    private static String getResult(Future<String> procedure) throws SelectColorException, CodegenException, InterruptedException {
+        try {
+            return procedure.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof SelectColorException) {
+                throw (SelectColorException) cause;
+            } else if (cause instanceof CodegenException) {
+                throw (CodegenException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+
 }
@@ -13,6 +13,12 @@ public abstract class AsmInstruction {
     public abstract LinkedList<Temp> getUse();
     public abstract LinkedList<Temp> getDef();
     public abstract LinkedList<Label> getJumps();
+    public abstract void replaceTemp(Temp oldTemp, Temp newTemp);
+
+    // The next instruction is not executed after this one
+    public boolean isUnconditionalJump() {
+        return false;
+    }
 
     public String format(TempMap tempMap) {
         LinkedList<Temp> srcRegs = getUse();
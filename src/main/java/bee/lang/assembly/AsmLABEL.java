@@ -29,6 +29,10 @@ public class AsmLABEL extends AsmInstruction {
         return new LinkedList<>();
     }
 
+    @Override
+    public void replaceTemp(Temp oldTemp, Temp newTemp) {
+    }
+
     public Label getLabel() {
         return mLabel;
     }
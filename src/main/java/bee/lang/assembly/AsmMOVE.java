@@ -35,6 +35,17 @@ public class AsmMOVE extends AsmInstruction {
         return new LinkedList<>();
     }
 
+    @Override
+    public void replaceTemp(Temp oldTemp, Temp newTemp) {
+        if (mDst == oldTemp) {
+            mDst = newTemp;
+        }
+
+        if (mSrc == oldTemp) {
+            mSrc = newTemp;
+        }
+    }
+
     public Temp getDst() {
         return mDst;
     }
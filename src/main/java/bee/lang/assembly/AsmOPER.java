@@ -10,12 +10,18 @@ public class AsmOPER extends AsmInstruction {
     private LinkedList<Temp> mDst;
     private LinkedList<Temp> mSrc;
     private LinkedList<Label> mJump;
+    private boolean mIsUnconditionalJump;
 
-    public AsmOPER(String instruction, LinkedList<Temp> dst, LinkedList<Temp> src, LinkedList<Label> jump) {
+    public AsmOPER(String instruction, LinkedList<Temp> dst, LinkedList<Temp> src, LinkedList<Label> jump, boolean isUnconditionalJump) {
         mInstruction = instruction;
         mDst = dst;
         mSrc = src;
         mJump = jump;
+        mIsUnconditionalJump = isUnconditionalJump;
+    }
+
+    public AsmOPER(String instruction, LinkedList<Temp> dst, LinkedList<Temp> src, LinkedList<Label> jump) {
+        this(instruction, dst, src, jump, false);
     }
 
     public AsmOPER(String asmInstruction, LinkedList<Temp> dst, LinkedList<Temp> src) {
@@ -41,4 +47,30 @@ public class AsmOPER extends AsmInstruction {
         return mJump;
     }
 
+    @Override
+    public boolean isUnconditionalJump() {
+        return mIsUnconditionalJump;
+    }
+
+    @Override
+    public void replaceTemp(Temp oldTemp, Temp newTemp) {
+        // Lists of registers may be shared between instructions (e.g. the list of caller-saved registers) so they are copied before changing.
+        mDst = replaceTemp(mDst, oldTemp, newTemp);
+        mSrc = replaceTemp(mSrc, oldTemp, newTemp);
+    }
+
+    private LinkedList<Temp> replaceTemp(LinkedList<Temp> temps, Temp oldTemp, Temp newTemp) {
+        if (!temps.contains(oldTemp)) {
+            return temps;
+        }
+
+        LinkedList<Temp> newTemps = new LinkedList<>();
+
+        for (Temp temp : temps) {
+            newTemps.add(temp == oldTemp ? newTemp : temp);
+        }
+
+        return newTemps;
+    }
+
 }
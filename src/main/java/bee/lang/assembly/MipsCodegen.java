@@ -5,17 +5,49 @@ import bee.lang.ir.Temp;
 import bee.lang.ir.tree.*;
 import bee.lang.translate.frame.Frame;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 
+// This class is used to select instructions for trees (tree-pattern matching with dynamic programming like BURG).
+// A tile covers a pattern of nodes with instructions. Subtrees under the pattern are computed before the tile and their values are operands of
+// the instructions. The cost of a tree is the smallest sum of the cost of a tile which matches the root and the costs of subtrees under this tile.
+// Costs of subtrees are computed once for a statement, then instructions of the cheapest tiles are added from leaves to the root.
+// The cost of a tile is the number of cycles of its instructions (see getCycles) so a division by a constant is a multiplication by its reciprocal.
 public class MipsCodegen {
 
+    // Ranges of immediate operands
+    private static final int MIN_SIGNED_IMMEDIATE = -32768;
+    private static final int MAX_SIGNED_IMMEDIATE = 32767;
+    private static final int MAX_UNSIGNED_IMMEDIATE = 0xFFFF;
+
+    // The cost of trees which are not covered by tiles
+    private static final int NO_TILE = Integer.MAX_VALUE / 2;
+
     private Frame mFrame;
     private LinkedList<AsmInstruction> mInstructionsList;
 
+    private LinkedList<Tile<IRExpression>> mExpressionTiles;
+    // MOVE(MEM(e1), e2)
+    private LinkedList<Tile<MOVE>> mStoreTiles;
+    private LinkedList<Tile<CJUMP>> mJumpTiles;
+
+    // The cheapest tiles of subtrees of the current statement and their costs
+    private HashMap<IRExpression, Tile<IRExpression>> mBestTiles;
+    private HashMap<IRExpression, Integer> mCosts;
+
     public MipsCodegen(Frame frame) {
         mFrame = frame;
         mInstructionsList = new LinkedList<>();
+        mExpressionTiles = new LinkedList<>();
+        mStoreTiles = new LinkedList<>();
+        mJumpTiles = new LinkedList<>();
+        mBestTiles = new HashMap<>();
+        mCosts = new HashMap<>();
+
+        addExpressionTiles();
+        addStoreTiles();
+        addJumpTiles();
     }
 
     public LinkedList<AsmInstruction> codegen(IRStatement statement) throws CodegenException {
@@ -23,28 +55,616 @@ public class MipsCodegen {
         return mInstructionsList;
     }
 
+    // A pattern of nodes which is covered by instructions
+    private abstract class Tile<T> {
+
+        // Returns subtrees under the pattern or null if the node does not match the pattern
+        public abstract LinkedList<IRExpression> match(T node);
+
+        // Returns the cost of instructions of the tile without subtrees
+        public abstract int getCost(T node);
+
+        // Adds instructions which use values of subtrees and returns the register with the result
+        public abstract Temp emit(T node, LinkedList<Temp> operands) throws CodegenException;
+
+    }
+
+    private void addExpressionTiles() {
+        // TEMP(t)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                return (node instanceof TEMP) ? emptyList() : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return 0;
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                return ((TEMP) node).getTemp();
+            }
+        });
+
+        // CONST(0)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                return ((node instanceof CONST) && (((CONST) node).getValue() == 0)) ? emptyList() : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return 0;
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                return mFrame.getZero();
+            }
+        });
+
+        // CONST(n)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                return (node instanceof CONST) ? emptyList() : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCostOfConstant(((CONST) node).getValue());
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                return munchConstant(((CONST) node).getValue());
+            }
+        });
+
+        // NAME(l)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                return (node instanceof NAME) ? emptyList() : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles("la");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER("la %d0, " + ((NAME) node).getLabel().getName(), list(result), emptyList()));
+                return result;
+            }
+        });
+
+        // MEM(BINOP(PLUS, e1, CONST(n))), MEM(BINOP(PLUS, CONST(n), e1)) and MEM(BINOP(MINUS, e1, CONST(n)))
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                return ((node instanceof MEM) && (getBase(((MEM) node).getExpression()) != null)) ? list(getBase(((MEM) node).getExpression())) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles("lw");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER("lw %d0, " + getOffset(((MEM) node).getExpression()) + "(%s0)", list(result), operands));
+                return result;
+            }
+        });
+
+        // MEM(e1)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                return (node instanceof MEM) ? list(((MEM) node).getExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles("lw");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER("lw %d0, 0(%s0)", list(result), operands));
+                return result;
+            }
+        });
+
+        // BINOP(PLUS, e1, CONST(n)) and BINOP(PLUS, CONST(n), e1)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.PLUS);
+                return ((binop != null) && (getConstant(binop) != null) && (isSignedImmediate(getConstant(binop).getValue()))) ? list(getVariable(binop)) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles("addiu");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                return munchAddition(operands.getFirst(), getConstant((BINOP) node).getValue());
+            }
+        });
+
+        // BINOP(MINUS, e1, CONST(n)) is e1 + (-n)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.MINUS);
+                return ((binop != null) && (binop.getRightExpression() instanceof CONST) && (isSignedImmediate(-(long) ((CONST) binop.getRightExpression()).getValue()))) ?
+                        list(binop.getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles("addiu");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                return munchAddition(operands.getFirst(), -((CONST) ((BINOP) node).getRightExpression()).getValue());
+            }
+        });
+
+        // BINOP(PLUS, e1, e2) and BINOP(MINUS, e1, e2)
+        mExpressionTiles.add(newBinopTile(TypeBinOp.PLUS, "addu"));
+        mExpressionTiles.add(newBinopTile(TypeBinOp.MINUS, "subu"));
+
+        // BINOP(MUL, e1, CONST(2^k)) and BINOP(MUL, CONST(2^k), e1)
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.MUL);
+                return ((binop != null) && (getShift(getConstant(binop)) > 0)) ? list(getVariable(binop)) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles("sll");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                return munchShift(operands.getFirst(), getShift(getConstant((BINOP) node)));
+            }
+        });
+
+        // BINOP(MUL, e1, CONST(2^k + 2^m)) is (e1 << k) + (e1 << m) and BINOP(MUL, e1, CONST(2^k - 1)) is (e1 << k) - e1
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.MUL);
+
+                if ((binop == null) || (getConstant(binop) == null)) {
+                    return null;
+                }
+
+                int value = getConstant(binop).getValue();
+
+                return ((value > 2) && ((Integer.bitCount(value) == 2) || (Integer.bitCount(value + 1) == 1))) ? list(getVariable(binop)) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                int value = getConstant((BINOP) node).getValue();
+
+                if ((Integer.bitCount(value) == 2) && (Integer.numberOfTrailingZeros(value) > 0)) {
+                    return getCycles("sll") + getCycles("sll") + getCycles("addu");
+                }
+
+                return getCycles("sll") + getCycles(Integer.bitCount(value) == 2 ? "addu" : "subu");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                int value = getConstant((BINOP) node).getValue();
+                Temp operand = operands.getFirst();
+                Temp result = mFrame.getContext().newTemp();
+
+                if (Integer.bitCount(value) == 2) {
+                    int low = Integer.numberOfTrailingZeros(value);
+                    int high = 31 - Integer.numberOfLeadingZeros(value);
+                    Temp lowPart = (low == 0) ? operand : munchShift(operand, low);
+                    mInstructionsList.add(new AsmOPER("addu %d0, %s0, %s1", list(result), list(munchShift(operand, high), lowPart)));
+                } else {
+                    mInstructionsList.add(new AsmOPER("subu %d0, %s0, %s1", list(result), list(munchShift(operand, Integer.numberOfTrailingZeros(value + 1)), operand)));
+                }
+
+                return result;
+            }
+        });
+
+        // BINOP(MUL, e1, e2)
+        mExpressionTiles.add(newProductTile(TypeBinOp.MUL, "mult", "mflo"));
+
+        // BINOP(DIV, e1, CONST(2^k))
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.DIV);
+                return ((binop != null) && (getShift(binop.getRightExpression()) > 0)) ? list(binop.getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCostOfBias(getShift(((BINOP) node).getRightExpression())) + getCycles("addu") + getCycles("sra");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                int shift = getShift(((BINOP) node).getRightExpression());
+                Temp dividend = operands.getFirst();
+                Temp biased = mFrame.getContext().newTemp();
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER("addu %d0, %s0, %s1", list(biased), list(dividend, munchBias(dividend, shift))));
+                mInstructionsList.add(new AsmOPER("sra %d0, %s0, " + shift, list(result), list(biased)));
+                return result;
+            }
+        });
+
+        // BINOP(DIV, e1, CONST(n))
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.DIV);
+                return ((binop != null) && (isDivisor(binop.getRightExpression()))) ? list(binop.getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                int divisor = ((CONST) ((BINOP) node).getRightExpression()).getValue();
+                int[] magic = getMagic(divisor);
+
+                int cost = getCostOfConstant(magic[0]) + getCycles("mult") + getCycles("mfhi") + getCycles("srl") + getCycles("addu");
+
+                if (((divisor > 0) && (magic[0] < 0)) || ((divisor < 0) && (magic[0] > 0))) {
+                    cost += getCycles("addu");
+                }
+
+                if (magic[1] > 0) {
+                    cost += getCycles("sra");
+                }
+
+                return cost;
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                return munchDivision(operands.getFirst(), ((CONST) ((BINOP) node).getRightExpression()).getValue());
+            }
+        });
+
+        // BINOP(DIV, e1, e2)
+        mExpressionTiles.add(newProductTile(TypeBinOp.DIV, "div", "mflo"));
+
+        // BINOP(MOD, e1, CONST(2^k))
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.MOD);
+                return ((binop != null) && (getShift(binop.getRightExpression()) > 0)) ? list(binop.getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCostOfBias(getShift(((BINOP) node).getRightExpression())) + getCostOfLowBits(getShift(((BINOP) node).getRightExpression())) +
+                        getCycles("addu") + getCycles("subu");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) throws CodegenException {
+                int shift = getShift(((BINOP) node).getRightExpression());
+                Temp dividend = operands.getFirst();
+                Temp bias = munchBias(dividend, shift);
+                Temp biased = mFrame.getContext().newTemp();
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER("addu %d0, %s0, %s1", list(biased), list(dividend, bias)));
+                mInstructionsList.add(new AsmOPER("subu %d0, %s0, %s1", list(result), list(munchLowBits(biased, shift), bias)));
+                return result;
+            }
+        });
+
+        // BINOP(MOD, e1, CONST(n)) is e1 - (e1 / n) * n
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, TypeBinOp.MOD);
+                return ((binop != null) && (isDivisor(binop.getRightExpression()))) ? list(binop.getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                // The dividend is already in a register
+                return MipsCodegen.this.getCost(getRemainder(new TEMP(mFrame.getZero()), (CONST) ((BINOP) node).getRightExpression()));
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) throws CodegenException {
+                return munchExpression(getRemainder(new TEMP(operands.getFirst()), (CONST) ((BINOP) node).getRightExpression()));
+            }
+        });
+
+        // BINOP(MOD, e1, e2)
+        mExpressionTiles.add(newProductTile(TypeBinOp.MOD, "div", "mfhi"));
+
+        // SELECT(op, e1, e2, CONST(1), CONST(0)) and SELECT(op, e1, e2, CONST(0), CONST(1)). The value of a comparison is the test itself,
+        // 'xori d, test, 1' or a comparison of the test with zero.
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                return ((node instanceof SELECT) && (isBooleanSelect((SELECT) node))) ? getTestedSubtrees((SELECT) node) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                SELECT select = (SELECT) node;
+                return getCostOfTest(select) + (((isBooleanTest(select)) && (!isOneIfZero(select))) ? 0 : getCycles("xori"));
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                SELECT select = (SELECT) node;
+                Temp test = munchTest(select, operands);
+
+                if ((isBooleanTest(select)) && (!isOneIfZero(select))) {
+                    return test;
+                }
+
+                Temp result = mFrame.getContext().newTemp();
+
+                if (isBooleanTest(select)) {
+                    mInstructionsList.add(new AsmOPER("xori %d0, %s0, 1", list(result), list(test)));
+                } else if (isOneIfZero(select)) {
+                    mInstructionsList.add(new AsmOPER("sltiu %d0, %s0, 1", list(result), list(test)));
+                } else {
+                    mInstructionsList.add(new AsmOPER("sltu %d0, %s0, %s1", list(result), list(mFrame.getZero(), test)));
+                }
+
+                return result;
+            }
+        });
+
+        // SELECT(op, e1, e2, e3, e4) is 'move d, e4' and 'movn d, e3, test' or 'movz d, e3, test'
+        mExpressionTiles.add(new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                if (!(node instanceof SELECT)) {
+                    return null;
+                }
+
+                LinkedList<IRExpression> subtrees = getTestedSubtrees((SELECT) node);
+                subtrees.add(((SELECT) node).getThenExpression());
+                subtrees.add(((SELECT) node).getElseExpression());
+                return subtrees;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCostOfTest((SELECT) node) + getCycles("move") + getCycles("movn");
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                SELECT select = (SELECT) node;
+                int countTestedSubtrees = getTestedSubtrees(select).size();
+                Temp test = munchTest(select, operands);
+
+                // The old value of the result is kept if the test fails, so the instruction uses the result too
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmMOVE("move %d0, %s0", result, operands.get(countTestedSubtrees + 1)));
+                mInstructionsList.add(new AsmOPER((isTrueIfZero(select) ? "movz" : "movn") + " %d0, %s0, %s1", list(result),
+                        list(operands.get(countTestedSubtrees), test, result)));
+                return result;
+            }
+        });
+    }
+
+    // BINOP(op, e1, e2) is 'instruction d, e1, e2'
+    private Tile<IRExpression> newBinopTile(final TypeBinOp typeBinOp, final String instruction) {
+        return new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, typeBinOp);
+                return (binop != null) ? list(binop.getLeftExpression(), binop.getRightExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles(instruction);
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER(instruction + " %d0, %s0, %s1", list(result), operands));
+                return result;
+            }
+        };
+    }
+
+    // BINOP(op, e1, e2) is 'instruction e1, e2' and the result is moved from the register HI or LO
+    private Tile<IRExpression> newProductTile(final TypeBinOp typeBinOp, final String instruction, final String move) {
+        return new Tile<IRExpression>() {
+            @Override
+            public LinkedList<IRExpression> match(IRExpression node) {
+                BINOP binop = getBinop(node, typeBinOp);
+                return (binop != null) ? list(binop.getLeftExpression(), binop.getRightExpression()) : null;
+            }
+
+            @Override
+            public int getCost(IRExpression node) {
+                return getCycles(instruction) + getCycles(move);
+            }
+
+            @Override
+            public Temp emit(IRExpression node, LinkedList<Temp> operands) {
+                Temp result = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER(instruction + " %s0, %s1", emptyList(), operands));
+                mInstructionsList.add(new AsmOPER(move + " %d0", list(result), emptyList()));
+                return result;
+            }
+        };
+    }
+
+    private void addStoreTiles() {
+        // MOVE(MEM(BINOP(PLUS, e1, CONST(n))), e2), MOVE(MEM(BINOP(PLUS, CONST(n), e1)), e2) and MOVE(MEM(BINOP(MINUS, e1, CONST(n))), e2)
+        mStoreTiles.add(new Tile<MOVE>() {
+            @Override
+            public LinkedList<IRExpression> match(MOVE node) {
+                IRExpression base = getBase(((MEM) node.getDst()).getExpression());
+                return (base != null) ? list(node.getSrc(), base) : null;
+            }
+
+            @Override
+            public int getCost(MOVE node) {
+                return getCycles("sw");
+            }
+
+            @Override
+            public Temp emit(MOVE node, LinkedList<Temp> operands) {
+                mInstructionsList.add(new AsmOPER("sw %s0, " + getOffset(((MEM) node.getDst()).getExpression()) + "(%s1)", emptyList(), operands));
+                return null;
+            }
+        });
+
+        // MOVE(MEM(e1), e2)
+        mStoreTiles.add(new Tile<MOVE>() {
+            @Override
+            public LinkedList<IRExpression> match(MOVE node) {
+                return list(node.getSrc(), ((MEM) node.getDst()).getExpression());
+            }
+
+            @Override
+            public int getCost(MOVE node) {
+                return getCycles("sw");
+            }
+
+            @Override
+            public Temp emit(MOVE node, LinkedList<Temp> operands) {
+                mInstructionsList.add(new AsmOPER("sw %s0, 0(%s1)", emptyList(), operands));
+                return null;
+            }
+        });
+    }
+
+    // Constants are on the right side of conditional jumps (see normalize)
+    private void addJumpTiles() {
+        // CJUMP(EQ or NE, BINOP(MOD, e1, CONST(2^k)), CONST(0), t, f). The remainder is zero if low bits of the dividend are zeros.
+        mJumpTiles.add(new Tile<CJUMP>() {
+            @Override
+            public LinkedList<IRExpression> match(CJUMP node) {
+                return isRemainderTest(node) ? list(((BINOP) node.getLeftExpression()).getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(CJUMP node) {
+                return getCostOfLowBits(getShift(((BINOP) node.getLeftExpression()).getRightExpression())) + getCycles("beqz");
+            }
+
+            @Override
+            public Temp emit(CJUMP node, LinkedList<Temp> operands) throws CodegenException {
+                Temp lowBits = munchLowBits(operands.getFirst(), getShift(((BINOP) node.getLeftExpression()).getRightExpression()));
+                munchBranch((node.getTypeRelOp() == TypeRelOp.EQ) ? "beqz" : "bnez", list(lowBits), node);
+                return null;
+            }
+        });
+
+        // CJUMP(op, e1, CONST(0), t, f)
+        mJumpTiles.add(new Tile<CJUMP>() {
+            @Override
+            public LinkedList<IRExpression> match(CJUMP node) {
+                return ((isZero(node.getRightExpression())) && (getBranchWithZero(node.getTypeRelOp()) != null)) ? list(node.getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(CJUMP node) {
+                return getCycles(getBranchWithZero(node.getTypeRelOp()));
+            }
+
+            @Override
+            public Temp emit(CJUMP node, LinkedList<Temp> operands) {
+                munchBranch(getBranchWithZero(node.getTypeRelOp()), operands, node);
+                return null;
+            }
+        });
+
+        // CJUMP(op, e1, CONST(n), t, f). e1 < n is 'slti' and e1 > n is not e1 < n + 1.
+        mJumpTiles.add(new Tile<CJUMP>() {
+            @Override
+            public LinkedList<IRExpression> match(CJUMP node) {
+                return (getComparedImmediate(node.getTypeRelOp(), node.getRightExpression()) != null) ? list(node.getLeftExpression()) : null;
+            }
+
+            @Override
+            public int getCost(CJUMP node) {
+                return getCycles("slti") + getCycles("bnez");
+            }
+
+            @Override
+            public Temp emit(CJUMP node, LinkedList<Temp> operands) {
+                TypeRelOp typeRelOp = node.getTypeRelOp();
+                boolean isUnsigned = (typeRelOp == TypeRelOp.ULT) || (typeRelOp == TypeRelOp.UGE);
+                boolean isLess = (typeRelOp == TypeRelOp.LT) || (typeRelOp == TypeRelOp.LE) || (typeRelOp == TypeRelOp.ULT);
+
+                Integer immediate = getComparedImmediate(typeRelOp, node.getRightExpression());
+
+                Temp less = mFrame.getContext().newTemp();
+                mInstructionsList.add(new AsmOPER((isUnsigned ? "sltiu" : "slti") + " %d0, %s0, " + immediate, list(less), operands));
+                munchBranch(isLess ? "bnez" : "beqz", list(less), node);
+                return null;
+            }
+        });
+
+        // CJUMP(op, e1, e2, t, f)
+        mJumpTiles.add(new Tile<CJUMP>() {
+            @Override
+            public LinkedList<IRExpression> match(CJUMP node) {
+                return list(node.getLeftExpression(), node.getRightExpression());
+            }
+
+            // Other branches are 'slt' and 'bne'
+            @Override
+            public int getCost(CJUMP node) {
+                int cost = getCycles("bne");
+
+                if ((node.getTypeRelOp() != TypeRelOp.EQ) && (node.getTypeRelOp() != TypeRelOp.NE)) {
+                    cost += getCycles("slt");
+                }
+
+                return cost;
+            }
+
+            @Override
+            public Temp emit(CJUMP node, LinkedList<Temp> operands) {
+                munchBranch(getBranch(node.getTypeRelOp()), operands, node);
+                return null;
+            }
+        });
+    }
+
     private void munchStatement(IRStatement statement) throws CodegenException {
         if (statement instanceof MOVE) {
             MOVE move = (MOVE) statement;
             if (move.getDst() instanceof MEM) {
-                MEM mem = (MEM) move.getDst();
-                if (mem.getExpression() instanceof BINOP) {
-                    BINOP binop = (BINOP) mem.getExpression();
-                    if (binop.getTypeBinOp() == TypeBinOp.PLUS) {
-                        if (binop.getRightExpression() instanceof CONST) {
-                            // MOVE(MEM(BINOP(PLUS, e1, CONST(n))), e2)
-                            mInstructionsList.add(new AsmOPER("sw %s0, " + ((CONST) binop.getRightExpression()).getValue() + "(%s1)", emptyList(), list(munchExpression(move.getSrc()), munchExpression(binop.getLeftExpression()))));
-                            return;
-                        } else if (binop.getLeftExpression() instanceof CONST) {
-                            // MOVE(MEM(BINOP(PLUS, CONST(n), e1)), e2)
-                            mInstructionsList.add(new AsmOPER("sw %s0, " + ((CONST) binop.getLeftExpression()).getValue() + "(%s1)", emptyList(), list(munchExpression(move.getSrc()), munchExpression(binop.getRightExpression()))));
-                            return;
-                        }
-                    }
-                }
-
                 // MOVE(MEM(e1), e2)
-                mInstructionsList.add(new AsmOPER("sw %s0, 0(%s1)", emptyList(), list(munchExpression(move.getSrc()), munchExpression(mem.getExpression()))));
+                munch(select(mStoreTiles, move), move);
                 return;
             }
 
@@ -54,8 +674,18 @@ public class MipsCodegen {
                     handleCall((CALL) move.getSrc());
                     mInstructionsList.add(new AsmMOVE("move %d0, %s0", ((TEMP) move.getDst()).getTemp(), mFrame.getRV()));
                 } else {
-                    // MOVE(TEMP(t), e1)
-                    mInstructionsList.add(new AsmMOVE("move %d0, %s0", ((TEMP) move.getDst()).getTemp(), munchExpression(move.getSrc())));
+                    // MOVE(TEMP(t), e1). The last instruction of the tile defines t instead of a new temporary variable
+                    // (loads of spilled temporary variables must not create new ones).
+                    Temp dst = ((TEMP) move.getDst()).getTemp();
+                    int countInstructions = mInstructionsList.size();
+                    Temp result = munchExpression(move.getSrc());
+                    AsmInstruction last = (mInstructionsList.size() > countInstructions) ? mInstructionsList.getLast() : null;
+
+                    if ((last instanceof AsmOPER) && (last.getDef().size() == 1) && (last.getDef().getFirst() == result) && (!last.getUse().contains(result))) {
+                        last.replaceTemp(result, dst);
+                    } else {
+                        mInstructionsList.add(new AsmMOVE("move %d0, %s0", dst, result));
+                    }
                 }
 
                 return;
@@ -69,45 +699,22 @@ public class MipsCodegen {
         }
 
         if (statement instanceof CJUMP) {
-            CJUMP cjump = (CJUMP) statement;
-
-            String relOp;
-
-            switch (cjump.getTypeRelOp()) {
-                case EQ: {
-                    relOp = "beq";
-                } break;
-
-                case NE: {
-                    relOp = "bne";
-                } break;
-
-                case LT: {
-                    relOp = "blt";
-                } break;
-
-                case GT: {
-                    relOp = "bgt";
-                } break;
-
-                case LE: {
-                    relOp = "ble";
-                } break;
+            // CJUMP(op, e1, e2, t, f)
+            CJUMP cjump = normalize((CJUMP) statement);
+            Tile<CJUMP> tile = select(mJumpTiles, cjump);
 
-                default: {
-                    relOp = "bge";
-                }
+            if (tile == null) {
+                throw new CodegenException(statement);
             }
 
-            // CJUMP(op, e1, e2, t, f)
-            mInstructionsList.add(new AsmOPER(relOp + " %s0, %s1, " + cjump.getLblTrue(), emptyList(), list(munchExpression(cjump.getLeftExpression()), munchExpression(cjump.getRightExpression())), list(cjump.getLblTrue())));
+            munch(tile, cjump);
             return;
         }
 
         if (statement instanceof JUMP) {
             // JUMP(l)
             JUMP jump = (JUMP) statement;
-            mInstructionsList.add(new AsmOPER("b " + jump.getTargets().getFirst(), emptyList(), emptyList(), jump.getTargets()));
+            mInstructionsList.add(new AsmOPER("b " + jump.getTargets().getFirst(), emptyList(), emptyList(), jump.getTargets(), true));
             return;
         }
 
@@ -126,108 +733,527 @@ public class MipsCodegen {
     }
 
     private Temp munchExpression(IRExpression expression) throws CodegenException {
-        if (expression instanceof MEM) {
-            MEM mem = (MEM) expression;
-            if (mem.getExpression() instanceof BINOP) {
-                BINOP binop = (BINOP) mem.getExpression();
-                if (binop.getTypeBinOp() == TypeBinOp.PLUS) {
-                    if (binop.getRightExpression() instanceof CONST) {
-                        // MEM(BINOP(PLUS, e1, CONST(n)))
-                        Temp result = new Temp();
-                        mInstructionsList.add(new AsmOPER("lw %d0, " + ((CONST) binop.getRightExpression()).getValue() + "(%s0)", list(result), list(munchExpression(binop.getLeftExpression()))));
-                        return result;
-                    } else if (binop.getLeftExpression() instanceof CONST) {
-                        // MEM(BINOP(PLUS, CONST(n), e1))
-                        Temp result = new Temp();
-                        mInstructionsList.add(new AsmOPER("lw %d0, " + ((CONST) binop.getLeftExpression()).getValue() + "(%s0)", list(result), list(munchExpression(binop.getRightExpression()))));
-                        return result;
-                    }
-                }
+        getCost(expression);
+        Tile<IRExpression> tile = mBestTiles.get(expression);
+
+        if (tile == null) {
+            throw new CodegenException(expression);
+        }
+
+        return munch(tile, expression);
+    }
+
+    // Subtrees are computed from left to right before instructions of the tile
+    private <T> Temp munch(Tile<T> tile, T node) throws CodegenException {
+        LinkedList<Temp> operands = new LinkedList<>();
+        for (IRExpression subtree : tile.match(node)) {
+            operands.add(munchExpression(subtree));
+        }
+
+        return tile.emit(node, operands);
+    }
+
+    // Returns the cheapest tile which matches the node or null
+    private <T> Tile<T> select(LinkedList<Tile<T>> tiles, T node) {
+        Tile<T> bestTile = null;
+        int bestCost = NO_TILE;
+
+        for (Tile<T> tile : tiles) {
+            int cost = getCost(tile, node);
+
+            if (cost < bestCost) {
+                bestTile = tile;
+                bestCost = cost;
             }
+        }
 
-            // MEM(e1)
-            Temp result = new Temp();
-            mInstructionsList.add(new AsmOPER("lw %d0, 0(%s0)", list(result), list(munchExpression(mem.getExpression()))));
-            return result;
+        return bestTile;
+    }
+
+    // Returns the cost of the cheapest cover of the tree
+    private int getCost(IRExpression expression) {
+        Integer cost = mCosts.get(expression);
+
+        if (cost == null) {
+            Tile<IRExpression> tile = select(mExpressionTiles, expression);
+            cost = (tile == null) ? NO_TILE : getCost(tile, expression);
+            mBestTiles.put(expression, tile);
+            mCosts.put(expression, cost);
         }
 
-        if (expression instanceof BINOP) {
-            BINOP binop = (BINOP) expression;
-            Temp result;
-            switch (binop.getTypeBinOp()) {
-                case PLUS: {
-                    if (binop.getRightExpression() instanceof CONST) {
-                        // BINOP(PLUS, e1, CONST(n))
-                        result = new Temp();
-                        mInstructionsList.add(new AsmOPER("addiu %d0, %s0, " + ((CONST) binop.getRightExpression()).getValue(), list(result), list(munchExpression(binop.getLeftExpression()))));
-                    } else if (binop.getLeftExpression() instanceof CONST) {
-                        // BINOP(PLUS, CONST(n), e1)
-                        result = new Temp();
-                        mInstructionsList.add(new AsmOPER("addiu %d0, %s0, " + ((CONST) binop.getLeftExpression()).getValue(), list(result), list(munchExpression(binop.getRightExpression()))));
-                    } else {
-                        // BINOP(PLUS, e1, e2)
-                        result = new Temp();
-                        mInstructionsList.add(new AsmOPER("addu %d0, %s0, %s1", list(result), list(munchExpression(binop.getLeftExpression()), munchExpression(binop.getRightExpression()))));
-                    }
-                } break;
-
-                case MINUS: {
-                    // BINOP(MINUS, e1, e2)
-                    result = new Temp();
-                    mInstructionsList.add(new AsmOPER("sub %d0, %s0, %s1", list(result), list(munchExpression(binop.getLeftExpression()), munchExpression(binop.getRightExpression()))));
-                } break;
-
-                case MUL: {
-                    // BINOP(MUL, e1, e2)
-                    result = new Temp();
-                    mInstructionsList.add(new AsmOPER("mult %s0, %s1", emptyList(), list(munchExpression(binop.getLeftExpression()), munchExpression(binop.getRightExpression()))));
-                    mInstructionsList.add(new AsmOPER("mflo %d0", list(result), emptyList()));
-                } break;
-
-                case DIV: {
-                    // BINOP(DIV, e1, e2)
-                    result = new Temp();
-                    mInstructionsList.add(new AsmOPER("div %s0, %s1", emptyList(), list(munchExpression(binop.getLeftExpression()), munchExpression(binop.getRightExpression()))));
-                    mInstructionsList.add(new AsmOPER("mflo %d0", list(result), emptyList()));
-                } break;
-
-                default: {
-                    // BINOP(MOD, e1, e2)
-                    result = new Temp();
-                    mInstructionsList.add(new AsmOPER("div %s0, %s1", emptyList(), list(munchExpression(binop.getLeftExpression()), munchExpression(binop.getRightExpression()))));
-                    mInstructionsList.add(new AsmOPER("mfhi %d0", list(result), emptyList()));
-                }
+        return cost;
+    }
+
+    private <T> int getCost(Tile<T> tile, T node) {
+        LinkedList<IRExpression> subtrees = tile.match(node);
+
+        if (subtrees == null) {
+            return NO_TILE;
+        }
+
+        int cost = tile.getCost(node);
+        for (IRExpression subtree : subtrees) {
+            cost = Math.min(cost + getCost(subtree), NO_TILE);
+        }
+
+        return cost;
+    }
+
+    // Cycles of instructions. A result of 'lw' is ready after the next instruction, 'mult' and 'div' wait for the result in the registers HI and LO.
+    private int getCycles(String instruction) {
+        switch (instruction) {
+            case "lw": {
+                return 2;
             }
 
-            return result;
+            case "mult": {
+                return 5;
+            }
+
+            case "div": {
+                return 35;
+            }
+
+            default: {
+                return 1;
+            }
         }
+    }
 
-        if (expression instanceof CONST) {
-            // CONST(n)
-            Temp result = new Temp();
-            mInstructionsList.add(new AsmOPER("li %d0, " + ((CONST) expression).getValue(), list(result), emptyList()));
-            return result;
+    // 'li' is 'lui' and 'ori' if the constant does not fit 16 bits
+    private int getCostOfConstant(int value) {
+        return ((isSignedImmediate(value)) || ((value >= 0) && (value <= MAX_UNSIGNED_IMMEDIATE))) ? getCycles("li") : getCycles("lui") + getCycles("ori");
+    }
+
+    private int getCostOfBias(int shift) {
+        return (shift == 1) ? getCycles("srl") : getCycles("sra") + getCycles("srl");
+    }
+
+    private int getCostOfLowBits(int shift) {
+        int mask = (1 << shift) - 1;
+        return (mask <= MAX_UNSIGNED_IMMEDIATE) ? getCycles("andi") : getCostOfConstant(mask) + getCycles("and");
+    }
+
+    private BINOP getBinop(IRExpression expression, TypeBinOp typeBinOp) {
+        return ((expression instanceof BINOP) && (((BINOP) expression).getTypeBinOp() == typeBinOp)) ? (BINOP) expression : null;
+    }
+
+    // Returns the constant of BINOP(op, e1, CONST(n)) or BINOP(op, CONST(n), e1) or null
+    private CONST getConstant(BINOP binop) {
+        if (binop.getRightExpression() instanceof CONST) {
+            return (CONST) binop.getRightExpression();
+        }
+
+        return (binop.getLeftExpression() instanceof CONST) ? (CONST) binop.getLeftExpression() : null;
+    }
+
+    // Returns the other operand of the constant (see getConstant)
+    private IRExpression getVariable(BINOP binop) {
+        return (binop.getRightExpression() instanceof CONST) ? binop.getLeftExpression() : binop.getRightExpression();
+    }
+
+    // Returns e1 if the address is e1 + n, n + e1 or e1 - n and n fits the offset of 'lw' and 'sw', otherwise null
+    private IRExpression getBase(IRExpression address) {
+        BINOP binop = getBinop(address, TypeBinOp.PLUS);
+
+        if ((binop != null) && (getConstant(binop) != null) && (isSignedImmediate(getConstant(binop).getValue()))) {
+            return getVariable(binop);
+        }
+
+        binop = getBinop(address, TypeBinOp.MINUS);
+
+        if ((binop != null) && (binop.getRightExpression() instanceof CONST) && (isSignedImmediate(-(long) ((CONST) binop.getRightExpression()).getValue()))) {
+            return binop.getLeftExpression();
+        }
+
+        return null;
+    }
+
+    private int getOffset(IRExpression address) {
+        BINOP binop = (BINOP) address;
+        return (binop.getTypeBinOp() == TypeBinOp.PLUS) ? getConstant(binop).getValue() : -((CONST) binop.getRightExpression()).getValue();
+    }
+
+    private boolean isSignedImmediate(long value) {
+        return (value >= MIN_SIGNED_IMMEDIATE) && (value <= MAX_SIGNED_IMMEDIATE);
+    }
+
+    private boolean isZero(IRExpression expression) {
+        return (expression instanceof CONST) && (((CONST) expression).getValue() == 0);
+    }
+
+    // Returns k if the expression is CONST(2^k) and k > 0, otherwise -1
+    private int getShift(IRExpression expression) {
+        if (!(expression instanceof CONST)) {
+            return -1;
+        }
+
+        int value = ((CONST) expression).getValue();
+
+        if ((value <= 1) || ((value & (value - 1)) != 0)) {
+            return -1;
+        }
+
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    // Division by 0, 1 and -1 is not changed. The magic number of -2^31 does not fit 32 bits.
+    private boolean isDivisor(IRExpression expression) {
+        if (!(expression instanceof CONST)) {
+            return false;
+        }
+
+        int value = ((CONST) expression).getValue();
+
+        return (value != 0) && (value != 1) && (value != -1) && (value != Integer.MIN_VALUE);
+    }
+
+    private boolean isRemainderTest(CJUMP cjump) {
+        if (((cjump.getTypeRelOp() != TypeRelOp.EQ) && (cjump.getTypeRelOp() != TypeRelOp.NE)) || (!(cjump.getLeftExpression() instanceof BINOP)) ||
+                (!isZero(cjump.getRightExpression()))) {
+            return false;
+        }
+
+        BINOP binop = (BINOP) cjump.getLeftExpression();
+
+        return (binop.getTypeBinOp() == TypeBinOp.MOD) && (getShift(binop.getRightExpression()) > 0);
+    }
+
+    // A constant on the left side is moved to the right side. Unsigned comparisons do not have reversed operators.
+    private CJUMP normalize(CJUMP cjump) {
+        if ((!(cjump.getLeftExpression() instanceof CONST)) || (cjump.getRightExpression() instanceof CONST) || (cjump.getTypeRelOp().reverse() == null)) {
+            return cjump;
+        }
+
+        return new CJUMP(cjump.getTypeRelOp().reverse(), cjump.getRightExpression(), cjump.getLeftExpression(), cjump.getLblTrue(), cjump.getLblFalse());
+    }
+
+    private String getBranch(TypeRelOp typeRelOp) {
+        switch (typeRelOp) {
+            case EQ: {
+                return "beq";
+            }
+
+            case NE: {
+                return "bne";
+            }
+
+            case LT: {
+                return "blt";
+            }
+
+            case GT: {
+                return "bgt";
+            }
+
+            case LE: {
+                return "ble";
+            }
+
+            case GE: {
+                return "bge";
+            }
+
+            case ULT: {
+                return "bltu";
+            }
+
+            default: {
+                return "bgeu";
+            }
+        }
+    }
+
+    // Returns the branch which compares a register with zero or null for unsigned comparisons
+    private String getBranchWithZero(TypeRelOp typeRelOp) {
+        switch (typeRelOp) {
+            case EQ: {
+                return "beqz";
+            }
+
+            case NE: {
+                return "bnez";
+            }
+
+            case LT: {
+                return "bltz";
+            }
+
+            case GT: {
+                return "bgtz";
+            }
+
+            case LE: {
+                return "blez";
+            }
+
+            case GE: {
+                return "bgez";
+            }
+
+            default: {
+                return null;
+            }
+        }
+    }
+
+    // Returns the immediate operand of 'slti' or 'sltiu' for the comparison with a constant or null
+    private Integer getComparedImmediate(TypeRelOp typeRelOp, IRExpression rightExpression) {
+        if ((!(rightExpression instanceof CONST)) || (typeRelOp == TypeRelOp.EQ) || (typeRelOp == TypeRelOp.NE)) {
+            return null;
+        }
+
+        long value = ((CONST) rightExpression).getValue();
+
+        // e1 <= n is e1 < n + 1
+        if ((typeRelOp == TypeRelOp.GT) || (typeRelOp == TypeRelOp.LE)) {
+            value++;
+        }
+
+        return isSignedImmediate(value) ? (int) value : null;
+    }
+
+    // Returns the immediate operand of the test of the selection (see munchTest) or null. Equality is tested by 'xori' which has an unsigned operand.
+    private Integer getTestedImmediate(SELECT select) {
+        TypeRelOp typeRelOp = select.getTypeRelOp();
+
+        if ((typeRelOp != TypeRelOp.EQ) && (typeRelOp != TypeRelOp.NE)) {
+            return getComparedImmediate(typeRelOp, select.getRightExpression());
+        }
+
+        if (!(select.getRightExpression() instanceof CONST)) {
+            return null;
         }
 
-        if (expression instanceof NAME) {
-            // NAME(l)
-            Temp result = new Temp();
-            mInstructionsList.add(new AsmOPER("la %d0, " + ((NAME) expression).getLabel().getName(), list(result), emptyList()));
+        int value = ((CONST) select.getRightExpression()).getValue();
+
+        return ((value >= 0) && (value <= MAX_UNSIGNED_IMMEDIATE)) ? value : null;
+    }
+
+    // Subtrees of the test: e1 if e2 is an immediate operand, otherwise e1 and e2
+    private LinkedList<IRExpression> getTestedSubtrees(SELECT select) {
+        return (getTestedImmediate(select) != null) ? list(select.getLeftExpression()) : list(select.getLeftExpression(), select.getRightExpression());
+    }
+
+    // e1 == 0 and e1 != 0 test e1 itself
+    private int getCostOfTest(SELECT select) {
+        return ((isBooleanTest(select)) || (!isZero(select.getRightExpression()))) ? getCycles("slt") : 0;
+    }
+
+    // Tests of comparisons are 0 or 1, tests of equality are any values
+    private boolean isBooleanTest(SELECT select) {
+        return (select.getTypeRelOp() != TypeRelOp.EQ) && (select.getTypeRelOp() != TypeRelOp.NE);
+    }
+
+    // The test is zero if the comparison is true for e1 == e2 (e1 xor e2), e1 >= e2 (not e1 < e2) and e1 <= e2 (not e2 < e1).
+    // e1 > n is not e1 < n + 1 and e1 <= n is e1 < n + 1.
+    private boolean isTrueIfZero(SELECT select) {
+        TypeRelOp typeRelOp = select.getTypeRelOp();
+        boolean isTrueIfZero = (typeRelOp == TypeRelOp.EQ) || (typeRelOp == TypeRelOp.GE) || (typeRelOp == TypeRelOp.LE) || (typeRelOp == TypeRelOp.UGE);
+
+        if (((typeRelOp == TypeRelOp.GT) || (typeRelOp == TypeRelOp.LE)) && (getTestedImmediate(select) != null)) {
+            return !isTrueIfZero;
+        }
+
+        return isTrueIfZero;
+    }
+
+    // The values are 1 and 0 or 0 and 1
+    private boolean isBooleanSelect(SELECT select) {
+        if ((!(select.getThenExpression() instanceof CONST)) || (!(select.getElseExpression() instanceof CONST))) {
+            return false;
+        }
+
+        int thenValue = ((CONST) select.getThenExpression()).getValue();
+        int elseValue = ((CONST) select.getElseExpression()).getValue();
+
+        return ((thenValue == 1) && (elseValue == 0)) || ((thenValue == 0) && (elseValue == 1));
+    }
+
+    // The value of the boolean selection is 1 if the test is zero
+    private boolean isOneIfZero(SELECT select) {
+        return isTrueIfZero(select) == (((CONST) select.getThenExpression()).getValue() == 1);
+    }
+
+    // Returns the register which is zero or not zero depending on the comparison (see isTrueIfZero). Operands are values of tested subtrees.
+    private Temp munchTest(SELECT select, LinkedList<Temp> operands) {
+        TypeRelOp typeRelOp = select.getTypeRelOp();
+        Integer immediate = getTestedImmediate(select);
+
+        if ((!isBooleanTest(select)) && (isZero(select.getRightExpression()))) {
+            return operands.getFirst();
+        }
+
+        Temp result = mFrame.getContext().newTemp();
+
+        if (!isBooleanTest(select)) {
+            if (immediate != null) {
+                mInstructionsList.add(new AsmOPER("xori %d0, %s0, " + immediate, list(result), list(operands.getFirst())));
+            } else {
+                mInstructionsList.add(new AsmOPER("xor %d0, %s0, %s1", list(result), list(operands.get(0), operands.get(1))));
+            }
+
             return result;
         }
 
-        if (expression instanceof TEMP) {
-            return ((TEMP) expression).getTemp();
+        boolean isUnsigned = (typeRelOp == TypeRelOp.ULT) || (typeRelOp == TypeRelOp.UGE);
+
+        if (immediate != null) {
+            mInstructionsList.add(new AsmOPER((isUnsigned ? "sltiu" : "slti") + " %d0, %s0, " + immediate, list(result), list(operands.getFirst())));
+        } else if ((typeRelOp == TypeRelOp.GT) || (typeRelOp == TypeRelOp.LE)) {
+            mInstructionsList.add(new AsmOPER("slt %d0, %s0, %s1", list(result), list(operands.get(1), operands.get(0))));
+        } else {
+            mInstructionsList.add(new AsmOPER((isUnsigned ? "sltu" : "slt") + " %d0, %s0, %s1", list(result), list(operands.get(0), operands.get(1))));
+        }
+
+        return result;
+    }
+
+    // Registers are compared with each other or with zero
+    private void munchBranch(String branch, LinkedList<Temp> operands, CJUMP cjump) {
+        String text = (operands.size() == 1) ? branch + " %s0, " : branch + " %s0, %s1, ";
+        mInstructionsList.add(new AsmOPER(text + cjump.getLblTrue(), emptyList(), operands, list(cjump.getLblTrue())));
+    }
+
+    private Temp munchConstant(int value) {
+        Temp result = mFrame.getContext().newTemp();
+        mInstructionsList.add(new AsmOPER("li %d0, " + value, list(result), emptyList()));
+        return result;
+    }
+
+    private Temp munchAddition(Temp value, int constant) {
+        Temp result = mFrame.getContext().newTemp();
+        mInstructionsList.add(new AsmOPER("addiu %d0, %s0, " + constant, list(result), list(value)));
+        return result;
+    }
+
+    private Temp munchShift(Temp value, int shift) {
+        Temp result = mFrame.getContext().newTemp();
+        mInstructionsList.add(new AsmOPER("sll %d0, %s0, " + shift, list(result), list(value)));
+        return result;
+    }
+
+    // Returns k low bits of the value
+    private Temp munchLowBits(Temp value, int shift) throws CodegenException {
+        Temp result = mFrame.getContext().newTemp();
+        int mask = (1 << shift) - 1;
+
+        if (mask <= MAX_UNSIGNED_IMMEDIATE) {
+            mInstructionsList.add(new AsmOPER("andi %d0, %s0, " + mask, list(result), list(value)));
+        } else {
+            mInstructionsList.add(new AsmOPER("and %d0, %s0, %s1", list(result), list(value, munchConstant(mask))));
+        }
+
+        return result;
+    }
+
+    // Division rounds to zero but 'sra' rounds down so 2^k - 1 is added to negative dividends before the shift.
+    // The bias is the sign bit of the dividend repeated k times.
+    private Temp munchBias(Temp dividend, int shift) {
+        Temp bias = mFrame.getContext().newTemp();
+
+        if (shift == 1) {
+            mInstructionsList.add(new AsmOPER("srl %d0, %s0, 31", list(bias), list(dividend)));
+        } else {
+            Temp sign = mFrame.getContext().newTemp();
+            mInstructionsList.add(new AsmOPER("sra %d0, %s0, 31", list(sign), list(dividend)));
+            mInstructionsList.add(new AsmOPER("srl %d0, %s0, " + (32 - shift), list(bias), list(sign)));
+        }
+
+        return bias;
+    }
+
+    // The quotient is the high word of the product of the dividend and the magic number, shifted right.
+    // 1 is added to negative quotients because they are rounded down.
+    private Temp munchDivision(Temp dividend, int divisor) {
+        int[] magic = getMagic(divisor);
+
+        Temp high = mFrame.getContext().newTemp();
+        mInstructionsList.add(new AsmOPER("mult %s0, %s1", emptyList(), list(dividend, munchConstant(magic[0]))));
+        mInstructionsList.add(new AsmOPER("mfhi %d0", list(high), emptyList()));
+
+        // The magic number has the wrong sign because it does not fit 31 bits
+        if ((divisor > 0) && (magic[0] < 0)) {
+            Temp sum = mFrame.getContext().newTemp();
+            mInstructionsList.add(new AsmOPER("addu %d0, %s0, %s1", list(sum), list(high, dividend)));
+            high = sum;
+        } else if ((divisor < 0) && (magic[0] > 0)) {
+            Temp difference = mFrame.getContext().newTemp();
+            mInstructionsList.add(new AsmOPER("subu %d0, %s0, %s1", list(difference), list(high, dividend)));
+            high = difference;
         }
 
-        throw new CodegenException(expression);
+        if (magic[1] > 0) {
+            Temp shifted = mFrame.getContext().newTemp();
+            mInstructionsList.add(new AsmOPER("sra %d0, %s0, " + magic[1], list(shifted), list(high)));
+            high = shifted;
+        }
+
+        Temp sign = mFrame.getContext().newTemp();
+        Temp result = mFrame.getContext().newTemp();
+        mInstructionsList.add(new AsmOPER("srl %d0, %s0, 31", list(sign), list(high)));
+        mInstructionsList.add(new AsmOPER("addu %d0, %s0, %s1", list(result), list(high, sign)));
+
+        return result;
+    }
+
+    // Returns the magic number and the shift for the division by the constant (Hacker's Delight, 10-4). 2 <= |divisor| < 2^31.
+    private int[] getMagic(int divisor) {
+        long twoPower31 = 1L << 31;
+        long absDivisor = Math.abs((long) divisor);
+        long t = twoPower31 + ((divisor & 0xFFFFFFFFL) >>> 31);
+        long absNc = t - 1 - (t % absDivisor);
+        int p = 31;
+        long q1 = twoPower31 / absNc;
+        long r1 = twoPower31 - q1 * absNc;
+        long q2 = twoPower31 / absDivisor;
+        long r2 = twoPower31 - q2 * absDivisor;
+        long delta;
+
+        do {
+            p++;
+            q1 = 2 * q1;
+            r1 = 2 * r1;
+
+            if (r1 >= absNc) {
+                q1++;
+                r1 -= absNc;
+            }
+
+            q2 = 2 * q2;
+            r2 = 2 * r2;
+
+            if (r2 >= absDivisor) {
+                q2++;
+                r2 -= absDivisor;
+            }
+
+            delta = absDivisor - r2;
+        } while ((q1 < delta) || ((q1 == delta) && (r1 == 0)));
+
+        int magic = (int) (q2 + 1);
+
+        return new int[] { (divisor < 0) ? -magic : magic, p - 32 };
+    }
+
+    // e1 % n is e1 - (e1 / n) * n
+    private IRExpression getRemainder(TEMP dividend, CONST divisor) {
+        return new BINOP(TypeBinOp.MINUS, dividend, new BINOP(TypeBinOp.MUL, new BINOP(TypeBinOp.DIV, dividend, divisor), divisor));
     }
 
     private void handleCall(CALL call) throws CodegenException {
+        if ((call.isTailCall()) && (call.getFunction() instanceof NAME)) {
+            // The called procedure returns to the caller of the current procedure
+            mInstructionsList.add(mFrame.tailJump(((NAME) call.getFunction()).getLabel(), munchArgs(call.getArguments())));
+            return;
+        }
+
         LinkedList<Temp> calldefs = new LinkedList<>();
         calldefs.add(mFrame.getRA());
-        calldefs.add(mFrame.getRV());
+        calldefs.addAll(mFrame.getReturnValueRegs());
         calldefs.add(mFrame.getFP());
+        // A called procedure can change the argument registers so temporary variables coalesced with these registers must not live across the call
+        calldefs.addAll(mFrame.getArgRegs());
         calldefs.addAll(mFrame.getCallerSavesRegs());
         LinkedList<Temp> args = new LinkedList<>();
         args.add(munchExpression(call.getFunction()));
@@ -235,6 +1261,7 @@ public class MipsCodegen {
         mInstructionsList.add(new AsmOPER("jal %s0", calldefs, args));
     }
 
+    // Returns the argument registers which are used by the call. Other arguments are passed through the bottom of the caller's stack frame.
     private LinkedList<Temp> munchArgs(LinkedList<IRExpression> args) throws CodegenException {
         LinkedList<Temp> result = new LinkedList<>();
 
@@ -244,13 +1271,14 @@ public class MipsCodegen {
             Temp temp = munchExpression(expression);
 
             if (argRegsIterator.hasNext()) {
-                mInstructionsList.add(new AsmMOVE("move %d0, %s0", argRegsIterator.next(), temp));
+                Temp argReg = argRegsIterator.next();
+                mInstructionsList.add(new AsmMOVE("move %d0, %s0", argReg, temp));
+                result.add(argReg);
             } else {
-                mInstructionsList.add(new AsmOPER("sw %s0, " + (i * mFrame.getWordSize()) + "(%s1)", emptyList(), list(temp, mFrame.getFP())));
-                i++;
+                mInstructionsList.add(new AsmOPER("sw %s0, " + (i * mFrame.getWordSize()) + "(%s1)", emptyList(), list(temp, mFrame.getSP())));
             }
 
-            result.add(temp);
+            i++;
         }
 
         return result;
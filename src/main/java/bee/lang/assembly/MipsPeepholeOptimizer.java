@@ -0,0 +1,273 @@
+package bee.lang.assembly;
+
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// This class is used to improve instructions after register allocation (peephole optimization). Instructions are compared by their registers so
+// it finds things which are not visible in trees. A window of two instructions is moved over the list and these rules are applied:
+// 1. 'move r, r' is removed.
+// 2. Instructions after an unconditional jump are removed until the next label. A jump or a branch to the next instruction is removed.
+// 3. 'lw r2, n(b)' right after 'sw r1, n(b)' becomes 'move r2, r1'.
+// 4. 'li r, n' and 'addu d, a, r' become 'addiu d, a, n' ('subu' too).
+// 5. 'la r, f' and 'jal r' become 'jal f'. Instructions which do not use r may be between them.
+// 6. An instruction which defines r and 'move d, r' become the same instruction which defines d.
+// Rules 4-6 are used only if the value of r is not read later: r is defined again before it is read in the same block.
+// Rules are applied until nothing is changed.
+public class MipsPeepholeOptimizer {
+
+    private static final Pattern MEMORY = Pattern.compile("^(sw|lw) (\\$\\w+), (-?\\d+)\\((\\$\\w+)\\)$");
+    private static final Pattern LOAD_IMMEDIATE = Pattern.compile("^li (\\$\\w+), (-?\\d+)$");
+    private static final Pattern LOAD_ADDRESS = Pattern.compile("^la (\\$\\w+), (\\S+)$");
+
+    // The range of the immediate operand of 'addiu'
+    private static final int MIN_SIGNED_IMMEDIATE = -32768;
+    private static final int MAX_SIGNED_IMMEDIATE = 32767;
+
+    private TempMap mTempMap;
+    private ArrayList<AsmInstruction> mInstructions;
+
+    public MipsPeepholeOptimizer(TempMap tempMap) {
+        mTempMap = tempMap;
+    }
+
+    public void optimize(LinkedList<AsmInstruction> asmInstructions) {
+        mInstructions = new ArrayList<>(asmInstructions);
+
+        boolean isChanged = true;
+
+        while (isChanged) {
+            isChanged = false;
+
+            int i = 0;
+            while (i < mInstructions.size()) {
+                if (rewrite(i)) {
+                    isChanged = true;
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        asmInstructions.clear();
+        asmInstructions.addAll(mInstructions);
+    }
+
+    // Returns true if the instruction at the position is changed or removed
+    private boolean rewrite(int position) {
+        AsmInstruction first = mInstructions.get(position);
+
+        if ((first instanceof AsmMOVE) && (getName(first.getDef().getFirst()).equals(getName(first.getUse().getFirst())))) {
+            mInstructions.remove(position);
+            return true;
+        }
+
+        if ((first.isUnconditionalJump()) && (position + 1 < mInstructions.size()) && (!(mInstructions.get(position + 1) instanceof AsmLABEL))) {
+            mInstructions.remove(position + 1);
+            return true;
+        }
+
+        if ((first.getJumps().size() == 1) && (isNextLabel(position, first.getJumps().getFirst()))) {
+            mInstructions.remove(position);
+            return true;
+        }
+
+        if (rewriteCall(position, first)) {
+            return true;
+        }
+
+        if (position + 1 >= mInstructions.size()) {
+            return false;
+        }
+
+        AsmInstruction second = mInstructions.get(position + 1);
+
+        return (rewriteStoreAndLoad(position, first, second)) || (rewriteAddition(position, first, second)) || (rewriteMove(position, first, second));
+    }
+
+    private boolean rewriteStoreAndLoad(int position, AsmInstruction first, AsmInstruction second) {
+        Matcher store = MEMORY.matcher(first.format(mTempMap));
+        Matcher load = MEMORY.matcher(second.format(mTempMap));
+
+        // Instructions of the prologue and the epilogue do not have registers as temporary variables
+        if ((!store.matches()) || (!load.matches()) || (!store.group(1).equals("sw")) || (!load.group(1).equals("lw")) ||
+                (first.getUse().size() != 2) || (second.getDef().size() != 1)) {
+            return false;
+        }
+
+        if ((!store.group(3).equals(load.group(3))) || (!store.group(4).equals(load.group(4)))) {
+            return false;
+        }
+
+        if (store.group(2).equals(load.group(2))) {
+            mInstructions.remove(position + 1);
+        } else {
+            mInstructions.set(position + 1, new AsmMOVE("move %d0, %s0", second.getDef().getFirst(), first.getUse().getFirst()));
+        }
+
+        return true;
+    }
+
+    private boolean rewriteAddition(int position, AsmInstruction first, AsmInstruction second) {
+        Matcher loadImmediate = LOAD_IMMEDIATE.matcher(first.format(mTempMap));
+        String text = second.format(mTempMap);
+
+        if ((!loadImmediate.matches()) || (first.getDef().size() != 1) || (second.getUse().size() != 2) || (second.getDef().size() != 1) ||
+                ((!text.startsWith("addu ")) && (!text.startsWith("subu ")))) {
+            return false;
+        }
+
+        String register = loadImmediate.group(1);
+        Temp left = second.getUse().get(0);
+        Temp right = second.getUse().get(1);
+        long value = Long.parseLong(loadImmediate.group(2));
+
+        Temp other;
+
+        if ((getName(right).equals(register)) && (!getName(left).equals(register))) {
+            other = left;
+            value = text.startsWith("subu ") ? -value : value;
+        } else if ((text.startsWith("addu ")) && (getName(left).equals(register)) && (!getName(right).equals(register))) {
+            other = right;
+        } else {
+            return false;
+        }
+
+        Temp dst = second.getDef().getFirst();
+
+        if ((value < MIN_SIGNED_IMMEDIATE) || (value > MAX_SIGNED_IMMEDIATE) || ((!getName(dst).equals(register)) && (!isDeadAfter(position + 1, register)))) {
+            return false;
+        }
+
+        mInstructions.set(position, new AsmOPER("addiu %d0, %s0, " + value, list(dst), list(other)));
+        mInstructions.remove(position + 1);
+
+        return true;
+    }
+
+    // Arguments are moved to their registers between 'la' and 'jal' so the call is found after instructions which do not use the register
+    private boolean rewriteCall(int position, AsmInstruction first) {
+        Matcher loadAddress = LOAD_ADDRESS.matcher(first.format(mTempMap));
+
+        if ((!loadAddress.matches()) || (first.getDef().size() != 1)) {
+            return false;
+        }
+
+        String register = loadAddress.group(1);
+        int callPosition = position + 1;
+
+        while ((callPosition < mInstructions.size()) && (!mInstructions.get(callPosition).format(mTempMap).startsWith("jal "))) {
+            AsmInstruction asmInstruction = mInstructions.get(callPosition);
+
+            if ((asmInstruction instanceof AsmLABEL) || (!asmInstruction.getJumps().isEmpty()) || (asmInstruction.isUnconditionalJump()) ||
+                    (getNames(asmInstruction.getUse()).contains(register)) || (getNames(asmInstruction.getDef()).contains(register))) {
+                return false;
+            }
+
+            callPosition++;
+        }
+
+        if ((callPosition == mInstructions.size()) || (mInstructions.get(callPosition).getUse().isEmpty())) {
+            return false;
+        }
+
+        AsmInstruction call = mInstructions.get(callPosition);
+        LinkedList<Temp> args = new LinkedList<>(call.getUse());
+
+        // The address may be an argument too
+        if ((!getName(args.removeFirst()).equals(register)) || (getNames(args).contains(register))) {
+            return false;
+        }
+
+        // A call changes caller-saved registers
+        if ((!getNames(call.getDef()).contains(register)) && (!isDeadAfter(callPosition, register))) {
+            return false;
+        }
+
+        mInstructions.set(callPosition, new AsmOPER("jal " + loadAddress.group(2), call.getDef(), args));
+        mInstructions.remove(position);
+
+        return true;
+    }
+
+    private boolean rewriteMove(int position, AsmInstruction first, AsmInstruction second) {
+        if ((!(second instanceof AsmMOVE)) || (first instanceof AsmLABEL) || (first.getDef().size() != 1) || (!first.getJumps().isEmpty()) ||
+                (first.isUnconditionalJump())) {
+            return false;
+        }
+
+        Temp temp = first.getDef().getFirst();
+        String register = getName(temp);
+
+        if ((!getName(second.getUse().getFirst()).equals(register)) || (getNames(first.getUse()).contains(register)) || (!isDeadAfter(position + 1, register))) {
+            return false;
+        }
+
+        first.replaceTemp(temp, second.getDef().getFirst());
+        mInstructions.remove(position + 1);
+
+        return true;
+    }
+
+    // Labels between the instruction and the next instruction
+    private boolean isNextLabel(int position, Label label) {
+        for (int i = position + 1; (i < mInstructions.size()) && (mInstructions.get(i) instanceof AsmLABEL); i++) {
+            if (((AsmLABEL) mInstructions.get(i)).getLabel() == label) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // The register is defined again after the instruction before it is read. The end of the block is not known so the register may be alive there.
+    private boolean isDeadAfter(int position, String register) {
+        for (int i = position + 1; i < mInstructions.size(); i++) {
+            AsmInstruction asmInstruction = mInstructions.get(i);
+
+            if ((asmInstruction instanceof AsmLABEL) || (getNames(asmInstruction.getUse()).contains(register))) {
+                return false;
+            }
+
+            if (getNames(asmInstruction.getDef()).contains(register)) {
+                return true;
+            }
+
+            if ((!asmInstruction.getJumps().isEmpty()) || (asmInstruction.isUnconditionalJump())) {
+                return false;
+            }
+
+            // Instructions of the prologue and the epilogue do not have registers as temporary variables
+            if ((asmInstruction.getUse().isEmpty()) && (asmInstruction.getDef().isEmpty()) && (!asmInstruction.format(mTempMap).isEmpty())) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private String getName(Temp temp) {
+        String name = mTempMap.tempMap(temp);
+        return (name == null) ? temp.toString() : name;
+    }
+
+    private LinkedList<String> getNames(LinkedList<Temp> temps) {
+        LinkedList<String> names = new LinkedList<>();
+        for (Temp temp : temps) {
+            names.add(getName(temp));
+        }
+
+        return names;
+    }
+
+    private LinkedList<Temp> list(Temp temp) {
+        LinkedList<Temp> list = new LinkedList<>();
+        list.add(temp);
+        return list;
+    }
+
+}
@@ -1,10 +1,5 @@
 package bee.lang.ast.types;
 
-import bee.lang.ast.Identifier;
-
-import java.util.HashMap;
-import java.util.Set;
-
 public class Type {
 
     public static final IntType Int = new IntType();
@@ -15,28 +10,6 @@ public class Type {
     public static final VoidType Void = new VoidType();
     public static final NilType Nil = new NilType();
 
-    private static HashMap<String, ClassType> sClassTypes = new HashMap<>();
-
-    public static ClassType Class(Identifier identifier) {
-        return Class(identifier.getName());
-    }
-
-    public static ClassType Class(String className) {
-        return sClassTypes.get(className);
-    }
-
-    public static ClassType defineClassType(Identifier identifier) {
-        if (!sClassTypes.containsKey(identifier.getName())) {
-            sClassTypes.put(identifier.getName(), new ClassType(identifier));
-        }
-
-        return sClassTypes.get(identifier.getName());
-    }
-
-    public static Set<String> getDefinedClassesNames() {
-        return sClassTypes.keySet();
-    }
-
     private Type() {
     }
 
@@ -0,0 +1,84 @@
+package bee.lang.ir;
+
+import bee.lang.ast.Identifier;
+import bee.lang.ast.types.ClassType;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// This class keeps the state of one compilation: types of classes, numbers of temporary variables and labels and tables of named labels and labels for strings.
+// Each compilation has its own context so several compilations can run in one JVM and all the data is freed with the context.
+// Procedures of one compilation are compiled in parallel so all methods can be called from several threads.
+public class CompilationContext {
+
+    private AtomicInteger mCountTemps;
+    private int mCountLabels;
+    private HashMap<String, Label> mLabels;
+    private HashMap<String, Label> mLabelsForStrings;
+    private HashMap<String, ClassType> mClassTypes;
+
+    public CompilationContext() {
+        mCountTemps = new AtomicInteger();
+        mCountLabels = 0;
+        mLabels = new HashMap<>();
+        mLabelsForStrings = new HashMap<>();
+        mClassTypes = new HashMap<>();
+    }
+
+    // Each class has one type so types of classes are compared by references
+    public synchronized ClassType getClassType(String className) {
+        return mClassTypes.get(className);
+    }
+
+    // Classes are defined by their uses in types too so names of classes which are never declared are found later
+    public synchronized ClassType defineClassType(Identifier identifier) {
+        if (!mClassTypes.containsKey(identifier.getName())) {
+            mClassTypes.put(identifier.getName(), new ClassType(identifier));
+        }
+
+        return mClassTypes.get(identifier.getName());
+    }
+
+    public synchronized Set<String> getDefinedClassesNames() {
+        return mClassTypes.keySet();
+    }
+
+    public Temp newTemp() {
+        return new Temp(mCountTemps.getAndIncrement());
+    }
+
+    public synchronized Label newLabel() {
+        return new Label("_L" + (mCountLabels++) + "_");
+    }
+
+    // Labels with the same name are the same label
+    public synchronized Label newLabel(String name) {
+        Label label = mLabels.get(name);
+
+        if (label == null) {
+            label = new Label(name);
+            mLabels.put(name, label);
+        }
+
+        return label;
+    }
+
+    // Equal strings have the same label
+    public synchronized Label newLabelForString(String str) {
+        Label label = mLabelsForStrings.get(str);
+
+        if (label == null) {
+            label = new Label("_str_L" + (mCountLabels++) + "_");
+            mLabelsForStrings.put(str, label);
+            mLabels.put(label.getName(), label);
+        }
+
+        return label;
+    }
+
+    public synchronized boolean isLabelForString(String str) {
+        return mLabelsForStrings.containsKey(str);
+    }
+
+}
@@ -1,13 +1,12 @@
 package bee.lang.ir;
 
+// Temporary variables are created by CompilationContext
 public class Temp {
 
-    private static int sCount = 0;
-
     private int mIndex;
 
-    public Temp() {
-        mIndex = sCount++;
+    Temp(int index) {
+        mIndex = index;
     }
 
     @Override
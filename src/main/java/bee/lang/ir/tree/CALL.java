@@ -7,10 +7,17 @@ public class CALL extends IRExpression {
 
     private IRExpression mFunction;
     private LinkedList<IRExpression> mArguments;
+    // The result of the call is the result of the procedure which makes this call so the called procedure can use its stack frame
+    private boolean mIsTailCall;
 
     public CALL(IRExpression function, LinkedList<IRExpression> arguments) {
+        this(function, arguments, false);
+    }
+
+    public CALL(IRExpression function, LinkedList<IRExpression> arguments, boolean isTailCall) {
         mFunction = function;
         mArguments = arguments;
+        mIsTailCall = isTailCall;
     }
 
     public IRExpression getFunction() {
@@ -21,6 +28,10 @@ public class CALL extends IRExpression {
         return mArguments;
     }
 
+    public boolean isTailCall() {
+        return mIsTailCall;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -47,7 +58,7 @@ public class CALL extends IRExpression {
 
     @Override
     public IRExpression build(LinkedList<IRExpression> kids) {
-        return new CALL(kids.removeFirst(), kids);
+        return new CALL(kids.removeFirst(), kids, mIsTailCall);
     }
 
 }
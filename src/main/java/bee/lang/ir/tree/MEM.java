@@ -5,15 +5,26 @@ import java.util.LinkedList;
 public class MEM extends IRExpression {
 
     private IRExpression mExpression;
+    // The value at this address is never changed after it is written once (sizes of arrays, classes of objects, tables of virtual methods)
+    private boolean mIsReadOnly;
 
     public MEM(IRExpression expression) {
+        this(expression, false);
+    }
+
+    public MEM(IRExpression expression, boolean isReadOnly) {
         mExpression = expression;
+        mIsReadOnly = isReadOnly;
     }
 
     public IRExpression getExpression() {
         return mExpression;
     }
 
+    public boolean isReadOnly() {
+        return mIsReadOnly;
+    }
+
     @Override
     public String toString() {
         return "MEM(" + mExpression.toString() + ")";
@@ -28,7 +39,7 @@ public class MEM extends IRExpression {
 
     @Override
     public IRExpression build(LinkedList<IRExpression> kids) {
-        return new MEM(kids.getFirst());
+        return new MEM(kids.getFirst(), mIsReadOnly);
     }
 
 }
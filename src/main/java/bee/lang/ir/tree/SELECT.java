@@ -0,0 +1,63 @@
+package bee.lang.ir.tree;
+
+import java.util.LinkedList;
+
+// The value of the expression 'then' if the comparison is true, otherwise the value of the expression 'else'.
+// All expressions are evaluated so 'then' and 'else' must not have side effects and must not fail.
+public class SELECT extends IRExpression {
+
+    private TypeRelOp mTypeRelOp;
+    private IRExpression mLeftExpression;
+    private IRExpression mRightExpression;
+    private IRExpression mThenExpression;
+    private IRExpression mElseExpression;
+
+    public SELECT(TypeRelOp typeRelOp, IRExpression leftExpression, IRExpression rightExpression, IRExpression thenExpression, IRExpression elseExpression) {
+        mTypeRelOp = typeRelOp;
+        mLeftExpression = leftExpression;
+        mRightExpression = rightExpression;
+        mThenExpression = thenExpression;
+        mElseExpression = elseExpression;
+    }
+
+    public TypeRelOp getTypeRelOp() {
+        return mTypeRelOp;
+    }
+
+    public IRExpression getLeftExpression() {
+        return mLeftExpression;
+    }
+
+    public IRExpression getRightExpression() {
+        return mRightExpression;
+    }
+
+    public IRExpression getThenExpression() {
+        return mThenExpression;
+    }
+
+    public IRExpression getElseExpression() {
+        return mElseExpression;
+    }
+
+    @Override
+    public String toString() {
+        return "SELECT(" + mTypeRelOp + ", " + mLeftExpression + ", " + mRightExpression + ", " + mThenExpression + ", " + mElseExpression + ")";
+    }
+
+    @Override
+    public LinkedList<IRExpression> kids() {
+        LinkedList<IRExpression> kids = new LinkedList<>();
+        kids.add(mLeftExpression);
+        kids.add(mRightExpression);
+        kids.add(mThenExpression);
+        kids.add(mElseExpression);
+        return kids;
+    }
+
+    @Override
+    public IRExpression build(LinkedList<IRExpression> kids) {
+        return new SELECT(mTypeRelOp, kids.get(0), kids.get(1), kids.get(2), kids.get(3));
+    }
+
+}
@@ -7,7 +7,10 @@ public enum TypeRelOp {
     LT("<"),
     GT(">"),
     LE("<="),
-    GE(">=");
+    GE(">="),
+    // Unsigned comparisons
+    ULT("<u"),
+    UGE(">=u");
 
     private String mName;
 
@@ -40,6 +43,39 @@ public enum TypeRelOp {
             return LT;
         }
 
+        if (this == ULT) {
+            return UGE;
+        }
+
+        if (this == UGE) {
+            return ULT;
+        }
+
+        return null;
+    }
+
+    // Returns the operator for swapped operands (a < b is b > a) or null for unsigned comparisons
+    public TypeRelOp reverse() {
+        if ((this == EQ) || (this == NE)) {
+            return this;
+        }
+
+        if (this == LT) {
+            return GT;
+        }
+
+        if (this == GT) {
+            return LT;
+        }
+
+        if (this == LE) {
+            return GE;
+        }
+
+        if (this == GE) {
+            return LE;
+        }
+
         return null;
     }
 
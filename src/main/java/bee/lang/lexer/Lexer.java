@@ -194,6 +194,9 @@ public class Lexer {
                 if (isCurrentChar('=')) {
                     return createToken(TokenType.EQ);
                 } else {
+                    // The next character belongs to the next token
+                    moveToPreviousToken();
+
                     return createToken(TokenType.ASSIGN);
                 }
             } else if (isCurrentChar('<')) {
@@ -202,6 +205,9 @@ public class Lexer {
                 if (isCurrentChar('=')) {
                     return createToken(TokenType.LE);
                 } else {
+                    // The next character belongs to the next token
+                    moveToPreviousToken();
+
                     return createToken(TokenType.LT);
                 }
             } else if (isCurrentChar('>')) {
@@ -210,6 +216,9 @@ public class Lexer {
                 if (isCurrentChar('=')) {
                     return createToken(TokenType.GE);
                 } else {
+                    // The next character belongs to the next token
+                    moveToPreviousToken();
+
                     return createToken(TokenType.GT);
                 }
             } else if (isCurrentChar('!')) {
@@ -218,6 +227,9 @@ public class Lexer {
                 if (isCurrentChar('=')) {
                     return createToken(TokenType.NOT_EQ);
                 } else {
+                    // The next character belongs to the next token
+                    moveToPreviousToken();
+
                     return createToken(TokenType.NOT);
                 }
             } else if (isCurrentChar('&')) {
@@ -227,6 +239,8 @@ public class Lexer {
                     return createToken(TokenType.AND);
                 }
             } else if (isCurrentChar('|')) {
+                moveToNextChar();
+
                 if (isCurrentChar('|')) {
                     return createToken(TokenType.OR);
                 }
@@ -49,7 +49,7 @@ ContinueStatement -> 'continue' ';'
 
 ReturnStatement -> 'return' [ ConditionalExpression ] ';'
 
-AssignmentExpression -> UnaryExpression [ '=' ConditionalExpression ]
+AssignmentExpression -> ConditionalExpression [ '=' ConditionalExpression ]
 
 ConditionalExpression -> LogicalOrExpression [ '?' ConditionalExpression ':' ConditionalExpression ]
 
@@ -85,6 +85,7 @@ import bee.lang.ast.types.*;
 import bee.lang.exceptions.ArrayDimensionException;
 import bee.lang.exceptions.BaseParserException;
 import bee.lang.exceptions.UnexpectedTokenException;
+import bee.lang.ir.CompilationContext;
 import bee.lang.lexer.Lexer;
 import bee.lang.lexer.Token;
 import bee.lang.lexer.TokenType;
@@ -99,11 +100,13 @@ import java.util.List;
 
 public class Parser {
 
+    private CompilationContext mContext;
     private Lexer mLexer;
     private Token mToken;
     private Token mPreviousToken;
 
-    public Parser(Lexer lexer) {
+    public Parser(CompilationContext context, Lexer lexer) {
+        mContext = context;
         mLexer = lexer;
     }
 
@@ -589,7 +592,7 @@ public class Parser {
     }
 
     private Expression assignmentExpression() throws BaseParserException {
-        Expression expression = unaryExpression();
+        Expression expression = conditionalExpression();
 
         if (isCurrentToken(TokenType.ASSIGN)) {
             match(TokenType.ASSIGN);
@@ -903,7 +906,7 @@ public class Parser {
             type = Type.Bool;
         } else {
             match(TokenType.IDENTIFIER);
-            type = Type.defineClassType(new Identifier(getPreviousToken()));
+            type = mContext.defineClassType(new Identifier(getPreviousToken()));
         }
 
         return type;
@@ -3,8 +3,8 @@ package bee.lang.semanalysis;
 import bee.lang.ast.*;
 import bee.lang.ast.types.ClassType;
 import bee.lang.ast.types.MethodType;
-import bee.lang.ast.types.Type;
 import bee.lang.exceptions.SymbolTableException;
+import bee.lang.ir.CompilationContext;
 import bee.lang.lexer.Token;
 import bee.lang.symtable.*;
 import bee.lang.visitors.BaseVisitor;
@@ -17,6 +17,7 @@ import java.util.*;
 // Method scope and local (block) scope contain names of local variables.
 public class NewSymbolTableVisitor implements BaseVisitor {
 
+    private CompilationContext mContext;
     private BaseScope mCurrentScope;
     private ClassSymbol mCurrentClassSymbol;
     private MethodSymbol mCurrentMethodSymbol;
@@ -25,7 +26,8 @@ public class NewSymbolTableVisitor implements BaseVisitor {
     private boolean isHeaderFunction;
     private boolean hasErrors;
 
-    public NewSymbolTableVisitor() {
+    public NewSymbolTableVisitor(CompilationContext context) {
+        mContext = context;
         mCurrentScope = new GlobalScope(null);
         mSortedListOfClasses = new LinkedList<>();
         hasErrors = false;
@@ -158,7 +160,7 @@ public class NewSymbolTableVisitor implements BaseVisitor {
                 baseScope = (ClassSymbol) mCurrentScope.getSymbolInCurrentScope(statement.getBaseClassIdentifier().getName());
             }
 
-            ClassSymbol newClassSymbol = new ClassSymbol(statement.getClassIdentifier(), statement.getBaseClassIdentifier(), baseScope);
+            ClassSymbol newClassSymbol = new ClassSymbol(statement.getClassIdentifier(), statement.getBaseClassIdentifier(), baseScope, mContext.getClassType(statement.getClassIdentifier().getName()));
 
             mCurrentScope.put(newClassSymbol);
 
@@ -194,7 +196,7 @@ public class NewSymbolTableVisitor implements BaseVisitor {
             methodType.addFormalArgumentType(variableDefinition.getType());
         }
 
-        methodType.addReturnType(Type.Class(((ClassSymbol) mCurrentScope).getIdentifier()));
+        methodType.addReturnType(mContext.getClassType(((ClassSymbol) mCurrentScope).getIdentifier().getName()));
 
         newMethodSymbol.setType(methodType);
 
@@ -450,10 +452,10 @@ public class NewSymbolTableVisitor implements BaseVisitor {
 
             allClasses.put(classDefinition.getClassIdentifier().getName(), classDefinition);
 
-            ClassType classType = Type.Class(classDefinition.getClassIdentifier());
+            ClassType classType = mContext.getClassType(classDefinition.getClassIdentifier().getName());
 
             if (classType == null) {
-                classType = Type.defineClassType(classDefinition.getClassIdentifier());
+                classType = mContext.defineClassType(classDefinition.getClassIdentifier());
             }
 
             String className = classDefinition.getClassIdentifier().getName();
@@ -465,10 +467,10 @@ public class NewSymbolTableVisitor implements BaseVisitor {
             }
 
             if (classDefinition.getBaseClassIdentifier() != null) {
-                ClassType baseClassType = Type.Class(classDefinition.getBaseClassIdentifier());
+                ClassType baseClassType = mContext.getClassType(classDefinition.getBaseClassIdentifier().getName());
 
                 if (baseClassType == null) {
-                    baseClassType = Type.defineClassType(classDefinition.getBaseClassIdentifier());
+                    baseClassType = mContext.defineClassType(classDefinition.getBaseClassIdentifier());
                 }
 
                 String baseClassName = classDefinition.getBaseClassIdentifier().getName();
@@ -490,9 +492,9 @@ public class NewSymbolTableVisitor implements BaseVisitor {
             }
         }
 
-        for (String name : Type.getDefinedClassesNames()) {
+        for (String name : mContext.getDefinedClassesNames()) {
             if (!allClasses.containsKey(name)) {
-                printErrorMessage(Type.Class(name).getIdentifier().getToken(), "Class '" + name + "' is not found.");
+                printErrorMessage(mContext.getClassType(name).getIdentifier().getToken(), "Class '" + name + "' is not found.");
                 return;
             }
         }
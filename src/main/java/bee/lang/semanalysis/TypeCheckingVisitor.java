@@ -864,7 +864,7 @@ public class TypeCheckingVisitor implements TypeVisitor {
 
     @Override
     public BaseType visit(Not expression) {
-        BaseType type = expression.visit(this);
+        BaseType type = expression.getExpression().visit(this);
 
         if (type.isBool()) {
             return Type.Bool;
@@ -3,7 +3,7 @@ package bee.lang.symtable;
 import bee.lang.ast.Identifier;
 import bee.lang.ast.types.BaseType;
 import bee.lang.ast.types.ClassClassType;
-import bee.lang.ast.types.Type;
+import bee.lang.ast.types.ClassType;
 
 public class ClassSymbol extends BaseScope implements Symbol {
 
@@ -12,11 +12,11 @@ public class ClassSymbol extends BaseScope implements Symbol {
     private BaseScope mScope;
     private BaseType mClassClassType;
 
-    public ClassSymbol(Identifier identifier, Identifier baseClassIdentifier, BaseScope baseScope) {
+    public ClassSymbol(Identifier identifier, Identifier baseClassIdentifier, BaseScope baseScope, ClassType classType) {
         super(baseScope, identifier.getName());
         mIdentifier = identifier;
         mBaseClassIdentifier = baseClassIdentifier;
-        mClassClassType = new ClassClassType(Type.Class(identifier.getName()));
+        mClassClassType = new ClassClassType(classType);
     }
 
     public Identifier getIdentifier() {
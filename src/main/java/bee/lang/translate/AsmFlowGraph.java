@@ -7,6 +7,8 @@ import bee.lang.assembly.TempMap;
 import bee.lang.ir.Label;
 import bee.lang.ir.Temp;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -14,35 +16,38 @@ import java.util.LinkedList;
 // This class is used to create a control-flow graph. This graph will be used for liveness analysis. Each node of the graph is an instruction. Each edge of the graph is path from one instruction to other instruction.
 public class AsmFlowGraph extends FlowGraph {
 
-    private HashMap<Node, AsmInstruction> mNodeInfo;
+    // Instructions by indexes of nodes
+    private ArrayList<AsmInstruction> mNodeInfo;
     private HashMap<AsmInstruction, Node> mReverseNodeInfo;
     private HashMap<Label, Node> mNodeLabels;
+    private int[] mLoopDepth;
     private LinkedList<AsmInstruction> mAsmInstructions;
 
     public AsmFlowGraph(LinkedList<AsmInstruction> asmInstructions) {
         mAsmInstructions = asmInstructions;
 
-        mNodeInfo = new HashMap<>();
+        mNodeInfo = new ArrayList<>();
         mReverseNodeInfo = new HashMap<>();
         mNodeLabels = new HashMap<>();
 
-        // Create only nodes
-        AsmLABEL prevAsmLabel = null;
+        // Create only nodes. Several labels can mark the same instruction.
+        LinkedList<Label> prevAsmLabels = new LinkedList<>();
         Iterator<AsmInstruction> iterator = asmInstructions.iterator();
         while (iterator.hasNext()) {
             AsmInstruction asmInstruction = iterator.next();
 
             if (asmInstruction instanceof AsmLABEL) {
-                prevAsmLabel = (AsmLABEL) asmInstruction;
+                prevAsmLabels.add(((AsmLABEL) asmInstruction).getLabel());
             } else {
                 Node node = newNode();
-                mNodeInfo.put(node, asmInstruction);
+                mNodeInfo.add(asmInstruction);
                 mReverseNodeInfo.put(asmInstruction, node);
 
-                if (prevAsmLabel != null) {
-                    mNodeLabels.put(prevAsmLabel.getLabel(), node);
-                    prevAsmLabel = null;
+                for (Label label : prevAsmLabels) {
+                    mNodeLabels.put(label, node);
                 }
+
+                prevAsmLabels.clear();
             }
         }
 
@@ -56,27 +61,93 @@ public class AsmFlowGraph extends FlowGraph {
                 continue;
             }
 
-            if (prevAsmInstruction != null) {
+            if ((prevAsmInstruction != null) && (!prevAsmInstruction.isUnconditionalJump())) {
                 addEdge(mReverseNodeInfo.get(prevAsmInstruction), mReverseNodeInfo.get(asmInstruction));
             }
 
+            // The label of the end of the procedure is added with the epilogue so a jump there goes to the last instruction
             LinkedList<Label> jumps = asmInstruction.getJumps();
             if (jumps != null) {
                 Iterator<Label> jumpsIterator = jumps.iterator();
                 while (jumpsIterator.hasNext()) {
                     Node node = mNodeLabels.get(jumpsIterator.next());
-                    if (node != null) {
-                        addEdge(mReverseNodeInfo.get(asmInstruction), node);
-                    }
+                    addEdge(mReverseNodeInfo.get(asmInstruction), (node != null) ? node : node(countNodes() - 1));
                 }
             }
 
             prevAsmInstruction = asmInstruction;
         }
+
+        computeLoopDepth();
+    }
+
+    // A jump to a previous instruction is a back edge of a loop if the jump is reachable from its target without leaving the instructions between them.
+    // All instructions between the target of the jump and the jump belong to the loop. A jump back from a block which is placed after the loop
+    // (e.g. a block which reports an error) does not create a loop. The loop depth of an instruction is the count of loops which contain this instruction.
+    private void computeLoopDepth() {
+        int countNodes = countNodes();
+
+        // The end of each loop is kept in the position of the first instruction of the loop.
+        int[] loopEnds = new int[countNodes];
+        Arrays.fill(loopEnds, -1);
+
+        int[] visits = new int[countNodes];
+        int countVisits = 0;
+
+        for (int i = 0; i < countNodes; i++) {
+            for (Label label : mNodeInfo.get(i).getJumps()) {
+                Node target = mNodeLabels.get(label);
+                if ((target != null) && (target.getIndex() <= i) && (loopEnds[target.getIndex()] < i) && (isReachable(target.getIndex(), i, visits, ++countVisits))) {
+                    loopEnds[target.getIndex()] = i;
+                }
+            }
+        }
+
+        int[] countLoops = new int[countNodes + 1];
+        for (int i = 0; i < countNodes; i++) {
+            if (loopEnds[i] != -1) {
+                countLoops[i]++;
+                countLoops[loopEnds[i] + 1]--;
+            }
+        }
+
+        mLoopDepth = new int[countNodes];
+
+        int depth = 0;
+        for (int i = 0; i < countNodes; i++) {
+            depth += countLoops[i];
+            mLoopDepth[i] = depth;
+        }
+    }
+
+    // Checks if the instruction 'to' is reachable from the instruction 'from' through instructions between them
+    private boolean isReachable(int from, int to, int[] visits, int visit) {
+        LinkedList<Integer> worklist = new LinkedList<>();
+        worklist.add(from);
+        visits[from] = visit;
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.removeFirst();
+
+            if (index == to) {
+                return true;
+            }
+
+            for (Node successor : node(index).succ()) {
+                int successorIndex = successor.getIndex();
+
+                if ((successorIndex >= from) && (successorIndex <= to) && (visits[successorIndex] != visit)) {
+                    visits[successorIndex] = visit;
+                    worklist.add(successorIndex);
+                }
+            }
+        }
+
+        return false;
     }
 
     public AsmInstruction asmInstruction(Node node) {
-        return mNodeInfo.get(node);
+        return mNodeInfo.get(node.getIndex());
     }
 
     @Override
@@ -94,6 +165,11 @@ public class AsmFlowGraph extends FlowGraph {
         return asmInstruction(node) instanceof AsmMOVE;
     }
 
+    @Override
+    public int loopDepth(Node node) {
+        return mLoopDepth[node.getIndex()];
+    }
+
     public void print(TempMap tempMap) {
         StringBuilder sb = new StringBuilder();
 
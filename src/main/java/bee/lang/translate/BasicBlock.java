@@ -1,6 +1,7 @@
 package bee.lang.translate;
 
-import bee.lang.ir.tree.IRStatement;
+import bee.lang.ir.Label;
+import bee.lang.ir.tree.*;
 
 import java.util.LinkedList;
 
@@ -20,6 +21,35 @@ public class BasicBlock {
         return mListStatements;
     }
 
+    // Blocks which are created by ControlFlowAnalyzing start with a label
+    public Label getLabel() {
+        return ((LABEL) mListStatements.getFirst()).getLabel();
+    }
+
+    // Labels where control goes after the block
+    public LinkedList<Label> getTargets() {
+        LinkedList<Label> targets = new LinkedList<>();
+        IRStatement statement = mListStatements.getLast();
+
+        if (statement instanceof CJUMP) {
+            targets.add(((CJUMP) statement).getLblTrue());
+            targets.add(((CJUMP) statement).getLblFalse());
+        } else if (statement instanceof JUMP) {
+            targets.addAll(((JUMP) statement).getTargets());
+        }
+
+        return targets;
+    }
+
+    // Only the last statement of a block can jump. Otherwise getTargets does not see targets of the other jumps and a reachable block looks unreachable.
+    public void checkJumps() {
+        for (IRStatement statement : mListStatements) {
+            if (((statement instanceof CJUMP) || (statement instanceof JUMP)) && (statement != mListStatements.getLast())) {
+                throw new IllegalStateException("The basic block has a jump before its last statement: " + this);
+            }
+        }
+    }
+
     public boolean isEmpty() {
         return mListStatements.isEmpty();
     }
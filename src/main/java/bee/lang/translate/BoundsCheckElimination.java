@@ -0,0 +1,326 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.function.Predicate;
+
+// This class is used to remove checks of array bounds which always pass. Each access to an array is checked by CJUMP(ULT, TEMP(i), MEM(TEMP(a)), t, f).
+// Facts about temporary variables are collected by forward data-flow analysis over basic blocks:
+// 1. i >= 0 (i is set to a non-negative constant or it is incremented by 1 while it is less than the size of some array).
+// 2. n == size(a) (n is loaded from the first word of a).
+// 3. 0 <= i < size(a) (i is a checked index of a or a loop condition like 'i < array_len(a)' is true and i >= 0).
+// A fact holds at the beginning of a block only if it holds at the end of all its predecessors. A definition of a temporary variable removes all facts about it.
+// A check is replaced by a jump if 0 <= i < size(a) holds before it. The size of an array is never changed and temporary variables are not changed by calls.
+public class BoundsCheckElimination {
+
+    private static final int NON_NEGATIVE = 0;
+    private static final int SIZE = 1;
+    private static final int INDEX = 2;
+
+    private LinkedList<BasicBlock> mBasicBlocks;
+    private HashMap<Label, Integer> mBlockIndexes;
+    // Facts at the beginning of blocks. The value null means that the block has not been reached yet.
+    private ArrayList<HashSet<Fact>> mFactsIn;
+
+    public BoundsCheckElimination(LinkedList<BasicBlock> basicBlocks) {
+        mBasicBlocks = basicBlocks;
+    }
+
+    public void optimize() {
+        int countBlocks = mBasicBlocks.size();
+
+        if (countBlocks == 0) {
+            return;
+        }
+
+        BasicBlock[] blocks = mBasicBlocks.toArray(new BasicBlock[0]);
+
+        // Each basic block starts with a label
+        mBlockIndexes = new HashMap<>();
+        for (int i = 0; i < countBlocks; i++) {
+            mBlockIndexes.put(((LABEL) blocks[i].getStatements().getFirst()).getLabel(), i);
+        }
+
+        mFactsIn = new ArrayList<>();
+        for (int i = 0; i < countBlocks; i++) {
+            mFactsIn.add(null);
+        }
+        mFactsIn.set(0, new HashSet<>());
+
+        LinkedList<Integer> worklist = new LinkedList<>();
+        boolean[] isInWorklist = new boolean[countBlocks];
+        worklist.add(0);
+        isInWorklist[0] = true;
+
+        while (!worklist.isEmpty()) {
+            int block = worklist.removeFirst();
+            isInWorklist[block] = false;
+
+            HashSet<Fact> facts = new HashSet<>(mFactsIn.get(block));
+            LinkedList<IRStatement> statements = blocks[block].getStatements();
+
+            for (IRStatement statement : statements) {
+                if (statement != statements.getLast()) {
+                    transfer(statement, facts);
+                }
+            }
+
+            IRStatement last = statements.getLast();
+
+            if (last instanceof CJUMP) {
+                CJUMP cjump = (CJUMP) last;
+
+                if (merge(cjump.getLblTrue(), condition(cjump.getTypeRelOp(), cjump.getLeftExpression(), cjump.getRightExpression(), facts))) {
+                    addToWorklist(cjump.getLblTrue(), worklist, isInWorklist);
+                }
+
+                if (merge(cjump.getLblFalse(), condition(cjump.getTypeRelOp().negate(), cjump.getLeftExpression(), cjump.getRightExpression(), facts))) {
+                    addToWorklist(cjump.getLblFalse(), worklist, isInWorklist);
+                }
+            } else if (last instanceof JUMP) {
+                for (Label label : ((JUMP) last).getTargets()) {
+                    if (merge(label, facts)) {
+                        addToWorklist(label, worklist, isInWorklist);
+                    }
+                }
+            }
+        }
+
+        // Replace checks which always pass
+        for (int i = 0; i < countBlocks; i++) {
+            if (mFactsIn.get(i) == null) {
+                continue;
+            }
+
+            HashSet<Fact> facts = new HashSet<>(mFactsIn.get(i));
+            ListIterator<IRStatement> iterator = blocks[i].getStatements().listIterator();
+
+            while (iterator.hasNext()) {
+                IRStatement statement = iterator.next();
+
+                if ((statement instanceof CJUMP) && (isCheckPassed((CJUMP) statement, facts))) {
+                    iterator.set(new JUMP(((CJUMP) statement).getLblTrue()));
+                } else {
+                    transfer(statement, facts);
+                }
+            }
+        }
+    }
+
+    private void addToWorklist(Label label, LinkedList<Integer> worklist, boolean[] isInWorklist) {
+        int block = mBlockIndexes.get(label);
+
+        if (!isInWorklist[block]) {
+            worklist.add(block);
+            isInWorklist[block] = true;
+        }
+    }
+
+    // Facts at the beginning of the block are facts which hold for all predecessors. Returns true if facts are changed.
+    private boolean merge(Label label, HashSet<Fact> facts) {
+        Integer block = mBlockIndexes.get(label);
+
+        if (block == null) {
+            // The end of the procedure
+            return false;
+        }
+
+        if (mFactsIn.get(block) == null) {
+            mFactsIn.set(block, new HashSet<>(facts));
+            return true;
+        }
+
+        return mFactsIn.get(block).retainAll(facts);
+    }
+
+    // CJUMP(ULT, TEMP(i), MEM(TEMP(a)), t, f) where 0 <= i < size(a)
+    private boolean isCheckPassed(CJUMP cjump, HashSet<Fact> facts) {
+        if ((cjump.getTypeRelOp() != TypeRelOp.ULT) || (!(cjump.getLeftExpression() instanceof TEMP)) || (!(cjump.getRightExpression() instanceof MEM))) {
+            return false;
+        }
+
+        Temp array = getTemp(((MEM) cjump.getRightExpression()).getExpression());
+
+        return (array != null) && (facts.contains(new Fact(INDEX, ((TEMP) cjump.getLeftExpression()).getTemp(), array)));
+    }
+
+    private void transfer(IRStatement statement, HashSet<Fact> facts) {
+        if ((!(statement instanceof MOVE)) || (!(((MOVE) statement).getDst() instanceof TEMP))) {
+            return;
+        }
+
+        Temp dst = ((TEMP) ((MOVE) statement).getDst()).getTemp();
+        IRExpression src = ((MOVE) statement).getSrc();
+
+        // New facts are found before the old value of the temporary variable is forgotten
+        LinkedList<Fact> newFacts = new LinkedList<>();
+
+        if (src instanceof CONST) {
+            if (((CONST) src).getValue() >= 0) {
+                newFacts.add(new Fact(NON_NEGATIVE, dst, null));
+            }
+        } else if (src instanceof TEMP) {
+            // A copy has all facts of the original
+            Temp temp = ((TEMP) src).getTemp();
+
+            for (Fact fact : facts) {
+                // Facts which also refer to the old value of the copy are not true for the new value
+                if ((fact.mFirst == dst) || (fact.mSecond == dst)) {
+                    continue;
+                }
+
+                if (fact.mFirst == temp) {
+                    newFacts.add(new Fact(fact.mKind, dst, fact.mSecond));
+                }
+
+                if (fact.mSecond == temp) {
+                    newFacts.add(new Fact(fact.mKind, fact.mFirst, dst));
+                }
+            }
+        } else if (src instanceof MEM) {
+            Temp array = getTemp(((MEM) src).getExpression());
+
+            if (array != null) {
+                newFacts.add(new Fact(SIZE, dst, array));
+            }
+        } else if ((src instanceof BINOP) && (((BINOP) src).getTypeBinOp() == TypeBinOp.PLUS) &&
+                (((BINOP) src).getLeftExpression() instanceof TEMP) && (((BINOP) src).getRightExpression() instanceof CONST)) {
+            // i + c where 0 <= c <= 1 is not negative if 0 <= i < size(a) because the size is not bigger than the maximum integer
+            Temp temp = ((TEMP) ((BINOP) src).getLeftExpression()).getTemp();
+            int value = ((CONST) ((BINOP) src).getRightExpression()).getValue();
+
+            if ((value >= 0) && (value <= 1) && (hasIndexFact(temp, facts))) {
+                newFacts.add(new Fact(NON_NEGATIVE, dst, null));
+            }
+        }
+
+        kill(dst, facts);
+
+        facts.addAll(newFacts);
+    }
+
+    // Facts which hold if the condition is true
+    private HashSet<Fact> condition(TypeRelOp typeRelOp, IRExpression leftExpression, IRExpression rightExpression, HashSet<Fact> facts) {
+        HashSet<Fact> result = new HashSet<>(facts);
+
+        // x < y
+        IRExpression lower;
+        IRExpression upper;
+
+        switch (typeRelOp) {
+            case LT:
+            case ULT: {
+                lower = leftExpression;
+                upper = rightExpression;
+            } break;
+
+            case GT: {
+                lower = rightExpression;
+                upper = leftExpression;
+            } break;
+
+            case GE: {
+                // x >= 0
+                if ((leftExpression instanceof TEMP) && (rightExpression instanceof CONST) && (((CONST) rightExpression).getValue() >= 0)) {
+                    result.add(new Fact(NON_NEGATIVE, ((TEMP) leftExpression).getTemp(), null));
+                }
+
+                return result;
+            }
+
+            default:
+                return result;
+        }
+
+        if (!(lower instanceof TEMP)) {
+            return result;
+        }
+
+        Temp index = ((TEMP) lower).getTemp();
+
+        // The unsigned comparison with a size is true only for non-negative values
+        if ((typeRelOp != TypeRelOp.ULT) && (!facts.contains(new Fact(NON_NEGATIVE, index, null)))) {
+            return result;
+        }
+
+        if (upper instanceof MEM) {
+            Temp array = getTemp(((MEM) upper).getExpression());
+
+            if (array != null) {
+                result.add(new Fact(INDEX, index, array));
+            }
+        } else if (upper instanceof TEMP) {
+            Temp size = ((TEMP) upper).getTemp();
+
+            for (Fact fact : facts) {
+                if ((fact.mKind == SIZE) && (fact.mFirst == size)) {
+                    result.add(new Fact(INDEX, index, fact.mSecond));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private boolean hasIndexFact(Temp temp, HashSet<Fact> facts) {
+        for (Fact fact : facts) {
+            if ((fact.mKind == INDEX) && (fact.mFirst == temp)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void kill(Temp temp, HashSet<Fact> facts) {
+        facts.removeIf(new Predicate<Fact>() {
+            @Override
+            public boolean test(Fact fact) {
+                return (fact.mFirst == temp) || (fact.mSecond == temp);
+            }
+        });
+    }
+
+    // The array must be in a temporary variable. Its size is at the offset 0.
+    private Temp getTemp(IRExpression expression) {
+        return (expression instanceof TEMP) ? ((TEMP) expression).getTemp() : null;
+    }
+
+    private static class Fact {
+
+        private int mKind;
+        private Temp mFirst;
+        private Temp mSecond;
+
+        public Fact(int kind, Temp first, Temp second) {
+            mKind = kind;
+            mFirst = first;
+            mSecond = second;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Fact)) {
+                return false;
+            }
+
+            Fact fact = (Fact) object;
+
+            return (mKind == fact.mKind) && (mFirst == fact.mFirst) && (mSecond == fact.mSecond);
+        }
+
+        @Override
+        public int hashCode() {
+            return (mKind * 31 + System.identityHashCode(mFirst)) * 31 + System.identityHashCode(mSecond);
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package bee.lang.translate;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+// This class is used to find calls of virtual methods which always call the same method (class hierarchy analysis). The whole program is known
+// so a call of a method through an object of a class can call only methods from the same position of virtual tables of this class and its subclasses.
+// If all these virtual tables have the same method in this position then the call can use the name of the method instead of loading it from the table.
+// A virtual table of a subclass is created from the virtual table of its base class so the list of previous tables gives all base classes.
+public class ClassHierarchyAnalysis {
+
+    private HashMap<String, EntityLayout> mMethodLayouts;
+    // Methods of virtual tables by their positions
+    private HashMap<String, String[]> mVirtualTables;
+    // Classes and their subclasses (the class itself is included)
+    private HashMap<String, LinkedList<String>> mSubclasses;
+
+    public ClassHierarchyAnalysis(HashMap<String, EntityLayout> methodLayouts) {
+        mMethodLayouts = methodLayouts;
+        mVirtualTables = new HashMap<>();
+        mSubclasses = new HashMap<>();
+
+        HashMap<EntityLayout, String> classNames = new HashMap<>();
+
+        for (String className : methodLayouts.keySet()) {
+            classNames.put(methodLayouts.get(className), className);
+            mSubclasses.put(className, new LinkedList<>());
+        }
+
+        for (String className : methodLayouts.keySet()) {
+            EntityLayout entityLayout = methodLayouts.get(className);
+
+            while (entityLayout != null) {
+                String baseClassName = classNames.get(entityLayout);
+
+                if (baseClassName != null) {
+                    mSubclasses.get(baseClassName).add(className);
+                }
+
+                entityLayout = entityLayout.getPrevious();
+            }
+        }
+    }
+
+    // Returns the method which is called through the position of the virtual table of the class or null if subclasses have different methods there
+    public String getMethod(String className, int position) {
+        LinkedList<String> subclasses = mSubclasses.get(className);
+
+        if ((subclasses == null) || (position < 0)) {
+            return null;
+        }
+
+        String method = null;
+
+        for (String subclass : subclasses) {
+            String[] virtualTable = getVirtualTable(subclass);
+
+            if ((position >= virtualTable.length) || (virtualTable[position] == null)) {
+                return null;
+            }
+
+            if (method == null) {
+                method = virtualTable[position];
+            } else if (!method.equals(virtualTable[position])) {
+                return null;
+            }
+        }
+
+        return method;
+    }
+
+    // Methods of a class by their positions. A method of a subclass is used instead of the method of a base class in the same position.
+    private String[] getVirtualTable(String className) {
+        String[] virtualTable = mVirtualTables.get(className);
+
+        if (virtualTable == null) {
+            EntityLayout entityLayout = mMethodLayouts.get(className);
+            virtualTable = new String[entityLayout.getCountItems()];
+
+            while (entityLayout != null) {
+                for (String methodName : entityLayout.getKeys()) {
+                    if (virtualTable[entityLayout.get(methodName)] == null) {
+                        virtualTable[entityLayout.get(methodName)] = methodName;
+                    }
+                }
+
+                entityLayout = entityLayout.getPrevious();
+            }
+
+            mVirtualTables.put(className, virtualTable);
+        }
+
+        return virtualTable;
+    }
+
+}
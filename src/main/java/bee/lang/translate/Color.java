@@ -1,104 +1,597 @@
 package bee.lang.translate;
 
 import bee.lang.assembly.TempMap;
-import bee.lang.exceptions.SelectColorException;
 import bee.lang.ir.Temp;
 import bee.lang.util.Pair;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 
 // This class is used to set colors for temporary variables.
+// It is an implementation of iterated register coalescing. Temporary variables which are connected by a move instruction and do not
+// interfere with each other are coalesced (Briggs and George tests are used) so they get the same register and the move instruction is not needed.
+// Nodes and moves are identified by indexes. Each of them is in exactly one state and work lists are stacks of indexes. When a node or a move
+// leaves a work list only its state is changed so items of work lists which have another state are skipped.
+// Spilling is optimistic (Briggs): a node of significant degree is removed like other nodes and it is spilled only if its neighbors
+// take all colors in the select phase. Pre-colored nodes which are not allocatable registers (for example $sp or $a0) never take a color
+// from other nodes so they are not counted in degrees.
 public class Color implements TempMap {
 
-    private HashMap<Node, Temp> mColorsForTemps;
+    // States of nodes
+    private static final int INITIAL = 0;
+    private static final int PRECOLORED = 1;
+    private static final int SIMPLIFY = 2;
+    private static final int FREEZE = 3;
+    private static final int SPILL = 4;
+    private static final int SPILLED = 5;
+    private static final int COALESCED = 6;
+    private static final int SELECTED = 7;
+    private static final int COLORED = 8;
+
+    // States of moves
+    private static final int MOVE_WORKLIST = 0;
+    private static final int MOVE_ACTIVE = 1;
+    private static final int MOVE_DONE = 2;
+
     private InterferenceGraph mInterferenceGraph;
     private TempMap mInitTempMap;
+    private HashSet<Temp> mSpillTemps;
+    private int mCountRegisters;
+    private LinkedList<Temp> mSpills;
+
+    private Temp[] mRegisters;
+    private HashMap<Temp, Integer> mRegisterIndexes;
+
+    // Data of nodes
+    private int[] mNodeStates;
+    private int[] mDegree;
+    private int[] mAlias;
+    private double[] mSpillCosts;
+    private Temp[] mColors;
+    private int[][] mMoveList;
+    private int[] mCountMoves;
+
+    // Data of moves
+    private int[] mMoveSrc;
+    private int[] mMoveDst;
+    private int[] mMoveStates;
+
+    // Work lists
+    private IntStack mSimplifyWorklist;
+    private IntStack mFreezeWorklist;
+    private IntStack mSpillWorklist;
+    private IntStack mSelectStack;
+    private IntStack mWorklistMoves;
+    private int mCountSpillNodes;
+    private int mCountFreezeNodes;
 
-    public Color(InterferenceGraph interferenceGraph, TempMap initial, LinkedList<Temp> registers, int countRegisters) throws SelectColorException {
+    // Temporary variables from the set of spill temporary variables are created to load and store spilled ones so they are never spilled again
+    public Color(InterferenceGraph interferenceGraph, TempMap initial, LinkedList<Temp> registers, int countRegisters, HashSet<Temp> spillTemps) {
         mInterferenceGraph = interferenceGraph;
 
         mInitTempMap = initial;
 
-        mColorsForTemps = new HashMap<>();
+        mSpillTemps = spillTemps;
+
+        mCountRegisters = countRegisters;
+
+        mSpills = new LinkedList<>();
+
+        mRegisters = registers.toArray(new Temp[0]);
+        mRegisterIndexes = new HashMap<>();
+        for (int i = 0; i < mRegisters.length; i++) {
+            mRegisterIndexes.put(mRegisters[i], i);
+        }
+
+        int countNodes = interferenceGraph.countNodes();
+
+        mNodeStates = new int[countNodes];
+        mDegree = new int[countNodes];
+        mAlias = new int[countNodes];
+        mSpillCosts = new double[countNodes];
+        mColors = new Temp[countNodes];
+        mMoveList = new int[countNodes][];
+        mCountMoves = new int[countNodes];
+
+        mSimplifyWorklist = new IntStack();
+        mFreezeWorklist = new IntStack();
+        mSpillWorklist = new IntStack();
+        mSelectStack = new IntStack();
+        mWorklistMoves = new IntStack();
+
+        build();
+
+        makeWorklist();
+
+        while (true) {
+            if (!mSimplifyWorklist.isEmpty()) {
+                simplify();
+            } else if (!mWorklistMoves.isEmpty()) {
+                coalesce();
+            } else if (mCountFreezeNodes > 0) {
+                freeze();
+            } else if (mCountSpillNodes > 0) {
+                selectSpill();
+            } else {
+                break;
+            }
+        }
+
+        assignColors();
+
+        for (int node = 0; node < countNodes; node++) {
+            if ((mNodeStates[node] == SPILLED) || ((mNodeStates[node] == COALESCED) && (mNodeStates[getAlias(node)] == SPILLED))) {
+                // All temporary variables which are coalesced with a spilled node must be spilled too
+                mSpills.add(mInterferenceGraph.getTemp(mInterferenceGraph.node(node)));
+            }
+        }
+    }
+
+    private void build() {
+        for (int node = 0; node < mNodeStates.length; node++) {
+            Temp temp = mInterferenceGraph.getTemp(mInterferenceGraph.node(node));
+
+            mMoveList[node] = new int[0];
+            mAlias[node] = node;
+
+            if (mInitTempMap.tempMap(temp) == null) {
+                mNodeStates[node] = INITIAL;
+
+                int spillCost = mInterferenceGraph.spillCost(mInterferenceGraph.node(node));
+                mSpillCosts[node] = ((spillCost == Integer.MAX_VALUE) || (mSpillTemps.contains(temp))) ? Double.POSITIVE_INFINITY : spillCost;
+            } else {
+                mNodeStates[node] = PRECOLORED;
+                mDegree[node] = Integer.MAX_VALUE;
+                mColors[node] = temp;
+            }
+        }
+
+        for (int node = 0; node < mNodeStates.length; node++) {
+            if (isPrecolored(node)) {
+                continue;
+            }
+
+            int[] adjNodes = mInterferenceGraph.adjacent(node);
+            for (int i = 0; i < mInterferenceGraph.degree(node); i++) {
+                if (takesColor(adjNodes[i])) {
+                    mDegree[node]++;
+                }
+            }
+        }
+
+        LinkedList<Pair<Temp, Temp>> moves = mInterferenceGraph.moves();
+
+        mMoveSrc = new int[moves.size()];
+        mMoveDst = new int[moves.size()];
+        mMoveStates = new int[moves.size()];
+
+        int move = 0;
+        for (Pair<Temp, Temp> pair : moves) {
+            int src = mInterferenceGraph.getNode(pair.getFirst()).getIndex();
+            int dst = mInterferenceGraph.getNode(pair.getSecond()).getIndex();
+
+            mMoveSrc[move] = src;
+            mMoveDst[move] = dst;
+
+            if (src == dst) {
+                mMoveStates[move] = MOVE_DONE;
+            } else {
+                mMoveStates[move] = MOVE_WORKLIST;
+                mWorklistMoves.push(move);
+                addMove(src, move);
+                addMove(dst, move);
+            }
+
+            move++;
+        }
+    }
+
+    private void addMove(int node, int move) {
+        mMoveList[node] = Graph.add(mMoveList[node], mCountMoves[node]++, move);
+    }
+
+    private void makeWorklist() {
+        for (int node = 0; node < mNodeStates.length; node++) {
+            if (isPrecolored(node)) {
+                continue;
+            }
+
+            if (mDegree[node] >= mCountRegisters) {
+                setState(node, SPILL);
+            } else if (isMoveRelated(node)) {
+                setState(node, FREEZE);
+            } else {
+                setState(node, SIMPLIFY);
+            }
+        }
+    }
+
+    private void setState(int node, int state) {
+        if (mNodeStates[node] == FREEZE) {
+            mCountFreezeNodes--;
+        } else if (mNodeStates[node] == SPILL) {
+            mCountSpillNodes--;
+        }
+
+        mNodeStates[node] = state;
 
-        LinkedList<Node> availableNodes = new LinkedList<>();
+        switch (state) {
+            case SIMPLIFY:
+                mSimplifyWorklist.push(node);
+                break;
+            case FREEZE:
+                mFreezeWorklist.push(node);
+                mCountFreezeNodes++;
+                break;
+            case SPILL:
+                mSpillWorklist.push(node);
+                mCountSpillNodes++;
+                break;
+            case SELECTED:
+                mSelectStack.push(node);
+                break;
+        }
+    }
+
+    // Removed nodes (selected, coalesced and spilled) are not adjacent to other nodes anymore
+    private boolean isRemoved(int node) {
+        int state = mNodeStates[node];
+        return (state == SELECTED) || (state == COALESCED) || (state == SPILLED);
+    }
+
+    private boolean isPrecolored(int node) {
+        return mNodeStates[node] == PRECOLORED;
+    }
 
-        HashMap<Node, LinkedList<Pair<Node, Node>>> savedEdges = new HashMap<>();
+    // Only allocatable registers and temporary variables can take a color which a neighbor needs
+    private boolean takesColor(int node) {
+        return (!isPrecolored(node)) || (mRegisterIndexes.containsKey(mColors[node]));
+    }
+
+    // Moves which can be coalesced later
+    private boolean isMoveRelated(int node) {
+        int[] moves = mMoveList[node];
+
+        for (int i = 0; i < mCountMoves[node]; i++) {
+            if (mMoveStates[moves[i]] != MOVE_DONE) {
+                return true;
+            }
+        }
 
-        for (Node node : mInterferenceGraph.nodes()) {
-            if (initial.tempMap(mInterferenceGraph.getTemp(node)) == null) {
-                if (node.degree() < countRegisters) {
-                    availableNodes.add(node);
+        return false;
+    }
+
+    private void simplify() {
+        int node = mSimplifyWorklist.pop();
+
+        if (mNodeStates[node] != SIMPLIFY) {
+            return;
+        }
+
+        setState(node, SELECTED);
+
+        int[] adjNodes = mInterferenceGraph.adjacent(node);
+        for (int i = 0; i < mInterferenceGraph.degree(node); i++) {
+            if (!isRemoved(adjNodes[i])) {
+                decrementDegree(adjNodes[i]);
+            }
+        }
+    }
+
+    private void decrementDegree(int node) {
+        if (isPrecolored(node)) {
+            return;
+        }
+
+        int degree = mDegree[node];
+
+        mDegree[node] = degree - 1;
+
+        if (degree == mCountRegisters) {
+            // The node is not significant anymore so moves of this node and its neighbors can be coalesced
+            enableMoves(node);
+
+            int[] adjNodes = mInterferenceGraph.adjacent(node);
+            for (int i = 0; i < mInterferenceGraph.degree(node); i++) {
+                if (!isRemoved(adjNodes[i])) {
+                    enableMoves(adjNodes[i]);
                 }
+            }
 
-                savedEdges.put(node, new LinkedList<>());
+            if (isMoveRelated(node)) {
+                setState(node, FREEZE);
             } else {
-                mColorsForTemps.put(node, mInterferenceGraph.getTemp(node));
+                setState(node, SIMPLIFY);
+            }
+        }
+    }
+
+    private void enableMoves(int node) {
+        int[] moves = mMoveList[node];
+
+        for (int i = 0; i < mCountMoves[node]; i++) {
+            if (mMoveStates[moves[i]] == MOVE_ACTIVE) {
+                mMoveStates[moves[i]] = MOVE_WORKLIST;
+                mWorklistMoves.push(moves[i]);
+            }
+        }
+    }
+
+    private void coalesce() {
+        int move = mWorklistMoves.pop();
+
+        if (mMoveStates[move] != MOVE_WORKLIST) {
+            return;
+        }
+
+        int x = getAlias(mMoveSrc[move]);
+        int y = getAlias(mMoveDst[move]);
+
+        int u;
+        int v;
+
+        if (isPrecolored(y)) {
+            u = y;
+            v = x;
+        } else {
+            u = x;
+            v = y;
+        }
+
+        if (u == v) {
+            mMoveStates[move] = MOVE_DONE;
+            addWorkList(u);
+        } else if ((isPrecolored(v)) || (mInterferenceGraph.interferes(u, v))) {
+            // The move is constrained so it can not be coalesced
+            mMoveStates[move] = MOVE_DONE;
+            addWorkList(u);
+            addWorkList(v);
+        } else if (((isPrecolored(u)) && (isGeorgeTestPassed(u, v))) || ((!isPrecolored(u)) && (isBriggsTestPassed(u, v)))) {
+            mMoveStates[move] = MOVE_DONE;
+            combine(u, v);
+            addWorkList(u);
+        } else {
+            mMoveStates[move] = MOVE_ACTIVE;
+        }
+    }
+
+    private void addWorkList(int node) {
+        if ((!isPrecolored(node)) && (!isMoveRelated(node)) && (mDegree[node] < mCountRegisters)) {
+            setState(node, SIMPLIFY);
+        }
+    }
+
+    // George: the nodes can be coalesced if each neighbor of v already interferes with u or it has insignificant degree.
+    // If u is not an allocatable register then no neighbor of v can get its color so the nodes can be always coalesced.
+    private boolean isGeorgeTestPassed(int u, int v) {
+        if (!takesColor(u)) {
+            return true;
+        }
+
+        int[] adjNodes = mInterferenceGraph.adjacent(v);
+
+        for (int i = 0; i < mInterferenceGraph.degree(v); i++) {
+            int t = adjNodes[i];
+
+            if ((!isRemoved(t)) && (takesColor(t)) && (mDegree[t] >= mCountRegisters) && (!isPrecolored(t)) && (!mInterferenceGraph.interferes(t, u))) {
+                return false;
             }
         }
 
-        // Simplify
-        LinkedList<Node> stack = new LinkedList<>();
+        return true;
+    }
+
+    // Briggs: the nodes can be coalesced if the resulting node has fewer than K neighbors of significant degree.
+    private boolean isBriggsTestPassed(int u, int v) {
+        int count = 0;
 
-        while (!availableNodes.isEmpty()) {
-            Node node = availableNodes.pollFirst();
+        int[] adjNodes = mInterferenceGraph.adjacent(u);
+        for (int i = 0; i < mInterferenceGraph.degree(u); i++) {
+            if ((!isRemoved(adjNodes[i])) && (takesColor(adjNodes[i])) && (mDegree[adjNodes[i]] >= mCountRegisters)) {
+                count++;
+            }
+        }
 
-            for (Node adjNode : node.adj()) {
-                if (node.goesTo(adjNode)) {
-                    mInterferenceGraph.rmEdge(node, adjNode);
-                    savedEdges.get(node).add(new Pair<>(node, adjNode));
-                } else {
-                    mInterferenceGraph.rmEdge(adjNode, node);
-                    savedEdges.get(node).add(new Pair<>(adjNode, node));
+        // Common neighbors are counted only once
+        adjNodes = mInterferenceGraph.adjacent(v);
+        for (int i = 0; i < mInterferenceGraph.degree(v); i++) {
+            if ((!isRemoved(adjNodes[i])) && (takesColor(adjNodes[i])) && (mDegree[adjNodes[i]] >= mCountRegisters) &&
+                    (!mInterferenceGraph.interferes(adjNodes[i], u))) {
+                count++;
+            }
+        }
+
+        return count < mCountRegisters;
+    }
+
+    private int getAlias(int node) {
+        while (mNodeStates[node] == COALESCED) {
+            node = mAlias[node];
+        }
+
+        return node;
+    }
+
+    private void combine(int u, int v) {
+        setState(v, COALESCED);
+
+        mAlias[v] = u;
+
+        for (int i = 0; i < mCountMoves[v]; i++) {
+            addMove(u, mMoveList[v][i]);
+        }
+
+        if (!isPrecolored(u)) {
+            double costU = mSpillCosts[u];
+            double costV = mSpillCosts[v];
+
+            // A coalesced node can be spilled if at least one of the original nodes can be spilled
+            if (Double.isInfinite(costU)) {
+                mSpillCosts[u] = costV;
+            } else if (!Double.isInfinite(costV)) {
+                mSpillCosts[u] = costU + costV;
+            }
+        }
+
+        enableMoves(v);
+
+        int[] adjNodes = mInterferenceGraph.adjacent(v);
+        for (int i = 0; i < mInterferenceGraph.degree(v); i++) {
+            int t = adjNodes[i];
+
+            if (isRemoved(t)) {
+                continue;
+            }
+
+            if ((!mInterferenceGraph.interferes(t, u)) && (t != u)) {
+                mInterferenceGraph.addInterference(t, u);
+
+                if ((!isPrecolored(u)) && (takesColor(t))) {
+                    mDegree[u]++;
                 }
 
-                if ((initial.tempMap(mInterferenceGraph.getTemp(adjNode)) == null) && (adjNode.degree() < countRegisters)) {
-                    availableNodes.add(adjNode);
+                if ((!isPrecolored(t)) && (takesColor(u))) {
+                    mDegree[t]++;
                 }
             }
 
-            mInterferenceGraph.removeNode(node);
+            decrementDegree(t);
+        }
+
+        if ((mDegree[u] >= mCountRegisters) && (mNodeStates[u] == FREEZE)) {
+            setState(u, SPILL);
+        }
+    }
+
+    private void freeze() {
+        int node = mFreezeWorklist.pop();
+
+        if (mNodeStates[node] != FREEZE) {
+            return;
+        }
+
+        setState(node, SIMPLIFY);
+
+        freezeMoves(node);
+    }
+
+    // Give up coalescing of all moves of the node
+    private void freezeMoves(int u) {
+        int[] moves = mMoveList[u];
+
+        for (int i = 0; i < mCountMoves[u]; i++) {
+            int move = moves[i];
+
+            if (mMoveStates[move] == MOVE_DONE) {
+                continue;
+            }
+
+            mMoveStates[move] = MOVE_DONE;
 
-            stack.push(node);
+            int v;
+
+            if (getAlias(mMoveDst[move]) == getAlias(u)) {
+                v = getAlias(mMoveSrc[move]);
+            } else {
+                v = getAlias(mMoveDst[move]);
+            }
+
+            if ((mNodeStates[v] == FREEZE) && (!isMoveRelated(v)) && (mDegree[v] < mCountRegisters)) {
+                setState(v, SIMPLIFY);
+            }
         }
+    }
 
-        // Color
-        while (!stack.isEmpty()) {
-            Node node = stack.pop();
+    private void selectSpill() {
+        // All remaining nodes have significant degree so one of them is a potential spill.
+        // Choose the node which is the cheapest to spill and which interferes with the biggest count of other nodes.
+        // The node is removed from the graph like a simplified one and it is spilled only if it does not get a color in the select phase.
+        int spilledNode = -1;
+        double minPriority = Double.MAX_VALUE;
 
-            mInterferenceGraph.addNode(node);
+        // The work list is rebuilt without nodes which have left it
+        IntStack spillWorklist = new IntStack();
+        boolean[] isVisited = new boolean[mNodeStates.length];
 
-            for (Pair<Node, Node> edge : savedEdges.get(node)) {
-                mInterferenceGraph.addEdge(edge.getFirst(), edge.getSecond());
+        while (!mSpillWorklist.isEmpty()) {
+            int node = mSpillWorklist.pop();
+
+            if ((mNodeStates[node] != SPILL) || (isVisited[node])) {
+                continue;
             }
 
-            HashSet<Temp> colorsOfNeighbors = new HashSet<>();
+            isVisited[node] = true;
+            spillWorklist.push(node);
 
-            for (Node adjNode : node.adj()) {
-                colorsOfNeighbors.add(mColorsForTemps.get(adjNode));
+            double priority = mSpillCosts[node] / mDegree[node];
+            if ((spilledNode == -1) || (priority < minPriority)) {
+                spilledNode = node;
+                minPriority = priority;
             }
+        }
+
+        mSpillWorklist = spillWorklist;
 
-            for (Temp temp : registers) {
-                if (!colorsOfNeighbors.contains(temp)) {
-                    mColorsForTemps.put(node, temp);
+        setState(spilledNode, SELECTED);
+
+        freezeMoves(spilledNode);
+
+        int[] adjNodes = mInterferenceGraph.adjacent(spilledNode);
+        for (int i = 0; i < mInterferenceGraph.degree(spilledNode); i++) {
+            if (!isRemoved(adjNodes[i])) {
+                decrementDegree(adjNodes[i]);
+            }
+        }
+    }
+
+    private void assignColors() {
+        boolean[] colorsOfNeighbors = new boolean[mRegisters.length];
+
+        while (!mSelectStack.isEmpty()) {
+            int node = mSelectStack.pop();
+
+            Arrays.fill(colorsOfNeighbors, false);
+
+            int[] adjNodes = mInterferenceGraph.adjacent(node);
+            for (int i = 0; i < mInterferenceGraph.degree(node); i++) {
+                Temp color = mColors[getAlias(adjNodes[i])];
+                if (color != null) {
+                    Integer index = mRegisterIndexes.get(color);
+                    if (index != null) {
+                        colorsOfNeighbors[index] = true;
+                    }
+                }
+            }
+
+            for (int i = 0; i < mRegisters.length; i++) {
+                if (!colorsOfNeighbors[i]) {
+                    mColors[node] = mRegisters[i];
                     break;
                 }
             }
+
+            if (mColors[node] == null) {
+                // All colors are taken by neighbors so the potential spill becomes an actual spill
+                mNodeStates[node] = SPILLED;
+            } else {
+                mNodeStates[node] = COLORED;
+            }
         }
 
-        for (Node node : mInterferenceGraph.nodes()) {
-            if (mInitTempMap.tempMap(mColorsForTemps.get(node)) == null) {
-                // Need to spill temporary variable
-                throw new SelectColorException(mInterferenceGraph.getTemp(node));
+        for (int node = 0; node < mNodeStates.length; node++) {
+            if (mNodeStates[node] == COALESCED) {
+                mColors[node] = mColors[getAlias(node)];
             }
         }
     }
 
     @Override
     public String tempMap(Temp temp) {
-        String tempName = mInitTempMap.tempMap(mColorsForTemps.get(mInterferenceGraph.getNode(temp)));
+        Node node = mInterferenceGraph.getNode(temp);
+
+        String tempName = (node == null) ? null : mInitTempMap.tempMap(mColors[node.getIndex()]);
         if (tempName == null) {
             // If some temporary variable is pre-colored and does not interfere with other temporaries then find it in the frame.
             return mInitTempMap.tempMap(temp);
@@ -108,7 +601,27 @@ public class Color implements TempMap {
     }
 
     public LinkedList<Temp> spills() {
-        return new LinkedList<>();
+        return mSpills;
+    }
+
+    // A stack of indexes of nodes or moves
+    private static class IntStack {
+
+        private int[] mItems = new int[16];
+        private int mSize;
+
+        public void push(int item) {
+            mItems = Graph.add(mItems, mSize++, item);
+        }
+
+        public int pop() {
+            return mItems[--mSize];
+        }
+
+        public boolean isEmpty() {
+            return mSize == 0;
+        }
+
     }
 
 }
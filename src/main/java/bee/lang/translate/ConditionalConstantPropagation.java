@@ -0,0 +1,396 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+// This class is used to find temporary variables with constant values and branches which are never taken (sparse conditional constant propagation
+// of Wegman and Zadeck). The program must be in SSA form.
+// Each temporary variable has a value: unknown (it is not computed yet), a constant or not a constant. Values are only lowered.
+// Blocks are visited only when some edge to them is executable, and only executable edges give arguments of functions phi.
+// A conditional jump makes only one edge executable if its operands are constants.
+// Then uses of constant temporary variables are replaced by constants, definitions of them are removed, jumps which are always taken replace
+// conditional jumps and blocks which are never executed are removed.
+public class ConditionalConstantPropagation {
+
+    private static final int UNKNOWN = 0;
+    private static final int CONSTANT = 1;
+    private static final int NOT_CONSTANT = 2;
+
+    private SSAForm mSSAForm;
+    private ConstantFolding mConstantFolding;
+
+    private HashMap<Temp, Value> mValues;
+    // Statements and functions phi which read each temporary variable
+    private HashMap<Temp, LinkedList<Use>> mUses;
+    private HashSet<BasicBlock> mExecutableBlocks;
+    private HashSet<Edge> mExecutableEdges;
+
+    private LinkedList<Edge> mFlowWorklist;
+    private LinkedList<Temp> mSSAWorklist;
+
+    public ConditionalConstantPropagation(SSAForm ssaForm) {
+        mSSAForm = ssaForm;
+        mConstantFolding = new ConstantFolding();
+    }
+
+    public void optimize() {
+        LinkedList<BasicBlock> basicBlocks = mSSAForm.getBasicBlocks();
+
+        if (basicBlocks.isEmpty()) {
+            return;
+        }
+
+        mValues = new HashMap<>();
+        mUses = new HashMap<>();
+        mExecutableBlocks = new HashSet<>();
+        mExecutableEdges = new HashSet<>();
+        mFlowWorklist = new LinkedList<>();
+        mSSAWorklist = new LinkedList<>();
+
+        for (BasicBlock block : basicBlocks) {
+            for (Phi phi : mSSAForm.getPhis(block)) {
+                for (IRExpression argument : phi.getArguments().values()) {
+                    if (argument instanceof TEMP) {
+                        addUse(((TEMP) argument).getTemp(), new Use(block, null, phi));
+                    }
+                }
+            }
+
+            for (IRStatement statement : block.getStatements()) {
+                for (Temp temp : SSAForm.getUses(statement)) {
+                    addUse(temp, new Use(block, statement, null));
+                }
+            }
+        }
+
+        mFlowWorklist.add(new Edge(null, basicBlocks.getFirst()));
+
+        while ((!mFlowWorklist.isEmpty()) || (!mSSAWorklist.isEmpty())) {
+            while (!mFlowWorklist.isEmpty()) {
+                Edge edge = mFlowWorklist.removeFirst();
+
+                if (!mExecutableEdges.add(edge)) {
+                    continue;
+                }
+
+                BasicBlock block = edge.mTo;
+
+                for (Phi phi : mSSAForm.getPhis(block)) {
+                    visitPhi(block, phi);
+                }
+
+                // Statements are visited only the first time
+                if (mExecutableBlocks.add(block)) {
+                    for (IRStatement statement : block.getStatements()) {
+                        visitStatement(block, statement);
+                    }
+                }
+            }
+
+            while (!mSSAWorklist.isEmpty()) {
+                Temp temp = mSSAWorklist.removeFirst();
+                LinkedList<Use> uses = mUses.get(temp);
+
+                if (uses == null) {
+                    continue;
+                }
+
+                for (Use use : uses) {
+                    if (!mExecutableBlocks.contains(use.mBlock)) {
+                        continue;
+                    }
+
+                    if (use.mPhi != null) {
+                        visitPhi(use.mBlock, use.mPhi);
+                    } else {
+                        visitStatement(use.mBlock, use.mStatement);
+                    }
+                }
+            }
+        }
+
+        rewrite();
+    }
+
+    private void visitPhi(BasicBlock block, Phi phi) {
+        Value value = Value.UNKNOWN_VALUE;
+
+        for (BasicBlock predecessor : phi.getArguments().keySet()) {
+            if (mExecutableEdges.contains(new Edge(predecessor, block))) {
+                value = meet(value, evaluate(phi.getArguments().get(predecessor)));
+            }
+        }
+
+        setValue(phi.getDst(), value);
+    }
+
+    private void visitStatement(BasicBlock block, IRStatement statement) {
+        if (statement instanceof MOVE) {
+            Temp dst = SSAForm.getDefinition(statement);
+
+            if ((dst != null) && (mSSAForm.isVariable(dst))) {
+                setValue(dst, evaluate(((MOVE) statement).getSrc()));
+            }
+        } else if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+
+            Value left = evaluate(cjump.getLeftExpression());
+            Value right = evaluate(cjump.getRightExpression());
+
+            if ((left.mKind == CONSTANT) && (right.mKind == CONSTANT)) {
+                addEdge(block, getTakenLabel(cjump, left.mConstant, right.mConstant));
+            } else if ((left.mKind == NOT_CONSTANT) || (right.mKind == NOT_CONSTANT)) {
+                addEdge(block, cjump.getLblTrue());
+                addEdge(block, cjump.getLblFalse());
+            }
+        } else if (statement instanceof JUMP) {
+            for (Label label : ((JUMP) statement).getTargets()) {
+                addEdge(block, label);
+            }
+        }
+    }
+
+    private void addEdge(BasicBlock block, Label label) {
+        BasicBlock successor = mSSAForm.getBlock(label);
+
+        // The end of the procedure is not a block
+        if (successor != null) {
+            mFlowWorklist.add(new Edge(block, successor));
+        }
+    }
+
+    private Value evaluate(IRExpression expression) {
+        if (expression instanceof CONST) {
+            return new Value(CONSTANT, ((CONST) expression).getValue());
+        }
+
+        if (expression instanceof TEMP) {
+            Temp temp = ((TEMP) expression).getTemp();
+
+            if (!mSSAForm.isVariable(temp)) {
+                return Value.NOT_CONSTANT_VALUE;
+            }
+
+            Value value = mValues.get(temp);
+            return (value == null) ? Value.UNKNOWN_VALUE : value;
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+
+            Value left = evaluate(binop.getLeftExpression());
+            Value right = evaluate(binop.getRightExpression());
+
+            if ((left.mKind == NOT_CONSTANT) || (right.mKind == NOT_CONSTANT)) {
+                return Value.NOT_CONSTANT_VALUE;
+            }
+
+            if ((left.mKind == UNKNOWN) || (right.mKind == UNKNOWN)) {
+                return Value.UNKNOWN_VALUE;
+            }
+
+            // Division by zero is not folded
+            IRExpression result = mConstantFolding.foldExpression(new BINOP(binop.getTypeBinOp(), new CONST(left.mConstant), new CONST(right.mConstant)));
+
+            return (result instanceof CONST) ? new Value(CONSTANT, ((CONST) result).getValue()) : Value.NOT_CONSTANT_VALUE;
+        }
+
+        // The value of a selection is the value of the chosen expression
+        if (expression instanceof SELECT) {
+            SELECT select = (SELECT) expression;
+
+            Value left = evaluate(select.getLeftExpression());
+            Value right = evaluate(select.getRightExpression());
+
+            if ((left.mKind == NOT_CONSTANT) || (right.mKind == NOT_CONSTANT)) {
+                return Value.NOT_CONSTANT_VALUE;
+            }
+
+            if ((left.mKind == UNKNOWN) || (right.mKind == UNKNOWN)) {
+                return Value.UNKNOWN_VALUE;
+            }
+
+            return evaluate(mConstantFolding.foldExpression(new SELECT(select.getTypeRelOp(), new CONST(left.mConstant), new CONST(right.mConstant),
+                    select.getThenExpression(), select.getElseExpression())));
+        }
+
+        // Loads, calls and addresses
+        return Value.NOT_CONSTANT_VALUE;
+    }
+
+    private Value meet(Value first, Value second) {
+        if (first.mKind == UNKNOWN) {
+            return second;
+        }
+
+        if (second.mKind == UNKNOWN) {
+            return first;
+        }
+
+        if ((first.mKind == CONSTANT) && (second.mKind == CONSTANT) && (first.mConstant == second.mConstant)) {
+            return first;
+        }
+
+        return Value.NOT_CONSTANT_VALUE;
+    }
+
+    private void setValue(Temp temp, Value value) {
+        Value oldValue = mValues.get(temp);
+
+        if ((oldValue == null) ? (value.mKind != UNKNOWN) : ((oldValue.mKind != value.mKind) || (oldValue.mConstant != value.mConstant))) {
+            mValues.put(temp, value);
+            mSSAWorklist.add(temp);
+        }
+    }
+
+    private Label getTakenLabel(CJUMP cjump, int left, int right) {
+        IRStatement statement = mConstantFolding.foldStatement(new CJUMP(cjump.getTypeRelOp(), new CONST(left), new CONST(right), cjump.getLblTrue(), cjump.getLblFalse()));
+
+        return ((JUMP) statement).getTargets().getFirst();
+    }
+
+    private void rewrite() {
+        HashMap<Temp, IRExpression> constants = new HashMap<>();
+
+        for (Temp temp : mValues.keySet()) {
+            Value value = mValues.get(temp);
+
+            if (value.mKind == CONSTANT) {
+                constants.put(temp, new CONST(value.mConstant));
+            }
+        }
+
+        mSSAForm.getBasicBlocks().retainAll(mExecutableBlocks);
+
+        for (BasicBlock block : mSSAForm.getBasicBlocks()) {
+            ListIterator<Phi> phiIterator = mSSAForm.getPhis(block).listIterator();
+
+            while (phiIterator.hasNext()) {
+                Phi phi = phiIterator.next();
+
+                if (constants.containsKey(phi.getDst())) {
+                    phiIterator.remove();
+                    continue;
+                }
+
+                for (BasicBlock predecessor : phi.getArguments().keySet()) {
+                    phi.getArguments().put(predecessor, SSAForm.replaceUses(phi.getArguments().get(predecessor), constants));
+                }
+            }
+
+            ListIterator<IRStatement> iterator = block.getStatements().listIterator();
+
+            while (iterator.hasNext()) {
+                IRStatement statement = iterator.next();
+                Temp dst = SSAForm.getDefinition(statement);
+
+                // All uses of the temporary variable are replaced by the constant
+                if ((dst != null) && (constants.containsKey(dst))) {
+                    iterator.remove();
+                    continue;
+                }
+
+                IRStatement newStatement = SSAForm.replaceUses(statement, constants);
+
+                if (newStatement instanceof CJUMP) {
+                    CJUMP cjump = (CJUMP) newStatement;
+
+                    boolean isTrueExecutable = isExecutable(block, cjump.getLblTrue());
+                    boolean isFalseExecutable = isExecutable(block, cjump.getLblFalse());
+
+                    // The condition is a constant
+                    if (isTrueExecutable != isFalseExecutable) {
+                        newStatement = new JUMP(isTrueExecutable ? cjump.getLblTrue() : cjump.getLblFalse());
+                    }
+                }
+
+                if (newStatement != statement) {
+                    newStatement = mConstantFolding.foldStatement(newStatement);
+                }
+
+                iterator.set(newStatement);
+            }
+        }
+
+        mSSAForm.updateEdges();
+    }
+
+    // The end of the procedure is always reachable from a jump to it
+    private boolean isExecutable(BasicBlock block, Label label) {
+        BasicBlock successor = mSSAForm.getBlock(label);
+
+        return (successor == null) || (mExecutableEdges.contains(new Edge(block, successor)));
+    }
+
+    private void addUse(Temp temp, Use use) {
+        if (!mUses.containsKey(temp)) {
+            mUses.put(temp, new LinkedList<>());
+        }
+
+        mUses.get(temp).add(use);
+    }
+
+    private static class Value {
+
+        private static final Value UNKNOWN_VALUE = new Value(UNKNOWN, 0);
+        private static final Value NOT_CONSTANT_VALUE = new Value(NOT_CONSTANT, 0);
+
+        private int mKind;
+        private int mConstant;
+
+        public Value(int kind, int constant) {
+            mKind = kind;
+            mConstant = constant;
+        }
+
+    }
+
+    private static class Use {
+
+        private BasicBlock mBlock;
+        private IRStatement mStatement;
+        private Phi mPhi;
+
+        public Use(BasicBlock block, IRStatement statement, Phi phi) {
+            mBlock = block;
+            mStatement = statement;
+            mPhi = phi;
+        }
+
+    }
+
+    private static class Edge {
+
+        private BasicBlock mFrom;
+        private BasicBlock mTo;
+
+        public Edge(BasicBlock from, BasicBlock to) {
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Edge)) {
+                return false;
+            }
+
+            Edge edge = (Edge) object;
+
+            return (mFrom == edge.mFrom) && (mTo == edge.mTo);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mFrom) * 31 + System.identityHashCode(mTo);
+        }
+
+    }
+
+}
@@ -0,0 +1,261 @@
+package bee.lang.translate;
+
+import bee.lang.ir.tree.*;
+
+import java.util.LinkedList;
+
+// This class is used to compute expressions with constant operands at compile time and to simplify algebraic identities (x + 0, x * 1, x * 0, x - x).
+// Conditional jumps with constant operands become unconditional jumps. Constants are moved to the right of additions and multiplications
+// and they are combined, so the address of an element of an array (array + (index + 1) * 4) becomes ((array + index * 4) + 4) and the constant
+// is used as the offset of the instruction 'lw' or 'sw'.
+// The order of evaluation of expressions which can have side effects is never changed and they are never removed.
+public class ConstantFolding {
+
+    // Offsets and operands of the instruction 'addiu' are 16-bit signed values
+    private static final int MIN_IMMEDIATE = -32768;
+    private static final int MAX_IMMEDIATE = 32767;
+
+    public IRStatement foldStatement(IRStatement statement) {
+        if (statement instanceof SEQ) {
+            SEQ seq = (SEQ) statement;
+            return new SEQ(foldStatement(seq.getLeftStatement()), foldStatement(seq.getRightStatement()));
+        }
+
+        if (statement instanceof MOVE) {
+            MOVE move = (MOVE) statement;
+            return new MOVE(foldExpression(move.getDst()), foldExpression(move.getSrc()));
+        }
+
+        if (statement instanceof EXP) {
+            return new EXP(foldExpression(((EXP) statement).getExpression()));
+        }
+
+        if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+
+            IRExpression leftExpression = foldExpression(cjump.getLeftExpression());
+            IRExpression rightExpression = foldExpression(cjump.getRightExpression());
+
+            if ((leftExpression instanceof CONST) && (rightExpression instanceof CONST)) {
+                // CJUMP(op, CONST(a), CONST(b), t, f) => JUMP(t) or JUMP(f)
+                boolean isTrue = compare(cjump.getTypeRelOp(), ((CONST) leftExpression).getValue(), ((CONST) rightExpression).getValue());
+                return new JUMP(isTrue ? cjump.getLblTrue() : cjump.getLblFalse());
+            }
+
+            return new CJUMP(cjump.getTypeRelOp(), leftExpression, rightExpression, cjump.getLblTrue(), cjump.getLblFalse());
+        }
+
+        if (statement instanceof JUMP) {
+            JUMP jump = (JUMP) statement;
+            return new JUMP(foldExpression(jump.getExpression()), jump.getTargets());
+        }
+
+        return statement;
+    }
+
+    public IRExpression foldExpression(IRExpression expression) {
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+            return foldBinop(binop.getTypeBinOp(), foldExpression(binop.getLeftExpression()), foldExpression(binop.getRightExpression()));
+        }
+
+        if (expression instanceof MEM) {
+            return new MEM(foldExpression(((MEM) expression).getExpression()), ((MEM) expression).isReadOnly());
+        }
+
+        if (expression instanceof ESEQ) {
+            ESEQ eseq = (ESEQ) expression;
+            return new ESEQ(foldStatement(eseq.getStatement()), foldExpression(eseq.getExpression()));
+        }
+
+        if (expression instanceof SELECT) {
+            SELECT select = (SELECT) expression;
+            return foldSelect(select.getTypeRelOp(), foldExpression(select.getLeftExpression()), foldExpression(select.getRightExpression()),
+                    foldExpression(select.getThenExpression()), foldExpression(select.getElseExpression()));
+        }
+
+        if (expression instanceof CALL) {
+            CALL call = (CALL) expression;
+
+            LinkedList<IRExpression> args = new LinkedList<>();
+            for (IRExpression arg : call.getArguments()) {
+                args.add(foldExpression(arg));
+            }
+
+            return new CALL(foldExpression(call.getFunction()), args, call.isTailCall());
+        }
+
+        return expression;
+    }
+
+    // Operands are already folded
+    private IRExpression foldBinop(TypeBinOp typeBinOp, IRExpression leftExpression, IRExpression rightExpression) {
+        if ((leftExpression instanceof CONST) && (rightExpression instanceof CONST)) {
+            int left = ((CONST) leftExpression).getValue();
+            int right = ((CONST) rightExpression).getValue();
+
+            switch (typeBinOp) {
+                case PLUS:
+                    return new CONST(left + right);
+                case MINUS:
+                    return new CONST(left - right);
+                case MUL:
+                    return new CONST(left * right);
+                case DIV:
+                    // Division by zero is left for the run time
+                    if (right != 0) {
+                        return new CONST(left / right);
+                    }
+                    break;
+                case MOD:
+                    if (right != 0) {
+                        return new CONST(left % right);
+                    }
+                    break;
+            }
+
+            return new BINOP(typeBinOp, leftExpression, rightExpression);
+        }
+
+        // The constant of an addition or a multiplication is the right operand. A constant has no side effects so the order of evaluation is the same.
+        if (((typeBinOp == TypeBinOp.PLUS) || (typeBinOp == TypeBinOp.MUL)) && (leftExpression instanceof CONST)) {
+            IRExpression expression = leftExpression;
+            leftExpression = rightExpression;
+            rightExpression = expression;
+        }
+
+        // x - c => x + (-c)
+        if ((typeBinOp == TypeBinOp.MINUS) && (rightExpression instanceof CONST) && (((CONST) rightExpression).getValue() != Integer.MIN_VALUE)) {
+            typeBinOp = TypeBinOp.PLUS;
+            rightExpression = new CONST(-((CONST) rightExpression).getValue());
+        }
+
+        if (rightExpression instanceof CONST) {
+            int value = ((CONST) rightExpression).getValue();
+
+            switch (typeBinOp) {
+                case PLUS: {
+                    // x + 0 => x
+                    if (value == 0) {
+                        return leftExpression;
+                    }
+
+                    // (x + a) + b => x + (a + b)
+                    if (isPlusConst(leftExpression)) {
+                        int sum = ((CONST) ((BINOP) leftExpression).getRightExpression()).getValue() + value;
+
+                        if (isImmediate(sum)) {
+                            return foldBinop(TypeBinOp.PLUS, ((BINOP) leftExpression).getLeftExpression(), new CONST(sum));
+                        }
+                    }
+                } break;
+
+                case MUL: {
+                    // x * 1 => x
+                    if (value == 1) {
+                        return leftExpression;
+                    }
+
+                    // x * 0 => 0
+                    if ((value == 0) && (isPure(leftExpression))) {
+                        return new CONST(0);
+                    }
+
+                    // (x + a) * b => x * b + a * b
+                    if (isPlusConst(leftExpression)) {
+                        int product = ((CONST) ((BINOP) leftExpression).getRightExpression()).getValue() * value;
+
+                        if ((value != 0) && (isImmediate(product)) && (product / value == ((CONST) ((BINOP) leftExpression).getRightExpression()).getValue())) {
+                            return foldBinop(TypeBinOp.PLUS, foldBinop(TypeBinOp.MUL, ((BINOP) leftExpression).getLeftExpression(), rightExpression), new CONST(product));
+                        }
+                    }
+                } break;
+
+                case DIV: {
+                    // x / 1 => x
+                    if (value == 1) {
+                        return leftExpression;
+                    }
+                } break;
+            }
+        }
+
+        // x + (y + c) => (x + y) + c, so the constant can be used as an offset. x is still evaluated before y.
+        if ((typeBinOp == TypeBinOp.PLUS) && (isPlusConst(rightExpression))) {
+            BINOP binop = (BINOP) rightExpression;
+            return foldBinop(TypeBinOp.PLUS, new BINOP(TypeBinOp.PLUS, leftExpression, binop.getLeftExpression()), binop.getRightExpression());
+        }
+
+        // x - x => 0
+        if ((typeBinOp == TypeBinOp.MINUS) && (leftExpression instanceof TEMP) && (rightExpression instanceof TEMP) &&
+                (((TEMP) leftExpression).getTemp() == ((TEMP) rightExpression).getTemp())) {
+            return new CONST(0);
+        }
+
+        return new BINOP(typeBinOp, leftExpression, rightExpression);
+    }
+
+    // Operands are already folded. Both values of a selection have no side effects so one of them can be removed.
+    private IRExpression foldSelect(TypeRelOp typeRelOp, IRExpression leftExpression, IRExpression rightExpression, IRExpression thenExpression,
+                                    IRExpression elseExpression) {
+        if ((leftExpression instanceof CONST) && (rightExpression instanceof CONST)) {
+            // SELECT(op, CONST(a), CONST(b), e1, e2) => e1 or e2
+            return compare(typeRelOp, ((CONST) leftExpression).getValue(), ((CONST) rightExpression).getValue()) ? thenExpression : elseExpression;
+        }
+
+        // SELECT(op, CONST(a), e, e1, e2) => SELECT(reversed op, e, CONST(a), e1, e2), so the constant can be an immediate operand
+        if ((leftExpression instanceof CONST) && (typeRelOp.reverse() != null)) {
+            return new SELECT(typeRelOp.reverse(), rightExpression, leftExpression, thenExpression, elseExpression);
+        }
+
+        return new SELECT(typeRelOp, leftExpression, rightExpression, thenExpression, elseExpression);
+    }
+
+    private boolean compare(TypeRelOp typeRelOp, int left, int right) {
+        switch (typeRelOp) {
+            case EQ:
+                return left == right;
+            case NE:
+                return left != right;
+            case LT:
+                return left < right;
+            case GT:
+                return left > right;
+            case LE:
+                return left <= right;
+            case GE:
+                return left >= right;
+            case ULT:
+                return Integer.compareUnsigned(left, right) < 0;
+            default:
+                return Integer.compareUnsigned(left, right) >= 0;
+        }
+    }
+
+    // BINOP(PLUS, e, CONST(n))
+    private boolean isPlusConst(IRExpression expression) {
+        return (expression instanceof BINOP) &&
+                (((BINOP) expression).getTypeBinOp() == TypeBinOp.PLUS) &&
+                (((BINOP) expression).getRightExpression() instanceof CONST);
+    }
+
+    // Expressions without side effects and without memory accesses can be removed
+    private boolean isPure(IRExpression expression) {
+        if ((expression instanceof CONST) || (expression instanceof TEMP) || (expression instanceof NAME)) {
+            return true;
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+            return (binop.getTypeBinOp() != TypeBinOp.DIV) && (binop.getTypeBinOp() != TypeBinOp.MOD) &&
+                    (isPure(binop.getLeftExpression())) && (isPure(binop.getRightExpression()));
+        }
+
+        return false;
+    }
+
+    private boolean isImmediate(int value) {
+        return (value >= MIN_IMMEDIATE) && (value <= MAX_IMMEDIATE);
+    }
+
+}
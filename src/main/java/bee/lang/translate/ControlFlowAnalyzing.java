@@ -1,5 +1,7 @@
 package bee.lang.translate;
 
+import bee.lang.Constants;
+import bee.lang.ir.CompilationContext;
 import bee.lang.ir.Label;
 import bee.lang.ir.tree.*;
 
@@ -7,12 +9,16 @@ import java.util.Iterator;
 import java.util.LinkedList;
 
 // This class is used to create basic blocks and analyze them. Basic blocks may have any order. It gives an opportunity to optimize code.
+// Basic blocks are placed in the order of traces so the likely path of a procedure has fewer jumps.
 public class ControlFlowAnalyzing {
 
     private String mMethodName;
     private Iterator<IRStatement> mIteratorStatement;
+    private int mCountLabels;
+    private CompilationContext mContext;
 
-    public ControlFlowAnalyzing(String methodName) {
+    public ControlFlowAnalyzing(CompilationContext context, String methodName) {
+        mContext = context;
         mMethodName = methodName;
     }
 
@@ -29,10 +35,16 @@ public class ControlFlowAnalyzing {
         for (IRStatement statement : statements) {
             if (basicBlock.isEmpty()) {
                 if (!(statement instanceof LABEL)) {
-                    basicBlock.addStatement(new LABEL(Label.newLabel()));
+                    basicBlock.addStatement(new LABEL(newLabel()));
                 }
 
                 basicBlock.addStatement(statement);
+
+                // A jump right after the label (for example the condition of a statement at the start of a procedure) ends the block too
+                if ((statement instanceof CJUMP) || (statement instanceof JUMP)) {
+                    basicBlock = new BasicBlock();
+                    basicBlocks.add(basicBlock);
+                }
             } else {
                 if (statement instanceof LABEL) {
                     basicBlock.addStatement(new JUMP(((LABEL) statement).getLabel()));
@@ -50,10 +62,10 @@ public class ControlFlowAnalyzing {
         }
 
         if (basicBlock.isEmpty()) {
-            basicBlock.addStatement(new LABEL(Label.newLabel()));
+            basicBlock.addStatement(new LABEL(newLabel()));
         }
 
-        basicBlock.addStatement(new JUMP(Label.newLabel("_" + mMethodName + "_end_")));
+        basicBlock.addStatement(new JUMP(mContext.newLabel("_" + mMethodName + "_end_")));
 
         return basicBlocks;
     }
@@ -62,7 +74,12 @@ public class ControlFlowAnalyzing {
     // 1. CJUMP followed by its label 'false' (need to rewrite CJUMP).
     // 2. JUMP must be removed if JUMP followed by its label.
     public LinkedList<IRStatement> trace(LinkedList<IRStatement> irStatements) {
-        Iterator<BasicBlock> basicBlocksIterator = createBasicBlocks(irStatements).iterator();
+        return traceBasicBlocks(createBasicBlocks(irStatements));
+    }
+
+    // Basic blocks must be created by createBasicBlocks
+    public LinkedList<IRStatement> traceBasicBlocks(LinkedList<BasicBlock> basicBlocks) {
+        Iterator<BasicBlock> basicBlocksIterator = createTraces(basicBlocks).iterator();
 
         LinkedList<IRStatement> statements = new LinkedList<>();
 
@@ -86,11 +103,12 @@ public class ControlFlowAnalyzing {
                             cjump.setLblFalse(trueLabel);
                             statements.add(statement);
                         } else {
-                            Label newFalseLabel = Label.newLabel();
+                            // CJUMP falls through to a new label which jumps to the label 'false'. It is placed before the next block.
+                            Label newFalseLabel = newLabel();
                             cjump.setLblFalse(newFalseLabel);
-                            statements.add(statement);
                             statements.add(new LABEL(newFalseLabel));
                             statements.add(new JUMP(falseLabel));
+                            statements.add(statement);
                         }
                     } else {
                         statements.add(statement);
@@ -115,9 +133,112 @@ public class ControlFlowAnalyzing {
             prevStatement = statement;
         }
 
+        // Both labels of the last CJUMP are placed before it
+        if (prevStatement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) prevStatement;
+            Label newFalseLabel = newLabel();
+            statements.add(new LABEL(newFalseLabel));
+            statements.add(new JUMP(cjump.getLblFalse()));
+            cjump.setLblFalse(newFalseLabel);
+        }
+
         return statements;
     }
 
+    // Blocks are ordered by greedy traces. A trace starts with the first block which is not in other traces and goes to a successor which is not in
+    // other traces while it is possible. So the successor follows the block and the jump to it is removed or CJUMP falls through to it.
+    // The likely successor is chosen: a successor inside of more loops (the body of a loop instead of its exit), otherwise the next block.
+    // Blocks which call '_print_error' are executed only if a program fails so they are placed at the end of the procedure and hot traces never go there.
+    private LinkedList<BasicBlock> createTraces(LinkedList<BasicBlock> basicBlocks) {
+        if (basicBlocks.isEmpty()) {
+            return basicBlocks;
+        }
+
+        DominatorTree dominatorTree = new DominatorTree(basicBlocks);
+        int countBlocks = dominatorTree.countBlocks();
+
+        int[] loopDepths = new int[countBlocks];
+        for (Loop loop : Loop.findLoops(dominatorTree)) {
+            for (BasicBlock block : loop.getBlocks()) {
+                loopDepths[dominatorTree.getIndex(block)]++;
+            }
+        }
+
+        boolean[] isCold = new boolean[countBlocks];
+        LinkedList<Integer> hotBlocks = new LinkedList<>();
+        LinkedList<Integer> coldBlocks = new LinkedList<>();
+
+        // The first block is the entry of the procedure so it is always hot
+        for (int i = 0; i < countBlocks; i++) {
+            isCold[i] = (i != 0) && (hasErrorCall(dominatorTree.getBlock(i)));
+
+            if (isCold[i]) {
+                coldBlocks.add(i);
+            } else {
+                hotBlocks.add(i);
+            }
+        }
+
+        LinkedList<Integer> queue = new LinkedList<>(hotBlocks);
+        queue.addAll(coldBlocks);
+
+        boolean[] isMarked = new boolean[countBlocks];
+        LinkedList<BasicBlock> orderedBlocks = new LinkedList<>();
+
+        for (int block : queue) {
+            while ((block != -1) && (!isMarked[block])) {
+                isMarked[block] = true;
+                orderedBlocks.add(dominatorTree.getBlock(block));
+
+                int successor = -1;
+
+                for (int candidate : dominatorTree.getSuccessors(block)) {
+                    if ((isMarked[candidate]) || ((isCold[candidate]) && (!isCold[block]))) {
+                        continue;
+                    }
+
+                    if ((successor == -1) || (isLikelier(loopDepths, block, candidate, successor))) {
+                        successor = candidate;
+                    }
+                }
+
+                block = successor;
+            }
+        }
+
+        return orderedBlocks;
+    }
+
+    // Successors are in the order of labels 'true' and 'false'. If loop depths are equal then the block which follows in the original order
+    // is likelier, otherwise the label 'false'.
+    private boolean isLikelier(int[] loopDepths, int block, int candidate, int successor) {
+        if (loopDepths[candidate] != loopDepths[successor]) {
+            return loopDepths[candidate] > loopDepths[successor];
+        }
+
+        return (successor != block + 1);
+    }
+
+    private boolean hasErrorCall(BasicBlock block) {
+        for (IRStatement statement : block.getStatements()) {
+            if ((statement instanceof EXP) && (((EXP) statement).getExpression() instanceof CALL)) {
+                IRExpression function = ((CALL) ((EXP) statement).getExpression()).getFunction();
+
+                if ((function instanceof NAME) && (((NAME) function).getLabel().getName().equals(Constants.FUNCTION_PRINT_ERROR))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    // Names of new labels depend only on the method so the same code is created even if procedures are compiled in parallel.
+    // Optimizations which create new blocks also use these labels.
+    Label newLabel() {
+        return mContext.newLabel("_" + mMethodName + "_L" + (mCountLabels++) + "_");
+    }
+
     private IRStatement getNextStatement(Iterator<BasicBlock> mIteratorBasicBlock) {
         if ((mIteratorStatement == null) || (!mIteratorStatement.hasNext())) {
             if (mIteratorBasicBlock.hasNext()) {
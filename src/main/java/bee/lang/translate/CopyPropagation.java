@@ -0,0 +1,127 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+
+import java.util.HashMap;
+import java.util.ListIterator;
+
+// This class is used to remove copies between temporary variables. The program must be in SSA form so the copy t1 = t2 means that t1 always has
+// the value of t2 and all uses of t1 can read t2. A function phi whose arguments are the same value (or its own result) is also a copy.
+// Machine registers are never propagated because they are changed by calls.
+public class CopyPropagation {
+
+    private SSAForm mSSAForm;
+    // Temporary variables which are copies of other values
+    private HashMap<Temp, IRExpression> mCopies;
+
+    public CopyPropagation(SSAForm ssaForm) {
+        mSSAForm = ssaForm;
+    }
+
+    public void optimize() {
+        mCopies = new HashMap<>();
+
+        for (BasicBlock block : mSSAForm.getBasicBlocks()) {
+            ListIterator<IRStatement> iterator = block.getStatements().listIterator();
+
+            while (iterator.hasNext()) {
+                IRStatement statement = iterator.next();
+                Temp dst = SSAForm.getDefinition(statement);
+
+                if ((dst != null) && (mSSAForm.isVariable(dst)) && (((MOVE) statement).getSrc() instanceof TEMP) &&
+                        (mSSAForm.isVariable(((TEMP) ((MOVE) statement).getSrc()).getTemp()))) {
+                    mCopies.put(dst, ((MOVE) statement).getSrc());
+                    iterator.remove();
+                }
+            }
+        }
+
+        // Functions phi become copies when arguments are resolved
+        boolean isChanged = true;
+
+        while (isChanged) {
+            isChanged = false;
+
+            for (BasicBlock block : mSSAForm.getBasicBlocks()) {
+                ListIterator<Phi> iterator = mSSAForm.getPhis(block).listIterator();
+
+                while (iterator.hasNext()) {
+                    Phi phi = iterator.next();
+                    IRExpression value = getSameArgument(phi);
+
+                    if (value != null) {
+                        mCopies.put(phi.getDst(), value);
+                        iterator.remove();
+                        isChanged = true;
+                    }
+                }
+            }
+        }
+
+        if (mCopies.isEmpty()) {
+            return;
+        }
+
+        HashMap<Temp, IRExpression> replacements = new HashMap<>();
+        for (Temp temp : mCopies.keySet()) {
+            replacements.put(temp, resolve(new TEMP(temp)));
+        }
+
+        for (BasicBlock block : mSSAForm.getBasicBlocks()) {
+            for (Phi phi : mSSAForm.getPhis(block)) {
+                for (BasicBlock predecessor : phi.getArguments().keySet()) {
+                    phi.getArguments().put(predecessor, SSAForm.replaceUses(phi.getArguments().get(predecessor), replacements));
+                }
+            }
+
+            ListIterator<IRStatement> iterator = block.getStatements().listIterator();
+
+            while (iterator.hasNext()) {
+                iterator.set(SSAForm.replaceUses(iterator.next(), replacements));
+            }
+        }
+    }
+
+    // Returns the only value of arguments or null
+    private IRExpression getSameArgument(Phi phi) {
+        IRExpression value = null;
+
+        for (IRExpression argument : phi.getArguments().values()) {
+            IRExpression resolved = resolve(argument);
+
+            if ((resolved instanceof TEMP) && (((TEMP) resolved).getTemp() == phi.getDst())) {
+                continue;
+            }
+
+            if (value == null) {
+                value = resolved;
+            } else if (!isSameValue(value, resolved)) {
+                return null;
+            }
+        }
+
+        return value;
+    }
+
+    private IRExpression resolve(IRExpression expression) {
+        while ((expression instanceof TEMP) && (mCopies.containsKey(((TEMP) expression).getTemp()))) {
+            expression = mCopies.get(((TEMP) expression).getTemp());
+        }
+
+        return expression;
+    }
+
+    private boolean isSameValue(IRExpression first, IRExpression second) {
+        if ((first instanceof TEMP) && (second instanceof TEMP)) {
+            return ((TEMP) first).getTemp() == ((TEMP) second).getTemp();
+        }
+
+        if ((first instanceof CONST) && (second instanceof CONST)) {
+            return ((CONST) first).getValue() == ((CONST) second).getValue();
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,194 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import bee.lang.translate.frame.Frame;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+// This class is used to remove blocks which are never reached from the first block and assignments whose results are never read.
+// Liveness of temporary variables is computed by backward data-flow analysis over basic blocks. MOVE(TEMP(t), e) is removed if t is not alive
+// after it and e has no calls. A call whose result is not read is kept as EXP(CALL(...)). EXP(e) without calls is removed.
+// Machine registers are never removed because they are read after the procedure (for example the result in $v0).
+// A removed assignment can make other assignments dead so the analysis is repeated until nothing is removed.
+public class DeadCodeElimination {
+
+    private Frame mFrame;
+
+    public DeadCodeElimination(Frame frame) {
+        mFrame = frame;
+    }
+
+    public void optimize(LinkedList<BasicBlock> basicBlocks) {
+        if (basicBlocks.isEmpty()) {
+            return;
+        }
+
+        removeUnreachableBlocks(basicBlocks);
+
+        boolean isRemoved = true;
+
+        while (isRemoved) {
+            isRemoved = removeDeadStatements(basicBlocks);
+        }
+    }
+
+    private void removeUnreachableBlocks(LinkedList<BasicBlock> basicBlocks) {
+        HashMap<Label, BasicBlock> blocksByLabel = getBlocksByLabel(basicBlocks);
+
+        for (BasicBlock block : basicBlocks) {
+            block.checkJumps();
+        }
+
+        HashSet<BasicBlock> reachable = new HashSet<>();
+        LinkedList<BasicBlock> worklist = new LinkedList<>();
+
+        reachable.add(basicBlocks.getFirst());
+        worklist.add(basicBlocks.getFirst());
+
+        while (!worklist.isEmpty()) {
+            for (Label label : worklist.removeFirst().getTargets()) {
+                BasicBlock successor = blocksByLabel.get(label);
+
+                if ((successor != null) && (reachable.add(successor))) {
+                    worklist.add(successor);
+                }
+            }
+        }
+
+        basicBlocks.retainAll(reachable);
+    }
+
+    // Returns true if some statement is removed
+    private boolean removeDeadStatements(LinkedList<BasicBlock> basicBlocks) {
+        HashMap<Label, BasicBlock> blocksByLabel = getBlocksByLabel(basicBlocks);
+
+        // Temporary variables which are defined in each block. Temporary variables which are read before their definitions are alive at the beginning.
+        HashMap<BasicBlock, HashSet<Temp>> defs = new HashMap<>();
+        HashMap<BasicBlock, HashSet<Temp>> liveIn = new HashMap<>();
+        HashMap<BasicBlock, HashSet<Temp>> liveOut = new HashMap<>();
+
+        for (BasicBlock block : basicBlocks) {
+            HashSet<Temp> blockUses = new HashSet<>();
+            HashSet<Temp> blockDefs = new HashSet<>();
+
+            for (IRStatement statement : block.getStatements()) {
+                for (Temp temp : SSAForm.getUses(statement)) {
+                    if (!blockDefs.contains(temp)) {
+                        blockUses.add(temp);
+                    }
+                }
+
+                Temp dst = SSAForm.getDefinition(statement);
+                if (dst != null) {
+                    blockDefs.add(dst);
+                }
+            }
+
+            defs.put(block, blockDefs);
+            liveIn.put(block, new HashSet<>(blockUses));
+            liveOut.put(block, new HashSet<>());
+        }
+
+        boolean isChanged = true;
+
+        while (isChanged) {
+            isChanged = false;
+
+            ListIterator<BasicBlock> iterator = basicBlocks.listIterator(basicBlocks.size());
+
+            while (iterator.hasPrevious()) {
+                BasicBlock block = iterator.previous();
+                HashSet<Temp> out = liveOut.get(block);
+
+                for (Label label : block.getTargets()) {
+                    BasicBlock successor = blocksByLabel.get(label);
+
+                    if (successor != null) {
+                        out.addAll(liveIn.get(successor));
+                    }
+                }
+
+                HashSet<Temp> in = liveIn.get(block);
+
+                for (Temp temp : out) {
+                    if ((!defs.get(block).contains(temp)) && (in.add(temp))) {
+                        isChanged = true;
+                    }
+                }
+            }
+        }
+
+        boolean isRemoved = false;
+
+        for (BasicBlock block : basicBlocks) {
+            HashSet<Temp> live = new HashSet<>(liveOut.get(block));
+            ListIterator<IRStatement> iterator = block.getStatements().listIterator(block.getStatements().size());
+
+            while (iterator.hasPrevious()) {
+                IRStatement statement = iterator.previous();
+                Temp dst = SSAForm.getDefinition(statement);
+
+                if ((dst != null) && (mFrame.tempMap(dst) == null) && (!live.contains(dst))) {
+                    IRExpression src = ((MOVE) statement).getSrc();
+
+                    if (src instanceof CALL) {
+                        statement = new EXP(src);
+                        iterator.set(statement);
+                    } else {
+                        iterator.remove();
+                        isRemoved = true;
+                        continue;
+                    }
+                }
+
+                if ((statement instanceof EXP) && (!hasCall(((EXP) statement).getExpression()))) {
+                    iterator.remove();
+                    isRemoved = true;
+                    continue;
+                }
+
+                if (dst != null) {
+                    live.remove(dst);
+                }
+
+                live.addAll(SSAForm.getUses(statement));
+            }
+        }
+
+        return isRemoved;
+    }
+
+    private HashMap<Label, BasicBlock> getBlocksByLabel(LinkedList<BasicBlock> basicBlocks) {
+        HashMap<Label, BasicBlock> blocksByLabel = new HashMap<>();
+
+        for (BasicBlock block : basicBlocks) {
+            blocksByLabel.put(block.getLabel(), block);
+        }
+
+        return blocksByLabel;
+    }
+
+    private boolean hasCall(IRExpression expression) {
+        if (expression instanceof CALL) {
+            return true;
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                if (hasCall(kid)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+}
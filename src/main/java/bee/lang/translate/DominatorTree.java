@@ -0,0 +1,185 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Label;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+// This class is used to compute immediate dominators of basic blocks by the iterative algorithm of Cooper, Harvey and Kennedy.
+// Blocks are numbered by their positions in the list. The first block is the entry of the procedure and it is its own dominator.
+// Blocks which are not reachable from the first block have no dominator (-1).
+public class DominatorTree {
+
+    private BasicBlock[] mBlocks;
+    private HashMap<BasicBlock, Integer> mIndexes;
+    private ArrayList<LinkedList<Integer>> mPredecessors;
+    private ArrayList<LinkedList<Integer>> mSuccessors;
+    private int[] mDominators;
+
+    public DominatorTree(LinkedList<BasicBlock> basicBlocks) {
+        mBlocks = basicBlocks.toArray(new BasicBlock[0]);
+        mIndexes = new HashMap<>();
+        mPredecessors = new ArrayList<>();
+        mSuccessors = new ArrayList<>();
+
+        HashMap<Label, Integer> indexesByLabel = new HashMap<>();
+
+        for (int i = 0; i < mBlocks.length; i++) {
+            mIndexes.put(mBlocks[i], i);
+            indexesByLabel.put(mBlocks[i].getLabel(), i);
+            mPredecessors.add(new LinkedList<>());
+            mSuccessors.add(new LinkedList<>());
+        }
+
+        for (int i = 0; i < mBlocks.length; i++) {
+            for (Label label : mBlocks[i].getTargets()) {
+                Integer successor = indexesByLabel.get(label);
+
+                // The end of the procedure is not a block
+                if (successor != null) {
+                    mSuccessors.get(i).add(successor);
+                    mPredecessors.get(successor).add(i);
+                }
+            }
+        }
+
+        mDominators = computeDominators();
+    }
+
+    public int countBlocks() {
+        return mBlocks.length;
+    }
+
+    public BasicBlock getBlock(int index) {
+        return mBlocks[index];
+    }
+
+    public int getIndex(BasicBlock block) {
+        return mIndexes.get(block);
+    }
+
+    public LinkedList<Integer> getPredecessors(int index) {
+        return mPredecessors.get(index);
+    }
+
+    public LinkedList<Integer> getSuccessors(int index) {
+        return mSuccessors.get(index);
+    }
+
+    public int[] getDominators() {
+        return mDominators;
+    }
+
+    // Returns true if each path from the first block to the second block goes through the first block
+    public boolean dominates(int first, int second) {
+        if (mDominators[second] == -1) {
+            return false;
+        }
+
+        while (second != first) {
+            if (second == 0) {
+                return false;
+            }
+
+            second = mDominators[second];
+        }
+
+        return true;
+    }
+
+    private int[] computeDominators() {
+        int countBlocks = mBlocks.length;
+
+        int[] dominators = new int[countBlocks];
+        Arrays.fill(dominators, -1);
+
+        if (countBlocks == 0) {
+            return dominators;
+        }
+
+        // Postorder by the iterative depth-first search
+        int[] postorder = new int[countBlocks];
+        int[] order = new int[countBlocks];
+        int countVisited = 0;
+
+        boolean[] isVisited = new boolean[countBlocks];
+        LinkedList<Integer> stack = new LinkedList<>();
+        LinkedList<ListIterator<Integer>> successors = new LinkedList<>();
+
+        isVisited[0] = true;
+        stack.push(0);
+        successors.push(mSuccessors.get(0).listIterator());
+
+        while (!stack.isEmpty()) {
+            ListIterator<Integer> iterator = successors.peek();
+
+            if (iterator.hasNext()) {
+                int successor = iterator.next();
+
+                if (!isVisited[successor]) {
+                    isVisited[successor] = true;
+                    stack.push(successor);
+                    successors.push(mSuccessors.get(successor).listIterator());
+                }
+            } else {
+                int block = stack.pop();
+                successors.pop();
+
+                postorder[block] = countVisited;
+                order[countVisited] = block;
+                countVisited++;
+            }
+        }
+
+        dominators[0] = 0;
+
+        boolean isChanged = true;
+
+        while (isChanged) {
+            isChanged = false;
+
+            // Reverse postorder without the first block
+            for (int i = countVisited - 2; i >= 0; i--) {
+                int block = order[i];
+                int dominator = -1;
+
+                for (int predecessor : mPredecessors.get(block)) {
+                    if (dominators[predecessor] == -1) {
+                        continue;
+                    }
+
+                    if (dominator == -1) {
+                        dominator = predecessor;
+                    } else {
+                        // The nearest common dominator
+                        int first = predecessor;
+                        int second = dominator;
+
+                        while (first != second) {
+                            while (postorder[first] < postorder[second]) {
+                                first = dominators[first];
+                            }
+
+                            while (postorder[second] < postorder[first]) {
+                                second = dominators[second];
+                            }
+                        }
+
+                        dominator = first;
+                    }
+                }
+
+                if (dominators[block] != dominator) {
+                    dominators[block] = dominator;
+                    isChanged = true;
+                }
+            }
+        }
+
+        return dominators;
+    }
+
+}
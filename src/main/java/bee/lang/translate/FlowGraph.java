@@ -9,5 +9,6 @@ public abstract class FlowGraph extends Graph {
     public abstract LinkedList<Temp> def(Node node);
     public abstract LinkedList<Temp> use(Node node);
     public abstract boolean isMove(Node node);
+    public abstract int loopDepth(Node node);
 
 }
@@ -1,47 +1,118 @@
 package bee.lang.translate;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 
+// Nodes of the graph are numbered by consecutive indexes. Successors and predecessors of each node are kept in arrays of indexes so
+// they can be iterated without allocation of new objects.
 public class Graph {
 
-    private LinkedList<Node> mAllNodes;
+    private ArrayList<Node> mAllNodes;
+    private int[][] mSucc;
+    private int[][] mPred;
+    private int[] mCountSucc;
+    private int[] mCountPred;
 
     public Graph() {
-        mAllNodes = new LinkedList<>();
+        mAllNodes = new ArrayList<>();
+        mSucc = new int[16][];
+        mPred = new int[16][];
+        mCountSucc = new int[16];
+        mCountPred = new int[16];
     }
 
-    public LinkedList<Node> nodes() {
+    public ArrayList<Node> nodes() {
         return mAllNodes;
     }
 
-    public Node newNode() {
-        Node node = new Node(this);
-        addNode(node);
-        return node;
+    public int countNodes() {
+        return mAllNodes.size();
     }
 
-    public void addNode(Node node) {
-        if (!mAllNodes.contains(node)) {
-            mAllNodes.add(node);
-        }
+    public Node node(int index) {
+        return mAllNodes.get(index);
     }
 
-    public void removeNode(Node node) {
-        mAllNodes.remove(node);
+    public Node newNode() {
+        int index = mAllNodes.size();
+
+        if (index == mSucc.length) {
+            int capacity = index * 2;
+            mSucc = Arrays.copyOf(mSucc, capacity);
+            mPred = Arrays.copyOf(mPred, capacity);
+            mCountSucc = Arrays.copyOf(mCountSucc, capacity);
+            mCountPred = Arrays.copyOf(mCountPred, capacity);
+        }
+
+        mSucc[index] = new int[2];
+        mPred[index] = new int[2];
+
+        Node node = new Node(this, index);
+        mAllNodes.add(node);
+        return node;
     }
 
     public void addEdge(Node from, Node to) {
         if ((!from.goesTo(to)) && (!to.comesFrom(from))) {
-            from.addSucc(to);
-            to.addPred(from);
+            mSucc[from.getIndex()] = add(mSucc[from.getIndex()], mCountSucc[from.getIndex()]++, to.getIndex());
+            mPred[to.getIndex()] = add(mPred[to.getIndex()], mCountPred[to.getIndex()]++, from.getIndex());
         }
     }
 
     public void rmEdge(Node from, Node to) {
         if ((from.goesTo(to)) && (to.comesFrom(from))) {
-            from.removeSucc(to);
-            to.removePred(from);
+            mCountSucc[from.getIndex()] = remove(mSucc[from.getIndex()], mCountSucc[from.getIndex()], to.getIndex());
+            mCountPred[to.getIndex()] = remove(mPred[to.getIndex()], mCountPred[to.getIndex()], from.getIndex());
+        }
+    }
+
+    // Indexes of successors of the node. Only the first outDegree(index) items of the array are valid.
+    public int[] succ(int index) {
+        return mSucc[index];
+    }
+
+    // Indexes of predecessors of the node. Only the first inDegree(index) items of the array are valid.
+    public int[] pred(int index) {
+        return mPred[index];
+    }
+
+    public int outDegree(int index) {
+        return mCountSucc[index];
+    }
+
+    public int inDegree(int index) {
+        return mCountPred[index];
+    }
+
+    static int[] add(int[] array, int count, int value) {
+        if (count == array.length) {
+            array = Arrays.copyOf(array, Math.max(2, count * 2));
         }
+
+        array[count] = value;
+
+        return array;
+    }
+
+    static boolean contains(int[] array, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int remove(int[] array, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (array[i] == value) {
+                System.arraycopy(array, i + 1, array, i, count - i - 1);
+                return count - 1;
+            }
+        }
+
+        return count;
     }
 
 }
@@ -0,0 +1,464 @@
+package bee.lang.translate;
+
+import bee.lang.ir.CompilationContext;
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import bee.lang.translate.frame.Access;
+import bee.lang.translate.frame.Frame;
+import bee.lang.translate.frame.InReg;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+// This class is used to replace calls of small procedures with their bodies (inlining). Only procedures which are called by their names can be inlined:
+// static methods, private methods, calls of methods of the base class through 'super', constructors and procedures '_<class name>_init_fields'.
+// The body of a procedure is copied with new temporary variables and labels. Arguments are moved to new temporary variables of formal arguments,
+// the register of the result is replaced with a new temporary variable and the return label becomes a new label after the body.
+// Arguments are always kept in temporary variables inside of procedures and stack frames have no slots before register allocation,
+// so only temporary variables and labels have to be renamed.
+// A procedure is inlined if its body is small or if it is called only once and its body is not too big. A procedure is never inlined into itself.
+// Calls inside of inlined bodies are inlined too until the depth MAX_DEPTH.
+public class Inliner {
+
+    // Count of nodes of the biggest body which is inlined everywhere
+    private static final int MAX_SIZE = 40;
+    // Count of nodes of the biggest body which is inlined if the procedure is called only once
+    private static final int MAX_SIZE_OF_SINGLE_CALL = 160;
+    private static final int MAX_DEPTH = 3;
+
+    private CompilationContext mContext;
+
+    // Procedures and their bodies before inlining
+    private HashMap<String, ProcedureFragment> mProcedures;
+    private HashMap<String, Integer> mSizes;
+    private HashMap<String, Integer> mCountCalls;
+    // Procedures which are being inlined now
+    private LinkedList<String> mInlinedProcedures;
+    // The body which is copied now replaces a tail call so its tail calls are still the last actions of the caller
+    private boolean isTailCall;
+
+    public Inliner(CompilationContext context) {
+        mContext = context;
+    }
+
+    public void inline(LinkedList<Fragment> fragments) {
+        mProcedures = new HashMap<>();
+        mSizes = new HashMap<>();
+        mCountCalls = new HashMap<>();
+        mInlinedProcedures = new LinkedList<>();
+
+        for (Fragment fragment : fragments) {
+            if (fragment instanceof ProcedureFragment) {
+                ProcedureFragment procedureFragment = (ProcedureFragment) fragment;
+
+                mProcedures.put(procedureFragment.getFrame().getProcedureName(), procedureFragment);
+                mSizes.put(procedureFragment.getFrame().getProcedureName(), countNodes(procedureFragment.getBody()));
+                countCalls(procedureFragment.getBody());
+            }
+        }
+
+        ListIterator<Fragment> iterator = fragments.listIterator();
+
+        while (iterator.hasNext()) {
+            Fragment fragment = iterator.next();
+
+            if (fragment instanceof ProcedureFragment) {
+                ProcedureFragment procedureFragment = (ProcedureFragment) fragment;
+
+                mInlinedProcedures.push(procedureFragment.getFrame().getProcedureName());
+                iterator.set(new ProcedureFragment(inlineStatement(procedureFragment.getBody()), procedureFragment.getFrame()));
+                mInlinedProcedures.pop();
+            }
+        }
+    }
+
+    private IRStatement inlineStatement(IRStatement statement) {
+        if (statement instanceof SEQ) {
+            SEQ seq = (SEQ) statement;
+            return new SEQ(inlineStatement(seq.getLeftStatement()), inlineStatement(seq.getRightStatement()));
+        }
+
+        if (statement instanceof MOVE) {
+            MOVE move = (MOVE) statement;
+            return new MOVE(inlineExpression(move.getDst()), inlineExpression(move.getSrc()));
+        }
+
+        if (statement instanceof EXP) {
+            IRExpression expression = ((EXP) statement).getExpression();
+
+            // The result of the call is not used
+            if ((expression instanceof CALL) && (getInlinedProcedure((CALL) expression) != null)) {
+                CALL call = (CALL) expression;
+                return inlineCall(getInlinedProcedure(call), inlineArguments(call), mContext.newTemp(), call.isTailCall());
+            }
+
+            return new EXP(inlineExpression(expression));
+        }
+
+        if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+            return new CJUMP(cjump.getTypeRelOp(), inlineExpression(cjump.getLeftExpression()), inlineExpression(cjump.getRightExpression()), cjump.getLblTrue(), cjump.getLblFalse());
+        }
+
+        if (statement instanceof JUMP) {
+            JUMP jump = (JUMP) statement;
+            return new JUMP(inlineExpression(jump.getExpression()), jump.getTargets());
+        }
+
+        return statement;
+    }
+
+    private IRExpression inlineExpression(IRExpression expression) {
+        if (expression instanceof CALL) {
+            CALL call = (CALL) expression;
+            ProcedureFragment procedure = getInlinedProcedure(call);
+
+            if (procedure != null) {
+                Temp result = mContext.newTemp();
+                return new ESEQ(inlineCall(procedure, inlineArguments(call), result, call.isTailCall()), new TEMP(result));
+            }
+
+            return new CALL(inlineExpression(call.getFunction()), inlineArguments(call), call.isTailCall());
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+            return new BINOP(binop.getTypeBinOp(), inlineExpression(binop.getLeftExpression()), inlineExpression(binop.getRightExpression()));
+        }
+
+        if (expression instanceof MEM) {
+            return new MEM(inlineExpression(((MEM) expression).getExpression()), ((MEM) expression).isReadOnly());
+        }
+
+        // Both values of a selection have no calls
+        if (expression instanceof SELECT) {
+            SELECT select = (SELECT) expression;
+            return new SELECT(select.getTypeRelOp(), inlineExpression(select.getLeftExpression()), inlineExpression(select.getRightExpression()),
+                    select.getThenExpression(), select.getElseExpression());
+        }
+
+        if (expression instanceof ESEQ) {
+            ESEQ eseq = (ESEQ) expression;
+            return new ESEQ(inlineStatement(eseq.getStatement()), inlineExpression(eseq.getExpression()));
+        }
+
+        return expression;
+    }
+
+    private LinkedList<IRExpression> inlineArguments(CALL call) {
+        LinkedList<IRExpression> args = new LinkedList<>();
+        for (IRExpression arg : call.getArguments()) {
+            args.add(inlineExpression(arg));
+        }
+
+        return args;
+    }
+
+    // Returns the procedure if the call can be replaced with its body or null
+    private ProcedureFragment getInlinedProcedure(CALL call) {
+        if ((!(call.getFunction() instanceof NAME)) || (mInlinedProcedures.size() > MAX_DEPTH)) {
+            return null;
+        }
+
+        String name = ((NAME) call.getFunction()).getLabel().getName();
+        ProcedureFragment procedure = mProcedures.get(name);
+
+        // External functions do not have bodies
+        if ((procedure == null) || (mInlinedProcedures.contains(name))) {
+            return null;
+        }
+
+        int size = mSizes.get(name);
+
+        if ((size > MAX_SIZE) && ((mCountCalls.get(name) > 1) || (size > MAX_SIZE_OF_SINGLE_CALL))) {
+            return null;
+        }
+
+        LinkedList<Access> formalArguments = procedure.getFrame().getFormalArgumentsInFunction();
+
+        if (formalArguments.size() != call.getArguments().size()) {
+            return null;
+        }
+
+        for (Access access : formalArguments) {
+            if (!(access instanceof InReg)) {
+                return null;
+            }
+        }
+
+        return hasMachineRegisters(procedure.getFrame(), procedure.getBody()) ? null : procedure;
+    }
+
+    // The body of the procedure with new temporary variables and labels. The result is moved to the temporary variable 'result'.
+    private IRStatement inlineCall(ProcedureFragment procedure, LinkedList<IRExpression> args, Temp result, boolean isTailCall) {
+        Frame frame = procedure.getFrame();
+
+        HashMap<Temp, Temp> temps = new HashMap<>();
+        temps.put(frame.getRV(), result);
+
+        HashMap<Label, Label> labels = new HashMap<>();
+        collectLabels(procedure.getBody(), labels);
+
+        IRStatement moveArguments = null;
+        ListIterator<IRExpression> argsIterator = args.listIterator();
+
+        for (Access access : frame.getFormalArgumentsInFunction()) {
+            Temp argument = mContext.newTemp();
+            temps.put(((InReg) access).getTemp(), argument);
+
+            IRStatement move = new MOVE(new TEMP(argument), argsIterator.next());
+            moveArguments = (moveArguments == null) ? move : new SEQ(moveArguments, move);
+        }
+
+        this.isTailCall = isTailCall;
+        IRStatement body = copyStatement(procedure.getBody(), temps, labels);
+
+        // Calls inside of the body are inlined too
+        mInlinedProcedures.push(frame.getProcedureName());
+        body = inlineStatement(body);
+        mInlinedProcedures.pop();
+
+        return (moveArguments == null) ? body : new SEQ(moveArguments, body);
+    }
+
+    private void collectLabels(IRStatement statement, HashMap<Label, Label> labels) {
+        if (statement instanceof SEQ) {
+            collectLabels(((SEQ) statement).getLeftStatement(), labels);
+            collectLabels(((SEQ) statement).getRightStatement(), labels);
+        } else if (statement instanceof LABEL) {
+            labels.put(((LABEL) statement).getLabel(), mContext.newLabel());
+        } else {
+            for (IRExpression kid : getExpressions(statement)) {
+                collectLabels(kid, labels);
+            }
+        }
+    }
+
+    private void collectLabels(IRExpression expression, HashMap<Label, Label> labels) {
+        if (expression instanceof ESEQ) {
+            collectLabels(((ESEQ) expression).getStatement(), labels);
+            collectLabels(((ESEQ) expression).getExpression(), labels);
+            return;
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                collectLabels(kid, labels);
+            }
+        }
+    }
+
+    private IRStatement copyStatement(IRStatement statement, HashMap<Temp, Temp> temps, HashMap<Label, Label> labels) {
+        if (statement instanceof SEQ) {
+            SEQ seq = (SEQ) statement;
+            return new SEQ(copyStatement(seq.getLeftStatement(), temps, labels), copyStatement(seq.getRightStatement(), temps, labels));
+        }
+
+        if (statement instanceof LABEL) {
+            return new LABEL(labels.get(((LABEL) statement).getLabel()));
+        }
+
+        if (statement instanceof JUMP) {
+            JUMP jump = (JUMP) statement;
+
+            LinkedList<Label> targets = new LinkedList<>();
+            for (Label target : jump.getTargets()) {
+                targets.add(copyLabel(target, labels));
+            }
+
+            return new JUMP(copyExpression(jump.getExpression(), temps, labels), targets);
+        }
+
+        if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+            return new CJUMP(cjump.getTypeRelOp(), copyExpression(cjump.getLeftExpression(), temps, labels), copyExpression(cjump.getRightExpression(), temps, labels),
+                    copyLabel(cjump.getLblTrue(), labels), copyLabel(cjump.getLblFalse(), labels));
+        }
+
+        if (statement instanceof MOVE) {
+            MOVE move = (MOVE) statement;
+            return new MOVE(copyExpression(move.getDst(), temps, labels), copyExpression(move.getSrc(), temps, labels));
+        }
+
+        if (statement instanceof EXP) {
+            return new EXP(copyExpression(((EXP) statement).getExpression(), temps, labels));
+        }
+
+        return statement;
+    }
+
+    private IRExpression copyExpression(IRExpression expression, HashMap<Temp, Temp> temps, HashMap<Label, Label> labels) {
+        if (expression instanceof TEMP) {
+            Temp temp = ((TEMP) expression).getTemp();
+
+            if (!temps.containsKey(temp)) {
+                temps.put(temp, mContext.newTemp());
+            }
+
+            return new TEMP(temps.get(temp));
+        }
+
+        // Names of procedures and strings are not changed
+        if (expression instanceof NAME) {
+            return new NAME(copyLabel(((NAME) expression).getLabel(), labels));
+        }
+
+        if (expression instanceof ESEQ) {
+            ESEQ eseq = (ESEQ) expression;
+            return new ESEQ(copyStatement(eseq.getStatement(), temps, labels), copyExpression(eseq.getExpression(), temps, labels));
+        }
+
+        // A tail call of the inlined procedure is not the last action of the caller if the inlined call is not a tail call
+        if (expression instanceof CALL) {
+            CALL call = (CALL) expression;
+
+            LinkedList<IRExpression> args = new LinkedList<>();
+            for (IRExpression arg : call.getArguments()) {
+                args.add(copyExpression(arg, temps, labels));
+            }
+
+            return new CALL(copyExpression(call.getFunction(), temps, labels), args, (call.isTailCall()) && (isTailCall));
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids == null) {
+            return expression;
+        }
+
+        LinkedList<IRExpression> newKids = new LinkedList<>();
+        for (IRExpression kid : kids) {
+            newKids.add(copyExpression(kid, temps, labels));
+        }
+
+        return expression.build(newKids);
+    }
+
+    private Label copyLabel(Label label, HashMap<Label, Label> labels) {
+        return labels.containsKey(label) ? labels.get(label) : label;
+    }
+
+    // Machine registers can not be renamed. The register of the result is replaced with a temporary variable.
+    private boolean hasMachineRegisters(Frame frame, IRStatement statement) {
+        if (statement instanceof SEQ) {
+            return (hasMachineRegisters(frame, ((SEQ) statement).getLeftStatement())) || (hasMachineRegisters(frame, ((SEQ) statement).getRightStatement()));
+        }
+
+        for (IRExpression kid : getExpressions(statement)) {
+            if (hasMachineRegisters(frame, kid)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean hasMachineRegisters(Frame frame, IRExpression expression) {
+        if (expression instanceof TEMP) {
+            Temp temp = ((TEMP) expression).getTemp();
+            return (temp != frame.getRV()) && (frame.tempMap(temp) != null);
+        }
+
+        if (expression instanceof ESEQ) {
+            return (hasMachineRegisters(frame, ((ESEQ) expression).getStatement())) || (hasMachineRegisters(frame, ((ESEQ) expression).getExpression()));
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                if (hasMachineRegisters(frame, kid)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private int countNodes(IRStatement statement) {
+        if (statement instanceof SEQ) {
+            return countNodes(((SEQ) statement).getLeftStatement()) + countNodes(((SEQ) statement).getRightStatement());
+        }
+
+        int count = 1;
+
+        for (IRExpression kid : getExpressions(statement)) {
+            count += countNodes(kid);
+        }
+
+        return count;
+    }
+
+    private int countNodes(IRExpression expression) {
+        if (expression instanceof ESEQ) {
+            return 1 + countNodes(((ESEQ) expression).getStatement()) + countNodes(((ESEQ) expression).getExpression());
+        }
+
+        int count = 1;
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                count += countNodes(kid);
+            }
+        }
+
+        return count;
+    }
+
+    private void countCalls(IRStatement statement) {
+        if (statement instanceof SEQ) {
+            countCalls(((SEQ) statement).getLeftStatement());
+            countCalls(((SEQ) statement).getRightStatement());
+            return;
+        }
+
+        for (IRExpression kid : getExpressions(statement)) {
+            countCalls(kid);
+        }
+    }
+
+    // The destination of MOVE is a kid only if it is MEM but a destination like ESEQ(s, MEM(e)) has statements too
+    private LinkedList<IRExpression> getExpressions(IRStatement statement) {
+        if (statement instanceof MOVE) {
+            LinkedList<IRExpression> expressions = new LinkedList<>();
+            expressions.add(((MOVE) statement).getDst());
+            expressions.add(((MOVE) statement).getSrc());
+
+            return expressions;
+        }
+
+        LinkedList<IRExpression> kids = statement.kids();
+
+        return (kids == null) ? new LinkedList<>() : kids;
+    }
+
+    private void countCalls(IRExpression expression) {
+        if ((expression instanceof CALL) && (((CALL) expression).getFunction() instanceof NAME)) {
+            String name = ((NAME) ((CALL) expression).getFunction()).getLabel().getName();
+            Integer count = mCountCalls.get(name);
+            mCountCalls.put(name, (count == null) ? 1 : count + 1);
+        }
+
+        if (expression instanceof ESEQ) {
+            countCalls(((ESEQ) expression).getStatement());
+            countCalls(((ESEQ) expression).getExpression());
+            return;
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                countCalls(kid);
+            }
+        }
+    }
+
+}
@@ -3,10 +3,18 @@ package bee.lang.translate;
 import bee.lang.ir.Temp;
 import bee.lang.util.Pair;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 
+// Edges of the interference graph are not directed. They are kept in a triangular bit matrix (to check quickly if two nodes interfere)
+// and in arrays of indexes of adjacent nodes (to iterate neighbors of a node).
 public abstract class InterferenceGraph extends Graph {
 
+    // The edge between nodes i and j (i > j) is the bit i * (i - 1) / 2 + j
+    private long[] mAdjMatrix;
+    private int[][] mAdjList;
+    private int[] mDegree;
+
     abstract public Node getNode(Temp temp);
 
     abstract public Temp getTemp(Node node);
@@ -17,4 +25,51 @@ public abstract class InterferenceGraph extends Graph {
         return 1;
     }
 
+    // Must be called when all nodes are created and before any edge is added.
+    protected void createEdges() {
+        long countNodes = countNodes();
+
+        mAdjMatrix = new long[(int) ((countNodes * (countNodes - 1) / 2 + 63) / 64)];
+        mAdjList = new int[(int) countNodes][];
+        mDegree = new int[(int) countNodes];
+
+        Arrays.fill(mAdjList, new int[0]);
+    }
+
+    public void addInterference(int node1, int node2) {
+        if ((node1 == node2) || (interferes(node1, node2))) {
+            return;
+        }
+
+        long bit = bitOfEdge(node1, node2);
+        mAdjMatrix[(int) (bit >>> 6)] |= 1L << bit;
+
+        mAdjList[node1] = add(mAdjList[node1], mDegree[node1]++, node2);
+        mAdjList[node2] = add(mAdjList[node2], mDegree[node2]++, node1);
+    }
+
+    public boolean interferes(int node1, int node2) {
+        if (node1 == node2) {
+            return false;
+        }
+
+        long bit = bitOfEdge(node1, node2);
+        return (mAdjMatrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    // Indexes of nodes which interfere with the node. Only the first degree(index) items of the array are valid.
+    public int[] adjacent(int index) {
+        return mAdjList[index];
+    }
+
+    public int degree(int index) {
+        return mDegree[index];
+    }
+
+    private static long bitOfEdge(int node1, int node2) {
+        long i = Math.max(node1, node2);
+        long j = Math.min(node1, node2);
+        return i * (i - 1) / 2 + j;
+    }
+
 }
@@ -0,0 +1,236 @@
+package bee.lang.translate;
+
+import bee.lang.assembly.AsmInstruction;
+import bee.lang.assembly.TempMap;
+import bee.lang.exceptions.CodegenException;
+import bee.lang.exceptions.SelectColorException;
+import bee.lang.ir.Temp;
+import bee.lang.translate.frame.Frame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+// This class is a fast alternative to RegAlloc. It does not build the interference graph. Each temporary variable has a live interval from the first
+// instruction where it is alive to the last one. Intervals are visited in the order of their starts and each of them gets a register which is not used by
+// overlapping intervals. If there is no free register then the interval with the farthest end is spilled.
+// Machine registers are not allocated as intervals. A register can be given to an interval only if this register is not alive and not defined inside the interval.
+public class LinearScanRegAlloc implements TempMap {
+
+    private Frame mFrame;
+    private HashMap<Temp, Temp> mRegistersForTemps;
+    // Temporary variables which are created to load and store spilled temporary variables
+    private HashSet<Temp> mSpillTemps;
+
+    public LinearScanRegAlloc(Frame frame, LinkedList<AsmInstruction> asmInstructions) throws SelectColorException, CodegenException {
+        mFrame = frame;
+
+        mSpillTemps = new HashSet<>();
+
+        while (true) {
+            AsmFlowGraph asmFlowGraph = new AsmFlowGraph(asmInstructions);
+
+            Liveness liveness = new Liveness(asmFlowGraph, false);
+
+            LinkedList<Temp> spills = allocate(liveness, asmFlowGraph.countNodes());
+
+            if (spills.isEmpty()) {
+                break;
+            }
+
+            for (Temp temp : spills) {
+                RegAlloc.rewriteProgram(frame, asmInstructions, temp, mSpillTemps);
+            }
+        }
+
+        RegAlloc.removeRedundantMoves(asmInstructions, this);
+    }
+
+    // Returns temporary variables which must be spilled
+    private LinkedList<Temp> allocate(Liveness liveness, int countInstructions) throws SelectColorException {
+        mRegistersForTemps = new HashMap<>();
+
+        int countTemps = liveness.countTemps();
+
+        int[] starts = new int[countTemps];
+        int[] ends = new int[countTemps];
+
+        Arrays.fill(starts, Integer.MAX_VALUE);
+        Arrays.fill(ends, -1);
+
+        // Positions where each machine register is alive (before the instruction) or defined
+        LinkedList<Temp> registers = mFrame.registers();
+        HashMap<Temp, Integer> registerIndexes = new HashMap<>();
+        for (Temp register : registers) {
+            registerIndexes.put(register, registerIndexes.size());
+        }
+
+        int[] registerOfTemp = new int[countTemps];
+        ArrayList<ArrayList<Integer>> liveInPositions = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> defPositions = new ArrayList<>();
+
+        for (int i = 0; i < registers.size(); i++) {
+            liveInPositions.add(new ArrayList<>());
+            defPositions.add(new ArrayList<>());
+        }
+
+        for (int temp = 0; temp < countTemps; temp++) {
+            Integer index = registerIndexes.get(liveness.temp(temp));
+            registerOfTemp[temp] = (index == null) ? -1 : index;
+        }
+
+        for (int i = 0; i < countInstructions; i++) {
+            long[] liveIn = liveness.liveIn(i);
+
+            for (int word = 0; word < liveIn.length; word++) {
+                long bits = liveIn[word];
+                while (bits != 0) {
+                    int temp = word * 64 + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    if (registerOfTemp[temp] != -1) {
+                        liveInPositions.get(registerOfTemp[temp]).add(i);
+                    }
+
+                    starts[temp] = Math.min(starts[temp], i);
+                    ends[temp] = Math.max(ends[temp], i);
+                }
+            }
+
+            for (int temp : liveness.defs(i)) {
+                if (registerOfTemp[temp] != -1) {
+                    defPositions.get(registerOfTemp[temp]).add(i);
+                }
+
+                starts[temp] = Math.min(starts[temp], i);
+                ends[temp] = Math.max(ends[temp], i);
+            }
+        }
+
+        // Intervals of temporary variables which must get registers sorted by their starts
+        ArrayList<Integer> intervals = new ArrayList<>();
+
+        for (int temp = 0; temp < countTemps; temp++) {
+            if ((mFrame.tempMap(liveness.temp(temp)) == null) && (ends[temp] != -1)) {
+                intervals.add(temp);
+            }
+        }
+
+        intervals.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer temp1, Integer temp2) {
+                return Integer.compare(starts[temp1], starts[temp2]);
+            }
+        });
+
+        LinkedList<Temp> spills = new LinkedList<>();
+
+        // Intervals which have registers sorted by their ends
+        ArrayList<Integer> active = new ArrayList<>();
+        int[] registerOfInterval = new int[countTemps];
+        boolean[] isFreeRegister = new boolean[registers.size()];
+        Arrays.fill(isFreeRegister, true);
+
+        for (int temp : intervals) {
+            // Free registers of intervals which end before this interval
+            while ((!active.isEmpty()) && (ends[active.get(0)] < starts[temp])) {
+                isFreeRegister[registerOfInterval[active.remove(0)]] = true;
+            }
+
+            int register = -1;
+
+            for (int i = 0; i < registers.size(); i++) {
+                if ((isFreeRegister[i]) && (isAvailable(liveInPositions.get(i), defPositions.get(i), starts[temp], ends[temp]))) {
+                    register = i;
+                    break;
+                }
+            }
+
+            if (register == -1) {
+                // Spill the interval with the farthest end which can give its register to this interval.
+                // Temporary variables which are created for spilled ones can not be spilled again.
+                int spilledIndex = -1;
+
+                for (int i = active.size() - 1; i >= 0; i--) {
+                    int activeTemp = active.get(i);
+
+                    if (ends[activeTemp] <= ends[temp]) {
+                        break;
+                    }
+
+                    if ((!mSpillTemps.contains(liveness.temp(activeTemp))) &&
+                            (isAvailable(liveInPositions.get(registerOfInterval[activeTemp]), defPositions.get(registerOfInterval[activeTemp]), starts[temp], ends[temp]))) {
+                        spilledIndex = i;
+                        break;
+                    }
+                }
+
+                if (spilledIndex == -1) {
+                    if (mSpillTemps.contains(liveness.temp(temp))) {
+                        throw new SelectColorException(liveness.temp(temp));
+                    }
+
+                    spills.add(liveness.temp(temp));
+                    continue;
+                }
+
+                int spilledTemp = active.remove(spilledIndex);
+                spills.add(liveness.temp(spilledTemp));
+                mRegistersForTemps.remove(liveness.temp(spilledTemp));
+
+                register = registerOfInterval[spilledTemp];
+            }
+
+            isFreeRegister[register] = false;
+            registerOfInterval[temp] = register;
+            mRegistersForTemps.put(liveness.temp(temp), registers.get(register));
+
+            int position = 0;
+            while ((position < active.size()) && (ends[active.get(position)] <= ends[temp])) {
+                position++;
+            }
+
+            active.add(position, temp);
+        }
+
+        return spills;
+    }
+
+    // The register can be used by the temporary variable if the register is not alive after the definition of the temporary variable and it is not
+    // defined while the temporary variable is alive. Even if the temporary variable is never used its definition must not change the register.
+    private boolean isAvailable(ArrayList<Integer> liveInPositions, ArrayList<Integer> defPositions, int start, int end) {
+        return (!hasPosition(liveInPositions, start + 1, Math.max(end, start + 1))) && (!hasPosition(defPositions, start, Math.max(end - 1, start)));
+    }
+
+    // Checks if the sorted list has a position from the range [from, to]
+    private boolean hasPosition(ArrayList<Integer> positions, int from, int to) {
+        if (from > to) {
+            return false;
+        }
+
+        int low = 0;
+        int high = positions.size();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions.get(middle) < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return (low < positions.size()) && (positions.get(low) <= to);
+    }
+
+    @Override
+    public String tempMap(Temp temp) {
+        Temp register = mRegistersForTemps.get(temp);
+
+        return mFrame.tempMap((register == null) ? temp : register);
+    }
+
+}
@@ -8,128 +8,388 @@ import java.util.*;
 
 // This class is used to compute live-in and live-out variables for each instructions. Live-in variables live before instruction and live-out variables live after instruction.
 // After computing these variables this class creates an interference graph for register allocator. Each node of this graph is a temporary variable and each edge of this graph represents simultaneously life of two temporary variables.
+// Each temporary variable has a dense number so sets of temporary variables are bit vectors. Liveness is computed for basic blocks of instructions by a worklist algorithm
+// and then it is propagated to instructions inside of each basic block.
 public class Liveness extends InterferenceGraph {
 
     private FlowGraph mFlowGraph;
-    private HashMap<Node, Temp> mTempNode;
-    private HashMap<Temp, Node> mReverseTempNode;
     private LinkedList<Pair<Temp, Temp>> mListMoves;
-    private HashMap<Node, HashSet<Temp>> mLiveIn;
-    private HashMap<Node, HashSet<Temp>> mLiveOut;
+    // Dense numbers of temporary variables. The number of a temporary variable is the index of its node.
+    private HashMap<Temp, Integer> mTempIndexes;
+    private ArrayList<Temp> mTemps;
+    // Numbers of temporary variables which are defined and used by each instruction of the flow graph
+    private int[][] mDefs;
+    private int[][] mUses;
+    // Live-in and live-out temporary variables of each instruction
+    private long[][] mLiveIn;
+    private long[][] mLiveOut;
+    private int[] mSpillCosts;
+    private int[] mLengthsOfLiveRanges;
+
+    // Uses and definitions of temporary variables inside of loops deeper than this value have the same cost of spilling.
+    private static final int MAX_LOOP_DEPTH = 6;
 
     public Liveness(FlowGraph flowGraph) {
-        mFlowGraph = flowGraph;
+        this(flowGraph, true);
+    }
 
-        mLiveIn = new HashMap<>();
-        mLiveOut = new HashMap<>();
+    // The linear scan allocator needs only live temporary variables so creation of the interference graph can be skipped
+    public Liveness(FlowGraph flowGraph, boolean isInterferenceGraphNeeded) {
+        mFlowGraph = flowGraph;
 
-        mTempNode = new HashMap<>();
-        mReverseTempNode = new HashMap<>();
         mListMoves = new LinkedList<>();
 
-        // Create a table of live-in and live-out variables.
-        HashMap<Node, HashSet<Temp>> def = new HashMap<>();
-        HashMap<Node, HashSet<Temp>> use = new HashMap<>();
+        mTempIndexes = new HashMap<>();
+        mTemps = new ArrayList<>();
+
+        int countInstructions = flowGraph.countNodes();
+
+        mDefs = new int[countInstructions][];
+        mUses = new int[countInstructions][];
+
+        for (int i = 0; i < countInstructions; i++) {
+            Node node = flowGraph.node(i);
 
-        for (Node node : flowGraph.nodes()) {
             LinkedList<Temp> defTemps = flowGraph.def(node);
             LinkedList<Temp> useTemps = flowGraph.use(node);
-            def.put(node, new HashSet<>(defTemps));
-            use.put(node, new HashSet<>(useTemps));
+
+            mDefs[i] = indexesOfTemps(defTemps);
+            mUses[i] = indexesOfTemps(useTemps);
+
             if (mFlowGraph.isMove(node)) {
                 mListMoves.add(new Pair<>(useTemps.getFirst(), defTemps.getFirst()));
             }
         }
 
-        HashMap<Node, HashSet<Temp>> _liveIn = new HashMap<>();
-        HashMap<Node, HashSet<Temp>> _liveOut = new HashMap<>();
+        int countWords = (mTemps.size() + 63) / 64;
 
-        for (Node node : flowGraph.nodes()) {
-            mLiveIn.put(node, new HashSet<>());
-            mLiveOut.put(node, new HashSet<>());
-            _liveIn.put(node, new HashSet<>());
-            _liveOut.put(node, new HashSet<>());
+        computeLiveness(countWords);
+
+        if (!isInterferenceGraphNeeded) {
+            return;
+        }
+
+        // Each temporary variable is a node of the interference graph
+        for (int i = 0; i < mTemps.size(); i++) {
+            newNode();
         }
 
-        do {
-            for (Node node : flowGraph.nodes()) {
-                _liveIn.get(node).clear();
-                _liveOut.get(node).clear();
-                _liveIn.get(node).addAll(mLiveIn.get(node));
-                _liveOut.get(node).addAll(mLiveOut.get(node));
-                mLiveIn.get(node).addAll(use.get(node));
-                HashSet<Temp> newLiveOut = new HashSet<>(mLiveOut.get(node));
-                newLiveOut.removeAll(def.get(node));
-                mLiveIn.get(node).addAll(newLiveOut);
-                for (Node s : node.succ()) {
-                    mLiveOut.get(node).addAll(mLiveIn.get(s));
+        createEdges();
+
+        // Compute the cost of spilling for each temporary variable. Each use or definition inside of a loop costs ten times more than outside of this loop.
+        mSpillCosts = new int[mTemps.size()];
+        mLengthsOfLiveRanges = new int[mTemps.size()];
+
+        for (int i = 0; i < countInstructions; i++) {
+            int cost = (int) Math.pow(10, Math.min(flowGraph.loopDepth(flowGraph.node(i)), MAX_LOOP_DEPTH));
+
+            for (int temp : mDefs[i]) {
+                mSpillCosts[temp] += cost;
+            }
+
+            for (int temp : mUses[i]) {
+                mSpillCosts[temp] += cost;
+            }
+
+            long[] liveOut = mLiveOut[i];
+            for (int word = 0; word < countWords; word++) {
+                long bits = liveOut[word];
+                while (bits != 0) {
+                    mLengthsOfLiveRanges[word * 64 + Long.numberOfTrailingZeros(bits)]++;
+                    bits &= bits - 1;
                 }
             }
-        } while (!((isEqualMaps(mLiveIn, _liveIn)) && (isEqualMaps(mLiveOut, _liveOut))));
+        }
 
         // Create an interference graph. Each node of the graph represents a variable. Each edge of the graph represents interfere variables which must be allocated in different registers.
-        for (Node node : flowGraph.nodes()) {
-            HashSet<Temp> defTemps = def.get(node);
-            HashSet<Temp> liveOutTemps = mLiveOut.get(node);
-
-            for (Temp defTemp : defTemps) {
-                Node nodeDefTemp = mReverseTempNode.get(defTemp);
-                if (nodeDefTemp == null) {
-                    nodeDefTemp = newNode();
-                    mTempNode.put(nodeDefTemp, defTemp);
-                    mReverseTempNode.put(defTemp, nodeDefTemp);
+        for (int i = 0; i < countInstructions; i++) {
+            boolean isMove = flowGraph.isMove(flowGraph.node(i));
+            long[] liveOut = mLiveOut[i];
+
+            for (int defTemp : mDefs[i]) {
+                for (int word = 0; word < countWords; word++) {
+                    long bits = liveOut[word];
+                    while (bits != 0) {
+                        int liveOutTemp = word * 64 + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+
+                        // A source of a move does not interfere with a destination of this move
+                        if ((defTemp != liveOutTemp) && ((!isMove) || (!contains(mUses[i], liveOutTemp)))) {
+                            addInterference(defTemp, liveOutTemp);
+                        }
+                    }
                 }
+            }
+        }
+    }
 
-                for (Temp liveOutTemp : liveOutTemps) {
-                    if (defTemp != liveOutTemp) {
-                        if (flowGraph.isMove(node)) {
-                            if (!use.get(node).contains(liveOutTemp)) {
-                                Node nodeLiveOutTemp = mReverseTempNode.get(liveOutTemp);
-                                if (nodeLiveOutTemp == null) {
-                                    nodeLiveOutTemp = newNode();
-                                    mTempNode.put(nodeLiveOutTemp, liveOutTemp);
-                                    mReverseTempNode.put(liveOutTemp, nodeLiveOutTemp);
-                                }
-
-                                addEdge(nodeDefTemp, nodeLiveOutTemp);
-                            }
-                        } else {
-                            Node nodeLiveOutTemp = mReverseTempNode.get(liveOutTemp);
-                            if (nodeLiveOutTemp == null) {
-                                nodeLiveOutTemp = newNode();
-                                mTempNode.put(nodeLiveOutTemp, liveOutTemp);
-                                mReverseTempNode.put(liveOutTemp, nodeLiveOutTemp);
-                            }
-
-                            addEdge(nodeDefTemp, nodeLiveOutTemp);
-                        }
+    private int[] indexesOfTemps(LinkedList<Temp> temps) {
+        int[] result = new int[temps.size()];
+
+        int i = 0;
+        for (Temp temp : temps) {
+            Integer index = mTempIndexes.get(temp);
+            if (index == null) {
+                index = mTemps.size();
+                mTempIndexes.put(temp, index);
+                mTemps.add(temp);
+            }
+
+            result[i++] = index;
+        }
+
+        return result;
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int item : array) {
+            if (item == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // A basic block is the longest sequence of instructions where only the first instruction has predecessors from outside and only the last
+    // instruction has successors outside. Live-in temporary variables of the block are the used temporary variables which are not defined before
+    // in the block (gen) and the live-out temporary variables which are not defined in the block (kill).
+    private void computeLiveness(int countWords) {
+        int countInstructions = mFlowGraph.countNodes();
+
+        // Find the first instruction of each basic block
+        int[] blockOfInstruction = new int[countInstructions];
+        ArrayList<Integer> firstInstructions = new ArrayList<>();
+
+        for (int i = 0; i < countInstructions; i++) {
+            boolean isFirst = true;
+
+            if (i > 0) {
+                isFirst = !((mFlowGraph.inDegree(i) == 1) && (mFlowGraph.pred(i)[0] == i - 1) && (mFlowGraph.outDegree(i - 1) == 1));
+            }
+
+            if (isFirst) {
+                firstInstructions.add(i);
+            }
+
+            blockOfInstruction[i] = firstInstructions.size() - 1;
+        }
+
+        int countBlocks = firstInstructions.size();
+
+        int[] firstInstruction = new int[countBlocks];
+        int[] lastInstruction = new int[countBlocks];
+
+        for (int block = 0; block < countBlocks; block++) {
+            firstInstruction[block] = firstInstructions.get(block);
+            lastInstruction[block] = (block + 1 < countBlocks) ? firstInstructions.get(block + 1) - 1 : countInstructions - 1;
+        }
+
+        // Successors and predecessors of basic blocks
+        int[][] succBlocks = new int[countBlocks][];
+        ArrayList<ArrayList<Integer>> predBlocks = new ArrayList<>();
+
+        for (int block = 0; block < countBlocks; block++) {
+            predBlocks.add(new ArrayList<>());
+        }
+
+        for (int block = 0; block < countBlocks; block++) {
+            int last = lastInstruction[block];
+            int[] succ = mFlowGraph.succ(last);
+
+            succBlocks[block] = new int[mFlowGraph.outDegree(last)];
+
+            for (int i = 0; i < succBlocks[block].length; i++) {
+                int succBlock = blockOfInstruction[succ[i]];
+                succBlocks[block][i] = succBlock;
+                predBlocks.get(succBlock).add(block);
+            }
+        }
+
+        // Gen and kill sets of basic blocks
+        long[][] gen = new long[countBlocks][countWords];
+        long[][] kill = new long[countBlocks][countWords];
+
+        for (int block = 0; block < countBlocks; block++) {
+            for (int i = lastInstruction[block]; i >= firstInstruction[block]; i--) {
+                for (int temp : mDefs[i]) {
+                    clearBit(gen[block], temp);
+                    setBit(kill[block], temp);
+                }
+
+                for (int temp : mUses[i]) {
+                    setBit(gen[block], temp);
+                }
+            }
+        }
+
+        // Liveness is a backward problem so blocks are visited in post-order (reverse post-order of the reversed graph).
+        // Blocks which are not reachable from the first block are visited at the end.
+        int[] order = postOrder(succBlocks, countBlocks);
+
+        long[][] blockLiveIn = new long[countBlocks][countWords];
+        long[][] blockLiveOut = new long[countBlocks][countWords];
+
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        boolean[] isInWorklist = new boolean[countBlocks];
+
+        for (int block : order) {
+            worklist.add(block);
+            isInWorklist[block] = true;
+        }
+
+        while (!worklist.isEmpty()) {
+            int block = worklist.poll();
+            isInWorklist[block] = false;
+
+            long[] liveOut = blockLiveOut[block];
+            long[] liveIn = blockLiveIn[block];
+
+            for (int succBlock : succBlocks[block]) {
+                long[] succLiveIn = blockLiveIn[succBlock];
+                for (int word = 0; word < countWords; word++) {
+                    liveOut[word] |= succLiveIn[word];
+                }
+            }
+
+            boolean isChanged = false;
+
+            for (int word = 0; word < countWords; word++) {
+                long newLiveIn = gen[block][word] | (liveOut[word] & ~kill[block][word]);
+                if (newLiveIn != liveIn[word]) {
+                    liveIn[word] = newLiveIn;
+                    isChanged = true;
+                }
+            }
+
+            if (isChanged) {
+                for (int predBlock : predBlocks.get(block)) {
+                    if (!isInWorklist[predBlock]) {
+                        worklist.add(predBlock);
+                        isInWorklist[predBlock] = true;
                     }
                 }
             }
         }
+
+        // Propagate liveness to instructions of each basic block
+        mLiveIn = new long[countInstructions][];
+        mLiveOut = new long[countInstructions][];
+
+        for (int block = 0; block < countBlocks; block++) {
+            long[] live = blockLiveOut[block].clone();
+
+            for (int i = lastInstruction[block]; i >= firstInstruction[block]; i--) {
+                mLiveOut[i] = live.clone();
+
+                for (int temp : mDefs[i]) {
+                    clearBit(live, temp);
+                }
+
+                for (int temp : mUses[i]) {
+                    setBit(live, temp);
+                }
+
+                mLiveIn[i] = live.clone();
+            }
+        }
     }
 
-    private boolean isEqualMaps(HashMap<Node, HashSet<Temp>> map1, HashMap<Node, HashSet<Temp>> map2) {
-        for (Node node : mFlowGraph.nodes()) {
-            HashSet<Temp> set1 = map1.get(node);
-            HashSet<Temp> set2 = map2.get(node);
+    private static int[] postOrder(int[][] succBlocks, int countBlocks) {
+        int[] order = new int[countBlocks];
+        int countOrdered = 0;
 
-            if ((set1.size() != set2.size()) || (!set1.containsAll(set2))) {
-                return false;
+        boolean[] isVisited = new boolean[countBlocks];
+
+        // Stack of blocks and positions of the next successors
+        int[] stack = new int[countBlocks];
+        int[] nextSucc = new int[countBlocks];
+
+        for (int root = 0; root < countBlocks; root++) {
+            if (isVisited[root]) {
+                continue;
+            }
+
+            int top = 0;
+            stack[top] = root;
+            nextSucc[top] = 0;
+            isVisited[root] = true;
+
+            while (top >= 0) {
+                int block = stack[top];
+
+                if (nextSucc[top] < succBlocks[block].length) {
+                    int succBlock = succBlocks[block][nextSucc[top]++];
+                    if (!isVisited[succBlock]) {
+                        isVisited[succBlock] = true;
+                        top++;
+                        stack[top] = succBlock;
+                        nextSucc[top] = 0;
+                    }
+                } else {
+                    order[countOrdered++] = block;
+                    top--;
+                }
             }
         }
 
-        return true;
+        return order;
+    }
+
+    private static void setBit(long[] set, int index) {
+        set[index >>> 6] |= 1L << index;
+    }
+
+    private static void clearBit(long[] set, int index) {
+        set[index >>> 6] &= ~(1L << index);
+    }
+
+    private LinkedList<Temp> toTemps(long[] set) {
+        LinkedList<Temp> result = new LinkedList<>();
+
+        for (int word = 0; word < set.length; word++) {
+            long bits = set[word];
+            while (bits != 0) {
+                result.add(mTemps.get(word * 64 + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+
+        return result;
+    }
+
+    public int countTemps() {
+        return mTemps.size();
+    }
+
+    public Temp temp(int index) {
+        return mTemps.get(index);
+    }
+
+    // Numbers of temporary variables which are defined by the instruction
+    public int[] defs(int instruction) {
+        return mDefs[instruction];
+    }
+
+    // Numbers of temporary variables which are used by the instruction
+    public int[] uses(int instruction) {
+        return mUses[instruction];
+    }
+
+    // Bit vector of temporary variables which are alive before the instruction
+    public long[] liveIn(int instruction) {
+        return mLiveIn[instruction];
     }
 
     @Override
     public Node getNode(Temp temp) {
-        return mReverseTempNode.get(temp);
+        Integer index = mTempIndexes.get(temp);
+        return (index == null) ? null : node(index);
     }
 
     @Override
     public Temp getTemp(Node node) {
-        return mTempNode.get(node);
+        return mTemps.get(node.getIndex());
     }
 
     @Override
@@ -137,10 +397,25 @@ public class Liveness extends InterferenceGraph {
         return mListMoves;
     }
 
+    @Override
+    public int spillCost(Node node) {
+        int temp = node.getIndex();
+
+        // A temporary variable which is alive only between two neighboring instructions (e.g. a temporary variable created for a spilled one) can not be spilled.
+        // Loading and storing of such temporary variable does not reduce count of simultaneously live temporary variables.
+        if (mLengthsOfLiveRanges[temp] <= 1) {
+            return Integer.MAX_VALUE;
+        }
+
+        return mSpillCosts[temp];
+    }
+
     private void printNodes(TempMap tempMap) {
         AsmFlowGraph asmFlowGraph = (AsmFlowGraph) mFlowGraph;
 
         for (Node node : asmFlowGraph.nodes()) {
+            int index = node.getIndex();
+
             ArrayList<String> defList = new ArrayList<>();
             ArrayList<String> useList = new ArrayList<>();
             ArrayList<String> liveInList = new ArrayList<>();
@@ -156,12 +431,12 @@ public class Liveness extends InterferenceGraph {
                 useList.add(tempName == null ? temp.toString() : tempName);
             }
 
-            for (Temp temp : mLiveIn.get(node)) {
+            for (Temp temp : toTemps(mLiveIn[index])) {
                 String tempName = tempMap.tempMap(temp);
                 liveInList.add(tempName == null ? temp.toString() : tempName);
             }
 
-            for (Temp temp : mLiveOut.get(node)) {
+            for (Temp temp : toTemps(mLiveOut[index])) {
                 String tempName = tempMap.tempMap(temp);
                 liveOutList.add(tempName == null ? temp.toString() : tempName);
             }
@@ -175,21 +450,21 @@ public class Liveness extends InterferenceGraph {
 
         StringBuilder sb = new StringBuilder();
 
-        for (Node node : nodes()) {
-            Temp temp = mTempNode.get(node);
+        for (int i = 0; i < countNodes(); i++) {
+            Temp temp = mTemps.get(i);
             String tempName = tempMap.tempMap(temp);
             sb.append(tempName == null ? temp.toString() : tempName);
             sb.append(" -> ");
 
-            LinkedList<Node> listOfAdjNodes = node.adj();
+            int[] adjNodes = adjacent(i);
 
-            sb.append("(" + listOfAdjNodes.size() + ") ");
+            sb.append("(" + degree(i) + ") ");
 
-            for (Node adjNode : listOfAdjNodes) {
-                Temp _temp = mTempNode.get(adjNode);
+            for (int j = 0; j < degree(i); j++) {
+                Temp _temp = mTemps.get(adjNodes[j]);
                 tempName = tempMap.tempMap(_temp);
                 sb.append(tempName == null ? _temp.toString() : tempName);
-                if (listOfAdjNodes.getLast() != adjNode) {
+                if (j != degree(i) - 1) {
                     sb.append(", ");
                 }
             }
@@ -0,0 +1,310 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import bee.lang.translate.frame.Frame;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.Map;
+
+// This class is used to remove repeated computations inside of basic blocks (local common subexpression elimination).
+// Each expression without calls gets a key. Temporary variables in keys have versions which are changed by each definition so a key always means
+// the same value. A temporary variable which keeps the value of a key is used instead of the next computation with the same key.
+// An expression is saved in a new temporary variable only if its key is met several times in the block.
+// Stores and calls can change memory so all keys with loads are forgotten after them (except read-only loads). Temporary variables are not changed by calls.
+// Addresses like BINOP(PLUS, e, CONST(n)) inside of MEM are not saved because they are a part of the instructions 'lw' and 'sw'.
+public class LocalValueNumbering {
+
+    private Frame mFrame;
+
+    // Versions of temporary variables
+    private HashMap<Temp, Integer> mVersions;
+    // Keys of computed expressions and temporary variables which keep their values
+    private HashMap<String, Temp> mValues;
+    // How many times each key is met in the block
+    private HashMap<String, Integer> mCountKeys;
+    // Statements which save values of expressions before the current statement
+    private LinkedList<IRStatement> mNewStatements;
+
+    public LocalValueNumbering(Frame frame) {
+        mFrame = frame;
+    }
+
+    public void optimize(LinkedList<BasicBlock> basicBlocks) {
+        for (BasicBlock basicBlock : basicBlocks) {
+            optimize(basicBlock);
+        }
+    }
+
+    private void optimize(BasicBlock basicBlock) {
+        // Count keys
+        mVersions = new HashMap<>();
+        mCountKeys = new HashMap<>();
+
+        for (IRStatement statement : basicBlock.getStatements()) {
+            LinkedList<IRExpression> kids = statement.kids();
+
+            if (kids != null) {
+                for (IRExpression expression : kids) {
+                    // The destination of a store is not a load
+                    countKeys((expression == getStoreDst(statement)) ? ((MEM) expression).getExpression() : expression);
+                }
+            }
+
+            Temp dst = getDefinedTemp(statement);
+            if (dst != null) {
+                newVersion(dst);
+            }
+        }
+
+        // Replace repeated expressions
+        mVersions = new HashMap<>();
+        mValues = new HashMap<>();
+
+        ListIterator<IRStatement> iterator = basicBlock.getStatements().listIterator();
+
+        while (iterator.hasNext()) {
+            IRStatement statement = iterator.next();
+
+            mNewStatements = new LinkedList<>();
+
+            IRStatement newStatement = rewriteStatement(statement);
+
+            iterator.remove();
+
+            for (IRStatement saveValue : mNewStatements) {
+                iterator.add(saveValue);
+            }
+
+            iterator.add(newStatement);
+        }
+    }
+
+    private IRStatement rewriteStatement(IRStatement statement) {
+        if (statement instanceof MOVE) {
+            MOVE move = (MOVE) statement;
+
+            if (move.getDst() instanceof TEMP) {
+                Temp dst = ((TEMP) move.getDst()).getTemp();
+
+                if (move.getSrc() instanceof CALL) {
+                    IRExpression call = rewriteCall((CALL) move.getSrc());
+                    forgetMemory();
+                    newVersion(dst);
+                    return new MOVE(move.getDst(), call);
+                }
+
+                // Constants and copies are not values of keys. Otherwise different variables would be copies of each other and could not be coalesced.
+                if ((!(move.getSrc() instanceof BINOP)) && (!(move.getSrc() instanceof MEM))) {
+                    newVersion(dst);
+                    return move;
+                }
+
+                // The whole source is not saved in a new temporary variable because the destination keeps its value
+                String key = getKey(move.getSrc());
+                String dstKey = getKey(move.getDst());
+                IRExpression src = (mValues.containsKey(key)) ? new TEMP(mValues.get(key)) : rewriteKids(move.getSrc());
+
+                newVersion(dst);
+
+                // t = t + 1 does not keep the value of the key because the key refers to the old value of t
+                if ((key != null) && (isValueTemp(dst)) && (!key.contains(dstKey))) {
+                    mValues.put(key, dst);
+                }
+
+                return new MOVE(move.getDst(), src);
+            }
+
+            if (move.getDst() instanceof MEM) {
+                MEM mem = (MEM) move.getDst();
+                IRExpression address = rewriteAddress(mem.getExpression());
+                IRExpression src = rewrite(move.getSrc());
+
+                forgetMemory();
+
+                // The next load from the same address gets the stored value
+                String key = getKey(mem);
+                if ((key != null) && (src instanceof TEMP) && (isValueTemp(((TEMP) src).getTemp()))) {
+                    mValues.put(key, ((TEMP) src).getTemp());
+                }
+
+                return new MOVE(new MEM(address), src);
+            }
+        }
+
+        if ((statement instanceof EXP) && (((EXP) statement).getExpression() instanceof CALL)) {
+            IRExpression call = rewriteCall((CALL) ((EXP) statement).getExpression());
+            forgetMemory();
+            return new EXP(call);
+        }
+
+        if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+            return new CJUMP(cjump.getTypeRelOp(), rewrite(cjump.getLeftExpression()), rewrite(cjump.getRightExpression()), cjump.getLblTrue(), cjump.getLblFalse());
+        }
+
+        return statement;
+    }
+
+    private IRExpression rewriteCall(CALL call) {
+        LinkedList<IRExpression> args = new LinkedList<>();
+        for (IRExpression arg : call.getArguments()) {
+            args.add(rewrite(arg));
+        }
+
+        return new CALL(rewrite(call.getFunction()), args, call.isTailCall());
+    }
+
+    // Returns the expression which uses saved values
+    private IRExpression rewrite(IRExpression expression) {
+        String key = getKey(expression);
+
+        if ((key == null) || (expression instanceof TEMP) || (expression instanceof CONST) || (expression instanceof NAME)) {
+            return expression;
+        }
+
+        Temp value = mValues.get(key);
+        if (value != null) {
+            return new TEMP(value);
+        }
+
+        IRExpression newExpression = rewriteKids(expression);
+
+        if (mCountKeys.get(key) > 1) {
+            Temp temp = mFrame.getContext().newTemp();
+            mNewStatements.add(new MOVE(new TEMP(temp), newExpression));
+            mValues.put(key, temp);
+            return new TEMP(temp);
+        }
+
+        return newExpression;
+    }
+
+    private IRExpression rewriteKids(IRExpression expression) {
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+            return new BINOP(binop.getTypeBinOp(), rewrite(binop.getLeftExpression()), rewrite(binop.getRightExpression()));
+        }
+
+        if (expression instanceof MEM) {
+            return new MEM(rewriteAddress(((MEM) expression).getExpression()), ((MEM) expression).isReadOnly());
+        }
+
+        return expression;
+    }
+
+    // BINOP(PLUS, e, CONST(n)) is kept in MEM
+    private IRExpression rewriteAddress(IRExpression address) {
+        if ((address instanceof BINOP) && (((BINOP) address).getTypeBinOp() == TypeBinOp.PLUS) && (((BINOP) address).getRightExpression() instanceof CONST)) {
+            BINOP binop = (BINOP) address;
+            return new BINOP(TypeBinOp.PLUS, rewrite(binop.getLeftExpression()), binop.getRightExpression());
+        }
+
+        return rewrite(address);
+    }
+
+    private void countKeys(IRExpression expression) {
+        String key = getKey(expression);
+
+        if ((key != null) && ((expression instanceof BINOP) || (expression instanceof MEM))) {
+            Integer count = mCountKeys.get(key);
+            mCountKeys.put(key, (count == null) ? 1 : count + 1);
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                countKeys(kid);
+            }
+        }
+    }
+
+    // Expressions with calls do not have keys
+    private String getKey(IRExpression expression) {
+        if (expression instanceof TEMP) {
+            Temp temp = ((TEMP) expression).getTemp();
+            Integer version = mVersions.get(temp);
+            return "[" + temp + "#" + ((version == null) ? 0 : version) + "]";
+        }
+
+        if (expression instanceof CONST) {
+            return String.valueOf(((CONST) expression).getValue());
+        }
+
+        if (expression instanceof NAME) {
+            return ((NAME) expression).getLabel().getName();
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+
+            String left = getKey(binop.getLeftExpression());
+            String right = getKey(binop.getRightExpression());
+
+            return ((left == null) || (right == null)) ? null : "(" + left + binop.getTypeBinOp() + right + ")";
+        }
+
+        if (expression instanceof MEM) {
+            String address = getKey(((MEM) expression).getExpression());
+
+            if (address == null) {
+                return null;
+            }
+
+            // Read-only loads are not forgotten after stores and calls
+            return (((MEM) expression).isReadOnly() ? "ROM" : "MEM") + address;
+        }
+
+        return null;
+    }
+
+    private MEM getStoreDst(IRStatement statement) {
+        if ((statement instanceof MOVE) && (((MOVE) statement).getDst() instanceof MEM)) {
+            return (MEM) ((MOVE) statement).getDst();
+        }
+
+        return null;
+    }
+
+    private Temp getDefinedTemp(IRStatement statement) {
+        if ((statement instanceof MOVE) && (((MOVE) statement).getDst() instanceof TEMP)) {
+            return ((TEMP) ((MOVE) statement).getDst()).getTemp();
+        }
+
+        return null;
+    }
+
+    // The definition changes the version of the temporary variable. Values which are kept in it are forgotten.
+    private void newVersion(Temp temp) {
+        Integer version = mVersions.get(temp);
+        mVersions.put(temp, (version == null) ? 1 : version + 1);
+
+        if (mValues != null) {
+            Iterator<Map.Entry<String, Temp>> iterator = mValues.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue() == temp) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private void forgetMemory() {
+        Iterator<Map.Entry<String, Temp>> iterator = mValues.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey().contains("MEM")) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Machine registers (for example the register of the result) are changed by calls so they can not keep values
+    private boolean isValueTemp(Temp temp) {
+        return mFrame.tempMap(temp) == null;
+    }
+
+}
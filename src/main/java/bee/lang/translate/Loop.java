@@ -0,0 +1,158 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Label;
+import bee.lang.ir.tree.*;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+// A natural loop. An edge from a block to a block which dominates it is a back edge and the loop consists of blocks which reach the back edge
+// without going through the header. Loops with the same header are one loop.
+public class Loop {
+
+    private BasicBlock mHeader;
+    private HashSet<BasicBlock> mBlocks;
+    // Blocks of the loop which have edges out of the loop
+    private LinkedList<BasicBlock> mExits;
+
+    private Loop(BasicBlock header) {
+        mHeader = header;
+        mBlocks = new HashSet<>();
+        mBlocks.add(header);
+        mExits = new LinkedList<>();
+    }
+
+    // Returns loops of the procedure. Inner loops are before outer loops.
+    public static LinkedList<Loop> findLoops(DominatorTree dominatorTree) {
+        LinkedHashMap<BasicBlock, Loop> loops = new LinkedHashMap<>();
+
+        for (int i = 0; i < dominatorTree.countBlocks(); i++) {
+            for (int successor : dominatorTree.getSuccessors(i)) {
+                if (dominatorTree.dominates(successor, i)) {
+                    BasicBlock header = dominatorTree.getBlock(successor);
+
+                    if (!loops.containsKey(header)) {
+                        loops.put(header, new Loop(header));
+                    }
+
+                    loops.get(header).addBlocks(dominatorTree, i);
+                }
+            }
+        }
+
+        for (Loop loop : loops.values()) {
+            for (BasicBlock block : loop.mBlocks) {
+                if (loop.isExit(dominatorTree, block)) {
+                    loop.mExits.add(block);
+                }
+            }
+        }
+
+        // Inner loops have less blocks than outer loops
+        LinkedList<Loop> result = new LinkedList<>(loops.values());
+        Collections.sort(result, new Comparator<Loop>() {
+            @Override
+            public int compare(Loop first, Loop second) {
+                return Integer.compare(first.mBlocks.size(), second.mBlocks.size());
+            }
+        });
+
+        return result;
+    }
+
+    public BasicBlock getHeader() {
+        return mHeader;
+    }
+
+    public HashSet<BasicBlock> getBlocks() {
+        return mBlocks;
+    }
+
+    public LinkedList<BasicBlock> getExits() {
+        return mExits;
+    }
+
+    // Adds a new block which is executed before the header instead of edges which enter the loop. The block is not added to outer loops.
+    public BasicBlock addPreheader(LinkedList<BasicBlock> basicBlocks, Label label, LinkedList<IRStatement> statements) {
+        BasicBlock preheader = new BasicBlock();
+        preheader.addStatement(new LABEL(label));
+        for (IRStatement statement : statements) {
+            preheader.addStatement(statement);
+        }
+        preheader.addStatement(new JUMP(mHeader.getLabel()));
+
+        for (BasicBlock block : basicBlocks) {
+            if (!mBlocks.contains(block)) {
+                redirect(block, mHeader.getLabel(), label);
+            }
+        }
+
+        basicBlocks.add(basicBlocks.indexOf(mHeader), preheader);
+
+        return preheader;
+    }
+
+    // Blocks which reach the block without going through the header
+    private void addBlocks(DominatorTree dominatorTree, int block) {
+        LinkedList<Integer> worklist = new LinkedList<>();
+
+        if (mBlocks.add(dominatorTree.getBlock(block))) {
+            worklist.add(block);
+        }
+
+        while (!worklist.isEmpty()) {
+            for (int predecessor : dominatorTree.getPredecessors(worklist.removeFirst())) {
+                if ((dominatorTree.getDominators()[predecessor] != -1) && (mBlocks.add(dominatorTree.getBlock(predecessor)))) {
+                    worklist.add(predecessor);
+                }
+            }
+        }
+    }
+
+    // A jump to the end of the procedure leaves the loop too
+    private boolean isExit(DominatorTree dominatorTree, BasicBlock block) {
+        int index = dominatorTree.getIndex(block);
+
+        if (dominatorTree.getSuccessors(index).size() < block.getTargets().size()) {
+            return true;
+        }
+
+        for (int successor : dominatorTree.getSuccessors(index)) {
+            if (!mBlocks.contains(dominatorTree.getBlock(successor))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void redirect(BasicBlock block, Label from, Label to) {
+        IRStatement statement = block.getStatements().getLast();
+
+        if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+
+            if ((cjump.getLblTrue() == from) || (cjump.getLblFalse() == from)) {
+                block.getStatements().set(block.getStatements().size() - 1,
+                        new CJUMP(cjump.getTypeRelOp(), cjump.getLeftExpression(), cjump.getRightExpression(),
+                                (cjump.getLblTrue() == from) ? to : cjump.getLblTrue(),
+                                (cjump.getLblFalse() == from) ? to : cjump.getLblFalse()));
+            }
+        } else if (statement instanceof JUMP) {
+            JUMP jump = (JUMP) statement;
+
+            if (jump.getTargets().contains(from)) {
+                LinkedList<Label> targets = new LinkedList<>();
+                for (Label target : jump.getTargets()) {
+                    targets.add((target == from) ? to : target);
+                }
+
+                block.getStatements().set(block.getStatements().size() - 1, new JUMP((jump.getExpression() instanceof NAME) ? new NAME(to) : jump.getExpression(), targets));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,339 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import bee.lang.translate.frame.Frame;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+// This class is used to move computations which give the same value in each iteration of a loop out of the loop (loop-invariant code motion).
+// Loops are natural loops (see Loop). Inner loops are processed before outer loops.
+// An expression is invariant if it does not read temporary variables which are defined in the loop and it has no calls. A load is invariant if it is
+// read-only or the loop has no stores and calls. A load can fail so it is moved only if the same load is executed before each exit from the loop.
+// Invariant expressions are computed in a new block (the preheader) which is executed before the header instead of the edges which enter the loop.
+// Addresses like BINOP(PLUS, e, CONST(n)) inside of MEM are not moved because they are a part of the instructions 'lw' and 'sw'.
+public class LoopInvariantCodeMotion {
+
+    private Frame mFrame;
+    private ControlFlowAnalyzing mControlFlowAnalyzing;
+
+    // Temporary variables which are defined in the current loop
+    private HashSet<Temp> mDefinitions;
+    // The current loop has stores or calls
+    private boolean mHasSideEffects;
+    // Keys of loads which are executed before each exit from the current loop
+    private HashSet<String> mSafeLoads;
+    // Keys of moved expressions and temporary variables which keep their values
+    private LinkedHashMap<String, Temp> mValues;
+    // Statements of the preheader
+    private LinkedList<IRStatement> mNewStatements;
+
+    public LoopInvariantCodeMotion(Frame frame, ControlFlowAnalyzing controlFlowAnalyzing) {
+        mFrame = frame;
+        mControlFlowAnalyzing = controlFlowAnalyzing;
+    }
+
+    public void optimize(LinkedList<BasicBlock> basicBlocks) {
+        if (basicBlocks.isEmpty()) {
+            return;
+        }
+
+        DominatorTree dominatorTree = new DominatorTree(basicBlocks);
+        LinkedList<Loop> loops = Loop.findLoops(dominatorTree);
+
+        // Preheaders are not in the dominator tree so they use their headers
+        HashMap<BasicBlock, BasicBlock> headersOfPreheaders = new HashMap<>();
+
+        for (Loop loop : loops) {
+            BasicBlock preheader = moveInvariants(basicBlocks, dominatorTree, loop, headersOfPreheaders);
+
+            if (preheader == null) {
+                continue;
+            }
+
+            headersOfPreheaders.put(preheader, loop.getHeader());
+
+            // The preheader of an inner loop is a part of outer loops
+            for (Loop outerLoop : loops) {
+                if ((outerLoop != loop) && (outerLoop.getBlocks().contains(loop.getHeader()))) {
+                    outerLoop.getBlocks().add(preheader);
+                }
+            }
+        }
+    }
+
+    // Returns the new preheader or null if nothing is moved
+    private BasicBlock moveInvariants(LinkedList<BasicBlock> basicBlocks, DominatorTree dominatorTree, Loop loop, HashMap<BasicBlock, BasicBlock> headersOfPreheaders) {
+        mDefinitions = new HashSet<>();
+        mHasSideEffects = false;
+        mSafeLoads = new HashSet<>();
+        mValues = new LinkedHashMap<>();
+        mNewStatements = new LinkedList<>();
+
+        for (BasicBlock block : loop.getBlocks()) {
+            for (IRStatement statement : block.getStatements()) {
+                Temp dst = SSAForm.getDefinition(statement);
+                if (dst != null) {
+                    mDefinitions.add(dst);
+                }
+
+                if ((getStoreDst(statement) != null) || (hasCall(statement))) {
+                    mHasSideEffects = true;
+                }
+            }
+        }
+
+        // A loop without exits never ends so nothing is executed before its exits
+        if (!loop.getExits().isEmpty()) {
+            for (BasicBlock block : loop.getBlocks()) {
+                BasicBlock blockInTree = headersOfPreheaders.containsKey(block) ? headersOfPreheaders.get(block) : block;
+
+                if (dominatesAll(dominatorTree, blockInTree, loop.getExits())) {
+                    for (IRStatement statement : block.getStatements()) {
+                        addLoads(statement);
+                    }
+                }
+            }
+        }
+
+        for (BasicBlock block : basicBlocks) {
+            if (!loop.getBlocks().contains(block)) {
+                continue;
+            }
+
+            ListIterator<IRStatement> iterator = block.getStatements().listIterator();
+
+            while (iterator.hasNext()) {
+                iterator.set(rewrite(iterator.next()));
+            }
+        }
+
+        if (mNewStatements.isEmpty()) {
+            return null;
+        }
+
+        return loop.addPreheader(basicBlocks, mControlFlowAnalyzing.newLabel(), mNewStatements);
+    }
+
+    private boolean dominatesAll(DominatorTree dominatorTree, BasicBlock block, LinkedList<BasicBlock> others) {
+        for (BasicBlock other : others) {
+            if (!dominatorTree.dominates(dominatorTree.getIndex(block), dominatorTree.getIndex(other))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private IRStatement rewrite(IRStatement statement) {
+        if (statement instanceof MOVE) {
+            MOVE move = (MOVE) statement;
+
+            if (move.getDst() instanceof MEM) {
+                MEM mem = (MEM) move.getDst();
+                return new MOVE(new MEM(rewriteAddress(mem.getExpression()), mem.isReadOnly()), rewrite(move.getSrc()));
+            }
+
+            return new MOVE(move.getDst(), rewrite(move.getSrc()));
+        }
+
+        if (statement instanceof EXP) {
+            return new EXP(rewrite(((EXP) statement).getExpression()));
+        }
+
+        if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+            return new CJUMP(cjump.getTypeRelOp(), rewrite(cjump.getLeftExpression()), rewrite(cjump.getRightExpression()), cjump.getLblTrue(), cjump.getLblFalse());
+        }
+
+        return statement;
+    }
+
+    // Returns the expression which uses moved values
+    private IRExpression rewrite(IRExpression expression) {
+        if ((expression instanceof TEMP) || (expression instanceof CONST)) {
+            return expression;
+        }
+
+        if (((expression instanceof BINOP) || (expression instanceof MEM) || (expression instanceof NAME)) && (isInvariant(expression))) {
+            String key = getKey(expression);
+            Temp value = mValues.get(key);
+
+            if (value == null) {
+                value = mFrame.getContext().newTemp();
+                mNewStatements.add(new MOVE(new TEMP(value), expression));
+                mValues.put(key, value);
+            }
+
+            return new TEMP(value);
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+            return new BINOP(binop.getTypeBinOp(), rewrite(binop.getLeftExpression()), rewrite(binop.getRightExpression()));
+        }
+
+        if (expression instanceof MEM) {
+            return new MEM(rewriteAddress(((MEM) expression).getExpression()), ((MEM) expression).isReadOnly());
+        }
+
+        // A function is called by its name so the name is not moved
+        if (expression instanceof CALL) {
+            CALL call = (CALL) expression;
+
+            LinkedList<IRExpression> args = new LinkedList<>();
+            for (IRExpression arg : call.getArguments()) {
+                args.add(rewrite(arg));
+            }
+
+            return new CALL((call.getFunction() instanceof NAME) ? call.getFunction() : rewrite(call.getFunction()), args, call.isTailCall());
+        }
+
+        return expression;
+    }
+
+    // BINOP(PLUS, e, CONST(n)) is kept in MEM
+    private IRExpression rewriteAddress(IRExpression address) {
+        if ((address instanceof BINOP) && (((BINOP) address).getTypeBinOp() == TypeBinOp.PLUS) && (((BINOP) address).getRightExpression() instanceof CONST)) {
+            BINOP binop = (BINOP) address;
+            return new BINOP(TypeBinOp.PLUS, rewrite(binop.getLeftExpression()), binop.getRightExpression());
+        }
+
+        return rewrite(address);
+    }
+
+    private boolean isInvariant(IRExpression expression) {
+        if ((expression instanceof CONST) || (expression instanceof NAME)) {
+            return true;
+        }
+
+        // Machine registers are changed by calls
+        if (expression instanceof TEMP) {
+            Temp temp = ((TEMP) expression).getTemp();
+            return (mFrame.tempMap(temp) == null) && (!mDefinitions.contains(temp));
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+            return (isInvariant(binop.getLeftExpression())) && (isInvariant(binop.getRightExpression()));
+        }
+
+        if (expression instanceof MEM) {
+            MEM mem = (MEM) expression;
+
+            if ((!mem.isReadOnly()) && (mHasSideEffects)) {
+                return false;
+            }
+
+            return (isInvariant(mem.getExpression())) && (mSafeLoads.contains(getKey(mem)));
+        }
+
+        return false;
+    }
+
+    private void addLoads(IRStatement statement) {
+        MEM storeDst = getStoreDst(statement);
+        LinkedList<IRExpression> kids = statement.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                // The destination of a store is not a load but its address is computed
+                addLoads((kid == storeDst) ? storeDst.getExpression() : kid);
+            }
+        }
+    }
+
+    private void addLoads(IRExpression expression) {
+        if (expression instanceof MEM) {
+            String key = getKey(expression);
+
+            if (key != null) {
+                mSafeLoads.add(key);
+            }
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                addLoads(kid);
+            }
+        }
+    }
+
+    // Expressions with calls do not have keys
+    private String getKey(IRExpression expression) {
+        if (expression instanceof TEMP) {
+            return "[" + ((TEMP) expression).getTemp() + "]";
+        }
+
+        if (expression instanceof CONST) {
+            return String.valueOf(((CONST) expression).getValue());
+        }
+
+        if (expression instanceof NAME) {
+            return ((NAME) expression).getLabel().getName();
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+
+            String left = getKey(binop.getLeftExpression());
+            String right = getKey(binop.getRightExpression());
+
+            return ((left == null) || (right == null)) ? null : "(" + left + binop.getTypeBinOp() + right + ")";
+        }
+
+        if (expression instanceof MEM) {
+            String address = getKey(((MEM) expression).getExpression());
+            return (address == null) ? null : "MEM" + address;
+        }
+
+        return null;
+    }
+
+    private MEM getStoreDst(IRStatement statement) {
+        if ((statement instanceof MOVE) && (((MOVE) statement).getDst() instanceof MEM)) {
+            return (MEM) ((MOVE) statement).getDst();
+        }
+
+        return null;
+    }
+
+    private boolean hasCall(IRStatement statement) {
+        LinkedList<IRExpression> kids = statement.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                if (hasCall(kid)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean hasCall(IRExpression expression) {
+        if (expression instanceof CALL) {
+            return true;
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                if (hasCall(kid)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+}
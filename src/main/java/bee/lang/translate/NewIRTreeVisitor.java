@@ -2,15 +2,18 @@ package bee.lang.translate;
 
 import bee.lang.Constants;
 import bee.lang.ast.*;
+import bee.lang.ir.CompilationContext;
 import bee.lang.ir.Label;
 import bee.lang.ir.Temp;
 import bee.lang.ir.tree.*;
 import bee.lang.symtable.*;
 import bee.lang.translate.frame.Access;
 import bee.lang.translate.frame.Frame;
-import bee.lang.translate.frame.InFrame;
+import bee.lang.translate.ir.AndCx;
 import bee.lang.translate.ir.Ex;
+import bee.lang.translate.ir.NotCx;
 import bee.lang.translate.ir.Nx;
+import bee.lang.translate.ir.OrCx;
 import bee.lang.translate.ir.RelCx;
 import bee.lang.translate.ir.WrapperIRExpression;
 import bee.lang.visitors.IRTreeVisitor;
@@ -46,6 +49,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
     private HashMap<String, EntityLayout> mObjectLayouts;
     private HashMap<String, EntityLayout> mClassLayouts;
     private HashMap<String, EntityLayout> mMethodLayouts;
+    private ClassHierarchyAnalysis mClassHierarchyAnalysis;
     private ClassSymbol mCurrentClassSymbol;
     private LinkedList<Fragment> mListFragments;
     private EntityLayout mClassLayout;
@@ -62,21 +66,24 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
     private SEQ mLastStatementBodyMethodInitStaticFields;
     private HashMap<String, Access> mListLocalVars;
     private Label mMethodReturnLbl;
+    private Label mMethodBeginLbl;
     private boolean isReturnStatement;
-    private Access mFirstArgInFunction;
+    private boolean isTailRecursion;
     private Frame mFrame;
+    private CompilationContext mContext;
     private LinkedList<String> mListOfMethodsInitStaticFields;
 
     public NewIRTreeVisitor(Frame frame, HashMap<String, EntityLayout> objectLayouts, HashMap<String, EntityLayout> classLayouts, HashMap<String, EntityLayout> methodLayouts) {
         mFrame = frame;
+        mContext = frame.getContext();
         mObjectLayouts = objectLayouts;
         mClassLayouts = classLayouts;
         mMethodLayouts = methodLayouts;
+        mClassHierarchyAnalysis = new ClassHierarchyAnalysis(methodLayouts);
         // The list of fragments keeps all procedures and data.
         mListFragments = new LinkedList<>();
         // These maps connect all local variables of a method with objects of the class Access.
         mListLocalVars = new HashMap<>();
-        mFirstArgInFunction = new InFrame(0);
         mListOfMethodsInitStaticFields = new LinkedList<>();
     }
 
@@ -101,35 +108,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        Temp result = new Temp();
-        Label lblTrue = Label.newLabel();
-        Label lblFalse = Label.newLabel();
-        Label lblEnd = Label.newLabel();
-
-        return new Ex(
-                new ESEQ(
-                        new SEQ(
-                                new MOVE(new TEMP(result), new CONST(1)),
-                                new SEQ(
-                                        new CJUMP(TypeRelOp.EQ, leftExpression.unEx(), new CONST(1), lblTrue, lblFalse),
-                                        new SEQ(
-                                                new LABEL(lblTrue),
-                                                new SEQ(
-                                                        new CJUMP(TypeRelOp.EQ, rightExpression.unEx(), new CONST(1), lblEnd, lblFalse),
-                                                        new SEQ(
-                                                                new LABEL(lblFalse),
-                                                                new SEQ(
-                                                                        new MOVE(new TEMP(result), new CONST(0)),
-                                                                        new LABEL(lblEnd)
-                                                                )
-                                                        )
-                                                )
-                                        )
-                                )
-                        ),
-                        new TEMP(result)
-                )
-        );
+        return new AndCx(mContext, leftExpression, rightExpression);
     }
 
     @Override
@@ -137,36 +116,39 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression arrayExpression = expression.getExpression().visit(this);
         WrapperIRExpression arrayIndex = expression.getIndex().visit(this);
 
-        Temp index = new Temp();
-        Temp size = new Temp();
-        Label lblTrue1 = Label.newLabel();
-        Label lblFalse = Label.newLabel();
-        Label lblTrue2 = Label.newLabel();
+        Temp index = mContext.newTemp();
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
 
-        RelCx lowBound = new RelCx(TypeRelOp.GE, new TEMP(index), new CONST(0));
-        RelCx hiBound = new RelCx(TypeRelOp.LT, new TEMP(index), new TEMP(size));
+        // The array is evaluated once. A local variable is used as it is, other expressions are saved in a temporary variable.
+        IRStatement initArray;
+        IRExpression array = arrayExpression.unEx();
+        if (array instanceof TEMP) {
+            initArray = new EXP(new CONST(0));
+        } else {
+            Temp arrayTemp = mContext.newTemp();
+            initArray = new MOVE(new TEMP(arrayTemp), array);
+            array = new TEMP(arrayTemp);
+        }
+
+        // The size of an array is the first word. A negative index is a big unsigned number so one unsigned comparison checks both bounds.
+        RelCx bounds = new RelCx(mContext, TypeRelOp.ULT, new TEMP(index), new MEM(array, true));
 
         return new Ex(
                 new ESEQ(
                         new MOVE(new TEMP(index), arrayIndex.unEx()),
                         new ESEQ(
-                                new MOVE(new TEMP(size), new MEM(arrayExpression.unEx())),
+                                initArray,
                                 new ESEQ(
-                                        new CJUMP(TypeRelOp.EQ, hiBound.unEx(), new CONST(1), lblTrue1, lblFalse),
+                                        bounds.unCx(lblTrue, lblFalse),
                                         new ESEQ(
-                                                new LABEL(lblTrue1),
+                                                new SEQ(
+                                                        new LABEL(lblFalse),
+                                                        new EXP(mCurrentFrame.externalCall(Constants.FUNCTION_PRINT_ERROR, args(new CONST(0))))
+                                                ),
                                                 new ESEQ(
-                                                        new CJUMP(TypeRelOp.EQ, lowBound.unEx(), new CONST(1), lblTrue2, lblFalse),
-                                                        new ESEQ(
-                                                                new SEQ(
-                                                                        new LABEL(lblFalse),
-                                                                        new EXP(mCurrentFrame.externalCall(Constants.FUNCTION_PRINT_ERROR, args(new CONST(0))))
-                                                                ),
-                                                                new ESEQ(
-                                                                        new LABEL(lblTrue2),
-                                                                        new MEM(new BINOP(TypeBinOp.PLUS, arrayExpression.unEx(), new BINOP(TypeBinOp.MUL, new BINOP(TypeBinOp.PLUS, new TEMP(index), new CONST(1)), new CONST(mCurrentFrame.getWordSize()))))
-                                                                )
-                                                        )
+                                                        new LABEL(lblTrue),
+                                                        new MEM(new BINOP(TypeBinOp.PLUS, array, new BINOP(TypeBinOp.MUL, new BINOP(TypeBinOp.PLUS, new TEMP(index), new CONST(1)), new CONST(mCurrentFrame.getWordSize()))))
                                                 )
                                         )
                                 )
@@ -180,7 +162,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        Temp result = new Temp();
+        Temp result = mContext.newTemp();
 
         return new Ex(
                 new ESEQ(
@@ -221,9 +203,9 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         MethodSymbol methodSymbol = (MethodSymbol) expression.getSymbol();
 
         if (methodSymbol.isStatic()) {
-            return new Ex(new CALL(new NAME(Label.newLabel(methodSymbol.getMethodId())), args(expression.getArgumentsList().getExpressionList())));
+            return new Ex(new CALL(new NAME(mContext.newLabel(methodSymbol.getMethodId())), args(expression.getArgumentsList().getExpressionList())));
         } else {
-            Temp currentObject = new Temp();
+            Temp currentObject = mContext.newTemp();
             MOVE initCurrentObject = new MOVE(new TEMP(currentObject), expression.getExpression().visit(this).unEx());
             // The first argument is the current object aka 'this'.
             LinkedList<IRExpression> args = args(new TEMP(currentObject), expression.getArgumentsList().getExpressionList());
@@ -232,16 +214,31 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
                 return new Ex(
                         new ESEQ(
                                 initCurrentObject,
-                                new CALL(new NAME(Label.newLabel(methodSymbol.getMethodId())), args)
+                                new CALL(new NAME(mContext.newLabel(methodSymbol.getMethodId())), args)
                         )
                 );
             } else {
-                int virtualMethodId = mMethodLayouts.get(((ClassSymbol) methodSymbol.getEnclosingScope()).getIdentifier().getName()).get(methodSymbol.getMethodId());
+                String className = ((ClassSymbol) methodSymbol.getEnclosingScope()).getIdentifier().getName();
+                int virtualMethodId = mMethodLayouts.get(className).get(methodSymbol.getMethodId());
+
+                // The method is not overridden in subclasses so it is called directly
+                String methodId = mClassHierarchyAnalysis.getMethod(className, virtualMethodId);
+
+                if (methodId != null) {
+                    return new Ex(
+                            new ESEQ(
+                                    initCurrentObject,
+                                    new CALL(new NAME(mContext.newLabel(methodId)), args)
+                            )
+                    );
+                }
+
+                // The class of an object and its table of virtual methods are never changed
                 return new Ex(
                         new ESEQ(
                                 initCurrentObject,
                                 new CALL(
-                                        new MEM(new BINOP(TypeBinOp.PLUS, new MEM(new MEM(new BINOP(TypeBinOp.PLUS, new TEMP(currentObject), new CONST(mCurrentFrame.getWordSize())))), new CONST(virtualMethodId * mCurrentFrame.getWordSize()))),
+                                        new MEM(new BINOP(TypeBinOp.PLUS, new MEM(new MEM(new BINOP(TypeBinOp.PLUS, new TEMP(currentObject), new CONST(mCurrentFrame.getWordSize())), true), true), new CONST(virtualMethodId * mCurrentFrame.getWordSize())), true),
                                         args
                                 )
                         )
@@ -259,7 +256,15 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
     public WrapperIRExpression visit(ExternalCall expression) {
         MethodSymbol methodSymbol = (MethodSymbol) expression.getSymbol();
 
-        return new Ex(new CALL(new NAME(Label.newLabel(methodSymbol.getIdentifier().getName())), args(expression.getArgumentsList().getExpressionList())));
+        String functionName = methodSymbol.getIdentifier().getName();
+        LinkedList<Expression> arguments = expression.getArgumentsList().getExpressionList();
+
+        // Sizes of arrays and strings are kept in the first word so they are loaded without calls
+        if (((functionName.equals(Constants.FUNCTION_ARRAY_LEN)) || (functionName.equals(Constants.FUNCTION_STR_LEN))) && (arguments.size() == 1)) {
+            return new Ex(new MEM(arguments.getFirst().visit(this).unEx(), true));
+        }
+
+        return new Ex(new CALL(new NAME(mContext.newLabel(methodSymbol.getIdentifier().getName())), args(expression.getArgumentsList().getExpressionList())));
     }
 
     @Override
@@ -275,17 +280,17 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         mClassLayout = mClassLayouts.get(className);
         mObjectLayout = mObjectLayouts.get(className);
 
-        mClassDescriptionLbl = Label.newLabel(String.format(Constants.CLASS_DESCRIPTION, className));
+        mClassDescriptionLbl = mContext.newLabel(String.format(Constants.CLASS_DESCRIPTION, className));
 
         // Create a new method like this '_<class name>_init_static_fields'. This method is used to initialize all static fields.
         // This method will be called immediately for loaded class.
         String nameOfMethod = String.format(Constants.FUNCTION_INIT_STATIC_FIELDS, className);
         mListOfMethodsInitStaticFields.add(nameOfMethod);
-        mInitStaticFieldsFrame = mFrame.newFrame(Label.newLabel(nameOfMethod), new LinkedList<>());
+        mInitStaticFieldsFrame = mFrame.newFrame(mContext.newLabel(nameOfMethod), new LinkedList<>());
 
         // Create a new method like this '_<class name>_init_fields'. This method is used to initialize all non-static fields.
         // This method will be called by a constructor after calling a super constructor.
-        mInitFieldsFrame = mFrame.newFrame(Label.newLabel(String.format(Constants.FUNCTION_INIT_FIELDS, className)), args(false));
+        mInitFieldsFrame = mFrame.newFrame(mContext.newLabel(String.format(Constants.FUNCTION_INIT_FIELDS, className)), args(false));
 
         statement.getFieldDefinitions().visit(this);
 
@@ -302,8 +307,8 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         }
 
         // Creating bodies for '_<class name>_init_static_fields' and '_<class name>_init_fields' is performed during processing of fields definitions.
-        mListFragments.add(new ProcedureFragment(mInitStaticFieldsFrame.procEntryExit1(mBodyMethodInitStaticFields), mInitStaticFieldsFrame));
-        mListFragments.add(new ProcedureFragment(mInitFieldsFrame.procEntryExit1(mBodyMethodInitFields), mInitFieldsFrame));
+        mListFragments.add(new ProcedureFragment(mBodyMethodInitStaticFields, mInitStaticFieldsFrame));
+        mListFragments.add(new ProcedureFragment(mBodyMethodInitFields, mInitFieldsFrame));
 
         statement.getConstructorDefinitions().visit(this);
         statement.getMethodDefinitions().visit(this);
@@ -333,7 +338,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
             statementsIterator.next();
         }
 
-        mCurrentFrame = mFrame.newFrame(Label.newLabel(methodName), procedureArgs);
+        mCurrentFrame = mFrame.newFrame(mContext.newLabel(methodName), procedureArgs);
 
         statementsIterator = statement.getFormalArgumentsList().getStatementsList().iterator();
         Iterator<Access> formalArgsIterator = mCurrentFrame.getFormalArgumentsInFunction().iterator();
@@ -354,13 +359,13 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         IRStatement callsOtherConstructors = null;
 
         if (statement.getSuperConstructorArgumentsList() != null) {
-            IRStatement callInitFields = new EXP(new CALL(new NAME(Label.newLabel(String.format(Constants.FUNCTION_INIT_FIELDS, mCurrentClassSymbol.getIdentifier().getName()))), args(mFirstArgInFunction.exp(new TEMP(mCurrentFrame.getFP())))));
+            IRStatement callInitFields = new EXP(new CALL(new NAME(mContext.newLabel(String.format(Constants.FUNCTION_INIT_FIELDS, mCurrentClassSymbol.getIdentifier().getName()))), args(currentObject())));
 
             if (mCurrentClassSymbol.getBaseClassIdentifier() != null) {
                 String superConstructorId = ((MethodSymbol) statement.getOtherConstructorSymbol()).getMethodId();
 
                 callsOtherConstructors = new SEQ(
-                        new EXP(new CALL(new NAME(Label.newLabel(superConstructorId)), args(mFirstArgInFunction.exp(new TEMP(mCurrentFrame.getFP())), statement.getSuperConstructorArgumentsList().getExpressionList()))),
+                        new EXP(new CALL(new NAME(mContext.newLabel(superConstructorId)), args(currentObject(), statement.getSuperConstructorArgumentsList().getExpressionList()))),
                         callInitFields
                 );
             } else {
@@ -370,7 +375,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
             if (statement.getOtherConstructorArgumentsList() != null) {
                 String otherConstructorId = ((MethodSymbol) statement.getOtherConstructorSymbol()).getMethodId();
 
-                callsOtherConstructors = new EXP(new CALL(new NAME(Label.newLabel(otherConstructorId)), args(mFirstArgInFunction.exp(new TEMP(mCurrentFrame.getFP())), statement.getOtherConstructorArgumentsList().getExpressionList())));
+                callsOtherConstructors = new EXP(new CALL(new NAME(mContext.newLabel(otherConstructorId)), args(currentObject(), statement.getOtherConstructorArgumentsList().getExpressionList())));
             }
         }
 
@@ -381,7 +386,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
                 )
         );
 
-        mListFragments.add(new ProcedureFragment(mCurrentFrame.procEntryExit1(tree.unNx()), mCurrentFrame));
+        mListFragments.add(new ProcedureFragment(tree.unNx(), mCurrentFrame));
 
         return null;
     }
@@ -396,9 +401,9 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
 
     @Override
     public WrapperIRExpression visit(DoWhile statement) {
-        Label lblEnd = Label.newLabel();
+        Label lblEnd = mContext.newLabel();
 
-        Label lblBeginLoop = Label.newLabel();
+        Label lblBeginLoop = mContext.newLabel();
 
         Label savedLblEnd = mCurrentLblEnd;
         mCurrentLblEnd = lblEnd;
@@ -420,7 +425,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
                                         new LABEL(lblBeginLoop),
                                         body != null ? body.unNx() : new EXP(new CONST(0))
                                 ),
-                                new CJUMP(TypeRelOp.EQ, expression.unEx(), new CONST(1), lblBeginLoop, lblEnd)
+                                expression.unCx(lblBeginLoop, lblEnd)
                         ),
                         new LABEL(lblEnd)
                 )
@@ -432,7 +437,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        return new RelCx(TypeRelOp.EQ, leftExpression.unEx(), rightExpression.unEx());
+        return new RelCx(mContext, TypeRelOp.EQ, leftExpression.unEx(), rightExpression.unEx());
     }
 
     @Override
@@ -478,7 +483,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        return new RelCx(TypeRelOp.GE, leftExpression.unEx(), rightExpression.unEx());
+        return new RelCx(mContext, TypeRelOp.GE, leftExpression.unEx(), rightExpression.unEx());
     }
 
     @Override
@@ -486,7 +491,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        return new RelCx(TypeRelOp.GT, leftExpression.unEx(), rightExpression.unEx());
+        return new RelCx(mContext, TypeRelOp.GT, leftExpression.unEx(), rightExpression.unEx());
     }
 
     @Override
@@ -496,7 +501,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         if (symbol instanceof FieldSymbol) {
             FieldSymbol fieldSymbol = (FieldSymbol) symbol;
             if (!fieldSymbol.isStatic()) {
-                return new Ex(new MEM(new BINOP(TypeBinOp.PLUS, mFirstArgInFunction.exp(new TEMP(mCurrentFrame.getFP())), new CONST((mObjectLayouts.get(fieldSymbol.getClassName()).get(fieldSymbol.getFieldId()) + 2) * mCurrentFrame.getWordSize()))));
+                return new Ex(new MEM(new BINOP(TypeBinOp.PLUS, currentObject(), new CONST((mObjectLayouts.get(fieldSymbol.getClassName()).get(fieldSymbol.getFieldId()) + 2) * mCurrentFrame.getWordSize()))));
             }
         }
 
@@ -505,7 +510,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         }
 
         if (symbol instanceof ClassSymbol) {
-            return new Ex(new NAME(Label.newLabel(String.format(Constants.CLASS_DESCRIPTION, symbol.getIdentifier().getName()))));
+            return new Ex(new NAME(mContext.newLabel(String.format(Constants.CLASS_DESCRIPTION, symbol.getIdentifier().getName()))));
         }
 
         return null;
@@ -516,13 +521,13 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression expression = statement.getExpression().visit(this);
         WrapperIRExpression thenStatement = statement.getThenStatement().visit(this);
 
-        Label lblTrue = Label.newLabel();
-        Label lblFalse = Label.newLabel();
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
 
         if (statement.getElseStatement() == null) {
             return new Nx(
                     new SEQ(
-                            new CJUMP(TypeRelOp.EQ, expression.unEx(), new CONST(1), lblTrue, lblFalse),
+                            expression.unCx(lblTrue, lblFalse),
                             new SEQ(
                                     new LABEL(lblTrue),
                                     new SEQ(
@@ -535,11 +540,11 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         } else {
             WrapperIRExpression elseStatement = statement.getElseStatement().visit(this);
 
-            Label lblEnd = Label.newLabel();
+            Label lblEnd = mContext.newLabel();
 
             return new Nx(
                     new SEQ(
-                            new CJUMP(TypeRelOp.EQ, expression.unEx(), new CONST(1), lblTrue, lblFalse),
+                            expression.unCx(lblTrue, lblFalse),
                             new SEQ(
                                     new LABEL(lblTrue),
                                     new SEQ(
@@ -571,7 +576,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        return new RelCx(TypeRelOp.LE, leftExpression.unEx(), rightExpression.unEx());
+        return new RelCx(mContext, TypeRelOp.LE, leftExpression.unEx(), rightExpression.unEx());
     }
 
     @Override
@@ -579,13 +584,14 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        return new RelCx(TypeRelOp.LT, leftExpression.unEx(), rightExpression.unEx());
+        return new RelCx(mContext, TypeRelOp.LT, leftExpression.unEx(), rightExpression.unEx());
     }
 
     @Override
     public WrapperIRExpression visit(MethodDefinition statement) {
         String methodName = ((MethodSymbol) statement.getSymbol()).getMethodId();
 
+        // Arguments never escape (see the method visit(VariableDefinition)) so all of them are kept in temporary variables.
         Iterator<Statement> statementsIterator = statement.getFormalArgumentsList().getStatementsList().iterator();
         LinkedList<Boolean> args = new LinkedList<>();
 
@@ -598,7 +604,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
             statementsIterator.next();
         }
 
-        mCurrentFrame = mFrame.newFrame(Label.newLabel(methodName), args);
+        mCurrentFrame = mFrame.newFrame(mContext.newLabel(methodName), args);
 
         statementsIterator = statement.getFormalArgumentsList().getStatementsList().iterator();
         Iterator<Access> formalArgsIterator = mCurrentFrame.getFormalArgumentsInFunction().iterator();
@@ -614,13 +620,20 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
 
         statement.getFormalArgumentsList().visit(this);
 
-        mMethodReturnLbl = Label.newLabel("_" + methodName + "_return_");
+        mMethodReturnLbl = mContext.newLabel("_" + methodName + "_return_");
+        mMethodBeginLbl = mContext.newLabel();
 
         isReturnStatement = false;
+        isTailRecursion = false;
 
         IRStatement irExpression = statement.getBody().visit(this).unNx();
 
-        mListFragments.add(new ProcedureFragment(mCurrentFrame.procEntryExit1(isReturnStatement ? new SEQ(irExpression, new LABEL(mMethodReturnLbl)) : irExpression), mCurrentFrame));
+        // Recursive calls in tail position jump to the beginning of the body
+        if (isTailRecursion) {
+            irExpression = new SEQ(new LABEL(mMethodBeginLbl), irExpression);
+        }
+
+        mListFragments.add(new ProcedureFragment(isReturnStatement ? new SEQ(irExpression, new LABEL(mMethodReturnLbl)) : irExpression, mCurrentFrame));
 
         return null;
     }
@@ -635,9 +648,9 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
 
     @Override
     public WrapperIRExpression visit(NewArray expression) {
-        Temp originalSize = new Temp();
-        Temp newSize = new Temp();
-        Temp newArray = new Temp();
+        Temp originalSize = mContext.newTemp();
+        Temp newSize = mContext.newTemp();
+        Temp newArray = mContext.newTemp();
 
         return new Ex(
                 new ESEQ(
@@ -660,7 +673,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
     public WrapperIRExpression visit(NewObject expression) {
         MethodSymbol methodSymbol = (MethodSymbol) expression.getSymbol();
 
-        Temp newObject = new Temp();
+        Temp newObject = mContext.newTemp();
 
         LinkedList<IRExpression> args = args(new TEMP(newObject), expression.getArgumentsList().getExpressionList());
 
@@ -673,8 +686,8 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
                                 new SEQ(
                                         new MOVE(new MEM(new TEMP(newObject)), new CONST(sizeOfObject)),
                                         new SEQ(
-                                                new MOVE(new MEM(new BINOP(TypeBinOp.PLUS, new TEMP(newObject), new CONST(mCurrentFrame.getWordSize()))), new NAME(Label.newLabel(String.format(Constants.CLASS_DESCRIPTION, expression.getType())))),
-                                                new EXP(new CALL(new NAME(Label.newLabel(methodSymbol.getMethodId())), args))
+                                                new MOVE(new MEM(new BINOP(TypeBinOp.PLUS, new TEMP(newObject), new CONST(mCurrentFrame.getWordSize()))), new NAME(mContext.newLabel(String.format(Constants.CLASS_DESCRIPTION, expression.getType())))),
+                                                new EXP(new CALL(new NAME(mContext.newLabel(methodSymbol.getMethodId())), args))
                                         )
                                 )
                         ),
@@ -692,25 +705,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
     public WrapperIRExpression visit(Not expression) {
         WrapperIRExpression expr = expression.getExpression().visit(this);
 
-        Temp result = new Temp();
-        Label lblTrue = Label.newLabel();
-        Label lblFalse = Label.newLabel();
-
-        return new Ex(
-                new ESEQ(
-                        new SEQ(
-                                new MOVE(new TEMP(result), new CONST(1)),
-                                new SEQ(
-                                        new SEQ(new CJUMP(TypeRelOp.EQ, expr.unEx(), new CONST(1), lblTrue, lblFalse),
-                                                new SEQ(
-                                                        new LABEL(lblTrue),
-                                                        new MOVE(new TEMP(result), new CONST(0)))
-                                        ),
-                                        new LABEL(lblFalse)
-                                )
-                        ),
-                new TEMP(result))
-        );
+        return new NotCx(mContext, expr);
     }
 
     @Override
@@ -718,7 +713,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        return new RelCx(TypeRelOp.NE, leftExpression.unEx(), rightExpression.unEx());
+        return new RelCx(mContext, TypeRelOp.NE, leftExpression.unEx(), rightExpression.unEx());
     }
 
     @Override
@@ -726,34 +721,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression leftExpression = expression.getLeftExpression().visit(this);
         WrapperIRExpression rightExpression = expression.getRightExpression().visit(this);
 
-        Temp result = new Temp();
-        Label lblFalse = Label.newLabel();
-        Label lblEnd = Label.newLabel();
-
-        return new Ex(
-                new ESEQ(
-                        new SEQ(
-                                new MOVE(new TEMP(result), new CONST(1)),
-                                new SEQ(
-                                        new CJUMP(TypeRelOp.EQ, leftExpression.unEx(), new CONST(1), lblEnd, lblFalse),
-                                        new SEQ(
-                                                new LABEL(lblFalse),
-                                                new SEQ(
-                                                        new CJUMP(TypeRelOp.EQ, rightExpression.unEx(), new CONST(1), lblEnd, lblFalse),
-                                                        new SEQ(
-                                                                new LABEL(lblFalse),
-                                                                new SEQ(
-                                                                        new MOVE(new TEMP(result), new CONST(0)),
-                                                                        new LABEL(lblEnd)
-                                                                )
-                                                        )
-                                                )
-                                        )
-                                )
-                        ),
-                        new TEMP(result)
-                )
-        );
+        return new OrCx(mContext, leftExpression, rightExpression);
     }
 
     @Override
@@ -774,12 +742,68 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         if (statement.getExpression() == null) {
             return new Nx(new JUMP(mMethodReturnLbl));
         } else {
+            IRExpression result = statement.getExpression().visit(this).unEx();
+
+            if (statement.getExpression() instanceof Call) {
+                IRStatement tailCall = tailCall(result);
+
+                if (tailCall != null) {
+                    return new Nx(tailCall);
+                }
+            }
+
             return new Nx(new SEQ(
-                    new MOVE(new TEMP(mCurrentFrame.getRV()), statement.getExpression().visit(this).unEx()),
+                    new MOVE(new TEMP(mCurrentFrame.getRV()), result),
                     new JUMP(mMethodReturnLbl)));
         }
     }
 
+    // Returns the statement for 'return f(args)' if the procedure f is known or null. If f is the current procedure then its arguments are replaced
+    // and the body is executed again without a new stack frame. Otherwise f gets the stack frame of the current procedure if all its arguments are
+    // passed in registers.
+    private IRStatement tailCall(IRExpression expression) {
+        IRStatement initCurrentObject = null;
+
+        // ESEQ(MOVE(TEMP(this), e), CALL(NAME(f), args)) for methods of objects
+        if (expression instanceof ESEQ) {
+            initCurrentObject = ((ESEQ) expression).getStatement();
+            expression = ((ESEQ) expression).getExpression();
+        }
+
+        if ((!(expression instanceof CALL)) || (!(((CALL) expression).getFunction() instanceof NAME))) {
+            return null;
+        }
+
+        CALL call = (CALL) expression;
+        IRStatement result;
+
+        if (((NAME) call.getFunction()).getLabel().getName().equals(mCurrentFrame.getProcedureName())) {
+            isTailRecursion = true;
+
+            // All arguments are computed before formal arguments are changed
+            IRStatement computeArgs = new EXP(new CONST(0));
+            IRStatement moveArgs = new JUMP(mMethodBeginLbl);
+
+            Iterator<Access> formalArgsIterator = mCurrentFrame.getFormalArgumentsInFunction().iterator();
+
+            for (IRExpression arg : call.getArguments()) {
+                Temp temp = mContext.newTemp();
+                computeArgs = new SEQ(computeArgs, new MOVE(new TEMP(temp), arg));
+                moveArgs = new SEQ(new MOVE(formalArgsIterator.next().exp(new TEMP(mCurrentFrame.getFP())), new TEMP(temp)), moveArgs);
+            }
+
+            result = new SEQ(computeArgs, moveArgs);
+        } else if (call.getArguments().size() <= mCurrentFrame.getArgRegs().size()) {
+            result = new SEQ(
+                    new MOVE(new TEMP(mCurrentFrame.getRV()), new CALL(call.getFunction(), call.getArguments(), true)),
+                    new JUMP(mMethodReturnLbl));
+        } else {
+            return null;
+        }
+
+        return (initCurrentObject == null) ? result : new SEQ(initCurrentObject, result);
+    }
+
     @Override
     public WrapperIRExpression visit(Statements statement) {
         Iterator<Statement> iterator = statement.getStatementsList().iterator();
@@ -814,15 +838,15 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         String str = expression.getValue();
 
         Label lblNewStr;
-        if (Label.isLabelForString(str)) {
-            lblNewStr = Label.newLabelForString(str);
+        if (mContext.isLabelForString(str)) {
+            lblNewStr = mContext.newLabelForString(str);
         } else {
-            lblNewStr = Label.newLabelForString(str);
+            lblNewStr = mContext.newLabelForString(str);
             mListFragments.add(new StringFragment(lblNewStr.getName(), str));
         }
 
-        Temp newArray = new Temp();
-        Temp dstAddress = new Temp();
+        Temp newArray = mContext.newTemp();
+        Temp dstAddress = mContext.newTemp();
 
         return new Ex(
                 new ESEQ(
@@ -850,7 +874,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
 
     @Override
     public WrapperIRExpression visit(Super expression) {
-        return new Ex(mFirstArgInFunction.exp(new TEMP(mCurrentFrame.getFP())));
+        return new Ex(currentObject());
     }
 
     @Override
@@ -859,25 +883,38 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         WrapperIRExpression thenExpression = expression.getThenExpression().visit(this);
         WrapperIRExpression elseExpression = expression.getElseExpression().visit(this);
 
-        Temp result = new Temp();
-        Label lblTrue = Label.newLabel();
-        Label lblFalse = Label.newLabel();
-        Label lblEnd = Label.newLabel();
+        IRExpression thenValue = thenExpression.unEx();
+        IRExpression elseValue = elseExpression.unEx();
+
+        // Both values are computed and one of them is chosen without jumps
+        if ((isSimple(thenValue)) && (isSimple(elseValue))) {
+            if (conditionalExpression instanceof RelCx) {
+                RelCx relCx = (RelCx) conditionalExpression;
+                return new Ex(new SELECT(relCx.getTypeRelOp(), relCx.getLeftExpression(), relCx.getRightExpression(), thenValue, elseValue));
+            }
+
+            return new Ex(new SELECT(TypeRelOp.NE, conditionalExpression.unEx(), new CONST(0), thenValue, elseValue));
+        }
+
+        Temp result = mContext.newTemp();
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
+        Label lblEnd = mContext.newLabel();
 
         return new Ex(
                 new ESEQ(
                         new SEQ(
-                                new CJUMP(TypeRelOp.EQ, conditionalExpression.unEx(), new CONST(1), lblTrue, lblFalse),
+                                conditionalExpression.unCx(lblTrue, lblFalse),
                                 new SEQ(
                                         new LABEL(lblTrue),
                                         new SEQ(
-                                                new MOVE(new TEMP(result), thenExpression.unEx()),
+                                                new MOVE(new TEMP(result), thenValue),
                                                 new SEQ(
                                                         new JUMP(lblEnd),
                                                         new SEQ(
                                                                 new LABEL(lblFalse),
                                                                 new SEQ(
-                                                                        new MOVE(new TEMP(result), elseExpression.unEx()),
+                                                                        new MOVE(new TEMP(result), elseValue),
                                                                         new LABEL(lblEnd)
                                                                 )
                                                         )
@@ -892,7 +929,7 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
 
     @Override
     public WrapperIRExpression visit(This expression) {
-        return new Ex(mFirstArgInFunction.exp(new TEMP(mCurrentFrame.getFP())));
+        return new Ex(currentObject());
     }
 
     @Override
@@ -938,12 +975,13 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
                     mLastStatementBodyMethodInitFields = newSeq;
                 }
 
-                mLastStatementBodyMethodInitFields.setLeftStatement(new MOVE(new MEM(new BINOP(TypeBinOp.PLUS, mFirstArgInFunction.exp(new TEMP(mCurrentFrame.getFP())), new CONST((mObjectLayout.get(mCurrentFieldId) + 2) * mCurrentFrame.getWordSize()))), irInitExpression.unEx()));
+                mLastStatementBodyMethodInitFields.setLeftStatement(new MOVE(new MEM(new BINOP(TypeBinOp.PLUS, currentObject(), new CONST((mObjectLayout.get(mCurrentFieldId) + 2) * mCurrentFrame.getWordSize()))), irInitExpression.unEx()));
             }
         } else {
             LocalVariableSymbol symbol = ((LocalVariableSymbol) statement.getSymbol());
             if (!symbol.isFormalArg()) {
-                Access access = mCurrentFrame.allocLocal(true);
+                // The language does not have nested procedures and a way to take an address of a variable so a local variable never escapes and it is kept in a temporary variable.
+                Access access = mCurrentFrame.allocLocal(false);
                 mListLocalVars.put(symbol.getVarId(), access);
                 return new Nx(new MOVE(access.exp(new TEMP(mCurrentFrame.getFP())), irInitExpression.unEx()));
             }
@@ -954,8 +992,8 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
 
     @Override
     public WrapperIRExpression visit(While statement) {
-        Label lblEnd = Label.newLabel();
-        Label lblBeginLoop = Label.newLabel();
+        Label lblEnd = mContext.newLabel();
+        Label lblBeginLoop = mContext.newLabel();
 
         Label savedLblEnd = mCurrentLblEnd;
         mCurrentLblEnd = lblEnd;
@@ -970,13 +1008,13 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
 
         mCurrentLblBeginLoop = saveLblBeginLoop;
 
-        Label lblTrue = Label.newLabel();
+        Label lblTrue = mContext.newLabel();
 
         return new Nx(
                 new SEQ(
                         new LABEL(lblBeginLoop),
                         new SEQ(
-                                new CJUMP(TypeRelOp.EQ, expression.unEx(), new CONST(1), lblTrue, lblEnd),
+                                expression.unCx(lblTrue, lblEnd),
                                 new SEQ(
                                         new LABEL(lblTrue),
                                         new SEQ(
@@ -992,6 +1030,36 @@ public class NewIRTreeVisitor implements IRTreeVisitor {
         );
     }
 
+    // The current object is the first argument of a method
+    private IRExpression currentObject() {
+        return mCurrentFrame.getFormalArgumentsInFunction().getFirst().exp(new TEMP(mCurrentFrame.getFP()));
+    }
+
+    // A value which can be computed when it is not used: no side effects, no loads (a null object) and no divisions (a division by zero)
+    private boolean isSimple(IRExpression expression) {
+        if ((expression instanceof TEMP) || (expression instanceof CONST) || (expression instanceof NAME)) {
+            return true;
+        }
+
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+            return ((binop.getTypeBinOp() == TypeBinOp.PLUS) || (binop.getTypeBinOp() == TypeBinOp.MINUS) || (binop.getTypeBinOp() == TypeBinOp.MUL)) &&
+                    (isSimple(binop.getLeftExpression())) && (isSimple(binop.getRightExpression()));
+        }
+
+        if (expression instanceof SELECT) {
+            for (IRExpression kid : expression.kids()) {
+                if (!isSimple(kid)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
     private LinkedList<IRExpression> args(IRExpression... irExpressions) {
         LinkedList<IRExpression> expressions = new LinkedList<>();
 
@@ -1,84 +1,73 @@
 package bee.lang.translate;
 
-import java.util.HashSet;
 import java.util.LinkedList;
 
 public class Node {
 
     private Graph mGraph;
-    private HashSet<Node> mSuccList;
-    private HashSet<Node> mPredList;
-    private HashSet<Node> mTotalAdjNodes;
+    private int mIndex;
 
-    public Node(Graph graph) {
+    public Node(Graph graph, int index) {
         mGraph = graph;
-        mSuccList = new HashSet<>();
-        mPredList = new HashSet<>();
-        mTotalAdjNodes = new HashSet<>();
+        mIndex = index;
     }
 
-    public void addSucc(Node node) {
-        if (mGraph == node.mGraph) {
-            mSuccList.add(node);
-            mTotalAdjNodes.add(node);
-        }
-    }
-
-    public void removeSucc(Node node) {
-        if (mGraph == node.mGraph) {
-            mSuccList.remove(node);
-            mTotalAdjNodes.remove(node);
-        }
+    public int getIndex() {
+        return mIndex;
     }
 
     public LinkedList<Node> succ() {
-        return new LinkedList<>(mSuccList);
-    }
-
-    public void addPred(Node node) {
-        if (mGraph == node.mGraph) {
-            mPredList.add(node);
-            mTotalAdjNodes.add(node);
-        }
-    }
-
-    public void removePred(Node node) {
-        if (mGraph == node.mGraph) {
-            mPredList.remove(node);
-            mTotalAdjNodes.remove(node);
-        }
+        return toNodes(mGraph.succ(mIndex), mGraph.outDegree(mIndex));
     }
 
     public LinkedList<Node> pred() {
-        return new LinkedList<>(mPredList);
+        return toNodes(mGraph.pred(mIndex), mGraph.inDegree(mIndex));
     }
 
     public LinkedList<Node> adj() {
-        return new LinkedList<>(mTotalAdjNodes);
+        LinkedList<Node> result = succ();
+
+        for (Node node : pred()) {
+            if (!result.contains(node)) {
+                result.add(node);
+            }
+        }
+
+        return result;
     }
 
     public int outDegree() {
-        return succ().size();
+        return mGraph.outDegree(mIndex);
     }
 
     public int inDegree() {
-        return pred().size();
+        return mGraph.inDegree(mIndex);
     }
 
     public int degree() {
-        return mTotalAdjNodes.size();
+        return adj().size();
     }
 
     public boolean goesTo(Node node) {
-        return ((mGraph == node.mGraph) && (mSuccList.contains(node)));
+        return ((mGraph == node.mGraph) && (Graph.contains(mGraph.succ(mIndex), mGraph.outDegree(mIndex), node.mIndex)));
     }
 
     public boolean comesFrom(Node node) {
-        return ((mGraph == node.mGraph) && (mPredList.contains(node)));
+        return ((mGraph == node.mGraph) && (Graph.contains(mGraph.pred(mIndex), mGraph.inDegree(mIndex), node.mIndex)));
     }
 
     public boolean adj(Node node) {
-        return ((mGraph == node.mGraph) && (mTotalAdjNodes.contains(node)));
+        return ((goesTo(node)) || (comesFrom(node)));
+    }
+
+    private LinkedList<Node> toNodes(int[] indexes, int count) {
+        LinkedList<Node> result = new LinkedList<>();
+
+        for (int i = 0; i < count; i++) {
+            result.add(mGraph.node(indexes[i]));
+        }
+
+        return result;
     }
 
 }
@@ -0,0 +1,37 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.IRExpression;
+
+import java.util.LinkedHashMap;
+
+// The function phi at the beginning of a basic block in SSA form. The destination gets the argument of the predecessor from which control came.
+// Arguments are temporary variables or constants.
+public class Phi {
+
+    private Temp mDst;
+    private LinkedHashMap<BasicBlock, IRExpression> mArguments;
+
+    public Phi(Temp dst) {
+        mDst = dst;
+        mArguments = new LinkedHashMap<>();
+    }
+
+    public void setDst(Temp dst) {
+        mDst = dst;
+    }
+
+    public Temp getDst() {
+        return mDst;
+    }
+
+    public LinkedHashMap<BasicBlock, IRExpression> getArguments() {
+        return mArguments;
+    }
+
+    @Override
+    public String toString() {
+        return mDst + " = PHI(" + mArguments.values() + ")";
+    }
+
+}
@@ -1,27 +1,122 @@
 package bee.lang.translate;
 
 import bee.lang.assembly.AsmInstruction;
+import bee.lang.assembly.AsmMOVE;
 import bee.lang.assembly.TempMap;
+import bee.lang.exceptions.CodegenException;
 import bee.lang.exceptions.SelectColorException;
 import bee.lang.ir.Temp;
+import bee.lang.ir.tree.MOVE;
+import bee.lang.ir.tree.TEMP;
+import bee.lang.translate.frame.Access;
 import bee.lang.translate.frame.Frame;
 
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.ListIterator;
 
 // This class is a wrapper for liveness analysis and distribution of registers.
 public class RegAlloc implements TempMap {
 
     private Color mColor;
-    private Frame mFrame;
+    // Temporary variables which are created to load and store spilled temporary variables
+    private HashSet<Temp> mSpillTemps;
 
-    public RegAlloc(Frame frame, LinkedList<AsmInstruction> asmInstructions) throws SelectColorException {
-        mFrame = frame;
+    public RegAlloc(Frame frame, LinkedList<AsmInstruction> asmInstructions) throws SelectColorException, CodegenException {
+        mSpillTemps = new HashSet<>();
 
-        AsmFlowGraph asmFlowGraph = new AsmFlowGraph(asmInstructions);
+        while (true) {
+            AsmFlowGraph asmFlowGraph = new AsmFlowGraph(asmInstructions);
 
-        Liveness liveness = new Liveness(asmFlowGraph);
+            Liveness liveness = new Liveness(asmFlowGraph);
 
-        mColor = new Color(liveness, frame, frame.registers(), frame.getCountRegisters());
+            mColor = new Color(liveness, frame, frame.registers(), frame.getCountRegisters(), mSpillTemps);
+
+            if (mColor.spills().isEmpty()) {
+                break;
+            }
+
+            boolean isRewritten = false;
+
+            for (Temp temp : mColor.spills()) {
+                // Temporary variables which are created for spilled ones have tiny live ranges so spilling of them does not help.
+                // They are never chosen as potential spills so they can be in the list of spills only if they are coalesced with other spilled temporary variables.
+                if (!mSpillTemps.contains(temp)) {
+                    rewriteProgram(frame, asmInstructions, temp, mSpillTemps);
+                    isRewritten = true;
+                }
+            }
+
+            if (!isRewritten) {
+                throw new SelectColorException(mColor.spills().getFirst());
+            }
+        }
+
+        // Moves between coalesced temporary variables are not needed anymore
+        removeRedundantMoves(asmInstructions, this);
+    }
+
+    // Remove moves between temporary variables which have the same register
+    static void removeRedundantMoves(LinkedList<AsmInstruction> asmInstructions, TempMap tempMap) {
+        ListIterator<AsmInstruction> iterator = asmInstructions.listIterator();
+
+        while (iterator.hasNext()) {
+            AsmInstruction asmInstruction = iterator.next();
+
+            if (asmInstruction instanceof AsmMOVE) {
+                AsmMOVE asmMove = (AsmMOVE) asmInstruction;
+
+                String dst = tempMap.tempMap(asmMove.getDst());
+                String src = tempMap.tempMap(asmMove.getSrc());
+
+                if ((dst != null) && (dst.equals(src))) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    // Place the spilled temporary variable in the frame. Each use of the temporary variable is replaced by a new temporary variable
+    // which is loaded from the frame before the instruction and each definition is replaced by a new temporary variable which is stored
+    // in the frame after the instruction. New temporary variables are added to the set of spill temporary variables.
+    static void rewriteProgram(Frame frame, LinkedList<AsmInstruction> asmInstructions, Temp spilledTemp, HashSet<Temp> spillTemps) throws CodegenException {
+        Access access = frame.allocLocal(true);
+
+        ListIterator<AsmInstruction> iterator = asmInstructions.listIterator();
+
+        while (iterator.hasNext()) {
+            AsmInstruction asmInstruction = iterator.next();
+
+            boolean isUsed = asmInstruction.getUse().contains(spilledTemp);
+            boolean isDefined = asmInstruction.getDef().contains(spilledTemp);
+
+            if ((!isUsed) && (!isDefined)) {
+                continue;
+            }
+
+            Temp newTemp = frame.getContext().newTemp();
+            spillTemps.add(newTemp);
+
+            asmInstruction.replaceTemp(spilledTemp, newTemp);
+
+            if (isUsed) {
+                // MOVE(TEMP(t'), MEM(BINOP(PLUS, TEMP(fp), CONST(k))))
+                iterator.previous();
+
+                for (AsmInstruction load : frame.codegen(new MOVE(new TEMP(newTemp), access.exp(new TEMP(frame.getFP()))))) {
+                    iterator.add(load);
+                }
+
+                iterator.next();
+            }
+
+            if (isDefined) {
+                // MOVE(MEM(BINOP(PLUS, TEMP(fp), CONST(k))), TEMP(t'))
+                for (AsmInstruction store : frame.codegen(new MOVE(access.exp(new TEMP(frame.getFP())), new TEMP(newTemp)))) {
+                    iterator.add(store);
+                }
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,711 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import bee.lang.translate.frame.Frame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.Map;
+
+// This class is used to translate basic blocks to SSA form and back. Each temporary variable (except machine registers) gets a new name for each definition.
+// Construction:
+// 1. The dominator tree is computed by DominatorTree.
+// 2. Functions phi are inserted on dominance frontiers of definitions of temporary variables which are used in several blocks (semi-pruned SSA form).
+// 3. Temporary variables are renamed by the walk over the dominator tree.
+// Destruction:
+// Each function phi becomes copies at the ends of predecessors. Edges from blocks with several successors to blocks with functions phi are split
+// by new blocks so the copies are executed only on that edge. Copies of the same edge are parallel so they are ordered and cycles are broken by
+// a new temporary variable.
+// Unreachable blocks are removed. The first block never has predecessors so its functions phi are never needed.
+public class SSAForm {
+
+    private Frame mFrame;
+    private ControlFlowAnalyzing mControlFlowAnalyzing;
+    private LinkedList<BasicBlock> mBasicBlocks;
+    private HashMap<BasicBlock, LinkedList<Phi>> mPhis;
+    private HashMap<Label, BasicBlock> mBlocksByLabel;
+    private HashMap<BasicBlock, LinkedList<BasicBlock>> mPredecessors;
+
+    public SSAForm(Frame frame, ControlFlowAnalyzing controlFlowAnalyzing, LinkedList<BasicBlock> basicBlocks) {
+        mFrame = frame;
+        mControlFlowAnalyzing = controlFlowAnalyzing;
+        mBasicBlocks = basicBlocks;
+        mPhis = new HashMap<>();
+    }
+
+    public void construct() {
+        if (mBasicBlocks.isEmpty()) {
+            return;
+        }
+
+        updateEdges();
+
+        // The first block must not have predecessors
+        if (!mPredecessors.get(mBasicBlocks.getFirst()).isEmpty()) {
+            BasicBlock entry = new BasicBlock();
+            entry.addStatement(new LABEL(mControlFlowAnalyzing.newLabel()));
+            entry.addStatement(new JUMP(mBasicBlocks.getFirst().getLabel()));
+            mBasicBlocks.addFirst(entry);
+
+            updateEdges();
+        }
+
+        removeUnreachableBlocks();
+
+        BasicBlock[] blocks = mBasicBlocks.toArray(new BasicBlock[0]);
+        int countBlocks = blocks.length;
+
+        HashMap<BasicBlock, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < countBlocks; i++) {
+            indexes.put(blocks[i], i);
+            mPhis.put(blocks[i], new LinkedList<>());
+        }
+
+        int[] dominators = new DominatorTree(mBasicBlocks).getDominators();
+
+        // Dominance frontiers
+        ArrayList<HashSet<Integer>> frontiers = new ArrayList<>();
+        for (int i = 0; i < countBlocks; i++) {
+            frontiers.add(new HashSet<>());
+        }
+
+        for (int i = 0; i < countBlocks; i++) {
+            LinkedList<BasicBlock> predecessors = mPredecessors.get(blocks[i]);
+
+            if (predecessors.size() < 2) {
+                continue;
+            }
+
+            for (BasicBlock predecessor : predecessors) {
+                int runner = indexes.get(predecessor);
+
+                while (runner != dominators[i]) {
+                    frontiers.get(runner).add(i);
+                    runner = dominators[runner];
+                }
+            }
+        }
+
+        // Blocks where temporary variables are defined and temporary variables which are used before their definitions in some block
+        LinkedHashMap<Temp, LinkedList<Integer>> definitions = new LinkedHashMap<>();
+        HashSet<Temp> globals = new HashSet<>();
+
+        for (int i = 0; i < countBlocks; i++) {
+            HashSet<Temp> defined = new HashSet<>();
+
+            for (IRStatement statement : blocks[i].getStatements()) {
+                for (Temp temp : getUses(statement)) {
+                    if ((isVariable(temp)) && (!defined.contains(temp))) {
+                        globals.add(temp);
+                    }
+                }
+
+                Temp dst = getDefinition(statement);
+
+                if ((dst != null) && (isVariable(dst))) {
+                    defined.add(dst);
+
+                    if (!definitions.containsKey(dst)) {
+                        definitions.put(dst, new LinkedList<>());
+                    }
+
+                    if ((definitions.get(dst).isEmpty()) || (definitions.get(dst).getLast() != i)) {
+                        definitions.get(dst).add(i);
+                    }
+                }
+            }
+        }
+
+        // Insert functions phi. The original temporary variable of each function is kept until renaming.
+        HashMap<Phi, Temp> variables = new HashMap<>();
+
+        for (Map.Entry<Temp, LinkedList<Integer>> entry : definitions.entrySet()) {
+            Temp temp = entry.getKey();
+
+            if (!globals.contains(temp)) {
+                continue;
+            }
+
+            boolean[] hasPhi = new boolean[countBlocks];
+            boolean[] isInWorklist = new boolean[countBlocks];
+            LinkedList<Integer> worklist = new LinkedList<>(entry.getValue());
+            for (int block : worklist) {
+                isInWorklist[block] = true;
+            }
+
+            while (!worklist.isEmpty()) {
+                int block = worklist.removeFirst();
+
+                for (int frontier : frontiers.get(block)) {
+                    if (!hasPhi[frontier]) {
+                        hasPhi[frontier] = true;
+
+                        Phi phi = new Phi(temp);
+                        mPhis.get(blocks[frontier]).add(phi);
+                        variables.put(phi, temp);
+
+                        if (!isInWorklist[frontier]) {
+                            isInWorklist[frontier] = true;
+                            worklist.add(frontier);
+                        }
+                    }
+                }
+            }
+        }
+
+        rename(blocks, dominators, variables);
+
+        removeDeadPhis();
+    }
+
+    public void destruct() {
+        updateEdges();
+
+        HashMap<BasicBlock, HashSet<Temp>> liveIn = computeLivePhiResults();
+
+        for (BasicBlock block : new LinkedList<>(mBasicBlocks)) {
+            LinkedList<Phi> phis = mPhis.get(block);
+
+            if ((phis == null) || (phis.isEmpty())) {
+                continue;
+            }
+
+            for (BasicBlock predecessor : new LinkedHashSet<>(mPredecessors.get(block))) {
+                BasicBlock source = predecessor;
+
+                // The edge is split if the predecessor has several successors and copies can not be executed on other edges
+                IRStatement last = predecessor.getStatements().getLast();
+
+                if (((!(last instanceof JUMP)) || (((JUMP) last).getTargets().size() != 1)) && (!canCopyBeforeJump(predecessor, block, liveIn))) {
+                    source = splitEdge(predecessor, block);
+                }
+
+                LinkedList<MOVE> copies = new LinkedList<>();
+                for (Phi phi : phis) {
+                    copies.add(new MOVE(new TEMP(phi.getDst()), phi.getArguments().get(source)));
+                }
+
+                LinkedList<IRStatement> statements = source.getStatements();
+                statements.addAll(statements.size() - 1, sequentializeCopies(copies));
+            }
+
+            phis.clear();
+        }
+
+        mPhis.clear();
+    }
+
+    // Copies of functions phi of the block can be placed before the jump of the predecessor if their destinations are not read by the jump
+    // and they are not alive on other edges of the jump
+    private boolean canCopyBeforeJump(BasicBlock predecessor, BasicBlock block, HashMap<BasicBlock, HashSet<Temp>> liveIn) {
+        HashSet<Temp> dsts = new HashSet<>();
+        for (Phi phi : mPhis.get(block)) {
+            dsts.add(phi.getDst());
+        }
+
+        for (Temp temp : getUses(predecessor.getStatements().getLast())) {
+            if (dsts.contains(temp)) {
+                return false;
+            }
+        }
+
+        for (BasicBlock successor : getSuccessors(predecessor)) {
+            if (successor == block) {
+                continue;
+            }
+
+            for (Temp temp : getLiveOnEdge(predecessor, successor, liveIn)) {
+                if (dsts.contains(temp)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // Results of functions phi which are alive at the beginning of each block after its functions phi. Results of functions phi are defined only
+    // by them so statements never kill them.
+    private HashMap<BasicBlock, HashSet<Temp>> computeLivePhiResults() {
+        HashSet<Temp> results = new HashSet<>();
+        for (BasicBlock block : mBasicBlocks) {
+            for (Phi phi : mPhis.get(block)) {
+                results.add(phi.getDst());
+            }
+        }
+
+        HashMap<BasicBlock, HashSet<Temp>> liveIn = new HashMap<>();
+        HashMap<BasicBlock, HashSet<Temp>> uses = new HashMap<>();
+
+        for (BasicBlock block : mBasicBlocks) {
+            HashSet<Temp> blockUses = new HashSet<>();
+
+            for (IRStatement statement : block.getStatements()) {
+                for (Temp temp : getUses(statement)) {
+                    if (results.contains(temp)) {
+                        blockUses.add(temp);
+                    }
+                }
+            }
+
+            uses.put(block, blockUses);
+            liveIn.put(block, new HashSet<>(blockUses));
+        }
+
+        boolean isChanged = true;
+
+        while (isChanged) {
+            isChanged = false;
+
+            ListIterator<BasicBlock> iterator = mBasicBlocks.listIterator(mBasicBlocks.size());
+
+            while (iterator.hasPrevious()) {
+                BasicBlock block = iterator.previous();
+
+                for (BasicBlock successor : getSuccessors(block)) {
+                    for (Temp temp : getLiveOnEdge(block, successor, liveIn)) {
+                        if ((results.contains(temp)) && (liveIn.get(block).add(temp))) {
+                            isChanged = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        return liveIn;
+    }
+
+    private HashSet<Temp> getLiveOnEdge(BasicBlock predecessor, BasicBlock block, HashMap<BasicBlock, HashSet<Temp>> liveIn) {
+        HashSet<Temp> live = new HashSet<>(liveIn.get(block));
+
+        for (Phi phi : mPhis.get(block)) {
+            live.remove(phi.getDst());
+        }
+
+        for (Phi phi : mPhis.get(block)) {
+            IRExpression argument = phi.getArguments().get(predecessor);
+
+            if (argument instanceof TEMP) {
+                live.add(((TEMP) argument).getTemp());
+            }
+        }
+
+        return live;
+    }
+
+    public LinkedList<BasicBlock> getBasicBlocks() {
+        return mBasicBlocks;
+    }
+
+    public LinkedList<Phi> getPhis(BasicBlock block) {
+        return mPhis.get(block);
+    }
+
+    public LinkedList<BasicBlock> getPredecessors(BasicBlock block) {
+        return mPredecessors.get(block);
+    }
+
+    // Successors in the order of targets of the last statement. The end of the procedure is not a block.
+    public LinkedList<BasicBlock> getSuccessors(BasicBlock block) {
+        LinkedList<BasicBlock> successors = new LinkedList<>();
+
+        for (Label label : block.getTargets()) {
+            BasicBlock successor = mBlocksByLabel.get(label);
+
+            if (successor != null) {
+                successors.add(successor);
+            }
+        }
+
+        return successors;
+    }
+
+    public BasicBlock getBlock(Label label) {
+        return mBlocksByLabel.get(label);
+    }
+
+    // Machine registers are not renamed
+    public boolean isVariable(Temp temp) {
+        return mFrame.tempMap(temp) == null;
+    }
+
+    // This method must be called after jumps are changed. Arguments of functions phi from blocks which are not predecessors any more are removed.
+    public void updateEdges() {
+        mBlocksByLabel = new HashMap<>();
+        mPredecessors = new HashMap<>();
+
+        for (BasicBlock block : mBasicBlocks) {
+            mBlocksByLabel.put(block.getLabel(), block);
+            mPredecessors.put(block, new LinkedList<>());
+        }
+
+        for (BasicBlock block : mBasicBlocks) {
+            for (BasicBlock successor : getSuccessors(block)) {
+                mPredecessors.get(successor).add(block);
+            }
+        }
+
+        for (BasicBlock block : mBasicBlocks) {
+            LinkedList<Phi> phis = mPhis.get(block);
+
+            if (phis != null) {
+                for (Phi phi : phis) {
+                    phi.getArguments().keySet().retainAll(mPredecessors.get(block));
+                }
+            }
+        }
+    }
+
+    public void removeUnreachableBlocks() {
+        for (BasicBlock block : mBasicBlocks) {
+            block.checkJumps();
+        }
+
+        HashSet<BasicBlock> reachable = new HashSet<>();
+        LinkedList<BasicBlock> worklist = new LinkedList<>();
+
+        reachable.add(mBasicBlocks.getFirst());
+        worklist.add(mBasicBlocks.getFirst());
+
+        while (!worklist.isEmpty()) {
+            for (BasicBlock successor : getSuccessors(worklist.removeFirst())) {
+                if (reachable.add(successor)) {
+                    worklist.add(successor);
+                }
+            }
+        }
+
+        if (reachable.size() == mBasicBlocks.size()) {
+            return;
+        }
+
+        mBasicBlocks.retainAll(reachable);
+        mPhis.keySet().retainAll(reachable);
+
+        updateEdges();
+    }
+
+    // The temporary variable which is defined by the statement
+    public static Temp getDefinition(IRStatement statement) {
+        if ((statement instanceof MOVE) && (((MOVE) statement).getDst() instanceof TEMP)) {
+            return ((TEMP) ((MOVE) statement).getDst()).getTemp();
+        }
+
+        return null;
+    }
+
+    // Temporary variables which are read by the statement
+    public static LinkedList<Temp> getUses(IRStatement statement) {
+        LinkedList<Temp> uses = new LinkedList<>();
+
+        LinkedList<IRExpression> kids = statement.kids();
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                getUses(kid, uses);
+            }
+        }
+
+        return uses;
+    }
+
+    private static void getUses(IRExpression expression, LinkedList<Temp> uses) {
+        if (expression instanceof TEMP) {
+            uses.add(((TEMP) expression).getTemp());
+            return;
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+        if (kids != null) {
+            for (IRExpression kid : kids) {
+                getUses(kid, uses);
+            }
+        }
+    }
+
+    // Replaces temporary variables which are read by the statement. The destination of MOVE(TEMP(t), e) is not changed.
+    public static IRStatement replaceUses(IRStatement statement, HashMap<Temp, IRExpression> replacements) {
+        LinkedList<IRExpression> kids = statement.kids();
+
+        if (kids == null) {
+            return statement;
+        }
+
+        LinkedList<IRExpression> newKids = new LinkedList<>();
+        for (IRExpression kid : kids) {
+            newKids.add(replaceUses(kid, replacements));
+        }
+
+        return statement.build(newKids);
+    }
+
+    public static IRExpression replaceUses(IRExpression expression, HashMap<Temp, IRExpression> replacements) {
+        if (expression instanceof TEMP) {
+            IRExpression replacement = replacements.get(((TEMP) expression).getTemp());
+            return (replacement == null) ? expression : replacement;
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids == null) {
+            return expression;
+        }
+
+        LinkedList<IRExpression> newKids = new LinkedList<>();
+        for (IRExpression kid : kids) {
+            newKids.add(replaceUses(kid, replacements));
+        }
+
+        return expression.build(newKids);
+    }
+
+    private void rename(BasicBlock[] blocks, int[] dominators, HashMap<Phi, Temp> variables) {
+        int countBlocks = blocks.length;
+
+        ArrayList<LinkedList<Integer>> children = new ArrayList<>();
+        for (int i = 0; i < countBlocks; i++) {
+            children.add(new LinkedList<>());
+        }
+
+        for (int i = 1; i < countBlocks; i++) {
+            children.get(dominators[i]).add(i);
+        }
+
+        // Current names of temporary variables
+        HashMap<Temp, LinkedList<Temp>> names = new HashMap<>();
+        // Temporary variables which got new names in each block of the walk
+        LinkedList<LinkedList<Temp>> definedTemps = new LinkedList<>();
+
+        LinkedList<Integer> stack = new LinkedList<>();
+        LinkedList<ListIterator<Integer>> childIterators = new LinkedList<>();
+
+        stack.push(0);
+        childIterators.push(children.get(0).listIterator());
+        definedTemps.push(renameBlock(blocks[0], names, variables));
+
+        while (!stack.isEmpty()) {
+            ListIterator<Integer> iterator = childIterators.peek();
+
+            if (iterator.hasNext()) {
+                int child = iterator.next();
+
+                stack.push(child);
+                childIterators.push(children.get(child).listIterator());
+                definedTemps.push(renameBlock(blocks[child], names, variables));
+            } else {
+                stack.pop();
+                childIterators.pop();
+
+                for (Temp temp : definedTemps.pop()) {
+                    names.get(temp).pop();
+                }
+            }
+        }
+    }
+
+    // Returns temporary variables which got new names in the block
+    private LinkedList<Temp> renameBlock(BasicBlock block, HashMap<Temp, LinkedList<Temp>> names, HashMap<Phi, Temp> variables) {
+        LinkedList<Temp> definedTemps = new LinkedList<>();
+
+        for (Phi phi : mPhis.get(block)) {
+            phi.setDst(newName(phi.getDst(), names, definedTemps));
+        }
+
+        ListIterator<IRStatement> iterator = block.getStatements().listIterator();
+
+        while (iterator.hasNext()) {
+            IRStatement statement = iterator.next();
+
+            HashMap<Temp, IRExpression> replacements = new HashMap<>();
+            for (Temp temp : getUses(statement)) {
+                LinkedList<Temp> stack = names.get(temp);
+
+                if ((stack != null) && (!stack.isEmpty())) {
+                    replacements.put(temp, new TEMP(stack.peek()));
+                }
+            }
+
+            IRStatement newStatement = replaceUses(statement, replacements);
+
+            Temp dst = getDefinition(newStatement);
+
+            if ((dst != null) && (isVariable(dst))) {
+                newStatement = new MOVE(new TEMP(newName(dst, names, definedTemps)), ((MOVE) newStatement).getSrc());
+            }
+
+            iterator.set(newStatement);
+        }
+
+        for (BasicBlock successor : getSuccessors(block)) {
+            for (Phi phi : mPhis.get(successor)) {
+                Temp temp = variables.get(phi);
+                LinkedList<Temp> stack = names.get(temp);
+
+                // A temporary variable without a definition on this path keeps its name
+                phi.getArguments().put(block, new TEMP(((stack != null) && (!stack.isEmpty())) ? stack.peek() : temp));
+            }
+        }
+
+        return definedTemps;
+    }
+
+    private Temp newName(Temp temp, HashMap<Temp, LinkedList<Temp>> names, LinkedList<Temp> definedTemps) {
+        Temp name = mFrame.getContext().newTemp();
+
+        if (!names.containsKey(temp)) {
+            names.put(temp, new LinkedList<>());
+        }
+
+        names.get(temp).push(name);
+        definedTemps.add(temp);
+
+        return name;
+    }
+
+    // Functions phi whose results are never read by statements (even through other functions phi) are removed
+    private void removeDeadPhis() {
+        HashMap<Temp, Phi> phisByDst = new HashMap<>();
+
+        for (BasicBlock block : mBasicBlocks) {
+            for (Phi phi : mPhis.get(block)) {
+                phisByDst.put(phi.getDst(), phi);
+            }
+        }
+
+        HashSet<Phi> livePhis = new HashSet<>();
+        LinkedList<Phi> worklist = new LinkedList<>();
+
+        for (BasicBlock block : mBasicBlocks) {
+            for (IRStatement statement : block.getStatements()) {
+                for (Temp temp : getUses(statement)) {
+                    Phi phi = phisByDst.get(temp);
+
+                    if ((phi != null) && (livePhis.add(phi))) {
+                        worklist.add(phi);
+                    }
+                }
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            for (IRExpression argument : worklist.removeFirst().getArguments().values()) {
+                if (argument instanceof TEMP) {
+                    Phi phi = phisByDst.get(((TEMP) argument).getTemp());
+
+                    if ((phi != null) && (livePhis.add(phi))) {
+                        worklist.add(phi);
+                    }
+                }
+            }
+        }
+
+        for (BasicBlock block : mBasicBlocks) {
+            mPhis.get(block).retainAll(livePhis);
+        }
+    }
+
+    // A new block between the predecessor and the block. Arguments of functions phi are moved to the new block.
+    private BasicBlock splitEdge(BasicBlock predecessor, BasicBlock block) {
+        Label label = block.getLabel();
+        Label newLabel = mControlFlowAnalyzing.newLabel();
+
+        BasicBlock newBlock = new BasicBlock();
+        newBlock.addStatement(new LABEL(newLabel));
+        newBlock.addStatement(new JUMP(label));
+
+        IRStatement last = predecessor.getStatements().getLast();
+
+        if (last instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) last;
+
+            if (cjump.getLblTrue() == label) {
+                cjump.setLblTrue(newLabel);
+            }
+
+            if (cjump.getLblFalse() == label) {
+                cjump.setLblFalse(newLabel);
+            }
+        } else {
+            JUMP jump = (JUMP) last;
+
+            LinkedList<Label> targets = new LinkedList<>();
+            for (Label target : jump.getTargets()) {
+                targets.add((target == label) ? newLabel : target);
+            }
+
+            predecessor.getStatements().set(predecessor.getStatements().size() - 1, new JUMP(jump.getExpression(), targets));
+        }
+
+        mBasicBlocks.add(mBasicBlocks.indexOf(predecessor) + 1, newBlock);
+        mBlocksByLabel.put(newLabel, newBlock);
+
+        for (Phi phi : mPhis.get(block)) {
+            phi.getArguments().put(newBlock, phi.getArguments().remove(predecessor));
+        }
+
+        return newBlock;
+    }
+
+    // Parallel copies become sequential. A copy is emitted when its destination is not read by other copies. A cycle is broken by saving
+    // the destination of one copy in a new temporary variable.
+    private LinkedList<IRStatement> sequentializeCopies(LinkedList<MOVE> copies) {
+        LinkedList<IRStatement> statements = new LinkedList<>();
+        LinkedList<MOVE> pending = new LinkedList<>();
+
+        for (MOVE copy : copies) {
+            if ((!(copy.getSrc() instanceof TEMP)) || (((TEMP) copy.getSrc()).getTemp() != ((TEMP) copy.getDst()).getTemp())) {
+                pending.add(copy);
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            MOVE ready = null;
+
+            for (MOVE copy : pending) {
+                if (!isRead(((TEMP) copy.getDst()).getTemp(), pending)) {
+                    ready = copy;
+                    break;
+                }
+            }
+
+            if (ready != null) {
+                pending.remove(ready);
+                statements.add(ready);
+                continue;
+            }
+
+            Temp dst = ((TEMP) pending.getFirst().getDst()).getTemp();
+            Temp temp = mFrame.getContext().newTemp();
+
+            statements.add(new MOVE(new TEMP(temp), new TEMP(dst)));
+
+            ListIterator<MOVE> iterator = pending.listIterator();
+            while (iterator.hasNext()) {
+                MOVE copy = iterator.next();
+
+                if ((copy.getSrc() instanceof TEMP) && (((TEMP) copy.getSrc()).getTemp() == dst)) {
+                    iterator.set(new MOVE(copy.getDst(), new TEMP(temp)));
+                }
+            }
+        }
+
+        return statements;
+    }
+
+    private boolean isRead(Temp temp, LinkedList<MOVE> copies) {
+        for (MOVE copy : copies) {
+            if ((copy.getSrc() instanceof TEMP) && (((TEMP) copy.getSrc()).getTemp() == temp)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
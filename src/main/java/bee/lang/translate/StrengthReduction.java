@@ -0,0 +1,334 @@
+package bee.lang.translate;
+
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import bee.lang.translate.frame.Frame;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+// This class is used to replace multiplications by induction variables in loops with additions (strength reduction).
+// A basic induction variable i has only one definition in the loop: i = i + c, or i = j right after j = i + c in the same block.
+// An expression i * s or x + i * s (x is not changed in the loop and s is a constant) gets a new temporary variable p. It is computed in a new block
+// before the loop (the preheader) and p = p + c * s is added after the definition of i, so p always has the value of the expression in the loop.
+// Addresses of array elements MEM(a + i * 4 + 4) become MEM(p + 4) and each iteration has only one addition for them.
+// i * s alone is not replaced if s is a power of two because the instruction 'sll' is as cheap as the addition.
+public class StrengthReduction {
+
+    private Frame mFrame;
+    private ControlFlowAnalyzing mControlFlowAnalyzing;
+
+    // Temporary variables which are defined in the current loop and their definitions
+    private HashMap<Temp, LinkedList<MOVE>> mDefinitions;
+    // Basic induction variables of the current loop and their steps
+    private HashMap<Temp, Integer> mSteps;
+    // Statements after which basic induction variables are changed
+    private HashMap<MOVE, Temp> mIncrements;
+    // Keys of replaced expressions and their new temporary variables
+    private LinkedHashMap<String, Temp> mValues;
+    // Basic induction variables and new temporary variables which depend on them with their factors
+    private HashMap<Temp, LinkedHashMap<Temp, Integer>> mDerived;
+    // Statements of the preheader
+    private LinkedList<IRStatement> mNewStatements;
+
+    public StrengthReduction(Frame frame, ControlFlowAnalyzing controlFlowAnalyzing) {
+        mFrame = frame;
+        mControlFlowAnalyzing = controlFlowAnalyzing;
+    }
+
+    public void optimize(LinkedList<BasicBlock> basicBlocks) {
+        if (basicBlocks.isEmpty()) {
+            return;
+        }
+
+        LinkedList<Loop> loops = Loop.findLoops(new DominatorTree(basicBlocks));
+
+        for (Loop loop : loops) {
+            BasicBlock preheader = reduce(basicBlocks, loop);
+
+            if (preheader == null) {
+                continue;
+            }
+
+            // The preheader of an inner loop is a part of outer loops
+            for (Loop outerLoop : loops) {
+                if ((outerLoop != loop) && (outerLoop.getBlocks().contains(loop.getHeader()))) {
+                    outerLoop.getBlocks().add(preheader);
+                }
+            }
+        }
+    }
+
+    // Returns the new preheader or null if nothing is replaced
+    private BasicBlock reduce(LinkedList<BasicBlock> basicBlocks, Loop loop) {
+        mDefinitions = new HashMap<>();
+        mSteps = new HashMap<>();
+        mIncrements = new HashMap<>();
+        mValues = new LinkedHashMap<>();
+        mDerived = new HashMap<>();
+        mNewStatements = new LinkedList<>();
+
+        for (BasicBlock block : loop.getBlocks()) {
+            for (IRStatement statement : block.getStatements()) {
+                Temp dst = SSAForm.getDefinition(statement);
+
+                if (dst != null) {
+                    if (!mDefinitions.containsKey(dst)) {
+                        mDefinitions.put(dst, new LinkedList<>());
+                    }
+
+                    mDefinitions.get(dst).add((MOVE) statement);
+                }
+            }
+        }
+
+        for (BasicBlock block : loop.getBlocks()) {
+            findInductionVariables(block);
+        }
+
+        if (mSteps.isEmpty()) {
+            return null;
+        }
+
+        for (BasicBlock block : basicBlocks) {
+            if (!loop.getBlocks().contains(block)) {
+                continue;
+            }
+
+            ListIterator<IRStatement> iterator = block.getStatements().listIterator();
+
+            while (iterator.hasNext()) {
+                IRStatement statement = iterator.next();
+                iterator.set(rewrite(statement));
+
+                Temp inductionVariable = mIncrements.get(statement);
+
+                if ((inductionVariable != null) && (mDerived.containsKey(inductionVariable))) {
+                    LinkedHashMap<Temp, Integer> derived = mDerived.get(inductionVariable);
+
+                    for (Temp temp : derived.keySet()) {
+                        iterator.add(new MOVE(new TEMP(temp), new BINOP(TypeBinOp.PLUS, new TEMP(temp), new CONST(mSteps.get(inductionVariable) * derived.get(temp)))));
+                    }
+                }
+            }
+        }
+
+        if (mNewStatements.isEmpty()) {
+            return null;
+        }
+
+        return loop.addPreheader(basicBlocks, mControlFlowAnalyzing.newLabel(), mNewStatements);
+    }
+
+    private void findInductionVariables(BasicBlock block) {
+        // Temporary variables which are defined by j = i + c before the current statement in this block
+        HashMap<Temp, IRExpression> increments = new HashMap<>();
+
+        for (IRStatement statement : block.getStatements()) {
+            Temp dst = SSAForm.getDefinition(statement);
+
+            if ((dst == null) || (!isVariable(dst))) {
+                continue;
+            }
+
+            MOVE move = (MOVE) statement;
+            Temp base = getBase(move.getSrc());
+
+            if ((base == dst) && (isDefinedOnce(dst))) {
+                // i = i + c
+                mSteps.put(dst, getStep(move.getSrc()));
+                mIncrements.put(move, dst);
+            } else if ((move.getSrc() instanceof TEMP) && (increments.containsKey(((TEMP) move.getSrc()).getTemp())) && (isDefinedOnce(dst))) {
+                IRExpression increment = increments.get(((TEMP) move.getSrc()).getTemp());
+
+                // i = j after j = i + c
+                if (getBase(increment) == dst) {
+                    mSteps.put(dst, getStep(increment));
+                    mIncrements.put(move, dst);
+                }
+            }
+
+            // The value of j is not i + c after i or j is changed
+            increments.remove(dst);
+
+            for (Temp temp : new HashSet<>(increments.keySet())) {
+                if (getBase(increments.get(temp)) == dst) {
+                    increments.remove(temp);
+                }
+            }
+
+            if ((base != null) && (base != dst)) {
+                increments.put(dst, move.getSrc());
+            }
+        }
+    }
+
+    // Returns i if the expression is i + c, c + i or i - c
+    private Temp getBase(IRExpression expression) {
+        if (!(expression instanceof BINOP)) {
+            return null;
+        }
+
+        BINOP binop = (BINOP) expression;
+
+        if ((binop.getLeftExpression() instanceof TEMP) && (binop.getRightExpression() instanceof CONST) &&
+                ((binop.getTypeBinOp() == TypeBinOp.PLUS) || (binop.getTypeBinOp() == TypeBinOp.MINUS))) {
+            Temp temp = ((TEMP) binop.getLeftExpression()).getTemp();
+            return isVariable(temp) ? temp : null;
+        }
+
+        if ((binop.getLeftExpression() instanceof CONST) && (binop.getRightExpression() instanceof TEMP) && (binop.getTypeBinOp() == TypeBinOp.PLUS)) {
+            Temp temp = ((TEMP) binop.getRightExpression()).getTemp();
+            return isVariable(temp) ? temp : null;
+        }
+
+        return null;
+    }
+
+    private int getStep(IRExpression expression) {
+        BINOP binop = (BINOP) expression;
+
+        if (binop.getRightExpression() instanceof CONST) {
+            int value = ((CONST) binop.getRightExpression()).getValue();
+            return (binop.getTypeBinOp() == TypeBinOp.MINUS) ? -value : value;
+        }
+
+        return ((CONST) binop.getLeftExpression()).getValue();
+    }
+
+    private boolean isDefinedOnce(Temp temp) {
+        return (mDefinitions.containsKey(temp)) && (mDefinitions.get(temp).size() == 1);
+    }
+
+    // Machine registers are changed by calls
+    private boolean isVariable(Temp temp) {
+        return mFrame.tempMap(temp) == null;
+    }
+
+    private IRStatement rewrite(IRStatement statement) {
+        if (statement instanceof MOVE) {
+            MOVE move = (MOVE) statement;
+
+            if (move.getDst() instanceof MEM) {
+                MEM mem = (MEM) move.getDst();
+                return new MOVE(new MEM(rewrite(mem.getExpression()), mem.isReadOnly()), rewrite(move.getSrc()));
+            }
+
+            return new MOVE(move.getDst(), rewrite(move.getSrc()));
+        }
+
+        if (statement instanceof EXP) {
+            return new EXP(rewrite(((EXP) statement).getExpression()));
+        }
+
+        if (statement instanceof CJUMP) {
+            CJUMP cjump = (CJUMP) statement;
+            return new CJUMP(cjump.getTypeRelOp(), rewrite(cjump.getLeftExpression()), rewrite(cjump.getRightExpression()), cjump.getLblTrue(), cjump.getLblFalse());
+        }
+
+        return statement;
+    }
+
+    private IRExpression rewrite(IRExpression expression) {
+        if (expression instanceof BINOP) {
+            BINOP binop = (BINOP) expression;
+
+            if (binop.getTypeBinOp() == TypeBinOp.PLUS) {
+                // x + i * s and i * s + x
+                Temp value = reduce(binop, binop.getLeftExpression(), binop.getRightExpression());
+
+                if (value == null) {
+                    value = reduce(binop, binop.getRightExpression(), binop.getLeftExpression());
+                }
+
+                if (value != null) {
+                    return new TEMP(value);
+                }
+            } else if (binop.getTypeBinOp() == TypeBinOp.MUL) {
+                BINOP product = getProduct(binop);
+
+                if ((product != null) && (!isPowerOfTwo(((CONST) product.getRightExpression()).getValue()))) {
+                    return new TEMP(getValue(binop, null, product));
+                }
+            }
+        }
+
+        LinkedList<IRExpression> kids = expression.kids();
+
+        if (kids == null) {
+            return expression;
+        }
+
+        LinkedList<IRExpression> newKids = new LinkedList<>();
+        for (IRExpression kid : kids) {
+            newKids.add(rewrite(kid));
+        }
+
+        return expression.build(newKids);
+    }
+
+    // Returns the temporary variable for x + i * s or null
+    private Temp reduce(BINOP expression, IRExpression base, IRExpression index) {
+        if ((!(base instanceof TEMP)) || (!(index instanceof BINOP)) || (((BINOP) index).getTypeBinOp() != TypeBinOp.MUL)) {
+            return null;
+        }
+
+        Temp temp = ((TEMP) base).getTemp();
+
+        if ((!isVariable(temp)) || (mDefinitions.containsKey(temp))) {
+            return null;
+        }
+
+        BINOP product = getProduct((BINOP) index);
+
+        return (product == null) ? null : getValue(expression, temp, product);
+    }
+
+    // Returns i * s where i is a basic induction variable and s is a constant, or null
+    private BINOP getProduct(BINOP binop) {
+        IRExpression left = binop.getLeftExpression();
+        IRExpression right = binop.getRightExpression();
+
+        if ((left instanceof CONST) && (right instanceof TEMP)) {
+            IRExpression swap = left;
+            left = right;
+            right = swap;
+        }
+
+        if ((left instanceof TEMP) && (right instanceof CONST) && (mSteps.containsKey(((TEMP) left).getTemp()))) {
+            return new BINOP(TypeBinOp.MUL, left, right);
+        }
+
+        return null;
+    }
+
+    private Temp getValue(BINOP expression, Temp base, BINOP product) {
+        Temp inductionVariable = ((TEMP) product.getLeftExpression()).getTemp();
+        int factor = ((CONST) product.getRightExpression()).getValue();
+
+        String key = ((base == null) ? "" : base + "+") + inductionVariable + "*" + factor;
+        Temp value = mValues.get(key);
+
+        if (value == null) {
+            value = mFrame.getContext().newTemp();
+            mValues.put(key, value);
+            mNewStatements.add(new MOVE(new TEMP(value), expression));
+
+            if (!mDerived.containsKey(inductionVariable)) {
+                mDerived.put(inductionVariable, new LinkedHashMap<>());
+            }
+
+            mDerived.get(inductionVariable).put(value, factor);
+        }
+
+        return value;
+    }
+
+    private boolean isPowerOfTwo(int value) {
+        return (value > 0) && ((value & (value - 1)) == 0);
+    }
+
+}
@@ -1,5 +1,6 @@
 package bee.lang.translate;
 
+import bee.lang.ir.CompilationContext;
 import bee.lang.ir.Temp;
 import bee.lang.ir.tree.*;
 
@@ -13,6 +14,12 @@ import java.util.LinkedList;
 // Canonical trees are very convenient. These trees can be used for further processing (e.g. creating linearized code).
 public class TransformIRTree {
 
+    private CompilationContext mContext;
+
+    public TransformIRTree(CompilationContext context) {
+        mContext = context;
+    }
+
     public IRStatement transformStatement(IRStatement statement) {
         if (statement instanceof SEQ) {
             SEQ seq = (SEQ) statement;
@@ -81,7 +88,7 @@ public class TransformIRTree {
 
         if (expression instanceof CALL) {
             CALL call = (CALL) expression;
-            TEMP temp = new TEMP(new Temp());
+            TEMP temp = new TEMP(mContext.newTemp());
             return transformExpression(new ESEQ(new MOVE(temp, call), temp));
         }
 
@@ -145,7 +152,7 @@ public class TransformIRTree {
             if (irExpression instanceof ESEQ) {
                 ESEQ seq = (ESEQ) irExpression;
 
-                TEMP newTemp = new TEMP(new Temp());
+                TEMP newTemp = new TEMP(mContext.newTemp());
                 listStatements.addFirst(new SEQ(seq.getStatement(), new MOVE(newTemp, seq.getExpression())));
                 listExpressions.addFirst(newTemp);
             } else {
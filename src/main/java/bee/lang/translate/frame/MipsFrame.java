@@ -4,98 +4,28 @@ import bee.lang.assembly.AsmInstruction;
 import bee.lang.assembly.AsmLABEL;
 import bee.lang.assembly.AsmOPER;
 import bee.lang.assembly.MipsCodegen;
+import bee.lang.assembly.TempMap;
 import bee.lang.exceptions.CodegenException;
+import bee.lang.ir.CompilationContext;
 import bee.lang.ir.Label;
 import bee.lang.ir.Temp;
 import bee.lang.ir.tree.*;
 
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedList;
 
 // This class is used for working with stack frame (activation record) for a particular platform.
 public class MipsFrame extends Frame {
 
-    // All registers
-    private static Temp sZero = new Temp(); // $0 : $zero
-    private static Temp sAT = new Temp();   // $1 : $at
-    // Results from functions
-    private static Temp sV0 = new Temp();   // $2 : $v0
-    private static Temp sV1 = new Temp();   // $3 : $v1
-    // Arguments of functions
-    private static Temp sA0 = new Temp();   // $4 : $a0
-    private static Temp sA1 = new Temp();   // $5 : $a1
-    private static Temp sA2 = new Temp();   // $6 : $a2
-    private static Temp sA3 = new Temp();   // $7 : $a3
-    // Callee-saved temps
-    private static Temp sT0 = new Temp();   // $8 : $t0
-    private static Temp sT1 = new Temp();   // $9 : $t1
-    private static Temp sT2 = new Temp();   // $10 : $t2
-    private static Temp sT3 = new Temp();   // $11 : $t3
-    private static Temp sT4 = new Temp();   // $12 : $t4
-    private static Temp sT5 = new Temp();   // $13 : $t5
-    private static Temp sT6 = new Temp();   // $14 : $t6
-    private static Temp sT7 = new Temp();   // $15 : $t7
-    // Caller-saved
-    private static Temp sS0 = new Temp();   // $16 : $s0
-    private static Temp sS1 = new Temp();   // $17 : $s1
-    private static Temp sS2 = new Temp();   // $18 : $s2
-    private static Temp sS3 = new Temp();   // $19 : $s3
-    private static Temp sS4 = new Temp();   // $20 : $s4
-    private static Temp sS5 = new Temp();   // $21 : $s5
-    private static Temp sS6 = new Temp();   // $22 : $s6
-    private static Temp sS7 = new Temp();   // $23 : $s7
-    // Callee-saved temps
-    private static Temp sT8 = new Temp();   // $24 : $t8
-    private static Temp sT9 = new Temp();   // $25 : $t9
-    // Reserved for OS
-    private static Temp sK0 = new Temp();   // $26 : $k0
-    private static Temp sK1 = new Temp();   // $27 : $k1
-    // Global pointer
-    private static Temp sGP = new Temp();   // $28 : $gp
-    // Stack pointer
-    private static Temp sSP = new Temp();   // $29 : $sp
-    // Frame pointer
-    private static Temp sFP = new Temp();   // $30 : $fp
-    // Return address
-    private static Temp sRA = new Temp();   // $31 : $ra
-
-    private static HashMap<Temp, String> sNamesOfRegs = new HashMap<>();
-
-    static {
-        sNamesOfRegs.put(sZero, "$zero");
-        sNamesOfRegs.put(sAT, "$at");
-        sNamesOfRegs.put(sV0, "$v0");
-        sNamesOfRegs.put(sV1, "$v1");
-        sNamesOfRegs.put(sA0, "$a0");
-        sNamesOfRegs.put(sA1, "$a1");
-        sNamesOfRegs.put(sA2, "$a2");
-        sNamesOfRegs.put(sA3, "$a3");
-        sNamesOfRegs.put(sT0, "$t0");
-        sNamesOfRegs.put(sT1, "$t1");
-        sNamesOfRegs.put(sT2, "$t2");
-        sNamesOfRegs.put(sT3, "$t3");
-        sNamesOfRegs.put(sT4, "$t4");
-        sNamesOfRegs.put(sT5, "$t5");
-        sNamesOfRegs.put(sT6, "$t6");
-        sNamesOfRegs.put(sT7, "$t7");
-        sNamesOfRegs.put(sS0, "$s0");
-        sNamesOfRegs.put(sS1, "$s1");
-        sNamesOfRegs.put(sS2, "$s2");
-        sNamesOfRegs.put(sS3, "$s3");
-        sNamesOfRegs.put(sS4, "$s4");
-        sNamesOfRegs.put(sS5, "$s5");
-        sNamesOfRegs.put(sS6, "$s6");
-        sNamesOfRegs.put(sS7, "$s7");
-        sNamesOfRegs.put(sT8, "$t8");
-        sNamesOfRegs.put(sT9, "$t9");
-        sNamesOfRegs.put(sK0, "$k0");
-        sNamesOfRegs.put(sK1, "$k1");
-        sNamesOfRegs.put(sGP, "$gp");
-        sNamesOfRegs.put(sSP, "$sp");
-        sNamesOfRegs.put(sFP, "$fp");
-        sNamesOfRegs.put(sRA, "$ra");
-    }
+    private CompilationContext mContext;
+    // Registers are the same for all frames of one compilation
+    private HashMap<Temp, String> mNamesOfRegs;
+    private Temp mFP;
+    private Temp mRV;
+    private Temp mRA;
+    private Temp mSP;
+    private Temp mZero;
 
     private LinkedList<Access> mFormalArguments;
     private LinkedList<Access> mFormalArgumentsInFunction;
@@ -108,52 +38,104 @@ public class MipsFrame extends Frame {
     private LinkedList<Temp> mReturnSink;
     private LinkedList<Temp> mReturnValueRegs;
     private int mCountVarsInFrame;
-    private int mCountArgsInFrame;
+    private int mCountOutgoingArgs;
+    private AsmInstruction mReturnSinkInstruction;
+    // Jumps to procedures which get the stack frame of this procedure
+    private LinkedList<AsmInstruction> mTailJumps;
     private IRStatement mMoveStatements;
     private LinkedList<Temp> mAllRegisters;
 
-    public MipsFrame() {
+    public MipsFrame(CompilationContext context) {
+        mContext = context;
+        mNamesOfRegs = new HashMap<>();
+
+        // All registers
+        mZero = newRegister("$zero");       // $0
+        Temp at = newRegister("$at");       // $1
+        // Results from functions
+        Temp v0 = newRegister("$v0");       // $2
+        Temp v1 = newRegister("$v1");       // $3
+        // Arguments of functions
+        Temp a0 = newRegister("$a0");       // $4
+        Temp a1 = newRegister("$a1");       // $5
+        Temp a2 = newRegister("$a2");       // $6
+        Temp a3 = newRegister("$a3");       // $7
+        // Callee-saved temps
+        Temp t0 = newRegister("$t0");       // $8
+        Temp t1 = newRegister("$t1");       // $9
+        Temp t2 = newRegister("$t2");       // $10
+        Temp t3 = newRegister("$t3");       // $11
+        Temp t4 = newRegister("$t4");       // $12
+        Temp t5 = newRegister("$t5");       // $13
+        Temp t6 = newRegister("$t6");       // $14
+        Temp t7 = newRegister("$t7");       // $15
+        // Caller-saved
+        Temp s0 = newRegister("$s0");       // $16
+        Temp s1 = newRegister("$s1");       // $17
+        Temp s2 = newRegister("$s2");       // $18
+        Temp s3 = newRegister("$s3");       // $19
+        Temp s4 = newRegister("$s4");       // $20
+        Temp s5 = newRegister("$s5");       // $21
+        Temp s6 = newRegister("$s6");       // $22
+        Temp s7 = newRegister("$s7");       // $23
+        // Callee-saved temps
+        Temp t8 = newRegister("$t8");       // $24
+        Temp t9 = newRegister("$t9");       // $25
+        // Reserved for OS
+        Temp k0 = newRegister("$k0");       // $26
+        Temp k1 = newRegister("$k1");       // $27
+        // Global pointer
+        Temp gp = newRegister("$gp");       // $28
+        // Stack pointer
+        mSP = newRegister("$sp");           // $29
+        // Frame pointer
+        mFP = newRegister("$fp");           // $30
+        // Return address
+        mRA = newRegister("$ra");           // $31
+
+        mRV = v0;
+
         mSpecialRegs = new LinkedList<>();
-        mSpecialRegs.add(sZero);
-        mSpecialRegs.add(sAT);
-        mSpecialRegs.add(sK0);
-        mSpecialRegs.add(sK1);
-        mSpecialRegs.add(sGP);
-        mSpecialRegs.add(sSP);
-        mSpecialRegs.add(sFP);
-        mSpecialRegs.add(sRA);
+        mSpecialRegs.add(mZero);
+        mSpecialRegs.add(at);
+        mSpecialRegs.add(k0);
+        mSpecialRegs.add(k1);
+        mSpecialRegs.add(gp);
+        mSpecialRegs.add(mSP);
+        mSpecialRegs.add(mFP);
+        mSpecialRegs.add(mRA);
 
         mArgRegs = new LinkedList<>();
-        mArgRegs.add(sA0);
-        mArgRegs.add(sA1);
-        mArgRegs.add(sA2);
-        mArgRegs.add(sA3);
+        mArgRegs.add(a0);
+        mArgRegs.add(a1);
+        mArgRegs.add(a2);
+        mArgRegs.add(a3);
 
         mReturnValueRegs = new LinkedList<>();
-        mReturnValueRegs.add(sV0);
-        mReturnValueRegs.add(sV1);
+        mReturnValueRegs.add(v0);
+        mReturnValueRegs.add(v1);
 
         mCalleeSavesRegs = new LinkedList<>();
-        mCalleeSavesRegs.add(sT0);
-        mCalleeSavesRegs.add(sT1);
-        mCalleeSavesRegs.add(sT2);
-        mCalleeSavesRegs.add(sT3);
-        mCalleeSavesRegs.add(sT4);
-        mCalleeSavesRegs.add(sT5);
-        mCalleeSavesRegs.add(sT6);
-        mCalleeSavesRegs.add(sT7);
-        mCalleeSavesRegs.add(sT8);
-        mCalleeSavesRegs.add(sT9);
+        mCalleeSavesRegs.add(t0);
+        mCalleeSavesRegs.add(t1);
+        mCalleeSavesRegs.add(t2);
+        mCalleeSavesRegs.add(t3);
+        mCalleeSavesRegs.add(t4);
+        mCalleeSavesRegs.add(t5);
+        mCalleeSavesRegs.add(t6);
+        mCalleeSavesRegs.add(t7);
+        mCalleeSavesRegs.add(t8);
+        mCalleeSavesRegs.add(t9);
 
         mCallerSavesRegs = new LinkedList<>();
-        mCallerSavesRegs.add(sS0);
-        mCallerSavesRegs.add(sS1);
-        mCallerSavesRegs.add(sS2);
-        mCallerSavesRegs.add(sS3);
-        mCallerSavesRegs.add(sS4);
-        mCallerSavesRegs.add(sS5);
-        mCallerSavesRegs.add(sS6);
-        mCallerSavesRegs.add(sS7);
+        mCallerSavesRegs.add(s0);
+        mCallerSavesRegs.add(s1);
+        mCallerSavesRegs.add(s2);
+        mCallerSavesRegs.add(s3);
+        mCallerSavesRegs.add(s4);
+        mCallerSavesRegs.add(s5);
+        mCallerSavesRegs.add(s6);
+        mCallerSavesRegs.add(s7);
 
         mAllRegisters = new LinkedList<>();
 //        mAllRegisters.addAll(mSpecialRegs);
@@ -165,49 +147,77 @@ public class MipsFrame extends Frame {
 
         mReturnSink = new LinkedList<>();
         mReturnSink.addAll(mSpecialRegs);
-        mReturnSink.addAll(mCalleeSavesRegs);
+        mReturnSink.addAll(mReturnValueRegs);
+
+        mRegArgs = new Temp[] { a0, a1, a2, a3 };
+        mFormalArguments = new LinkedList<>();
+        mCountVarsInFrame = 0;
+        mCountOutgoingArgs = 0;
+        mFormalArgumentsInFunction = new LinkedList<>();
+        mTailJumps = new LinkedList<>();
+    }
+
+    // A frame of a procedure uses registers of the frame which creates it
+    private MipsFrame(MipsFrame frame) {
+        mContext = frame.mContext;
+        mNamesOfRegs = frame.mNamesOfRegs;
+        mFP = frame.mFP;
+        mRV = frame.mRV;
+        mRA = frame.mRA;
+        mSP = frame.mSP;
+        mZero = frame.mZero;
+        mSpecialRegs = frame.mSpecialRegs;
+        mArgRegs = frame.mArgRegs;
+        mReturnValueRegs = frame.mReturnValueRegs;
+        mCalleeSavesRegs = frame.mCalleeSavesRegs;
+        mCallerSavesRegs = frame.mCallerSavesRegs;
+        mAllRegisters = frame.mAllRegisters;
+        mReturnSink = frame.mReturnSink;
+        mRegArgs = frame.mRegArgs;
 
-        mRegArgs = new Temp[] { sA0, sA1, sA2, sA3 };
         mFormalArguments = new LinkedList<>();
         mCountVarsInFrame = 0;
-        mCountArgsInFrame = 0;
+        mCountOutgoingArgs = 0;
         mFormalArgumentsInFunction = new LinkedList<>();
+        mTailJumps = new LinkedList<>();
+    }
+
+    private Temp newRegister(String name) {
+        Temp register = mContext.newTemp();
+        mNamesOfRegs.put(register, name);
+        return register;
+    }
+
+    @Override
+    public CompilationContext getContext() {
+        return mContext;
     }
 
     @Override
     public Frame newFrame(Label name, LinkedList<Boolean> args) {
-        MipsFrame mipsFrame = new MipsFrame();
+        MipsFrame mipsFrame = new MipsFrame(this);
 
         mipsFrame.mName = name;
 
         int i = 0;
         for (boolean isInFrame : args) {
-            Access access;
-            if (i > 3) {
-                access = new InFrame(i * getWordSize());
-            } else {
-                access = (isInFrame ? new InFrame(i * getWordSize()) : new InReg(mipsFrame.mRegArgs[i]));
-            }
-
+            // The first four arguments are passed in registers, other arguments are passed in the stack frame of the caller.
+            Access access = (i > 3) ? new InFrame(i * getWordSize()) : new InReg(mipsFrame.mRegArgs[i]);
             mipsFrame.mFormalArguments.add(access);
-            mipsFrame.mFormalArgumentsInFunction.add(new InFrame(i * getWordSize()));
 
-            mipsFrame.mCountArgsInFrame++;
+            // An argument which escapes is kept in the stack frame of the caller, otherwise it is moved to a temporary variable.
+            Access accessInFunction = isInFrame ? new InFrame(i * getWordSize()) : mipsFrame.allocLocal(false);
+            mipsFrame.mFormalArgumentsInFunction.add(accessInFunction);
 
-            i++;
-        }
-
-        i = 0;
-        for (Access access : mipsFrame.mFormalArguments) {
-            if (access instanceof InReg) {
-                InFrame dst = new InFrame(i * getWordSize());
-                IRStatement move = new MOVE(dst.exp(new TEMP(getFP())), access.exp(new TEMP(getFP())));
+            if ((access instanceof InReg) || (accessInFunction instanceof InReg)) {
+                IRStatement move = new MOVE(accessInFunction.exp(new TEMP(getFP())), access.exp(new TEMP(getFP())));
                 if (mipsFrame.mMoveStatements == null) {
                     mipsFrame.mMoveStatements = move;
                 } else {
                     mipsFrame.mMoveStatements = new SEQ(mipsFrame.mMoveStatements, move);
                 }
             }
+
             i++;
         }
 
@@ -222,7 +232,7 @@ public class MipsFrame extends Frame {
             mCountVarsInFrame++;
             access = new InFrame(-(mCountVarsInFrame * getWordSize()));
         } else {
-            access = new InReg(new Temp());
+            access = new InReg(mContext.newTemp());
         }
 
         return access;
@@ -265,22 +275,27 @@ public class MipsFrame extends Frame {
 
     @Override
     public Temp getFP() {
-        return sFP;
+        return mFP;
     }
 
     @Override
     public Temp getRV() {
-        return sV0;
+        return mRV;
     }
 
     @Override
     public Temp getRA() {
-        return sRA;
+        return mRA;
     }
 
     @Override
     public Temp getSP() {
-        return sSP;
+        return mSP;
+    }
+
+    @Override
+    public Temp getZero() {
+        return mZero;
     }
 
     @Override
@@ -295,79 +310,166 @@ public class MipsFrame extends Frame {
 
     @Override
     public IRExpression externalCall(String functionName, LinkedList<IRExpression> args) {
-        return new CALL(new NAME(Label.newLabel(functionName)), args);
+        return new CALL(new NAME(mContext.newLabel(functionName)), args);
     }
 
     @Override
     public IRStatement procEntryExit1(IRStatement statement) {
-        // Add 'MOVE' instructions to move all incoming arguments in the stack frame.
-        IRStatement body = (mMoveStatements == null) ? statement : new SEQ(mMoveStatements, statement);
-
-        Access accessForRA = allocLocal(true);
-        Access accessForFP = allocLocal(true);
-
-        // Generate MOVE instructions to save and restore return-address and frame-pointer registers in the stack frame.
-        Temp oldFP = new Temp();
-        SEQ saveRAFPInstructions = new SEQ(new MOVE(new TEMP(oldFP), new TEMP(getFP())), new SEQ(new MOVE(new TEMP(getFP()), new BINOP(TypeBinOp.PLUS, new TEMP(getSP()), new CONST((mCalleeSavesRegs.size() + 2) * getWordSize()))), new SEQ(new MOVE(accessForRA.exp(new TEMP(getFP())), new TEMP(getRA())), new MOVE(accessForFP.exp(new TEMP(getFP())), new TEMP(oldFP)))));
-        SEQ restoreRAFPInstructions = new SEQ(new MOVE(new TEMP(getRA()), accessForRA.exp(new TEMP(getFP()))), new MOVE(new TEMP(getFP()), accessForFP.exp(new TEMP(getFP()))));
-
-        // Generate MOVE instructions to save callee-saved registers in the stack frame.
-        LinkedList<Access> listOfFrameSpacesForLocals = new LinkedList<>();
-
-        Iterator<Temp> calleeSavedRegsIterator = mCalleeSavesRegs.iterator();
-        Temp calleeSavedReg = calleeSavedRegsIterator.next();
-        listOfFrameSpacesForLocals.add(allocLocal(true));
-        IRStatement calleeSavedRegsSaveInstructions = new MOVE(listOfFrameSpacesForLocals.getLast().exp(new TEMP(getFP())), new TEMP(calleeSavedReg));
-        while (calleeSavedRegsIterator.hasNext()) {
-            calleeSavedReg = calleeSavedRegsIterator.next();
-            listOfFrameSpacesForLocals.add(allocLocal(true));
-            calleeSavedRegsSaveInstructions = new SEQ(new MOVE(listOfFrameSpacesForLocals.getLast().exp(new TEMP(getFP())), new TEMP(calleeSavedReg)), calleeSavedRegsSaveInstructions);
-        }
-
-        // Generate MOVE instructions to restore callee-saved registers from the stack frame.
-        calleeSavedRegsIterator = mCalleeSavesRegs.iterator();
-        Iterator<Access> listOfFrameSpacesForLocalsIterator = listOfFrameSpacesForLocals.iterator();
-        calleeSavedReg = calleeSavedRegsIterator.next();
-        IRStatement calleeSavedRegsRestoreInstructions = new MOVE(new TEMP(calleeSavedReg), listOfFrameSpacesForLocalsIterator.next().exp(new TEMP(getFP())));
-        while (calleeSavedRegsIterator.hasNext()) {
-            calleeSavedReg = calleeSavedRegsIterator.next();
-            calleeSavedRegsRestoreInstructions = new SEQ(new MOVE(new TEMP(calleeSavedReg), listOfFrameSpacesForLocalsIterator.next().exp(new TEMP(getFP()))), calleeSavedRegsRestoreInstructions);
-        }
-
-        body = new SEQ(saveRAFPInstructions, new SEQ(calleeSavedRegsSaveInstructions, new SEQ(body, new SEQ(calleeSavedRegsRestoreInstructions, restoreRAFPInstructions))));
-
-        return body;
+        // Add 'MOVE' instructions to move incoming arguments to the places where they are kept in the procedure.
+        // The return-address register and callee-saved registers are saved by procEntryExit3 because it is not known
+        // which of them must be saved until register allocation is done.
+        return (mMoveStatements == null) ? statement : new SEQ(mMoveStatements, statement);
     }
 
     @Override
     public LinkedList<AsmInstruction> procEntryExit2(LinkedList<AsmInstruction> body) {
         // mReturnSink contains all registers which are alive from the beginning of procedure to the end of procedure.
         // These registers interfere with all other registers (virtual and real registers) during execution of the procedure.
-        body.add(new AsmOPER("", new LinkedList<>(), mReturnSink));
+        mReturnSinkInstruction = new AsmOPER("", new LinkedList<>(), mReturnSink);
+        body.add(mReturnSinkInstruction);
         return body;
     }
 
     @Override
-    public void procEntryExit3(LinkedList<AsmInstruction> body) {
-        // The size of stack frame for procedure is count of formal parameters + count of local variables + count of callee-saved registers + $ra + $fp.
-        int sizeOfStackFrame = (mCountVarsInFrame + mCountArgsInFrame + 2) * getWordSize();
-
-        body.addFirst(new AsmOPER("addiu $sp, $sp, -" + sizeOfStackFrame));
-        body.addFirst(new AsmLABEL(mName.getName() + ":", mName));
-        body.addLast(new AsmLABEL("_" + mName.getName() + "_end_:", mName));
-        body.addLast(new AsmOPER("addiu $sp, $sp, " + sizeOfStackFrame));
-        body.addLast(new AsmOPER("jr $ra"));
+    public void procEntryExit3(LinkedList<AsmInstruction> body, TempMap tempMap) {
+        // Find out which registers are changed by the procedure
+        boolean isLeaf = true;
+        boolean isFPUsed = false;
+        HashSet<String> definedRegs = new HashSet<>();
+
+        for (AsmInstruction asmInstruction : body) {
+            // These instructions only keep registers alive until the end of the procedure
+            if ((asmInstruction == mReturnSinkInstruction) || (mTailJumps.contains(asmInstruction))) {
+                continue;
+            }
+
+            if (asmInstruction.getDef().contains(getRA())) {
+                isLeaf = false;
+            }
+
+            if (asmInstruction.getUse().contains(getFP())) {
+                isFPUsed = true;
+            }
+
+            for (Temp temp : asmInstruction.getDef()) {
+                String name = tempMap.tempMap(temp);
+                if (name != null) {
+                    definedRegs.add(name);
+                }
+            }
+        }
+
+        // A leaf procedure does not change the return-address register. The frame pointer is changed only if the procedure uses it
+        // (to access spilled temporaries or incoming arguments).
+        LinkedList<Temp> savedRegs = new LinkedList<>();
+
+        if (!isLeaf) {
+            savedRegs.add(getRA());
+        }
+
+        if (isFPUsed) {
+            savedRegs.add(getFP());
+        }
+
+        for (Temp calleeSavedReg : mCalleeSavesRegs) {
+            if (definedRegs.contains(tempMap(calleeSavedReg))) {
+                savedRegs.add(calleeSavedReg);
+            }
+        }
+
+        // The stack frame of procedure looks like this:
+        //      | incoming argument N | ... | incoming argument 0 | <- $fp (the value of $sp before calling the procedure)
+        //      | local variables and spilled temporaries |
+        //      | $ra, $fp and callee-saved registers |
+        //      | outgoing argument N | ... | outgoing argument 0 | <- $sp
+        // Incoming arguments are kept in the stack frame of the caller.
+        int sizeOfStackFrame = (mCountVarsInFrame + savedRegs.size() + mCountOutgoingArgs) * getWordSize();
+
+        LinkedList<AsmInstruction> prologue = new LinkedList<>();
+        LinkedList<AsmInstruction> epilogue = new LinkedList<>();
+
+        prologue.add(new AsmLABEL(mName.getName() + ":", mName));
+
+        if (sizeOfStackFrame > 0) {
+            prologue.add(new AsmOPER("addiu $sp, $sp, -" + sizeOfStackFrame));
+        }
+
+        epilogue.add(new AsmLABEL("_" + mName.getName() + "_end_:", mContext.newLabel("_" + mName.getName() + "_end_")));
+
+        int offset = sizeOfStackFrame - mCountVarsInFrame * getWordSize();
+        for (Temp savedReg : savedRegs) {
+            offset -= getWordSize();
+            prologue.add(new AsmOPER("sw " + tempMap(savedReg) + ", " + offset + "($sp)"));
+            epilogue.add(new AsmOPER("lw " + tempMap(savedReg) + ", " + offset + "($sp)"));
+        }
+
+        if (isFPUsed) {
+            prologue.add(new AsmOPER("addiu $fp, $sp, " + sizeOfStackFrame));
+        }
+
+        if (sizeOfStackFrame > 0) {
+            epilogue.add(new AsmOPER("addiu $sp, $sp, " + sizeOfStackFrame));
+        }
+
+        // Registers are restored and the stack frame is removed before each tail jump so the called procedure returns to the caller of this procedure
+        for (AsmInstruction tailJump : mTailJumps) {
+            LinkedList<AsmInstruction> restore = new LinkedList<>();
+
+            offset = sizeOfStackFrame - mCountVarsInFrame * getWordSize();
+            for (Temp savedReg : savedRegs) {
+                offset -= getWordSize();
+                restore.add(new AsmOPER("lw " + tempMap(savedReg) + ", " + offset + "($sp)"));
+            }
+
+            if (sizeOfStackFrame > 0) {
+                restore.add(new AsmOPER("addiu $sp, $sp, " + sizeOfStackFrame));
+            }
+
+            body.addAll(body.indexOf(tailJump), restore);
+        }
+
+        epilogue.add(new AsmOPER("jr $ra"));
+
+        body.addAll(0, prologue);
+        body.addAll(epilogue);
     }
 
     @Override
     public LinkedList<AsmInstruction> codegen(IRStatement statement) throws CodegenException {
+        // Canonical trees keep the node CALL only inside EXP(CALL(f, args)) or MOVE(TEMP(t), CALL(f, args)).
+        // The bottom of the stack frame must have enough space for arguments of every call.
+        IRExpression expression = null;
+
+        if (statement instanceof EXP) {
+            expression = ((EXP) statement).getExpression();
+        } else if (statement instanceof MOVE) {
+            expression = ((MOVE) statement).getSrc();
+        }
+
+        // Arguments of a tail call are passed only in registers
+        if ((expression instanceof CALL) && (!((CALL) expression).isTailCall())) {
+            mCountOutgoingArgs = Math.max(mCountOutgoingArgs, ((CALL) expression).getArguments().size());
+        }
+
         MipsCodegen mipsCodegen = new MipsCodegen(this);
         return mipsCodegen.codegen(statement);
     }
 
+    @Override
+    public AsmInstruction tailJump(Label function, LinkedList<Temp> args) {
+        // Registers of the result and special registers are alive after the jump like after the end of the procedure
+        LinkedList<Temp> uses = new LinkedList<>(args);
+        uses.addAll(mReturnSink);
+
+        AsmInstruction tailJump = new AsmOPER("j " + function, new LinkedList<>(), uses, new LinkedList<>(), true);
+        mTailJumps.add(tailJump);
+
+        return tailJump;
+    }
+
     @Override
     public String tempMap(Temp temp) {
-        return sNamesOfRegs.get(temp);
+        return mNamesOfRegs.get(temp);
     }
 
     @Override
@@ -375,13 +477,10 @@ public class MipsFrame extends Frame {
         return mAllRegisters;
     }
 
+    // Count of registers which can be given to temporary variables (K for the graph coloring)
     @Override
     public int getCountRegisters() {
-        return mSpecialRegs.size() +
-                mArgRegs.size() +
-                mReturnValueRegs.size() +
-                mCalleeSavesRegs.size() +
-                mCallerSavesRegs.size();
+        return mAllRegisters.size();
     }
 
 }
@@ -1,15 +1,29 @@
 package bee.lang.translate.ir;
 
+import bee.lang.ir.CompilationContext;
 import bee.lang.ir.Label;
 import bee.lang.ir.Temp;
 import bee.lang.ir.tree.*;
 
 public abstract class Cx extends WrapperIRExpression {
 
+    protected CompilationContext mContext;
+
+    protected Cx(CompilationContext context) {
+        mContext = context;
+    }
+
+    // The condition is evaluated only for its side effects
+    public IRStatement unNx() {
+        Label lblEnd = mContext.newLabel();
+
+        return new SEQ(unCx(lblEnd, lblEnd), new LABEL(lblEnd));
+    }
+
     public IRExpression unEx() {
-        Temp result = new Temp();
-        Label lblTrue = Label.newLabel();
-        Label lblFalse = Label.newLabel();
+        Temp result = mContext.newTemp();
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
 
         return new ESEQ(
                 new SEQ(new MOVE(new TEMP(result), new CONST(1)),
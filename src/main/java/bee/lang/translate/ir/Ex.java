@@ -1,9 +1,7 @@
 package bee.lang.translate.ir;
 
 import bee.lang.ir.Label;
-import bee.lang.ir.tree.EXP;
-import bee.lang.ir.tree.IRExpression;
-import bee.lang.ir.tree.IRStatement;
+import bee.lang.ir.tree.*;
 
 public class Ex extends WrapperIRExpression {
 
@@ -23,9 +21,14 @@ public class Ex extends WrapperIRExpression {
         return new EXP(mExpression);
     }
 
+    // A boolean value is 0 or 1 so a constant becomes a jump and other values are compared with 0
     @Override
     public IRStatement unCx(Label lblTrue, Label lblFalse) {
-        return null;
+        if (mExpression instanceof CONST) {
+            return new JUMP((((CONST) mExpression).getValue() != 0) ? lblTrue : lblFalse);
+        }
+
+        return new CJUMP(TypeRelOp.NE, mExpression, new CONST(0), lblTrue, lblFalse);
     }
 
 }
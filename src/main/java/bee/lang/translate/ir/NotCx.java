@@ -0,0 +1,37 @@
+package bee.lang.translate.ir;
+
+import bee.lang.ir.CompilationContext;
+import bee.lang.ir.Label;
+import bee.lang.ir.tree.CONST;
+import bee.lang.ir.tree.IRExpression;
+import bee.lang.ir.tree.IRStatement;
+import bee.lang.ir.tree.SELECT;
+import bee.lang.ir.tree.TypeRelOp;
+
+// Negation of a condition swaps its labels
+public class NotCx extends Cx {
+
+    private WrapperIRExpression mExpression;
+
+    public NotCx(CompilationContext context, WrapperIRExpression expression) {
+        super(context);
+        mExpression = expression;
+    }
+
+    @Override
+    public IRStatement unCx(Label lblTrue, Label lblFalse) {
+        return mExpression.unCx(lblFalse, lblTrue);
+    }
+
+    // The value is computed without jumps: the negated comparison or 1 if the value of the expression is 0
+    @Override
+    public IRExpression unEx() {
+        if (mExpression instanceof RelCx) {
+            RelCx relCx = (RelCx) mExpression;
+            return new SELECT(relCx.getTypeRelOp().negate(), relCx.getLeftExpression(), relCx.getRightExpression(), new CONST(1), new CONST(0));
+        }
+
+        return new SELECT(TypeRelOp.EQ, mExpression.unEx(), new CONST(0), new CONST(1), new CONST(0));
+    }
+
+}
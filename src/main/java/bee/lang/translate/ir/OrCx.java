@@ -0,0 +1,34 @@
+package bee.lang.translate.ir;
+
+import bee.lang.ir.CompilationContext;
+import bee.lang.ir.Label;
+import bee.lang.ir.tree.IRStatement;
+import bee.lang.ir.tree.LABEL;
+import bee.lang.ir.tree.SEQ;
+
+// The right condition is checked only if the left condition is false
+public class OrCx extends Cx {
+
+    private WrapperIRExpression mLeftExpression;
+    private WrapperIRExpression mRightExpression;
+
+    public OrCx(CompilationContext context, WrapperIRExpression leftExpression, WrapperIRExpression rightExpression) {
+        super(context);
+        mLeftExpression = leftExpression;
+        mRightExpression = rightExpression;
+    }
+
+    @Override
+    public IRStatement unCx(Label lblTrue, Label lblFalse) {
+        Label lblRight = mContext.newLabel();
+
+        return new SEQ(
+                mLeftExpression.unCx(lblTrue, lblRight),
+                new SEQ(
+                        new LABEL(lblRight),
+                        mRightExpression.unCx(lblTrue, lblFalse)
+                )
+        );
+    }
+
+}
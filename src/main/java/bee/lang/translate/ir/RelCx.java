@@ -1,9 +1,12 @@
 package bee.lang.translate.ir;
 
+import bee.lang.ir.CompilationContext;
 import bee.lang.ir.Label;
 import bee.lang.ir.tree.CJUMP;
+import bee.lang.ir.tree.CONST;
 import bee.lang.ir.tree.IRExpression;
 import bee.lang.ir.tree.IRStatement;
+import bee.lang.ir.tree.SELECT;
 import bee.lang.ir.tree.TypeRelOp;
 
 public class RelCx extends Cx {
@@ -12,7 +15,8 @@ public class RelCx extends Cx {
     private IRExpression mLeftExpression;
     private IRExpression mRightExpression;
 
-    public RelCx(TypeRelOp typeRelOp, IRExpression leftExpression, IRExpression rightExpression) {
+    public RelCx(CompilationContext context, TypeRelOp typeRelOp, IRExpression leftExpression, IRExpression rightExpression) {
+        super(context);
         mTypeRelOp = typeRelOp;
         mLeftExpression = leftExpression;
         mRightExpression = rightExpression;
@@ -31,13 +35,14 @@ public class RelCx extends Cx {
     }
 
     @Override
-    public IRStatement unNx() {
-        return null;
+    public IRStatement unCx(Label lblTrue, Label lblFalse) {
+        return new CJUMP(mTypeRelOp, mLeftExpression, mRightExpression, lblTrue, lblFalse);
     }
 
+    // The value of the comparison is computed without jumps
     @Override
-    public IRStatement unCx(Label lblTrue, Label lblFalse) {
-        return new CJUMP(mTypeRelOp, mLeftExpression, mRightExpression, lblTrue, lblFalse);
+    public IRExpression unEx() {
+        return new SELECT(mTypeRelOp, mLeftExpression, mRightExpression, new CONST(1), new CONST(0));
     }
 
 }
@@ -0,0 +1,184 @@
+package bee.lang;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Programs from the directory 'programs' are compiled with and without optimizations and run in the simulator. Both versions must print the same expected output.
+public class CompilerTest {
+
+    private static final long MAX_COUNT_INSTRUCTIONS = 100000000L;
+
+    @Test
+    public void testSpillManyLocals() throws Exception {
+        assertOutput("spill_many_locals", "-1647229936");
+    }
+
+    @Test
+    public void testCallsAndRegisters() throws Exception {
+        assertOutput("calls_and_registers", "1549 812 84 1751 -295 -2002 1324");
+    }
+
+    @Test
+    public void testLogicalOperators() throws Exception {
+        assertOutput("logical_operators", "0 2 4 6 8 9 3 110");
+    }
+
+    @Test
+    public void testConstantConditions() throws Exception {
+        assertOutput("constant_conditions", "32 478 2341 111");
+    }
+
+    @Test
+    public void testConstantFolding() throws Exception {
+        assertOutput("constant_folding", "-2147483648 2147483647 19 -3-11 32 11 10 0 25 02 0 1");
+    }
+
+    @Test
+    public void testBoundsChecks() throws Exception {
+        assertOutput("bounds_checks", "0 25 55 50");
+    }
+
+    @Test
+    public void testBoundsNegativeIndex() throws Exception {
+        assertOutput("bounds_negative_index", "3 2 1 0 Index of array is out of bounds");
+    }
+
+    @Test
+    public void testBoundsIndexEqualLength() throws Exception {
+        assertOutput("bounds_index_equal_length", "0 1 2 3 Index of array is out of bounds");
+    }
+
+    @Test
+    public void testCommonSubexpressions() throws Exception {
+        assertOutput("common_subexpressions", "50 7 14 10 12 212 28");
+    }
+
+    @Test
+    public void testConstantPropagation() throws Exception {
+        assertOutput("constant_propagation", "6 13 72 4 2 45 12");
+    }
+
+    @Test
+    public void testSpillCopyPropagation() throws Exception {
+        assertOutput("spill_copy_propagation", "-580899066");
+    }
+
+    @Test
+    public void testLoopInvariants() throws Exception {
+        assertOutput("loop_invariants", "465 5 99 80 21 218 156");
+    }
+
+    @Test
+    public void testInductionVariables() throws Exception {
+        assertOutput("induction_variables", "-1305 10 160 -2 1288 -104 208 -1 -5 3 -1 -8 94012");
+    }
+
+    @Test
+    public void testInlining() throws Exception {
+        assertOutput("inlining", "2 53 1810 -12120 1105 3628800 414 44");
+    }
+
+    @Test
+    public void testVirtualDispatch() throws Exception {
+        assertOutput("virtual_dispatch", "010 12104 23254 0448 150 242 147");
+    }
+
+    @Test
+    public void testTailCalls() throws Exception {
+        assertOutput("tail_calls", "21 25 01 167167 8052 111");
+    }
+
+    @Test
+    public void testControlFlow() throws Exception {
+        assertOutput("control_flow", "15 328 25 15 12243434 34-1");
+    }
+
+    @Test
+    public void testBranchLayout() throws Exception {
+        assertOutput("branch_layout", "5 1 57");
+    }
+
+    @Test
+    public void testConstantDivisions() throws Exception {
+        assertOutput("constant_divisions", "0 -1 -3 3 -1 -2 -1 -134217728 -2");
+    }
+
+    @Test
+    public void testSpillRemainderTiles() throws Exception {
+        assertOutput("spill_remainder_tiles", "3232");
+    }
+
+    @Test
+    public void testImmediateOperands() throws Exception {
+        assertOutput("immediate_operands", "1774817276 1776738906 1818236 -1092567800 12");
+    }
+
+    @Test
+    public void testConditionalValues() throws Exception {
+        assertOutput("conditional_values", "-2138736823 34 -1 101 5 1471");
+    }
+
+    @Test
+    public void testSameCodeEveryTime() throws Exception {
+        // Procedures are compiled in parallel but they must be added to the code in the same order
+        assertEquals(compile("calls_and_registers", false), compile("calls_and_registers", false));
+        assertEquals(compile("spill_many_locals", false), compile("spill_many_locals", false));
+    }
+
+    private void assertOutput(String program, String expectedOutput) throws Exception {
+        assertEquals("-O0", expectedOutput, run(program, true));
+        assertEquals("default", expectedOutput, run(program, false));
+    }
+
+    private String run(String program, boolean isFastCompilation) throws Exception {
+        return new MipsSimulator(compile(program, isFastCompilation)).run(MAX_COUNT_INSTRUCTIONS);
+    }
+
+    // Returns assembly code of the program
+    private String compile(String program, boolean isFastCompilation) throws Exception {
+        URL source = getClass().getResource("/programs/" + program + ".bee");
+        File destination = File.createTempFile(program, ".s");
+
+        try {
+            destination.delete();
+
+            String[] args = isFastCompilation ?
+                    new String[] { "-s", new File(source.toURI()).getPath(), "-d", destination.getPath(), "-O0" } :
+                    new String[] { "-s", new File(source.toURI()).getPath(), "-d", destination.getPath() };
+
+            // Errors of compilation are printed by the compiler
+            String messages = runCompiler(args);
+
+            assertTrue("Program is not compiled: " + messages, destination.exists());
+
+            return new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8);
+        } finally {
+            destination.delete();
+        }
+    }
+
+    private String runCompiler(String[] args) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+
+        System.setOut(new PrintStream(messages));
+
+        try {
+            Main.main(args);
+        } finally {
+            System.setOut(out);
+        }
+
+        return messages.toString();
+    }
+
+}
@@ -1,4 +1,63 @@
 package bee.lang;
 
+import bee.lang.lexer.Lexer;
+import bee.lang.lexer.Token;
+import bee.lang.lexer.TokenType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class LexerTest {
+
+    @Test
+    public void testLogicalOperators() {
+        assertTokens("a || b && !c",
+                TokenType.IDENTIFIER, TokenType.OR, TokenType.IDENTIFIER, TokenType.AND, TokenType.NOT, TokenType.IDENTIFIER);
+    }
+
+    @Test
+    public void testOperatorsWithoutSpaces() {
+        assertTokens("a=b==c<d<=e>f>=g!=!h",
+                TokenType.IDENTIFIER, TokenType.ASSIGN, TokenType.IDENTIFIER, TokenType.EQ, TokenType.IDENTIFIER, TokenType.LT,
+                TokenType.IDENTIFIER, TokenType.LE, TokenType.IDENTIFIER, TokenType.GT, TokenType.IDENTIFIER, TokenType.GE,
+                TokenType.IDENTIFIER, TokenType.NOT_EQ, TokenType.NOT, TokenType.IDENTIFIER);
+    }
+
+    @Test
+    public void testOneCharacterOperatorsBeforeLiterals() {
+        assertTokens("x=1;y<2?!true:x>-3",
+                TokenType.IDENTIFIER, TokenType.ASSIGN, TokenType.INT_LITERAL, TokenType.SEMICOLON, TokenType.IDENTIFIER, TokenType.LT,
+                TokenType.INT_LITERAL, TokenType.QUESTION_MARK, TokenType.NOT, TokenType.TRUE, TokenType.COLON, TokenType.IDENTIFIER,
+                TokenType.GT, TokenType.MINUS, TokenType.INT_LITERAL);
+    }
+
+    @Test
+    public void testOperatorsAtEndOfText() {
+        assertTokens("a ||", TokenType.IDENTIFIER, TokenType.OR);
+        assertTokens("a <", TokenType.IDENTIFIER, TokenType.LT);
+    }
+
+    @Test
+    public void testValuesOfTokens() {
+        Lexer lexer = new Lexer();
+        lexer.initState("count=42", "");
+
+        assertEquals("count", lexer.getNextToken().getValue());
+        assertEquals(TokenType.ASSIGN, lexer.getNextToken().getTokenType());
+        assertEquals("42", lexer.getNextToken().getValue());
+    }
+
+    private void assertTokens(String text, TokenType... expectedTokens) {
+        Lexer lexer = new Lexer();
+        lexer.initState(text, "");
+
+        for (TokenType expectedToken : expectedTokens) {
+            Token token = lexer.getNextToken();
+            assertEquals(text, expectedToken, token.getTokenType());
+        }
+
+        assertTrue(text, lexer.getNextToken().getTokenType() == TokenType.EOF);
+    }
+
 }
@@ -0,0 +1,537 @@
+package bee.lang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+// A simple interpreter of assembly code which is created by the compiler. It supports only instructions and system calls which the compiler
+// and its runtime library use so programs can be checked without the SPIM simulator.
+// Immediate operands and offsets must fit 16 bits and shift amounts must fit 5 bits like in machine instructions. The assembler could expand
+// such instructions to several ones but the compiler must choose other instructions for bigger values.
+public class MipsSimulator {
+
+    private static final int TEXT_ADDRESS = 0x00400000;
+    private static final int DATA_ADDRESS = 0x10010000;
+    private static final int STACK_ADDRESS = 0x7ffffffc;
+    private static final int END_ADDRESS = 0;
+
+    private static final int MIN_SIGNED_IMMEDIATE = -32768;
+    private static final int MAX_SIGNED_IMMEDIATE = 32767;
+    private static final int MAX_UNSIGNED_IMMEDIATE = 0xFFFF;
+    private static final int MAX_SHIFT = 31;
+
+    private static final String[] REGISTERS = {
+            "zero", "at", "v0", "v1", "a0", "a1", "a2", "a3",
+            "t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7",
+            "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+            "t8", "t9", "k0", "k1", "gp", "sp", "fp", "ra"
+    };
+
+    private ArrayList<String[]> mInstructions;
+    private HashMap<String, Integer> mLabels;
+    private HashMap<Integer, Integer> mMemory;
+    private int mDataEnd;
+    private int[] mRegisters;
+    private int mHi;
+    private int mLo;
+    private StringBuilder mOutput;
+
+    public MipsSimulator(String code) {
+        mInstructions = new ArrayList<>();
+        mLabels = new HashMap<>();
+        mMemory = new HashMap<>();
+        mRegisters = new int[REGISTERS.length];
+        mOutput = new StringBuilder();
+
+        parse(code);
+    }
+
+    // Runs the program and returns everything it prints. The program is stopped if it executes too many instructions.
+    public String run(long maxCountInstructions) {
+        mRegisters[29] = STACK_ADDRESS;
+        mRegisters[31] = END_ADDRESS;
+
+        int pc = mLabels.get("main");
+        long count = 0;
+
+        while ((pc != END_ADDRESS) && (pc != mLabels.get("_end_program_"))) {
+            if (++count > maxCountInstructions) {
+                throw new IllegalStateException("The program executes more than " + maxCountInstructions + " instructions");
+            }
+
+            pc = execute(pc);
+        }
+
+        return mOutput.toString();
+    }
+
+    private void parse(String code) {
+        boolean isText = false;
+        LinkedList<String[]> words = new LinkedList<>();
+
+        for (String line : code.split("\n")) {
+            line = line.trim();
+
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            if (line.equals(".data")) {
+                isText = false;
+                continue;
+            } else if ((line.equals(".text")) || (line.startsWith(".globl"))) {
+                isText = true;
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            if ((colon > 0) && (!line.startsWith("\"")) && (line.substring(0, colon).matches("[A-Za-z_][\\w]*"))) {
+                String label = line.substring(0, colon);
+                line = line.substring(colon + 1).trim();
+
+                mLabels.put(label, isText ? TEXT_ADDRESS + mInstructions.size() * 4 : DATA_ADDRESS + getDataSize(words));
+
+                if (line.isEmpty()) {
+                    continue;
+                }
+            }
+
+            if (isText) {
+                mInstructions.add(splitInstruction(line));
+            } else if (line.startsWith(".asciiz")) {
+                words.add(new String[] { ".asciiz", unescape(line.substring(line.indexOf('"') + 1, line.lastIndexOf('"'))) });
+            } else if (line.startsWith(".word")) {
+                for (String item : line.substring(".word".length()).split("[,\\s]+")) {
+                    if (!item.isEmpty()) {
+                        words.add(new String[] { ".word", item });
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown directive: " + line);
+            }
+        }
+
+        // Values of words can refer to labels which are defined later
+        int address = DATA_ADDRESS;
+        for (String[] item : words) {
+            if (item[0].equals(".word")) {
+                storeWord(address, mLabels.containsKey(item[1]) ? mLabels.get(item[1]) : Integer.parseInt(item[1]));
+                address += 4;
+            } else {
+                for (int i = 0; i < item[1].length(); i++) {
+                    storeByte(address++, item[1].charAt(i));
+                }
+
+                storeByte(address++, 0);
+            }
+        }
+
+        mDataEnd = (address + 3) & ~3;
+    }
+
+    private int getDataSize(List<String[]> words) {
+        int size = 0;
+
+        for (String[] item : words) {
+            size += item[0].equals(".word") ? 4 : item[1].length() + 1;
+        }
+
+        return size;
+    }
+
+    private String[] splitInstruction(String line) {
+        int space = line.indexOf(' ');
+
+        if (space == -1) {
+            return new String[] { line };
+        }
+
+        String[] operands = line.substring(space + 1).split(",");
+        String[] result = new String[operands.length + 1];
+        result[0] = line.substring(0, space);
+
+        for (int i = 0; i < operands.length; i++) {
+            result[i + 1] = operands[i].trim();
+        }
+
+        return result;
+    }
+
+    private String unescape(String str) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            if ((c == '\\') && (i + 1 < str.length())) {
+                char next = str.charAt(++i);
+                sb.append((next == 'n') ? '\n' : (next == 't') ? '\t' : (next == '0') ? '\0' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private int execute(int pc) {
+        int index = (pc - TEXT_ADDRESS) / 4;
+
+        if ((index < 0) || (index >= mInstructions.size())) {
+            throw new IllegalStateException("Jump to the wrong address " + pc);
+        }
+
+        String[] instruction = mInstructions.get(index);
+        int next = pc + 4;
+
+        switch (instruction[0]) {
+            case "addu":
+            case "add":
+                set(instruction[1], get(instruction[2]) + get(instruction[3]));
+                break;
+            case "addiu":
+            case "addi":
+                set(instruction[1], get(instruction[2]) + signedImm(instruction[3]));
+                break;
+            case "subu":
+            case "sub":
+                set(instruction[1], get(instruction[2]) - get(instruction[3]));
+                break;
+            case "and":
+                set(instruction[1], get(instruction[2]) & get(instruction[3]));
+                break;
+            case "andi":
+                set(instruction[1], get(instruction[2]) & unsignedImm(instruction[3]));
+                break;
+            case "or":
+                set(instruction[1], get(instruction[2]) | get(instruction[3]));
+                break;
+            case "ori":
+                set(instruction[1], get(instruction[2]) | unsignedImm(instruction[3]));
+                break;
+            case "xor":
+                set(instruction[1], get(instruction[2]) ^ get(instruction[3]));
+                break;
+            case "xori":
+                set(instruction[1], get(instruction[2]) ^ unsignedImm(instruction[3]));
+                break;
+            case "nor":
+                set(instruction[1], ~(get(instruction[2]) | get(instruction[3])));
+                break;
+            case "sll":
+                set(instruction[1], get(instruction[2]) << shift(instruction[3]));
+                break;
+            case "srl":
+                set(instruction[1], get(instruction[2]) >>> shift(instruction[3]));
+                break;
+            case "sra":
+                set(instruction[1], get(instruction[2]) >> shift(instruction[3]));
+                break;
+            case "sllv":
+                set(instruction[1], get(instruction[2]) << get(instruction[3]));
+                break;
+            case "srlv":
+                set(instruction[1], get(instruction[2]) >>> get(instruction[3]));
+                break;
+            case "srav":
+                set(instruction[1], get(instruction[2]) >> get(instruction[3]));
+                break;
+            case "slt":
+                set(instruction[1], (get(instruction[2]) < get(instruction[3])) ? 1 : 0);
+                break;
+            case "sltu":
+                set(instruction[1], (Integer.compareUnsigned(get(instruction[2]), get(instruction[3])) < 0) ? 1 : 0);
+                break;
+            case "slti":
+                set(instruction[1], (get(instruction[2]) < signedImm(instruction[3])) ? 1 : 0);
+                break;
+            case "sltiu":
+                set(instruction[1], (Integer.compareUnsigned(get(instruction[2]), signedImm(instruction[3])) < 0) ? 1 : 0);
+                break;
+            case "movz":
+                if (get(instruction[3]) == 0) {
+                    set(instruction[1], get(instruction[2]));
+                }
+                break;
+            case "movn":
+                if (get(instruction[3]) != 0) {
+                    set(instruction[1], get(instruction[2]));
+                }
+                break;
+            case "mult": {
+                long product = (long) get(instruction[1]) * get(instruction[2]);
+                mLo = (int) product;
+                mHi = (int) (product >> 32);
+                break;
+            }
+            case "div": {
+                int divisor = get(instruction[2]);
+                if (divisor != 0) {
+                    mLo = get(instruction[1]) / divisor;
+                    mHi = get(instruction[1]) % divisor;
+                }
+                break;
+            }
+            case "mul":
+                set(instruction[1], get(instruction[2]) * get(instruction[3]));
+                break;
+            case "mfhi":
+                set(instruction[1], mHi);
+                break;
+            case "mflo":
+                set(instruction[1], mLo);
+                break;
+            case "neg":
+                set(instruction[1], -get(instruction[2]));
+                break;
+            case "not":
+                set(instruction[1], ~get(instruction[2]));
+                break;
+            case "move":
+                set(instruction[1], get(instruction[2]));
+                break;
+            case "li":
+                set(instruction[1], imm(instruction[2]));
+                break;
+            case "lui":
+                set(instruction[1], unsignedImm(instruction[2]) << 16);
+                break;
+            case "la":
+                set(instruction[1], address(instruction[2]));
+                break;
+            case "lw":
+                set(instruction[1], loadWord(address(instruction[2])));
+                break;
+            case "sw":
+                storeWord(address(instruction[2]), get(instruction[1]));
+                break;
+            case "lb":
+                set(instruction[1], (byte) loadByte(address(instruction[2])));
+                break;
+            case "lbu":
+                set(instruction[1], loadByte(address(instruction[2])));
+                break;
+            case "sb":
+                storeByte(address(instruction[2]), get(instruction[1]));
+                break;
+            case "b":
+            case "j":
+                next = target(instruction[1]);
+                break;
+            case "jal":
+                mRegisters[31] = next;
+                next = target(instruction[1]);
+                break;
+            case "jalr":
+                mRegisters[31] = next;
+                next = get(instruction[1]);
+                break;
+            case "jr":
+                next = get(instruction[1]);
+                break;
+            case "beq":
+            case "bne":
+            case "blt":
+            case "bgt":
+            case "ble":
+            case "bge":
+            case "bltu":
+            case "bgtu":
+            case "bleu":
+            case "bgeu":
+                if (compare(instruction[0].substring(1), get(instruction[1]), value(instruction[2]))) {
+                    next = target(instruction[3]);
+                }
+                break;
+            case "beqz":
+            case "bnez":
+            case "bltz":
+            case "bgtz":
+            case "blez":
+            case "bgez":
+                if (compare(instruction[0].substring(1, 3), get(instruction[1]), 0)) {
+                    next = target(instruction[2]);
+                }
+                break;
+            case "syscall":
+                syscall();
+                break;
+            default:
+                throw new IllegalStateException("Unknown instruction: " + String.join(" ", instruction));
+        }
+
+        mRegisters[0] = 0;
+
+        return next;
+    }
+
+    private boolean compare(String condition, int left, int right) {
+        switch (condition) {
+            case "eq":
+                return left == right;
+            case "ne":
+                return left != right;
+            case "lt":
+                return left < right;
+            case "gt":
+                return left > right;
+            case "le":
+                return left <= right;
+            case "ge":
+                return left >= right;
+            case "ltu":
+                return Integer.compareUnsigned(left, right) < 0;
+            case "gtu":
+                return Integer.compareUnsigned(left, right) > 0;
+            case "leu":
+                return Integer.compareUnsigned(left, right) <= 0;
+            case "geu":
+                return Integer.compareUnsigned(left, right) >= 0;
+        }
+
+        throw new IllegalStateException("Unknown condition: " + condition);
+    }
+
+    private void syscall() {
+        switch (mRegisters[2]) {
+            case 1:
+                mOutput.append(mRegisters[4]);
+                break;
+            case 4:
+                for (int address = mRegisters[4]; loadByte(address) != 0; address++) {
+                    mOutput.append((char) loadByte(address));
+                }
+                break;
+            case 9:
+                mRegisters[2] = mDataEnd;
+                mDataEnd = (mDataEnd + mRegisters[4] + 3) & ~3;
+                break;
+            case 11:
+                mOutput.append((char) (mRegisters[4] & 0xff));
+                break;
+            default:
+                throw new IllegalStateException("Unknown system call " + mRegisters[2]);
+        }
+    }
+
+    private int register(String name) {
+        if (!name.startsWith("$")) {
+            throw new IllegalStateException("Register is expected: " + name);
+        }
+
+        String register = name.substring(1);
+
+        for (int i = 0; i < REGISTERS.length; i++) {
+            if (REGISTERS[i].equals(register)) {
+                return i;
+            }
+        }
+
+        return Integer.parseInt(register);
+    }
+
+    private int get(String name) {
+        return mRegisters[register(name)];
+    }
+
+    private void set(String name, int value) {
+        mRegisters[register(name)] = value;
+    }
+
+    private int imm(String value) {
+        return value.startsWith("0x") ? (int) Long.parseLong(value.substring(2), 16) : Integer.parseInt(value);
+    }
+
+    // The operand of 'addiu', 'slti', 'sltiu' and offsets of loads and stores are sign-extended
+    private int signedImm(String value) {
+        int immediate = imm(value);
+
+        if ((immediate < MIN_SIGNED_IMMEDIATE) || (immediate > MAX_SIGNED_IMMEDIATE)) {
+            throw new IllegalStateException("The immediate value does not fit 16 bits with a sign: " + value);
+        }
+
+        return immediate;
+    }
+
+    // The operand of 'andi', 'ori', 'xori' and 'lui' is extended by zeros
+    private int unsignedImm(String value) {
+        int immediate = imm(value);
+
+        if ((immediate < 0) || (immediate > MAX_UNSIGNED_IMMEDIATE)) {
+            throw new IllegalStateException("The immediate value does not fit 16 bits without a sign: " + value);
+        }
+
+        return immediate;
+    }
+
+    private int shift(String value) {
+        int amount = imm(value);
+
+        if ((amount < 0) || (amount > MAX_SHIFT)) {
+            throw new IllegalStateException("The shift amount does not fit 5 bits: " + value);
+        }
+
+        return amount;
+    }
+
+    // A register or an immediate value
+    private int value(String operand) {
+        return operand.startsWith("$") ? get(operand) : imm(operand);
+    }
+
+    private int target(String operand) {
+        if (operand.startsWith("$")) {
+            return get(operand);
+        }
+
+        Integer address = mLabels.get(operand);
+        if (address == null) {
+            throw new IllegalStateException("Unknown label: " + operand);
+        }
+
+        return address;
+    }
+
+    // Addresses have the form 'offset(register)' or 'label'
+    private int address(String operand) {
+        int open = operand.indexOf('(');
+
+        if (open == -1) {
+            return target(operand);
+        }
+
+        int offset = (open == 0) ? 0 : signedImm(operand.substring(0, open));
+
+        return offset + get(operand.substring(open + 1, operand.indexOf(')')));
+    }
+
+    private int loadWord(int address) {
+        if ((address & 3) != 0) {
+            throw new IllegalStateException("Unaligned address " + address);
+        }
+
+        Integer value = mMemory.get(address);
+        return (value == null) ? 0 : value;
+    }
+
+    private void storeWord(int address, int value) {
+        if ((address & 3) != 0) {
+            throw new IllegalStateException("Unaligned address " + address);
+        }
+
+        mMemory.put(address, value);
+    }
+
+    private int loadByte(int address) {
+        return (loadWord(address & ~3) >>> ((address & 3) * 8)) & 0xff;
+    }
+
+    private void storeByte(int address, int value) {
+        int shift = (address & 3) * 8;
+        int word = loadWord(address & ~3);
+
+        storeWord(address & ~3, (word & ~(0xff << shift)) | ((value & 0xff) << shift));
+    }
+
+}
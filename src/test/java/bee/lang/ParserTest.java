@@ -0,0 +1,63 @@
+package bee.lang;
+
+import bee.lang.ast.*;
+import bee.lang.exceptions.BaseParserException;
+import bee.lang.ir.CompilationContext;
+import bee.lang.lexer.Lexer;
+import bee.lang.parser.Parser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class ParserTest {
+
+    @Test
+    public void testAssignmentInParentheses() throws BaseParserException {
+        Assignment assignment = parseAssignment("y = (x = 2) * 3;");
+
+        Times times = (Times) assignment.getRightExpression();
+        assertTrue(times.getLeftExpression() instanceof Assignment);
+        assertTrue(times.getRightExpression() instanceof IntLiteral);
+    }
+
+    @Test
+    public void testBinaryExpressionInParentheses() throws BaseParserException {
+        Assignment assignment = parseAssignment("y = (x + 2) * 3;");
+
+        Times times = (Times) assignment.getRightExpression();
+        assertTrue(times.getLeftExpression() instanceof Add);
+    }
+
+    @Test
+    public void testConditionalExpressionInParentheses() throws BaseParserException {
+        Assignment assignment = parseAssignment("y = (x > 0 ? x : 0) + 1;");
+
+        Add add = (Add) assignment.getRightExpression();
+        assertTrue(add.getLeftExpression() instanceof TernaryOperator);
+    }
+
+    @Test
+    public void testLogicalExpressionInParentheses() throws BaseParserException {
+        Assignment assignment = parseAssignment("b = !(x < 0 || x > 9) && true;");
+
+        And and = (And) assignment.getRightExpression();
+        Not not = (Not) and.getLeftExpression();
+        assertTrue(not.getExpression() instanceof Or);
+    }
+
+    @Test(expected = BaseParserException.class)
+    public void testUnclosedParentheses() throws BaseParserException {
+        parseAssignment("y = (x = 2 * 3;");
+    }
+
+    // Parses the statement inside of the method 'main' and returns its expression
+    private Assignment parseAssignment(String statement) throws BaseParserException {
+        Program program = new Parser(new CompilationContext(), new Lexer()).parse("class Main { constructor() { } static main() { " + statement + " } }");
+
+        ClassDefinition classDefinition = (ClassDefinition) program.getStatementsList().getFirst();
+        MethodDefinition methodDefinition = (MethodDefinition) classDefinition.getMethodDefinitions().getStatementsList().getFirst();
+
+        return (Assignment) ((AssignmentStatement) methodDefinition.getBody().getStatementsList().getFirst()).getExpression();
+    }
+
+}
@@ -0,0 +1,209 @@
+package bee.lang.translate;
+
+import bee.lang.ir.CompilationContext;
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ControlFlowAnalyzingTest {
+
+    private CompilationContext mContext = new CompilationContext();
+    private Temp mTemp = mContext.newTemp();
+
+    // 'c ? f(1) : 32' at the start of a procedure. The condition is CJUMP right after the first label.
+    @Test
+    public void testConditionalJumpAfterFirstLabel() {
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
+        Label lblEnd = mContext.newLabel();
+
+        LinkedList<BasicBlock> blocks = createBasicBlocks(selection(new CJUMP(TypeRelOp.NE, new CONST(3), new CONST(3), lblTrue, lblFalse), lblTrue, lblFalse, lblEnd));
+
+        assertEquals(4, blocks.size());
+        assertEquals(2, blocks.getFirst().getStatements().size());
+        assertEquals(list(lblTrue, lblFalse), getTargets(blocks.getFirst().getStatements().getLast()));
+        assertJumpsAtEnds(blocks);
+    }
+
+    // A constant condition is a jump right after the first label
+    @Test
+    public void testJumpAfterFirstLabel() {
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
+        Label lblEnd = mContext.newLabel();
+
+        LinkedList<BasicBlock> blocks = createBasicBlocks(selection(new JUMP(lblFalse), lblTrue, lblFalse, lblEnd));
+
+        assertEquals(4, blocks.size());
+        assertEquals(2, blocks.getFirst().getStatements().size());
+        assertEquals(list(lblFalse), getTargets(blocks.getFirst().getStatements().getLast()));
+        assertJumpsAtEnds(blocks);
+    }
+
+    // Both values of the selection call procedures. The condition 3 != 3 is false but CJUMP must still fall through to its label 'false'.
+    @Test
+    public void testConstantConditionWithCalls() {
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
+        Label lblEnd = mContext.newLabel();
+
+        LinkedList<IRStatement> statements = new ControlFlowAnalyzing(mContext, "test").trace(
+                selection(new CJUMP(TypeRelOp.NE, new CONST(3), new CONST(3), lblTrue, lblFalse), lblTrue, lblFalse, lblEnd));
+
+        assertTraced(statements);
+    }
+
+    // Blocks are placed in the order entry, a, b, c, exit by traces. CJUMP of the block 'c' jumps to 'a' or 'b' so neither of them follows it.
+    @Test
+    public void testConditionalJumpFollowedByNeitherLabel() {
+        Label entry = mContext.newLabel();
+        Label a = mContext.newLabel();
+        Label b = mContext.newLabel();
+        Label c = mContext.newLabel();
+        Label exit = mContext.newLabel();
+
+        LinkedList<BasicBlock> blocks = new LinkedList<>();
+        blocks.add(block(new LABEL(entry), new JUMP(a)));
+        blocks.add(block(new LABEL(c), new CJUMP(TypeRelOp.LT, new TEMP(mTemp), new CONST(0), a, b)));
+        blocks.add(block(new LABEL(a), new MOVE(new TEMP(mTemp), new CONST(1)), new JUMP(b)));
+        blocks.add(block(new LABEL(b), new CJUMP(TypeRelOp.LT, new TEMP(mTemp), new CONST(5), c, exit)));
+        blocks.add(block(new LABEL(exit), new JUMP(mContext.newLabel("_test_end_"))));
+
+        LinkedList<IRStatement> statements = new ControlFlowAnalyzing(mContext, "test").traceBasicBlocks(blocks);
+
+        assertTraced(statements);
+        assertFallThroughToFalse(statements, b);
+    }
+
+    // The last block of the trace ends with CJUMP whose labels are placed before it
+    @Test
+    public void testConditionalJumpAtEnd() {
+        Label entry = mContext.newLabel();
+        Label a = mContext.newLabel();
+        Label b = mContext.newLabel();
+
+        LinkedList<BasicBlock> blocks = new LinkedList<>();
+        blocks.add(block(new LABEL(entry), new JUMP(a)));
+        blocks.add(block(new LABEL(a), new MOVE(new TEMP(mTemp), new CONST(1)), new JUMP(b)));
+        blocks.add(block(new LABEL(b), new CJUMP(TypeRelOp.LT, new TEMP(mTemp), new CONST(5), a, entry)));
+
+        LinkedList<IRStatement> statements = new ControlFlowAnalyzing(mContext, "test").traceBasicBlocks(blocks);
+
+        assertTraced(statements);
+        assertFallThroughToFalse(statements, entry);
+    }
+
+    private LinkedList<BasicBlock> createBasicBlocks(LinkedList<IRStatement> statements) {
+        return new ControlFlowAnalyzing(mContext, "test").createBasicBlocks(statements);
+    }
+
+    // cond; LABEL(t); t0 = f(1); JUMP(end); LABEL(f); t0 = 32; LABEL(end); print_int(t0)
+    private LinkedList<IRStatement> selection(IRStatement condition, Label lblTrue, Label lblFalse, Label lblEnd) {
+        return new LinkedList<>(Arrays.asList(
+                condition,
+                new LABEL(lblTrue),
+                new MOVE(new TEMP(mTemp), call("f", new CONST(1))),
+                new JUMP(lblEnd),
+                new LABEL(lblFalse),
+                new MOVE(new TEMP(mTemp), new CONST(32)),
+                new LABEL(lblEnd),
+                new EXP(call("print_int", new TEMP(mTemp)))
+        ));
+    }
+
+    private CALL call(String name, IRExpression argument) {
+        return new CALL(new NAME(mContext.newLabel(name)), new LinkedList<>(Arrays.asList(argument)));
+    }
+
+    private BasicBlock block(IRStatement... statements) {
+        BasicBlock block = new BasicBlock();
+
+        for (IRStatement statement : statements) {
+            block.addStatement(statement);
+        }
+
+        return block;
+    }
+
+    private LinkedList<Label> list(Label... labels) {
+        return new LinkedList<>(Arrays.asList(labels));
+    }
+
+    private LinkedList<Label> getTargets(IRStatement statement) {
+        if (statement instanceof CJUMP) {
+            return list(((CJUMP) statement).getLblTrue(), ((CJUMP) statement).getLblFalse());
+        }
+
+        if (statement instanceof JUMP) {
+            return ((JUMP) statement).getTargets();
+        }
+
+        return list();
+    }
+
+    // Only the last statement of each block jumps so other passes see all successors of blocks
+    private void assertJumpsAtEnds(LinkedList<BasicBlock> blocks) {
+        for (BasicBlock block : blocks) {
+            assertTrue(block.getStatements().getFirst() instanceof LABEL);
+
+            for (IRStatement statement : block.getStatements()) {
+                if (statement != block.getStatements().getLast()) {
+                    assertTrue("Jump inside of the block " + block, (!(statement instanceof JUMP)) && (!(statement instanceof CJUMP)));
+                }
+            }
+        }
+    }
+
+    // Each CJUMP is followed by its label 'false' and each jump goes to a label of the procedure or to its end
+    private void assertTraced(LinkedList<IRStatement> statements) {
+        HashSet<Label> labels = new HashSet<>();
+        labels.add(mContext.newLabel("_test_end_"));
+
+        for (IRStatement statement : statements) {
+            if (statement instanceof LABEL) {
+                labels.add(((LABEL) statement).getLabel());
+            }
+        }
+
+        for (int i = 0; i < statements.size(); i++) {
+            IRStatement statement = statements.get(i);
+
+            if (statement instanceof CJUMP) {
+                assertTrue("CJUMP is the last statement", i + 1 < statements.size());
+                assertTrue("CJUMP is not followed by its label 'false': " + statements, statements.get(i + 1) instanceof LABEL);
+                assertEquals(((CJUMP) statement).getLblFalse(), ((LABEL) statements.get(i + 1)).getLabel());
+            }
+
+            for (Label target : getTargets(statement)) {
+                assertTrue("Unknown label " + target.getName(), labels.contains(target));
+            }
+        }
+    }
+
+    // CJUMP which jumps to the label 'target' when the condition is false falls through to its label 'false' and that label jumps to 'target'
+    private void assertFallThroughToFalse(LinkedList<IRStatement> statements, Label target) {
+        for (int i = 0; i < statements.size(); i++) {
+            IRStatement statement = statements.get(i);
+
+            if ((statement instanceof CJUMP) && (i + 2 < statements.size()) && (statements.get(i + 2) instanceof JUMP) &&
+                    (((JUMP) statements.get(i + 2)).getTargets().getFirst() == target)) {
+                IRStatement next = statements.get(i + 1);
+
+                assertTrue(next instanceof LABEL);
+                assertEquals(((CJUMP) statement).getLblFalse(), ((LABEL) next).getLabel());
+                return;
+            }
+        }
+
+        throw new AssertionError("There is no CJUMP which falls through to the jump to " + target.getName() + " in " + statements);
+    }
+
+}
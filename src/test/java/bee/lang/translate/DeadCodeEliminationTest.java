@@ -0,0 +1,81 @@
+package bee.lang.translate;
+
+import bee.lang.ir.CompilationContext;
+import bee.lang.ir.Label;
+import bee.lang.ir.Temp;
+import bee.lang.ir.tree.*;
+import bee.lang.translate.frame.MipsFrame;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeadCodeEliminationTest {
+
+    private CompilationContext mContext = new CompilationContext();
+    private Temp mTemp = mContext.newTemp();
+
+    // 'false ? f(1) : 32' after folding. The block of the value 'false' follows the block of the value 'true' which is never reached.
+    @Test
+    public void testConstantConditionWithCalls() {
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
+        Label lblEnd = mContext.newLabel();
+
+        LinkedList<IRStatement> statements = new LinkedList<>(Arrays.asList(
+                new JUMP(lblFalse),
+                new LABEL(lblTrue),
+                new MOVE(new TEMP(mTemp), call("f", new CONST(1))),
+                new JUMP(lblEnd),
+                new LABEL(lblFalse),
+                new MOVE(new TEMP(mTemp), new CONST(32)),
+                new LABEL(lblEnd),
+                new EXP(call("print_int", new TEMP(mTemp)))
+        ));
+
+        LinkedList<BasicBlock> blocks = new ControlFlowAnalyzing(mContext, "test").createBasicBlocks(statements);
+        new DeadCodeElimination(new MipsFrame(mContext)).optimize(blocks);
+
+        HashSet<Label> labels = new HashSet<>();
+        for (BasicBlock block : blocks) {
+            labels.add(block.getLabel());
+        }
+
+        assertEquals(3, blocks.size());
+        assertTrue(labels.contains(lblFalse));
+        assertTrue(labels.contains(lblEnd));
+    }
+
+    // Targets of the first jump would be lost so such blocks are not accepted
+    @Test(expected = IllegalStateException.class)
+    public void testJumpBeforeLastStatement() {
+        Label lblTrue = mContext.newLabel();
+        Label lblFalse = mContext.newLabel();
+
+        LinkedList<BasicBlock> blocks = new LinkedList<>();
+        blocks.add(block(new LABEL(mContext.newLabel()), new JUMP(lblFalse), new JUMP(lblTrue)));
+        blocks.add(block(new LABEL(lblTrue), new JUMP(mContext.newLabel("_test_end_"))));
+        blocks.add(block(new LABEL(lblFalse), new JUMP(mContext.newLabel("_test_end_"))));
+
+        new DeadCodeElimination(new MipsFrame(mContext)).optimize(blocks);
+    }
+
+    private CALL call(String name, IRExpression argument) {
+        return new CALL(new NAME(mContext.newLabel(name)), new LinkedList<>(Arrays.asList(argument)));
+    }
+
+    private BasicBlock block(IRStatement... statements) {
+        BasicBlock block = new BasicBlock();
+
+        for (IRStatement statement : statements) {
+            block.addStatement(statement);
+        }
+
+        return block;
+    }
+
+}